@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package android.os;
+
+import android.graphics.Rect;
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class BundlePerfTest {
+    private static final int ENTRY_COUNT = 100;
+
+    @Rule
+    public PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    private Parcel mSource;
+    private Parcel mDest;
+
+    @Before
+    public void setUp() {
+        final Bundle bundle = new Bundle();
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            bundle.putParcelable("rect" + i, new Rect(i, i, i + 10, i + 10));
+            final ArrayList<Rect> list = new ArrayList<>();
+            for (int j = 0; j < 10; j++) {
+                list.add(new Rect(j, j, j + 1, j + 1));
+            }
+            bundle.putParcelableArrayList("list" + i, list);
+        }
+        bundle.putString("name", "value");
+        mSource = Parcel.obtain();
+        mSource.writeBundle(bundle);
+        mDest = Parcel.obtain();
+    }
+
+    @After
+    public void tearDown() {
+        mSource.recycle();
+        mSource = null;
+        mDest.recycle();
+        mDest = null;
+    }
+
+    @Test
+    public void timeReadSingleKey() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            mSource.setDataPosition(0);
+            final Bundle bundle = mSource.readBundle();
+            bundle.getString("name");
+        }
+    }
+
+    @Test
+    public void timeReadAllKeys() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            mSource.setDataPosition(0);
+            final Bundle bundle = mSource.readBundle();
+            for (String key : bundle.keySet()) {
+                bundle.get(key);
+            }
+        }
+    }
+
+    @Test
+    public void timeForwardAfterReadingSingleKey() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            mSource.setDataPosition(0);
+            final Bundle bundle = mSource.readBundle();
+            bundle.getString("name");
+            mDest.setDataPosition(0);
+            mDest.writeBundle(bundle);
+        }
+    }
+}
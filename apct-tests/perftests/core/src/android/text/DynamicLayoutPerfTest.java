@@ -139,4 +139,25 @@ public class DynamicLayoutPerfTest {
             }
         }
     }
+
+    @Test
+    public void testEditLongText() {
+        final SpannableStringBuilder text = getText();
+        final CharSequence paragraphs = text.subSequence(0, text.length());
+        while (text.length() < 100000) {
+            text.append(paragraphs);
+        }
+        final DynamicLayout layout = new DynamicLayout(text, new TextPaint(), 1000,
+                ALIGN_NORMAL, 0, 0, false);
+
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        final int steps = 10;
+        while (state.keepRunning()) {
+            for (int i = 0; i < steps; i++) {
+                int offset = (text.length() * i) / steps;
+                text.insert(offset, "a");
+                text.delete(offset, offset + 1);
+            }
+        }
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package android.text;
+
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures StaticLayout construction for list rows that are bound again and again while
+ * scrolling, as a RecyclerView would do for a small set of distinct items.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class StaticLayoutPerfTest {
+
+    @Rule
+    public PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    private static final String ALPHABETS = "abcdefghijklmnopqrstuvwxyz";
+    private static final int ROW_COUNT = 20;
+    private static final int WIDTH = 500;
+
+    private final String[] mRows = new String[ROW_COUNT];
+    private TextPaint mPaint;
+
+    @Before
+    public void setUp() {
+        final Random r = new Random(1234567890);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            final StringBuilder sb = new StringBuilder();
+            final int wordCount = 5 + r.nextInt(20);
+            for (int j = 0; j < wordCount; j++) {
+                final int wordLength = 1 + r.nextInt(10);
+                for (int k = 0; k < wordLength; k++) {
+                    sb.append(ALPHABETS.charAt(r.nextInt(ALPHABETS.length())));
+                }
+                sb.append(' ');
+            }
+            mRows[i] = sb.toString();
+        }
+        mPaint = new TextPaint();
+        mPaint.setTextSize(32);
+    }
+
+    private StaticLayout buildRow(CharSequence text) {
+        return StaticLayout.Builder.obtain(text, 0, text.length(), mPaint, WIDTH)
+                .setBreakStrategy(Layout.BREAK_STRATEGY_HIGH_QUALITY)
+                .build();
+    }
+
+    @Test
+    public void testScrollRepeatedRows() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            for (int i = 0; i < ROW_COUNT; i++) {
+                buildRow(mRows[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testScrollRepeatedRowsUncached() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            LineBreakCache.clear();
+            state.resumeTiming();
+            for (int i = 0; i < ROW_COUNT; i++) {
+                buildRow(mRows[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testScrollRepeatedRowsPrecomputed() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            LineBreakCache.clear();
+            for (int i = 0; i < ROW_COUNT; i++) {
+                StaticLayout.Builder.obtain(mRows[i], 0, mRows[i].length(), mPaint, WIDTH)
+                        .setBreakStrategy(Layout.BREAK_STRATEGY_HIGH_QUALITY)
+                        .precompute();
+            }
+            state.resumeTiming();
+            for (int i = 0; i < ROW_COUNT; i++) {
+                buildRow(mRows[i]);
+            }
+        }
+    }
+}
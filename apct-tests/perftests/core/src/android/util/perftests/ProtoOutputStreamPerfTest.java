@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.util.perftests;
+
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.proto.ProtoOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compares writing a large proto dump in memory and copying it out with getBytes(), against
+ * streaming it to the output as top-level objects complete.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class ProtoOutputStreamPerfTest {
+    private static final int RECORD_COUNT = 5000;
+
+    private static final long RECORDS = ProtoOutputStream.makeFieldId(1,
+            ProtoOutputStream.FIELD_COUNT_REPEATED | ProtoOutputStream.FIELD_TYPE_OBJECT);
+    private static final long RECORD_ID = ProtoOutputStream.makeFieldId(1,
+            ProtoOutputStream.FIELD_COUNT_SINGLE | ProtoOutputStream.FIELD_TYPE_INT32);
+    private static final long RECORD_NAME = ProtoOutputStream.makeFieldId(2,
+            ProtoOutputStream.FIELD_COUNT_SINGLE | ProtoOutputStream.FIELD_TYPE_STRING);
+    private static final long RECORD_DETAIL = ProtoOutputStream.makeFieldId(3,
+            ProtoOutputStream.FIELD_COUNT_SINGLE | ProtoOutputStream.FIELD_TYPE_OBJECT);
+    private static final long DETAIL_TIME = ProtoOutputStream.makeFieldId(1,
+            ProtoOutputStream.FIELD_COUNT_SINGLE | ProtoOutputStream.FIELD_TYPE_INT64);
+    private static final long DETAIL_COUNT = ProtoOutputStream.makeFieldId(2,
+            ProtoOutputStream.FIELD_COUNT_SINGLE | ProtoOutputStream.FIELD_TYPE_INT64);
+
+    @Rule
+    public PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    private final OutputStream mSink = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Test
+    public void timeGetBytes() throws IOException {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            final ProtoOutputStream proto = new ProtoOutputStream();
+            writeRecords(proto);
+            mSink.write(proto.getBytes());
+        }
+    }
+
+    @Test
+    public void timeStream() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            final ProtoOutputStream proto = new ProtoOutputStream(mSink, true);
+            writeRecords(proto);
+            proto.flush();
+        }
+    }
+
+    private static void writeRecords(ProtoOutputStream proto) {
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            final long token = proto.start(RECORDS);
+            proto.write(RECORD_ID, i);
+            proto.write(RECORD_NAME, "com.example.record");
+            final long detailToken = proto.start(RECORD_DETAIL);
+            proto.write(DETAIL_TIME, 1000L * i);
+            proto.write(DETAIL_COUNT, i + 1L);
+            proto.end(detailToken);
+            proto.end(token);
+        }
+    }
+}
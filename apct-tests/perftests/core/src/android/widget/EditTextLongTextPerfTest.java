@@ -30,6 +30,10 @@ import org.junit.runners.Parameterized.Parameters;
 import android.app.Activity;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Typeface;
+import android.text.Editable;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.RenderNodeAnimator;
@@ -109,17 +113,36 @@ public class EditTextLongTextPerfTest {
         mActivityRule.runOnUiThread(() -> {
             BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
             final EditText editText = setupEditText();
-            final KeyEvent keyEvent = new KeyEvent(KeyEvent.ACTION_DOWN, KeyEvent.KEYCODE_ENTER);
-            final int steps = 100;
-            while (state.keepRunning()) {
-                for (int i = 0; i < steps; i++) {
-                    int offset = (editText.getText().length() * i) / steps;
-                    editText.setSelection(offset);
-                    editText.bringPointIntoView(offset);
-                    editText.onKeyDown(keyEvent.getKeyCode(), keyEvent);
-                    editText.updateDisplayListIfDirty();
-                }
+            typeNewlines(state, editText);
+        });
+    }
+
+    @Test
+    public void testEditTextWithSpans() throws Throwable {
+        mActivityRule.runOnUiThread(() -> {
+            BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+            final EditText editText = setupEditText();
+            // Style each line, so that every query over the text finds spans.
+            final Editable text = editText.getText();
+            for (int i = 0; i + mChars <= text.length(); i += mChars + 1) {
+                text.setSpan(new StyleSpan(Typeface.BOLD), i, i + mChars,
+                        Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
             }
+            typeNewlines(state, editText);
         });
     }
+
+    private static void typeNewlines(BenchmarkState state, EditText editText) {
+        final KeyEvent keyEvent = new KeyEvent(KeyEvent.ACTION_DOWN, KeyEvent.KEYCODE_ENTER);
+        final int steps = 100;
+        while (state.keepRunning()) {
+            for (int i = 0; i < steps; i++) {
+                int offset = (editText.getText().length() * i) / steps;
+                editText.setSelection(offset);
+                editText.bringPointIntoView(offset);
+                editText.onKeyDown(keyEvent.getKeyCode(), keyEvent);
+                editText.updateDisplayListIfDirty();
+            }
+        }
+    }
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.internal.os;
+
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.SparseArray;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Compares parsing a synthetic /proc/uid_time_in_state with {@link KernelUidStatsReader} against
+ * the line and string splitting parser the per-UID readers used before.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class KernelUidStatsReaderPerfTest {
+    private static final int UID_COUNT = 400;
+    private static final int FREQ_COUNT = 20;
+
+    @Rule
+    public PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    private ByteArrayInputStream mProcFile;
+
+    @Before
+    public void setUp() {
+        final StringBuilder sb = new StringBuilder("uid:");
+        for (int i = 0; i < FREQ_COUNT; i++) {
+            sb.append(' ').append(300000 + i * 100000);
+        }
+        sb.append('\n');
+        for (int uid = 10000; uid < 10000 + UID_COUNT; uid++) {
+            sb.append(uid).append(':');
+            for (int i = 0; i < FREQ_COUNT; i++) {
+                sb.append(' ').append(uid * 37 + i * 1013);
+            }
+            sb.append('\n');
+        }
+        mProcFile = new ByteArrayInputStream(sb.toString().getBytes());
+    }
+
+    @Test
+    public void timeReadDelta() throws Exception {
+        final KernelUidStatsReader reader = new KernelUidStatsReader("/dev/null",
+                true /* hasHeader */, 0, 10);
+        final KernelUidStatsReader.Callback callback = new KernelUidStatsReader.Callback() {
+            @Override
+            public void onHeader(long[] values) {
+            }
+
+            @Override
+            public void onUidDelta(int uid, long[] values, long[] deltas) {
+            }
+        };
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            mProcFile.reset();
+            reader.readDelta(mProcFile, callback);
+        }
+    }
+
+    @Test
+    public void timeReadDelta_splitLines() throws Exception {
+        final SparseArray<long[]> lastTimes = new SparseArray<>();
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            mProcFile.reset();
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(mProcFile));
+            final String[] freqs = reader.readLine().split(" ");
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int index = line.indexOf(' ');
+                final int uid = Integer.parseInt(line.substring(0, index - 1), 10);
+                final String[] times = line.substring(index + 1, line.length()).split(" ");
+                long[] last = lastTimes.get(uid);
+                if (last == null) {
+                    last = new long[freqs.length - 1];
+                    lastTimes.put(uid, last);
+                }
+                final long[] delta = new long[times.length];
+                for (int i = 0; i < times.length; i++) {
+                    final long time = Long.parseLong(times[i], 10) * 10;
+                    delta[i] = time - last[i];
+                    last[i] = time;
+                }
+            }
+        }
+    }
+}
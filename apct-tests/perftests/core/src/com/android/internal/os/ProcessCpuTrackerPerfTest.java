@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.internal.os;
+
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+/**
+ * Measures {@link ProcessCpuTracker#update()} with 300 extra live processes on top of the ones
+ * already running on the device.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class ProcessCpuTrackerPerfTest {
+    private static final int PROCESS_COUNT = 300;
+
+    @Rule
+    public PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    private final ArrayList<java.lang.Process> mProcesses = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < PROCESS_COUNT; i++) {
+            mProcesses.add(new ProcessBuilder("sleep", "600").start());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (java.lang.Process process : mProcesses) {
+            process.destroy();
+        }
+        mProcesses.clear();
+    }
+
+    @Test
+    public void timeUpdate() {
+        runUpdate(new ProcessCpuTracker(false));
+    }
+
+    @Test
+    public void timeUpdate_keepStatFilesOpen() {
+        runUpdate(new ProcessCpuTracker(false, true));
+    }
+
+    private void runUpdate(ProcessCpuTracker tracker) {
+        tracker.init();
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        while (state.keepRunning()) {
+            tracker.update();
+        }
+    }
+}
@@ -46,6 +46,7 @@ import android.content.res.CompatibilityInfo;
 import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.content.res.Resources.Theme;
+import android.content.res.SharedDrawableCache;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDebug;
 import android.database.sqlite.SQLiteDebug.DbStats;
@@ -1195,6 +1196,11 @@ public final class ActivityThread {
             printRow(pw, TWO_COUNT_COLUMNS, "Death Recipients:", binderDeathObjectCount,
                     "OpenSSL Sockets:", openSslSocketCount);
             printRow(pw, ONE_COUNT_COLUMN, "WebViews:", webviewInstanceCount);
+            printRow(pw, TWO_COUNT_COLUMNS, "Shared Drawables:",
+                    SharedDrawableCache.getEntryCount(), "Drawable hits:",
+                    SharedDrawableCache.getHitCount());
+            printRow(pw, ONE_COUNT_COLUMN, "Drawable misses:",
+                    SharedDrawableCache.getMissCount());
 
             // SQLite mem info
             pw.println(" ");
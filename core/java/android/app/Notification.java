@@ -86,6 +86,7 @@ import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Set;
 
@@ -2117,6 +2118,93 @@ public class Notification implements Parcelable
         }
     }
 
+    // Bitmaps smaller than this are written into the parcel itself rather than as ashmem.
+    private static final int MIN_SHARED_BITMAP_SIZE = 16 * (1 << 10);
+
+    /**
+     * Moves the large bitmaps of this Notification into immutable ashmem. Each later parcel of
+     * it, such as the one sent to every notification listener, then passes the same region by
+     * file descriptor instead of copying the pixels into a new one.
+     * @hide
+     */
+    public void shareLargeBitmaps() {
+        shareLargeBitmaps(new IdentityHashMap<>());
+    }
+
+    /**
+     * @param shared maps each bitmap or icon already moved to the one replacing it, so that an
+     *         object referenced from several places, or by the public version, is moved once
+     */
+    private void shareLargeBitmaps(IdentityHashMap<Object, Object> shared) {
+        mLargeIcon = shareIconBitmap(mLargeIcon, shared);
+        largeIcon = shareBitmap(largeIcon, shared);
+        if (extras != null) {
+            shareExtrasBitmap(EXTRA_LARGE_ICON, shared);
+            shareExtrasBitmap(EXTRA_LARGE_ICON_BIG, shared);
+            shareExtrasBitmap(EXTRA_PICTURE, shared);
+        }
+        if (publicVersion != null) {
+            publicVersion.shareLargeBitmaps(shared);
+        }
+    }
+
+    private void shareExtrasBitmap(String key, IdentityHashMap<Object, Object> shared) {
+        final Object obj = extras.get(key);
+        if (obj instanceof Bitmap) {
+            extras.putParcelable(key, shareBitmap((Bitmap) obj, shared));
+        } else if (obj instanceof Icon) {
+            extras.putParcelable(key, shareIconBitmap((Icon) obj, shared));
+        }
+    }
+
+    private static Icon shareIconBitmap(Icon icon, IdentityHashMap<Object, Object> shared) {
+        if (icon == null) {
+            return null;
+        }
+        final int type = icon.getType();
+        if (type != Icon.TYPE_BITMAP && type != Icon.TYPE_ADAPTIVE_BITMAP) {
+            return icon;
+        }
+        Icon sharedIcon = (Icon) shared.get(icon);
+        if (sharedIcon == null) {
+            final Bitmap bitmap = icon.getBitmap();
+            final Bitmap sharedBitmap = shareBitmap(bitmap, shared);
+            if (sharedBitmap == bitmap) {
+                sharedIcon = icon;
+            } else {
+                sharedIcon = type == Icon.TYPE_BITMAP
+                        ? Icon.createWithBitmap(sharedBitmap)
+                        : Icon.createWithAdaptiveBitmap(sharedBitmap);
+            }
+            shared.put(icon, sharedIcon);
+        }
+        return sharedIcon;
+    }
+
+    private static Bitmap shareBitmap(Bitmap bitmap, IdentityHashMap<Object, Object> shared) {
+        if (bitmap == null || bitmap.getConfig() == Bitmap.Config.HARDWARE) {
+            return bitmap;
+        }
+        final int size = bitmap.getAllocationByteCount();
+        if (size < MIN_SHARED_BITMAP_SIZE) {
+            return bitmap;
+        }
+        // Immutable bitmaps this large were mapped from ashmem when they were unparceled.
+        // Smaller ones were copied to the heap, and mutable ones are copied into every parcel.
+        if (!bitmap.isMutable() && size >= BigPictureStyle.MIN_ASHMEM_BITMAP_SIZE) {
+            return bitmap;
+        }
+        Bitmap sharedBitmap = (Bitmap) shared.get(bitmap);
+        if (sharedBitmap == null) {
+            sharedBitmap = bitmap.createAshmemBitmap();
+            if (sharedBitmap == null) {
+                sharedBitmap = bitmap;
+            }
+            shared.put(bitmap, sharedBitmap);
+        }
+        return sharedBitmap;
+    }
+
     /**
      * Make sure this CharSequence is safe to put into a bundle, which basically
      * means it had better not be some custom Parcelable implementation.
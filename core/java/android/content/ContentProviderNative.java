@@ -17,6 +17,7 @@
 package android.content;
 
 import android.annotation.Nullable;
+import android.content.pm.ParceledListSlice;
 import android.content.res.AssetFileDescriptor;
 import android.database.BulkCursorDescriptor;
 import android.database.BulkCursorToCursorAdaptor;
@@ -25,6 +26,7 @@ import android.database.CursorToBulkCursorAdaptor;
 import android.database.DatabaseUtils;
 import android.database.IContentObserver;
 import android.net.Uri;
+import android.os.BadParcelableException;
 import android.os.Binder;
 import android.os.Bundle;
 import android.os.IBinder;
@@ -36,6 +38,8 @@ import android.os.RemoteException;
 
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * {@hide}
@@ -160,7 +164,10 @@ abstract public class ContentProviderNative extends Binder implements IContentPr
                     data.enforceInterface(IContentProvider.descriptor);
                     String callingPkg = data.readString();
                     Uri url = Uri.CREATOR.createFromParcel(data);
-                    ContentValues[] values = data.createTypedArray(ContentValues.CREATOR);
+                    final ArrayList<ContentValues> valuesList =
+                            readBatch(data, ContentValues.CREATOR, ContentValues.class);
+                    final ContentValues[] values = valuesList != null
+                            ? valuesList.toArray(new ContentValues[valuesList.size()]) : null;
 
                     int count = bulkInsert(callingPkg, url, values);
                     reply.writeNoException();
@@ -172,15 +179,14 @@ abstract public class ContentProviderNative extends Binder implements IContentPr
                 {
                     data.enforceInterface(IContentProvider.descriptor);
                     String callingPkg = data.readString();
-                    final int numOperations = data.readInt();
-                    final ArrayList<ContentProviderOperation> operations =
-                            new ArrayList<>(numOperations);
-                    for (int i = 0; i < numOperations; i++) {
-                        operations.add(i, ContentProviderOperation.CREATOR.createFromParcel(data));
-                    }
+                    // The whole batch is handed to the provider at once, so that it can apply it
+                    // inside a single transaction however many chunks it arrived in.
+                    final ArrayList<ContentProviderOperation> operations = readBatch(data,
+                            ContentProviderOperation.CREATOR, ContentProviderOperation.class);
                     final ContentProviderResult[] results = applyBatch(callingPkg, operations);
                     reply.writeNoException();
-                    reply.writeTypedArray(results, 0);
+                    writeBatch(reply, results != null ? Arrays.asList(results) : null,
+                            ContentProviderResult.class);
                     return true;
                 }
 
@@ -372,6 +378,54 @@ abstract public class ContentProviderNative extends Binder implements IContentPr
     {
         return this;
     }
+
+    private static final int BATCH_TYPED_LIST = 0;
+    private static final int BATCH_SLICE = 1;
+
+    /**
+     * Writes a batch of operations, values or results so that its size is not limited by the
+     * size of a single transaction.  A batch whose elements are all exactly of the given class
+     * is sent as a {@link ParceledListSlice}: what does not fit in the transaction stays with
+     * the writer and is pipelined to the reader in chunks when it reads the batch.  Anything
+     * else (null elements, subclasses) is sent inline as before.
+     */
+    public static <T extends Parcelable> void writeBatch(Parcel dest, @Nullable List<T> batch,
+            Class<T> clazz) {
+        if (batch != null && isHomogeneous(batch, clazz)) {
+            dest.writeInt(BATCH_SLICE);
+            new ParceledListSlice<>(batch).writeToParcel(dest, 0);
+        } else {
+            dest.writeInt(BATCH_TYPED_LIST);
+            dest.writeTypedList(batch);
+        }
+    }
+
+    /**
+     * Reads a batch written by {@link #writeBatch}, retrieving any chunks that were not sent
+     * inline.
+     *
+     * @throws BadParcelableException if the batch contains an element of another class.
+     */
+    @SuppressWarnings("unchecked")
+    public static @Nullable <T extends Parcelable> ArrayList<T> readBatch(Parcel in,
+            Parcelable.Creator<T> creator, Class<T> clazz) {
+        if (in.readInt() != BATCH_SLICE) {
+            return in.createTypedArrayList(creator);
+        }
+        // Read with the fixed creator, so that no class named by the sender is ever resolved.
+        final List<T> list = ParceledListSlice.readTypedFromParcel(in, creator, clazz).getList();
+        return list instanceof ArrayList ? (ArrayList<T>) list : new ArrayList<>(list);
+    }
+
+    private static boolean isHomogeneous(List<?> batch, Class<?> clazz) {
+        for (int i = 0; i < batch.size(); i++) {
+            final Object element = batch.get(i);
+            if (element == null || element.getClass() != clazz) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
 
 
@@ -491,7 +545,8 @@ final class ContentProviderProxy implements IContentProvider
 
             data.writeString(callingPkg);
             url.writeToParcel(data, 0);
-            data.writeTypedArray(values, 0);
+            ContentProviderNative.writeBatch(data, values != null ? Arrays.asList(values) : null,
+                    ContentValues.class);
 
             mRemote.transact(IContentProvider.BULK_INSERT_TRANSACTION, data, reply, 0);
 
@@ -513,16 +568,14 @@ final class ContentProviderProxy implements IContentProvider
         try {
             data.writeInterfaceToken(IContentProvider.descriptor);
             data.writeString(callingPkg);
-            data.writeInt(operations.size());
-            for (ContentProviderOperation operation : operations) {
-                operation.writeToParcel(data, 0);
-            }
+            ContentProviderNative.writeBatch(data, operations, ContentProviderOperation.class);
             mRemote.transact(IContentProvider.APPLY_BATCH_TRANSACTION, data, reply, 0);
 
             DatabaseUtils.readExceptionWithOperationApplicationExceptionFromParcel(reply);
-            final ContentProviderResult[] results =
-                    reply.createTypedArray(ContentProviderResult.CREATOR);
-            return results;
+            final ArrayList<ContentProviderResult> results = ContentProviderNative.readBatch(
+                    reply, ContentProviderResult.CREATOR, ContentProviderResult.class);
+            return results != null
+                    ? results.toArray(new ContentProviderResult[results.size()]) : null;
         } finally {
             data.recycle();
             reply.recycle();
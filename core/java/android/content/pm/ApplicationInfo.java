@@ -1197,10 +1197,10 @@ public class ApplicationInfo extends PackageItemInfo implements Parcelable {
     @SuppressWarnings("unchecked")
     public void writeToParcel(Parcel dest, int parcelableFlags) {
         super.writeToParcel(dest, parcelableFlags);
-        dest.writeString(taskAffinity);
-        dest.writeString(permission);
-        dest.writeString(processName);
-        dest.writeString(className);
+        dest.writeStringPooled(taskAffinity);
+        dest.writeStringPooled(permission);
+        dest.writeStringPooled(processName);
+        dest.writeStringPooled(className);
         dest.writeInt(theme);
         dest.writeInt(flags);
         dest.writeInt(privateFlags);
@@ -1214,27 +1214,27 @@ public class ApplicationInfo extends PackageItemInfo implements Parcelable {
         } else {
             dest.writeInt(0);
         }
-        dest.writeString(scanSourceDir);
-        dest.writeString(scanPublicSourceDir);
-        dest.writeString(sourceDir);
-        dest.writeString(publicSourceDir);
+        dest.writeStringPooled(scanSourceDir);
+        dest.writeStringPooled(scanPublicSourceDir);
+        dest.writeStringPooled(sourceDir);
+        dest.writeStringPooled(publicSourceDir);
         dest.writeStringArray(splitNames);
         dest.writeStringArray(splitSourceDirs);
         dest.writeStringArray(splitPublicSourceDirs);
         dest.writeSparseArray((SparseArray) splitDependencies);
-        dest.writeString(nativeLibraryDir);
-        dest.writeString(secondaryNativeLibraryDir);
-        dest.writeString(nativeLibraryRootDir);
+        dest.writeStringPooled(nativeLibraryDir);
+        dest.writeStringPooled(secondaryNativeLibraryDir);
+        dest.writeStringPooled(nativeLibraryRootDir);
         dest.writeInt(nativeLibraryRootRequiresIsa ? 1 : 0);
-        dest.writeString(primaryCpuAbi);
-        dest.writeString(secondaryCpuAbi);
+        dest.writeStringPooled(primaryCpuAbi);
+        dest.writeStringPooled(secondaryCpuAbi);
         dest.writeStringArray(resourceDirs);
-        dest.writeString(seInfo);
-        dest.writeString(seInfoUser);
+        dest.writeStringPooled(seInfo);
+        dest.writeStringPooled(seInfoUser);
         dest.writeStringArray(sharedLibraryFiles);
-        dest.writeString(dataDir);
-        dest.writeString(deviceProtectedDataDir);
-        dest.writeString(credentialProtectedDataDir);
+        dest.writeStringPooled(dataDir);
+        dest.writeStringPooled(deviceProtectedDataDir);
+        dest.writeStringPooled(credentialProtectedDataDir);
         dest.writeInt(uid);
         dest.writeInt(minSdkVersion);
         dest.writeInt(targetSdkVersion);
@@ -1265,10 +1265,10 @@ public class ApplicationInfo extends PackageItemInfo implements Parcelable {
     @SuppressWarnings("unchecked")
     private ApplicationInfo(Parcel source) {
         super(source);
-        taskAffinity = source.readString();
-        permission = source.readString();
-        processName = source.readString();
-        className = source.readString();
+        taskAffinity = source.readStringPooled();
+        permission = source.readStringPooled();
+        processName = source.readStringPooled();
+        className = source.readStringPooled();
         theme = source.readInt();
         flags = source.readInt();
         privateFlags = source.readInt();
@@ -1279,27 +1279,27 @@ public class ApplicationInfo extends PackageItemInfo implements Parcelable {
             storageUuid = new UUID(source.readLong(), source.readLong());
             volumeUuid = StorageManager.convert(storageUuid);
         }
-        scanSourceDir = source.readString();
-        scanPublicSourceDir = source.readString();
-        sourceDir = source.readString();
-        publicSourceDir = source.readString();
+        scanSourceDir = source.readStringPooled();
+        scanPublicSourceDir = source.readStringPooled();
+        sourceDir = source.readStringPooled();
+        publicSourceDir = source.readStringPooled();
         splitNames = source.readStringArray();
         splitSourceDirs = source.readStringArray();
         splitPublicSourceDirs = source.readStringArray();
         splitDependencies = source.readSparseArray(null);
-        nativeLibraryDir = source.readString();
-        secondaryNativeLibraryDir = source.readString();
-        nativeLibraryRootDir = source.readString();
+        nativeLibraryDir = source.readStringPooled();
+        secondaryNativeLibraryDir = source.readStringPooled();
+        nativeLibraryRootDir = source.readStringPooled();
         nativeLibraryRootRequiresIsa = source.readInt() != 0;
-        primaryCpuAbi = source.readString();
-        secondaryCpuAbi = source.readString();
+        primaryCpuAbi = source.readStringPooled();
+        secondaryCpuAbi = source.readStringPooled();
         resourceDirs = source.readStringArray();
-        seInfo = source.readString();
-        seInfoUser = source.readString();
+        seInfo = source.readStringPooled();
+        seInfoUser = source.readStringPooled();
         sharedLibraryFiles = source.readStringArray();
-        dataDir = source.readString();
-        deviceProtectedDataDir = source.readString();
-        credentialProtectedDataDir = source.readString();
+        dataDir = source.readStringPooled();
+        deviceProtectedDataDir = source.readStringPooled();
+        credentialProtectedDataDir = source.readStringPooled();
         uid = source.readInt();
         minSdkVersion = source.readInt();
         targetSdkVersion = source.readInt();
@@ -16,6 +16,7 @@
 
 package android.content.pm;
 
+import android.os.BadParcelableException;
 import android.os.Binder;
 import android.os.IBinder;
 import android.os.Parcel;
@@ -25,6 +26,13 @@ import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Transfer a large list of Parcelable objects across an IPC.  Splits into
@@ -48,6 +56,15 @@ abstract class BaseParceledListSlice<T> implements Parcelable {
      */
     private static final int MAX_IPC_SIZE = IBinder.MAX_IPC_SIZE;
 
+    // Requests the next chunk while the current one is being unparcelled. The pool is small
+    // and does not queue, so when it is busy the request simply runs on the reading thread.
+    private static final ThreadPoolExecutor sPrefetchExecutor = new ThreadPoolExecutor(
+            0, 4, 10, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+                final Thread thread = new Thread(r, "ParceledListSlice");
+                thread.setDaemon(true);
+                return thread;
+            });
+
     private final List<T> mList;
 
     private int mInlineCountLimit = Integer.MAX_VALUE;
@@ -58,6 +75,16 @@ abstract class BaseParceledListSlice<T> implements Parcelable {
 
     @SuppressWarnings("unchecked")
     BaseParceledListSlice(Parcel p, ClassLoader loader) {
+        this(p, loader, null, null);
+    }
+
+    /**
+     * @param expectedClass if not null, the class the elements must be; they are then read with
+     *     {@code expectedCreator} and the class name in the parcel is never resolved
+     */
+    @SuppressWarnings("unchecked")
+    BaseParceledListSlice(Parcel p, ClassLoader loader, Parcelable.Creator<?> expectedCreator,
+            Class<?> expectedClass) {
         final int N = p.readInt();
         mList = new ArrayList<T>(N);
         if (DEBUG) Log.d(TAG, "Retrieving " + N + " items");
@@ -65,53 +92,132 @@ abstract class BaseParceledListSlice<T> implements Parcelable {
             return;
         }
 
-        Parcelable.Creator<?> creator = readParcelableCreator(p, loader);
+        Parcelable.Creator<?> creator = expectedClass != null
+                ? readExpectedParcelableCreator(p, expectedCreator, expectedClass)
+                : readParcelableCreator(p, loader);
         Class<?> listElementClass = null;
 
         int i = 0;
-        while (i < N) {
-            if (p.readInt() == 0) {
-                break;
-            }
+        final Object oldStringPool = p.pushStringPool();
+        try {
+            while (i < N) {
+                if (p.readInt() == 0) {
+                    break;
+                }
 
-            final T parcelable = readCreator(creator, p, loader);
-            if (listElementClass == null) {
-                listElementClass = parcelable.getClass();
-            } else {
-                verifySameType(listElementClass, parcelable.getClass());
-            }
+                final T parcelable = readCreator(creator, p, loader);
+                if (listElementClass == null) {
+                    listElementClass = parcelable.getClass();
+                } else {
+                    verifySameType(listElementClass, parcelable.getClass());
+                }
 
-            mList.add(parcelable);
+                mList.add(parcelable);
 
-            if (DEBUG) Log.d(TAG, "Read inline #" + i + ": " + mList.get(mList.size()-1));
-            i++;
+                if (DEBUG) Log.d(TAG, "Read inline #" + i + ": " + mList.get(mList.size()-1));
+                i++;
+            }
+        } finally {
+            p.restoreStringPool(oldStringPool);
         }
         if (i >= N) {
             return;
         }
-        final IBinder retriever = p.readStrongBinder();
-        while (i < N) {
-            if (DEBUG) Log.d(TAG, "Reading more @" + i + " of " + N + ": retriever=" + retriever);
-            Parcel data = Parcel.obtain();
-            Parcel reply = Parcel.obtain();
-            data.writeInt(i);
+        retrieveRemainder(p.readStrongBinder(), N, creator, loader, listElementClass);
+    }
+
+    /**
+     * Retrieves the elements that did not fit inline.  The next chunk is requested on a
+     * background thread while the current one is being unparcelled, so that the round trips
+     * overlap with the unparcelling.
+     */
+    private void retrieveRemainder(IBinder retriever, int N, Parcelable.Creator<?> creator,
+            ClassLoader loader, Class<?> elementClass) {
+        int i = mList.size();
+        FutureTask<Parcel> pending = requestChunk(retriever, i, N);
+        try {
+            while (pending != null) {
+                final Parcel reply;
+                try {
+                    // Runs the request on this thread if the executor has not started it yet.
+                    pending.run();
+                    reply = pending.get();
+                } catch (InterruptedException | ExecutionException e) {
+                    Log.w(TAG, "Failure retrieving array; only received " + i + " of " + N, e);
+                    return;
+                } finally {
+                    pending = null;
+                }
+                try {
+                    final int count = reply.readInt();
+                    if (count <= 0 || count > N - i) {
+                        Log.w(TAG, "Bad chunk size " + count + " @" + i + " of " + N);
+                        return;
+                    }
+                    if (i + count < N) {
+                        pending = requestChunk(retriever, i + count, N);
+                    }
+                    reply.pushStringPool();
+                    for (int end = i + count; i < end; i++) {
+                        final T parcelable = readCreator(creator, reply, loader);
+                        verifySameType(elementClass, parcelable.getClass());
+
+                        mList.add(parcelable);
+
+                        if (DEBUG) Log.d(TAG, "Read extra #" + i + ": " + parcelable);
+                    }
+                } finally {
+                    reply.recycle();
+                }
+            }
+        } finally {
+            if (pending != null) {
+                discardChunk(pending);
+            }
+        }
+    }
+
+    /**
+     * Starts requesting the chunk starting at the given index.  The caller owns the reply the
+     * returned task produces, and must either consume it or {@link #discardChunk} it.
+     */
+    private static FutureTask<Parcel> requestChunk(IBinder retriever, int index, int N) {
+        final FutureTask<Parcel> task = new FutureTask<>(() -> {
+            if (DEBUG) Log.d(TAG, "Reading more @" + index + " of " + N
+                    + ": retriever=" + retriever);
+            final Parcel data = Parcel.obtain();
+            final Parcel reply = Parcel.obtain();
             try {
+                data.writeInt(index);
                 retriever.transact(IBinder.FIRST_CALL_TRANSACTION, data, reply, 0);
+                return reply;
             } catch (RemoteException e) {
-                Log.w(TAG, "Failure retrieving array; only received " + i + " of " + N, e);
-                return;
+                reply.recycle();
+                throw e;
+            } finally {
+                data.recycle();
             }
-            while (i < N && reply.readInt() != 0) {
-                final T parcelable = reply.readCreator(creator, loader);
-                verifySameType(listElementClass, parcelable.getClass());
-
-                mList.add(parcelable);
+        });
+        try {
+            sPrefetchExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // All prefetch threads are busy; the reader runs the request itself.
+        }
+        return task;
+    }
 
-                if (DEBUG) Log.d(TAG, "Read extra #" + i + ": " + mList.get(mList.size()-1));
-                i++;
-            }
-            reply.recycle();
-            data.recycle();
+    /**
+     * Cancels a chunk request that will not be consumed, or recycles its reply if it was
+     * already sent.
+     */
+    private static void discardChunk(FutureTask<Parcel> pending) {
+        if (pending.cancel(false)) {
+            return;
+        }
+        try {
+            pending.get().recycle();
+        } catch (InterruptedException | ExecutionException | CancellationException e) {
+            // Nothing to recycle.
         }
     }
 
@@ -159,15 +265,22 @@ abstract class BaseParceledListSlice<T> implements Parcelable {
             final Class<?> listElementClass = mList.get(0).getClass();
             writeParcelableCreator(mList.get(0), dest);
             int i = 0;
-            while (i < N && i < mInlineCountLimit && dest.dataSize() < MAX_IPC_SIZE) {
-                dest.writeInt(1);
+            // Elements of the same type tend to repeat the same package and class names, so
+            // strings they write with writeStringPooled() are shared across the whole slice.
+            final Object oldStringPool = dest.pushStringPool();
+            try {
+                while (i < N && i < mInlineCountLimit && dest.dataSize() < MAX_IPC_SIZE) {
+                    dest.writeInt(1);
 
-                final T parcelable = mList.get(i);
-                verifySameType(listElementClass, parcelable.getClass());
-                writeElement(parcelable, dest, callFlags);
+                    final T parcelable = mList.get(i);
+                    verifySameType(listElementClass, parcelable.getClass());
+                    writeElement(parcelable, dest, callFlags);
 
-                if (DEBUG) Log.d(TAG, "Wrote inline #" + i + ": " + mList.get(i));
-                i++;
+                    if (DEBUG) Log.d(TAG, "Wrote inline #" + i + ": " + mList.get(i));
+                    i++;
+                }
+            } finally {
+                dest.restoreStringPool(oldStringPool);
             }
             if (i < N) {
                 dest.writeInt(0);
@@ -179,10 +292,17 @@ abstract class BaseParceledListSlice<T> implements Parcelable {
                             return super.onTransact(code, data, reply, flags);
                         }
                         int i = data.readInt();
+                        if (i < 0 || i >= N) {
+                            return false;
+                        }
                         if (DEBUG) Log.d(TAG, "Writing more @" + i + " of " + N);
+                        // The chunk starts with its element count, so that the reader can
+                        // request the next chunk before unparcelling this one.
+                        final int start = i;
+                        final int countPos = reply.dataPosition();
+                        reply.writeInt(0);
+                        reply.pushStringPool();
                         while (i < N && reply.dataSize() < MAX_IPC_SIZE) {
-                            reply.writeInt(1);
-
                             final T parcelable = mList.get(i);
                             verifySameType(listElementClass, parcelable.getClass());
                             writeElement(parcelable, reply, callFlags);
@@ -190,10 +310,11 @@ abstract class BaseParceledListSlice<T> implements Parcelable {
                             if (DEBUG) Log.d(TAG, "Wrote extra #" + i + ": " + mList.get(i));
                             i++;
                         }
-                        if (i < N) {
-                            if (DEBUG) Log.d(TAG, "Breaking @" + i + " of " + N);
-                            reply.writeInt(0);
-                        }
+                        if (DEBUG && i < N) Log.d(TAG, "Breaking @" + i + " of " + N);
+                        final int endPos = reply.dataPosition();
+                        reply.setDataPosition(countPos);
+                        reply.writeInt(i - start);
+                        reply.setDataPosition(endPos);
                         return true;
                     }
                 };
@@ -208,4 +329,14 @@ abstract class BaseParceledListSlice<T> implements Parcelable {
     protected abstract void writeParcelableCreator(T parcelable, Parcel dest);
 
     protected abstract Parcelable.Creator<?> readParcelableCreator(Parcel from, ClassLoader loader);
+
+    /**
+     * Reads what {@link #writeParcelableCreator} wrote, checking that it names
+     * {@code expectedClass} without resolving it.
+     *
+     * @return {@code expectedCreator}
+     * @throws BadParcelableException if the slice was written for another class
+     */
+    protected abstract Parcelable.Creator<?> readExpectedParcelableCreator(Parcel from,
+            Parcelable.Creator<?> expectedCreator, Class<?> expectedClass);
 }
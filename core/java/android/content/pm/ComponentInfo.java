@@ -204,8 +204,8 @@ public class ComponentInfo extends PackageItemInfo {
             dest.writeInt(1);
             applicationInfo.writeToParcel(dest, parcelableFlags);
         }
-        dest.writeString(processName);
-        dest.writeString(splitName);
+        dest.writeStringPooled(processName);
+        dest.writeStringPooled(splitName);
         dest.writeInt(descriptionRes);
         dest.writeInt(enabled ? 1 : 0);
         dest.writeInt(exported ? 1 : 0);
@@ -218,8 +218,8 @@ public class ComponentInfo extends PackageItemInfo {
         if (hasApplicationInfo) {
             applicationInfo = ApplicationInfo.CREATOR.createFromParcel(source);
         }
-        processName = source.readString();
-        splitName = source.readString();
+        processName = source.readStringPooled();
+        splitName = source.readStringPooled();
         descriptionRes = source.readInt();
         enabled = (source.readInt() != 0);
         exported = (source.readInt() != 0);
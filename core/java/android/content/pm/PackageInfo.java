@@ -294,13 +294,13 @@ public class PackageInfo implements Parcelable {
 
     @Override
     public void writeToParcel(Parcel dest, int parcelableFlags) {
-        dest.writeString(packageName);
+        dest.writeStringPooled(packageName);
         dest.writeStringArray(splitNames);
         dest.writeInt(versionCode);
-        dest.writeString(versionName);
+        dest.writeStringPooled(versionName);
         dest.writeInt(baseRevisionCode);
         dest.writeIntArray(splitRevisionCodes);
-        dest.writeString(sharedUserId);
+        dest.writeStringPooled(sharedUserId);
         dest.writeInt(sharedUserLabel);
         if (applicationInfo != null) {
             dest.writeInt(1);
@@ -347,13 +347,13 @@ public class PackageInfo implements Parcelable {
     };
 
     private PackageInfo(Parcel source) {
-        packageName = source.readString();
+        packageName = source.readStringPooled();
         splitNames = source.createStringArray();
         versionCode = source.readInt();
-        versionName = source.readString();
+        versionName = source.readStringPooled();
         baseRevisionCode = source.readInt();
         splitRevisionCodes = source.createIntArray();
-        sharedUserId = source.readString();
+        sharedUserId = source.readStringPooled();
         sharedUserLabel = source.readInt();
         int hasApp = source.readInt();
         if (hasApp != 0) {
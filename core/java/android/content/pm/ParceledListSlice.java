@@ -16,6 +16,7 @@
 
 package android.content.pm;
 
+import android.os.BadParcelableException;
 import android.os.Parcel;
 import android.os.Parcelable;
 
@@ -39,6 +40,21 @@ public class ParceledListSlice<T extends Parcelable> extends BaseParceledListSli
         super(in, loader);
     }
 
+    private ParceledListSlice(Parcel in, Parcelable.Creator<T> creator, Class<T> clazz) {
+        super(in, clazz.getClassLoader(), creator, clazz);
+    }
+
+    /**
+     * Reads a slice of elements of the given class with its creator. Unlike {@link #CREATOR},
+     * this never resolves the element class name written by the sender.
+     *
+     * @throws BadParcelableException if the slice was written for another class
+     */
+    public static <T extends Parcelable> ParceledListSlice<T> readTypedFromParcel(Parcel in,
+            Parcelable.Creator<T> creator, Class<T> clazz) {
+        return new ParceledListSlice<T>(in, creator, clazz);
+    }
+
     public static <T extends Parcelable> ParceledListSlice<T> emptyList() {
         return new ParceledListSlice<T>(Collections.<T> emptyList());
     }
@@ -68,6 +84,17 @@ public class ParceledListSlice<T extends Parcelable> extends BaseParceledListSli
         return from.readParcelableCreator(loader);
     }
 
+    @Override
+    protected Parcelable.Creator<?> readExpectedParcelableCreator(Parcel from,
+            Parcelable.Creator<?> expectedCreator, Class<?> expectedClass) {
+        final String name = from.readString();
+        if (!expectedClass.getName().equals(name)) {
+            throw new BadParcelableException("Expected list of " + expectedClass.getName()
+                    + " but got " + name);
+        }
+        return expectedCreator;
+    }
+
     @SuppressWarnings("unchecked")
     public static final Parcelable.ClassLoaderCreator<ParceledListSlice> CREATOR =
             new Parcelable.ClassLoaderCreator<ParceledListSlice>() {
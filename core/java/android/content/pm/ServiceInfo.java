@@ -110,7 +110,7 @@ public class ServiceInfo extends ComponentInfo
 
     public void writeToParcel(Parcel dest, int parcelableFlags) {
         super.writeToParcel(dest, parcelableFlags);
-        dest.writeString(permission);
+        dest.writeStringPooled(permission);
         dest.writeInt(flags);
     }
 
@@ -126,7 +126,7 @@ public class ServiceInfo extends ComponentInfo
 
     private ServiceInfo(Parcel source) {
         super(source);
-        permission = source.readString();
+        permission = source.readStringPooled();
         flags = source.readInt();
     }
 }
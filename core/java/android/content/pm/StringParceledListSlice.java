@@ -16,6 +16,7 @@
 
 package android.content.pm;
 
+import android.os.BadParcelableException;
 import android.os.Parcel;
 import android.os.Parcelable;
 
@@ -63,6 +64,17 @@ public class StringParceledListSlice extends BaseParceledListSlice<String> {
         return Parcel.STRING_CREATOR;
     }
 
+    @Override
+    protected Parcelable.Creator<?> readExpectedParcelableCreator(Parcel from,
+            Parcelable.Creator<?> expectedCreator, Class<?> expectedClass) {
+        // Nothing is written for the creator, the elements are always strings.
+        if (expectedClass != String.class) {
+            throw new BadParcelableException("Expected list of " + expectedClass.getName()
+                    + " but got " + String.class.getName());
+        }
+        return Parcel.STRING_CREATOR;
+    }
+
     @SuppressWarnings("unchecked")
     public static final Parcelable.ClassLoaderCreator<StringParceledListSlice> CREATOR =
             new Parcelable.ClassLoaderCreator<StringParceledListSlice>() {
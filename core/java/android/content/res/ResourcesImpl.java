@@ -596,6 +596,8 @@ public class ResourcesImpl {
                 dr = cs.newDrawable(wrapper);
             } else if (isColorDrawable) {
                 dr = new ColorDrawable(value.data);
+            } else if (!mPreloading && useCache) {
+                dr = loadSharedDrawableForCookie(wrapper, value, id, density);
             } else {
                 dr = loadDrawableForCookie(wrapper, value, id, density, null);
             }
@@ -721,6 +723,38 @@ public class ResourcesImpl {
         return true;
     }
 
+    /**
+     * Loads a drawable through the process wide {@link SharedDrawableCache}, so that other
+     * ResourcesImpl instances loading the same file at the same densities can reuse the
+     * decoded constant state.
+     */
+    @Nullable
+    private Drawable loadSharedDrawableForCookie(@NonNull Resources wrapper,
+            @NonNull TypedValue value, int id, int density) {
+        final String file = value.string != null ? value.string.toString() : null;
+        final String assetPath = file != null && SharedDrawableCache.isShareable(file)
+                ? mAssets.getCookieName(value.assetCookie) : null;
+        if (assetPath == null) {
+            return loadDrawableForCookie(wrapper, value, id, density, null);
+        }
+
+        final int targetDensity = mMetrics.densityDpi;
+        final int noncompatTargetDensity = mMetrics.noncompatDensityDpi;
+        final Drawable.ConstantState cached = SharedDrawableCache.get(
+                assetPath, file, value.density, targetDensity, noncompatTargetDensity);
+        if (cached != null) {
+            return cached.newDrawable(wrapper);
+        }
+
+        final Drawable dr = loadDrawableForCookie(wrapper, value, id, density, null);
+        final Drawable.ConstantState cs = dr != null ? dr.getConstantState() : null;
+        if (cs != null) {
+            SharedDrawableCache.put(assetPath, file, value.density, targetDensity,
+                    noncompatTargetDensity, cs);
+        }
+        return dr;
+    }
+
     /**
      * Loads a drawable from XML or resources stream.
      */
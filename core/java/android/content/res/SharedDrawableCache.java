@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.content.res;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.graphics.drawable.Drawable;
+import android.util.ArrayMap;
+
+import com.android.internal.annotations.GuardedBy;
+
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+
+/**
+ * Process wide cache of drawable constant states decoded from image files, shared by all
+ * {@link ResourcesImpl} instances.
+ *
+ * Each ResourcesImpl keeps its own {@link DrawableCache}, and ResourcesManager creates a
+ * ResourcesImpl per distinct ResourcesKey (display, overlays, split APKs). Without this cache
+ * the same bitmap is decoded and held once per instance. Entries are keyed by the APK the file
+ * was loaded from, the file path inside it and the source and target densities, which fully
+ * determine the decoded result, together with the noncompat target density that drawables
+ * use when scaling for compatibility mode. XML drawables are not shared, since they can
+ * reference other resources that resolve differently for each ResourcesImpl.
+ *
+ * Values are held weakly, so an entry only lives as long as some instance still uses it.
+ *
+ * @hide
+ */
+public final class SharedDrawableCache {
+    private static final Object sLock = new Object();
+
+    @GuardedBy("sLock")
+    private static final ArrayMap<Key, WeakReference<Drawable.ConstantState>> sEntries =
+            new ArrayMap<>();
+
+    // Number of puts since the last time cleared references were pruned.
+    @GuardedBy("sLock")
+    private static int sPutsSincePrune;
+
+    @GuardedBy("sLock")
+    private static int sHitCount;
+
+    @GuardedBy("sLock")
+    private static int sMissCount;
+
+    private static final int PRUNE_INTERVAL = 64;
+
+    private SharedDrawableCache() {}
+
+    /**
+     * Returns whether a drawable loaded from the given file can be shared between instances.
+     */
+    static boolean isShareable(@NonNull String file) {
+        return !file.endsWith(".xml");
+    }
+
+    @Nullable
+    static Drawable.ConstantState get(@NonNull String assetPath, @NonNull String file,
+            int sourceDensity, int targetDensity, int noncompatTargetDensity) {
+        final Key key = new Key(assetPath, file, sourceDensity, targetDensity,
+                noncompatTargetDensity);
+        synchronized (sLock) {
+            final WeakReference<Drawable.ConstantState> ref = sEntries.get(key);
+            final Drawable.ConstantState cs = ref != null ? ref.get() : null;
+            if (cs != null) {
+                sHitCount++;
+            } else {
+                sMissCount++;
+            }
+            return cs;
+        }
+    }
+
+    static void put(@NonNull String assetPath, @NonNull String file, int sourceDensity,
+            int targetDensity, int noncompatTargetDensity, @NonNull Drawable.ConstantState cs) {
+        final Key key = new Key(assetPath, file, sourceDensity, targetDensity,
+                noncompatTargetDensity);
+        synchronized (sLock) {
+            if (++sPutsSincePrune >= PRUNE_INTERVAL) {
+                pruneLocked();
+            }
+            sEntries.put(key, new WeakReference<>(cs));
+        }
+    }
+
+    @GuardedBy("sLock")
+    private static void pruneLocked() {
+        for (int i = sEntries.size() - 1; i >= 0; i--) {
+            if (sEntries.valueAt(i).get() == null) {
+                sEntries.removeAt(i);
+            }
+        }
+        sPutsSincePrune = 0;
+    }
+
+    /**
+     * Returns the number of lookups that found a live entry.
+     */
+    public static int getHitCount() {
+        synchronized (sLock) {
+            return sHitCount;
+        }
+    }
+
+    /**
+     * Returns the number of lookups that did not find a live entry.
+     */
+    public static int getMissCount() {
+        synchronized (sLock) {
+            return sMissCount;
+        }
+    }
+
+    /**
+     * Returns the number of live entries in the cache.
+     */
+    public static int getEntryCount() {
+        synchronized (sLock) {
+            pruneLocked();
+            return sEntries.size();
+        }
+    }
+
+    private static final class Key {
+        private final String mAssetPath;
+        private final String mFile;
+        private final int mSourceDensity;
+        private final int mTargetDensity;
+        private final int mNoncompatTargetDensity;
+        private final int mHashCode;
+
+        Key(String assetPath, String file, int sourceDensity, int targetDensity,
+                int noncompatTargetDensity) {
+            mAssetPath = assetPath;
+            mFile = file;
+            mSourceDensity = sourceDensity;
+            mTargetDensity = targetDensity;
+            mNoncompatTargetDensity = noncompatTargetDensity;
+
+            int hash = assetPath.hashCode();
+            hash = 31 * hash + file.hashCode();
+            hash = 31 * hash + sourceDensity;
+            hash = 31 * hash + targetDensity;
+            hash = 31 * hash + noncompatTargetDensity;
+            mHashCode = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return mSourceDensity == other.mSourceDensity
+                    && mTargetDensity == other.mTargetDensity
+                    && mNoncompatTargetDensity == other.mNoncompatTargetDensity
+                    && Objects.equals(mFile, other.mFile)
+                    && Objects.equals(mAssetPath, other.mAssetPath);
+        }
+    }
+}
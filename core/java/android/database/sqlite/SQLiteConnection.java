@@ -35,6 +35,8 @@ import android.util.Printer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.regex.Pattern;
 
@@ -166,7 +168,7 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
         mIsPrimaryConnection = primaryConnection;
         mIsReadOnlyConnection = (configuration.openFlags & SQLiteDatabase.OPEN_READONLY) != 0;
         mPreparedStatementCache = new PreparedStatementCache(
-                mConfiguration.maxSqlCacheSize);
+                getPreparedStatementCacheSize(mConfiguration));
         mCloseGuard.open("close");
     }
 
@@ -223,6 +225,34 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
             SQLiteCustomFunction function = mConfiguration.customFunctions.get(i);
             nativeRegisterCustomFunction(mConnectionPtr, function);
         }
+
+        // Compile the statements the database is known to run.
+        final int statementCount = mConfiguration.precompiledStatements.size();
+        for (int i = 0; i < statementCount; i++) {
+            precompileStatement(mConfiguration.precompiledStatements.get(i));
+        }
+    }
+
+    // Prepares a statement into the cache ahead of its first use.  Failures are not fatal,
+    // since the statement may refer to tables that do not exist yet.
+    private void precompileStatement(String sql) {
+        if (mPreparedStatementCache.get(sql) != null) {
+            return;
+        }
+        try {
+            releasePreparedStatement(acquirePreparedStatement(sql));
+        } catch (SQLiteException ex) {
+            Log.w(TAG, "Could not precompile statement: " + trimSqlForDisplay(sql), ex);
+        }
+    }
+
+    // The cache must hold at least the precompiled statements, plus what it grew to fit the
+    // working set that was observed.
+    private int getPreparedStatementCacheSize(SQLiteDatabaseConfiguration configuration) {
+        final int growth = mPreparedStatementCache != null ? mPreparedStatementCache.mGrowth : 0;
+        return Math.max(configuration.precompiledStatements.size(),
+                Math.min(configuration.maxSqlCacheSize + growth,
+                        SQLiteDatabase.MAX_SQL_CACHE_SIZE));
     }
 
     private void dispose(boolean finalized) {
@@ -419,7 +449,13 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
         mConfiguration.updateParametersFrom(configuration);
 
         // Update prepared statement cache size.
-        mPreparedStatementCache.resize(configuration.maxSqlCacheSize);
+        mPreparedStatementCache.resize(getPreparedStatementCacheSize(configuration));
+
+        // Compile newly added statements.
+        final int statementCount = configuration.precompiledStatements.size();
+        for (int i = 0; i < statementCount; i++) {
+            precompileStatement(configuration.precompiledStatements.get(i));
+        }
 
         // Update foreign key mode.
         if (foreignKeyModeChanged) {
@@ -878,6 +914,7 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
         boolean skipCache = false;
         if (statement != null) {
             if (!statement.mInUse) {
+                mPreparedStatementCache.mHitCount += 1;
                 return statement;
             }
             // The statement is already in the cache but is in use (this statement appears
@@ -886,6 +923,7 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
             skipCache = true;
         }
 
+        mPreparedStatementCache.mMissCount += 1;
         final long statementPtr = nativePrepareStatement(mConnectionPtr, sql);
         try {
             final int numParameters = nativeGetParameterCount(mConnectionPtr, statementPtr);
@@ -893,6 +931,7 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
             final boolean readOnly = nativeIsReadOnly(mConnectionPtr, statementPtr);
             statement = obtainPreparedStatement(sql, statementPtr, numParameters, type, readOnly);
             if (!skipCache && isCacheable(type)) {
+                mPreparedStatementCache.growIfRecentlyEvicted(sql);
                 mPreparedStatementCache.put(sql, statement);
                 statement.mInCache = true;
             }
@@ -1168,11 +1207,27 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
             label += " (" + mConnectionId + ")";
         }
         return new DbStats(label, pageCount, pageSize, lookaside,
-                mPreparedStatementCache.hitCount(),
-                mPreparedStatementCache.missCount(),
+                mPreparedStatementCache.mHitCount,
+                mPreparedStatementCache.mMissCount,
                 mPreparedStatementCache.size());
     }
 
+    /**
+     * Returns the number of statements that were found in the prepared statement cache.
+     * May be called by a thread that does not own the connection.
+     */
+    int getPreparedStatementCacheHitCountUnsafe() {
+        return mPreparedStatementCache.mHitCount;
+    }
+
+    /**
+     * Returns the number of statements that had to be compiled.
+     * May be called by a thread that does not own the connection.
+     */
+    int getPreparedStatementCacheMissCountUnsafe() {
+        return mPreparedStatementCache.mMissCount;
+    }
+
     @Override
     public String toString() {
         return "SQLiteConnection: " + mConfiguration.path + " (" + mConnectionId + ")";
@@ -1252,13 +1307,41 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
 
     private final class PreparedStatementCache
             extends LruCache<String, PreparedStatement> {
+        // Statements compiled and found in the cache by acquirePreparedStatement().  These
+        // are counted here rather than with LruCache's own counters, which also count the
+        // lookups made by the pool when it picks a connection.
+        public volatile int mHitCount;
+        public volatile int mMissCount;
+
+        // How many entries the cache grew beyond its configured size.
+        public int mGrowth;
+
+        // Recently evicted statements.  Compiling one of these again means that the working
+        // set of statements does not fit in the cache, so the cache grows by one entry.
+        private final LinkedHashSet<String> mRecentlyEvicted = new LinkedHashSet<>();
+
         public PreparedStatementCache(int size) {
             super(size);
         }
 
+        public void growIfRecentlyEvicted(String sql) {
+            if (mRecentlyEvicted.remove(sql) && maxSize() < SQLiteDatabase.MAX_SQL_CACHE_SIZE) {
+                mGrowth += 1;
+                resize(maxSize() + 1);
+            }
+        }
+
         @Override
         protected void entryRemoved(boolean evicted, String key,
                 PreparedStatement oldValue, PreparedStatement newValue) {
+            if (evicted) {
+                if (mRecentlyEvicted.size() >= maxSize()) {
+                    final Iterator<String> oldest = mRecentlyEvicted.iterator();
+                    oldest.next();
+                    oldest.remove();
+                }
+                mRecentlyEvicted.add(key);
+            }
             oldValue.mInCache = false;
             if (!oldValue.mInUse) {
                 finalizePreparedStatement(oldValue);
@@ -1266,7 +1349,8 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
         }
 
         public void dump(Printer printer) {
-            printer.println("  Prepared statement cache:");
+            printer.println("  Prepared statement cache: size=" + maxSize()
+                    + ", grown=" + mGrowth + ", hits=" + mHitCount + ", misses=" + mMissCount);
             Map<String, PreparedStatement> cache = snapshot();
             if (!cache.isEmpty()) {
                 int i = 0;
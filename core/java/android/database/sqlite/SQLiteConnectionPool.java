@@ -18,14 +18,20 @@ package android.database.sqlite;
 
 import dalvik.system.CloseGuard;
 
+import android.database.sqlite.SQLiteDebug.ConnectionPoolStats;
 import android.database.sqlite.SQLiteDebug.DbStats;
 import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
 import android.os.OperationCanceledException;
 import android.os.SystemClock;
 import android.util.Log;
 import android.util.PrefixPrinter;
 import android.util.Printer;
 
+import com.android.internal.os.BackgroundThread;
+
 import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Map;
@@ -93,6 +99,23 @@ public final class SQLiteConnectionPool implements Closeable {
             new ArrayList<SQLiteConnection>();
     private SQLiteConnection mAvailablePrimaryConnection;
 
+    // Closes non-primary connections that have been available for longer than the idle
+    // connection timeout, so that the pool shrinks back after a burst of concurrent readers.
+    // Created when first needed.
+    private IdleConnectionHandler mIdleConnectionHandler;
+
+    // Statistics about how connections were acquired, see ConnectionPoolStats.
+    private final int[] mWaitTimeHistogram =
+            new int[ConnectionPoolStats.WAIT_TIME_BUCKET_COUNT];
+    private long mAcquireCount;
+    private long mWaitCount;
+    private long mTotalWaitMillis;
+    private int mPeakAcquiredConnections;
+
+    // Prepared statement cache statistics of connections that have been closed.
+    private long mClosedStatementCacheHits;
+    private long mClosedStatementCacheMisses;
+
     // Describes what should happen to an acquired connection when it is returned to the pool.
     enum AcquiredConnectionStatus {
         // The connection should be returned to the pool as usual.
@@ -225,6 +248,12 @@ public final class SQLiteConnectionPool implements Closeable {
 
                 closeAvailableConnectionsAndLogExceptionsLocked();
 
+                // The idle connections are closed already, so don't keep the pool reachable
+                // from the background thread until their timeouts would have expired.
+                if (mIdleConnectionHandler != null) {
+                    mIdleConnectionHandler.removeCallbacksAndMessages(null);
+                }
+
                 final int pendingCount = mAcquiredConnections.size();
                 if (pendingCount != 0) {
                     Log.i(TAG, "The connection pool for " + mConfiguration.label
@@ -321,6 +350,11 @@ public final class SQLiteConnectionPool implements Closeable {
                 reconfigureAllConnectionsLocked();
             }
 
+            // The idle connection timeout may have changed.
+            for (int i = mAvailableNonPrimaryConnections.size() - 1; i >= 0; i--) {
+                scheduleIdleConnectionCloseLocked(mAvailableNonPrimaryConnections.get(i));
+            }
+
             wakeConnectionWaitersLocked();
         }
     }
@@ -382,6 +416,7 @@ public final class SQLiteConnectionPool implements Closeable {
             } else {
                 if (recycleConnectionLocked(connection, status)) {
                     mAvailableNonPrimaryConnections.add(connection);
+                    scheduleIdleConnectionCloseLocked(connection);
                 }
                 wakeConnectionWaitersLocked();
             }
@@ -435,6 +470,43 @@ public final class SQLiteConnectionPool implements Closeable {
         }
     }
 
+    /**
+     * Returns statistics about how connections were acquired from this pool.
+     */
+    public ConnectionPoolStats getStats() {
+        synchronized (mLock) {
+            final ConnectionPoolStats stats = new ConnectionPoolStats();
+            stats.dbName = mConfiguration.label;
+            stats.maxConnections = mMaxConnectionPoolSize;
+            stats.openConnections = mAcquiredConnections.size()
+                    + mAvailableNonPrimaryConnections.size()
+                    + (mAvailablePrimaryConnection != null ? 1 : 0);
+            stats.peakAcquiredConnections = mPeakAcquiredConnections;
+            stats.acquireCount = mAcquireCount;
+            stats.waitCount = mWaitCount;
+            stats.totalWaitMillis = mTotalWaitMillis;
+            stats.waitTimeHistogram = mWaitTimeHistogram.clone();
+
+            long hits = mClosedStatementCacheHits;
+            long misses = mClosedStatementCacheMisses;
+            if (mAvailablePrimaryConnection != null) {
+                hits += mAvailablePrimaryConnection.getPreparedStatementCacheHitCountUnsafe();
+                misses += mAvailablePrimaryConnection.getPreparedStatementCacheMissCountUnsafe();
+            }
+            for (SQLiteConnection connection : mAvailableNonPrimaryConnections) {
+                hits += connection.getPreparedStatementCacheHitCountUnsafe();
+                misses += connection.getPreparedStatementCacheMissCountUnsafe();
+            }
+            for (SQLiteConnection connection : mAcquiredConnections.keySet()) {
+                hits += connection.getPreparedStatementCacheHitCountUnsafe();
+                misses += connection.getPreparedStatementCacheMissCountUnsafe();
+            }
+            stats.statementCacheHits = hits;
+            stats.statementCacheMisses = misses;
+            return stats;
+        }
+    }
+
     /**
      * Collects statistics about database connection memory usage.
      *
@@ -524,6 +596,8 @@ public final class SQLiteConnectionPool implements Closeable {
 
     // Can't throw.
     private void closeConnectionAndLogExceptionsLocked(SQLiteConnection connection) {
+        mClosedStatementCacheHits += connection.getPreparedStatementCacheHitCountUnsafe();
+        mClosedStatementCacheMisses += connection.getPreparedStatementCacheMissCountUnsafe();
         try {
             connection.close(); // might throw
         } catch (RuntimeException ex) {
@@ -613,6 +687,7 @@ public final class SQLiteConnectionPool implements Closeable {
                 connection = tryAcquirePrimaryConnectionLocked(connectionFlags); // might throw
             }
             if (connection != null) {
+                recordAcquireLocked(false, 0);
                 return connection;
             }
 
@@ -681,6 +756,8 @@ public final class SQLiteConnectionPool implements Closeable {
                     if (connection != null || ex != null) {
                         recycleConnectionWaiterLocked(waiter);
                         if (connection != null) {
+                            recordAcquireLocked(true,
+                                    SystemClock.uptimeMillis() - waiter.mStartTime);
                             return connection;
                         }
                         throw ex; // rethrow!
@@ -909,6 +986,9 @@ public final class SQLiteConnectionPool implements Closeable {
             connection.setOnlyAllowReadOnlyOperations(readOnly);
 
             mAcquiredConnections.put(connection, AcquiredConnectionStatus.NORMAL);
+            mPeakAcquiredConnections = Math.max(mPeakAcquiredConnections,
+                    mAcquiredConnections.size());
+            cancelIdleConnectionCloseLocked(connection);
         } catch (RuntimeException ex) {
             Log.e(TAG, "Failed to prepare acquired connection for session, closing it: "
                     + connection +", connectionFlags=" + connectionFlags);
@@ -945,9 +1025,43 @@ public final class SQLiteConnectionPool implements Closeable {
         return (connectionFlags & CONNECTION_FLAG_INTERACTIVE) != 0 ? 1 : 0;
     }
 
+    private void recordAcquireLocked(boolean waited, long waitMillis) {
+        mAcquireCount += 1;
+        if (waited) {
+            mWaitCount += 1;
+            mTotalWaitMillis += waitMillis;
+        }
+        mWaitTimeHistogram[ConnectionPoolStats.getWaitTimeBucket(waitMillis)] += 1;
+    }
+
+    // Can't throw.
+    private void scheduleIdleConnectionCloseLocked(SQLiteConnection connection) {
+        final long timeoutMs = mConfiguration.idleConnectionTimeoutMs;
+        if (timeoutMs == Long.MAX_VALUE) {
+            cancelIdleConnectionCloseLocked(connection);
+            return;
+        }
+        if (mIdleConnectionHandler == null) {
+            mIdleConnectionHandler = new IdleConnectionHandler(
+                    BackgroundThread.get().getLooper());
+        }
+        mIdleConnectionHandler.removeMessages(0, connection);
+        mIdleConnectionHandler.sendMessageDelayed(
+                mIdleConnectionHandler.obtainMessage(0, connection), timeoutMs);
+    }
+
+    // Can't throw.
+    private void cancelIdleConnectionCloseLocked(SQLiteConnection connection) {
+        if (mIdleConnectionHandler != null) {
+            mIdleConnectionHandler.removeMessages(0, connection);
+        }
+    }
+
     private void setMaxConnectionPoolSizeLocked() {
         if ((mConfiguration.openFlags & SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING) != 0) {
-            mMaxConnectionPoolSize = SQLiteGlobal.getWALConnectionPoolSize();
+            mMaxConnectionPoolSize = mConfiguration.maxConnectionPoolSize > 0
+                    ? Math.max(2, mConfiguration.maxConnectionPoolSize)
+                    : SQLiteGlobal.getWALConnectionPoolSize();
         } else {
             // TODO: We don't actually need to restrict the connection pool size to 1
             // for non-WAL databases.  There might be reasons to use connection pooling
@@ -1004,6 +1118,23 @@ public final class SQLiteConnectionPool implements Closeable {
             printer.println("Connection pool for " + mConfiguration.path + ":");
             printer.println("  Open: " + mIsOpen);
             printer.println("  Max connections: " + mMaxConnectionPoolSize);
+            printer.println("  Peak acquired connections: " + mPeakAcquiredConnections);
+            printer.println("  Idle connection timeout: "
+                    + (mConfiguration.idleConnectionTimeoutMs == Long.MAX_VALUE
+                            ? "none" : mConfiguration.idleConnectionTimeoutMs + " ms"));
+            printer.println("  Acquisitions: " + mAcquireCount + ", waited: " + mWaitCount
+                    + ", total wait: " + mTotalWaitMillis + " ms");
+            final ConnectionPoolStats stats = getStats();
+            printer.println("  Prepared statement cache hits: " + stats.statementCacheHits
+                    + ", misses: " + stats.statementCacheMisses);
+            final StringBuilder histogram = new StringBuilder("  Wait time histogram:");
+            for (int i = 0; i < mWaitTimeHistogram.length; i++) {
+                if (mWaitTimeHistogram[i] != 0) {
+                    histogram.append(' ').append(ConnectionPoolStats.getWaitTimeBucketLabel(i))
+                            .append('=').append(mWaitTimeHistogram[i]);
+                }
+            }
+            printer.println(histogram.toString());
 
             printer.println("  Available primary connection:");
             if (mAvailablePrimaryConnection != null) {
@@ -1057,6 +1188,22 @@ public final class SQLiteConnectionPool implements Closeable {
         return "SQLiteConnectionPool: " + mConfiguration.path;
     }
 
+    private final class IdleConnectionHandler extends Handler {
+        IdleConnectionHandler(Looper looper) {
+            super(looper);
+        }
+
+        @Override
+        public void handleMessage(Message msg) {
+            final SQLiteConnection connection = (SQLiteConnection) msg.obj;
+            synchronized (mLock) {
+                if (mIsOpen && mAvailableNonPrimaryConnections.remove(connection)) {
+                    closeConnectionAndLogExceptionsLocked(connection);
+                }
+            }
+        }
+    }
+
     private static final class ConnectionWaiter {
         public ConnectionWaiter mNext;
         public Thread mThread;
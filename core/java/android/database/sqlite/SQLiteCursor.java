@@ -24,6 +24,12 @@ import android.util.Log;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A Cursor implementation that exposes results from a query on a
@@ -54,6 +60,24 @@ public class SQLiteCursor extends AbstractWindowedCursor {
     /** The number of rows that can fit in the cursor window, 0 if unknown */
     private int mCursorWindowCapacity;
 
+    /**
+     * Fills read ahead windows. Kept apart from the shared AsyncTask pool so that slow
+     * queries cannot hold up unrelated work; a cursor simply does not read ahead when
+     * all of its threads are busy.
+     */
+    private static final ThreadPoolExecutor sReadAheadExecutor = new ThreadPoolExecutor(
+            0, 2, 10, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+                final Thread thread = new Thread(r, "SQLiteCursorReadAhead");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /** The window being filled with the rows after the current window, or null */
+    private CursorWindow mReadAheadWindow;
+
+    /** The task filling {@link #mReadAheadWindow} on a background thread */
+    private FutureTask<Void> mReadAheadTask;
+
     /** A mapping of column names to column indices, to speed up lookups */
     private Map<String, Integer> mColumnNameMap;
 
@@ -135,10 +159,22 @@ public class SQLiteCursor extends AbstractWindowedCursor {
     }
 
     private void fillWindow(int requiredPos) {
+        // The cursor is being read sequentially if it moved just past the end of the window.
+        final boolean sequential = mWindow != null && mCount != NO_COUNT
+                && requiredPos == mWindow.getStartPosition() + mWindow.getNumRows();
+        if (takeReadAheadWindow(requiredPos)) {
+            startReadAhead();
+            return;
+        }
+
         clearOrCreateWindow(getDatabase().getPath());
 
         try {
-            if (mCount == NO_COUNT) {
+            if (sequential) {
+                // Keeping rows before the required one in the window is only useful when
+                // moving back, so fill it with as many of the following rows as possible.
+                mQuery.fillWindow(mWindow, requiredPos, requiredPos, false);
+            } else if (mCount == NO_COUNT) {
                 int startPos = DatabaseUtils.cursorPickFillWindowStartPosition(requiredPos, 0);
                 mCount = mQuery.fillWindow(mWindow, startPos, requiredPos, true);
                 mCursorWindowCapacity = mWindow.getNumRows();
@@ -158,6 +194,95 @@ public class SQLiteCursor extends AbstractWindowedCursor {
             closeWindow();
             throw ex;
         }
+
+        if (sequential) {
+            startReadAhead();
+        }
+    }
+
+    /**
+     * Starts filling a window with the rows that follow the current window on a background
+     * thread, so that reading sequentially past its end does not have to wait for the query.
+     * This is only done in write-ahead logging mode, where the background thread can use a
+     * connection of its own, and outside of transactions, whose changes it could not see.
+     */
+    private void startReadAhead() {
+        final int startPos = mWindow.getStartPosition() + mWindow.getNumRows();
+        final SQLiteDatabase db = getDatabase();
+        if (startPos >= mCount || mWindow.getNumRows() == 0
+                || !db.isWriteAheadLoggingEnabled() || db.inTransaction()) {
+            return;
+        }
+
+        final CursorWindow window = new CursorWindow(db.getPath());
+        final SQLiteQuery query = mQuery;
+        mReadAheadWindow = window;
+        mReadAheadTask = new FutureTask<>(() -> {
+            query.fillWindow(window, startPos, startPos, false);
+            return null;
+        });
+        try {
+            sReadAheadExecutor.execute(mReadAheadTask);
+        } catch (RejectedExecutionException e) {
+            discardReadAhead();
+        }
+    }
+
+    /**
+     * Makes the read ahead window the current window if it contains the required row.
+     * Otherwise the read ahead window is discarded.
+     *
+     * @return true if the read ahead window is now the current window
+     */
+    private boolean takeReadAheadWindow(int requiredPos) {
+        final CursorWindow window = mReadAheadWindow;
+        final FutureTask<Void> task = mReadAheadTask;
+        if (window == null) {
+            return false;
+        }
+        mReadAheadWindow = null;
+        mReadAheadTask = null;
+
+        // The window will start at the row after the current window; the capacity tells
+        // roughly how many rows it will hold.
+        // A transaction begun since the read ahead started may have changed rows the
+        // background connection could not see, so its window cannot be trusted.
+        final int startPos = mWindow != null
+                ? mWindow.getStartPosition() + mWindow.getNumRows() : -1;
+        if (requiredPos < startPos || requiredPos >= startPos + mCursorWindowCapacity
+                || getDatabase().inTransaction()) {
+            task.cancel(false);
+            window.close();
+            return false;
+        }
+
+        try {
+            // Runs the fill on this thread if the executor has not started it yet.
+            task.run();
+            task.get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.w(TAG, "Read ahead failed, filling the window again", e);
+            window.close();
+            return false;
+        }
+        if (requiredPos >= window.getStartPosition() + window.getNumRows()) {
+            window.close();
+            return false;
+        }
+        // Not setWindow(), which would forget the row count.
+        super.setWindow(window);
+        return true;
+    }
+
+    private void discardReadAhead() {
+        if (mReadAheadWindow != null) {
+            // The window is reference counted, so it stays valid until a fill in progress
+            // on the background thread is done with it.
+            mReadAheadTask.cancel(false);
+            mReadAheadWindow.close();
+            mReadAheadWindow = null;
+            mReadAheadTask = null;
+        }
     }
 
     @Override
@@ -196,12 +321,14 @@ public class SQLiteCursor extends AbstractWindowedCursor {
 
     @Override
     public void deactivate() {
+        discardReadAhead();
         super.deactivate();
         mDriver.cursorDeactivated();
     }
 
     @Override
     public void close() {
+        discardReadAhead();
         super.close();
         synchronized (this) {
             mQuery.close();
@@ -223,6 +350,7 @@ public class SQLiteCursor extends AbstractWindowedCursor {
             if (mWindow != null) {
                 mWindow.clear();
             }
+            discardReadAhead();
             mPos = -1;
             mCount = NO_COUNT;
 
@@ -240,6 +368,7 @@ public class SQLiteCursor extends AbstractWindowedCursor {
 
     @Override
     public void setWindow(CursorWindow window) {
+        discardReadAhead();
         super.setWindow(window);
         mCount = NO_COUNT;
     }
@@ -24,6 +24,7 @@ import android.database.DatabaseErrorHandler;
 import android.database.DatabaseUtils;
 import android.database.DefaultDatabaseErrorHandler;
 import android.database.SQLException;
+import android.database.sqlite.SQLiteDebug.ConnectionPoolStats;
 import android.database.sqlite.SQLiteDebug.DbStats;
 import android.os.CancellationSignal;
 import android.os.Looper;
@@ -1821,6 +1822,98 @@ public final class SQLiteDatabase extends SQLiteClosable {
         }
     }
 
+    /**
+     * Sets the maximum number of connections the pool may open for this database when
+     * write-ahead logging is enabled, in place of the system wide default.  Non-primary
+     * connections are only opened when concurrent readers need them.
+     * <p>
+     * This method is thread-safe.
+     *
+     * @param size the maximum number of connections, at least 2, or 0 for the default.
+     * @hide
+     */
+    public void setMaxConnectionPoolSize(int size) {
+        if (size < 0 || size == 1) {
+            throw new IllegalArgumentException("expected 0 or a value of at least 2");
+        }
+
+        synchronized (mLock) {
+            throwIfNotOpenLocked();
+
+            final int oldMaxConnectionPoolSize = mConfigurationLocked.maxConnectionPoolSize;
+            mConfigurationLocked.maxConnectionPoolSize = size;
+            try {
+                mConnectionPoolLocked.reconfigure(mConfigurationLocked);
+            } catch (RuntimeException ex) {
+                mConfigurationLocked.maxConnectionPoolSize = oldMaxConnectionPoolSize;
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Sets the SQL statements that every connection of this database compiles into its
+     * prepared statement cache when it is opened, so that the first execution of each
+     * statement on a new connection does not have to compile it.  Statements that fail to
+     * compile, for example because they refer to a table that does not exist yet, are
+     * skipped.  The prepared statement cache is enlarged to hold all of them if needed.
+     * <p>
+     * This method is thread-safe.
+     *
+     * @param statements the statements, at most {@link #MAX_SQL_CACHE_SIZE}.
+     * @hide
+     */
+    public void setPrecompiledStatements(List<String> statements) {
+        if (statements.size() > MAX_SQL_CACHE_SIZE) {
+            throw new IllegalArgumentException("expected at most " + MAX_SQL_CACHE_SIZE
+                    + " statements");
+        }
+
+        synchronized (mLock) {
+            throwIfNotOpenLocked();
+
+            final ArrayList<String> oldStatements =
+                    new ArrayList<String>(mConfigurationLocked.precompiledStatements);
+            mConfigurationLocked.precompiledStatements.clear();
+            mConfigurationLocked.precompiledStatements.addAll(statements);
+            try {
+                mConnectionPoolLocked.reconfigure(mConfigurationLocked);
+            } catch (RuntimeException ex) {
+                mConfigurationLocked.precompiledStatements.clear();
+                mConfigurationLocked.precompiledStatements.addAll(oldStatements);
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Sets how long a non-primary connection may be unused before the pool closes it.
+     * <p>
+     * This method is thread-safe.
+     *
+     * @param timeoutMs the timeout in milliseconds, or {@link Long#MAX_VALUE} to keep idle
+     * connections open.
+     * @hide
+     */
+    public void setIdleConnectionTimeout(long timeoutMs) {
+        if (timeoutMs < 0) {
+            throw new IllegalArgumentException("timeout must not be negative");
+        }
+
+        synchronized (mLock) {
+            throwIfNotOpenLocked();
+
+            final long oldTimeoutMs = mConfigurationLocked.idleConnectionTimeoutMs;
+            mConfigurationLocked.idleConnectionTimeoutMs = timeoutMs;
+            try {
+                mConnectionPoolLocked.reconfigure(mConfigurationLocked);
+            } catch (RuntimeException ex) {
+                mConfigurationLocked.idleConnectionTimeoutMs = oldTimeoutMs;
+                throw ex;
+            }
+        }
+    }
+
     /**
      * Sets whether foreign key constraints are enabled for the database.
      * <p>
@@ -2045,6 +2138,21 @@ public final class SQLiteDatabase extends SQLiteClosable {
         }
     }
 
+    /**
+     * Collects connection pool usage statistics about all active databases.
+     */
+    static ArrayList<ConnectionPoolStats> getConnectionPoolStats() {
+        ArrayList<ConnectionPoolStats> poolStatsList = new ArrayList<ConnectionPoolStats>();
+        for (SQLiteDatabase db : getActiveDatabases()) {
+            synchronized (db.mLock) {
+                if (db.mConnectionPoolLocked != null) {
+                    poolStatsList.add(db.mConnectionPoolLocked.getStats());
+                }
+            }
+        }
+        return poolStatsList;
+    }
+
     private static ArrayList<SQLiteDatabase> getActiveDatabases() {
         ArrayList<SQLiteDatabase> databases = new ArrayList<SQLiteDatabase>();
         synchronized (sActiveDatabases) {
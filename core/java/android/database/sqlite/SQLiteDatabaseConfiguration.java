@@ -69,6 +69,22 @@ public final class SQLiteDatabaseConfiguration {
      */
     public int maxSqlCacheSize;
 
+    /**
+     * The maximum number of connections in the pool when write-ahead logging is enabled,
+     * or 0 to use {@link SQLiteGlobal#getWALConnectionPoolSize()}.
+     *
+     * Default is 0.
+     */
+    public int maxConnectionPoolSize;
+
+    /**
+     * How long, in milliseconds, a non-primary connection may be unused before the pool
+     * closes it, or {@link Long#MAX_VALUE} to keep idle connections open.
+     *
+     * Default is {@link SQLiteGlobal#getIdleConnectionTimeout()}.
+     */
+    public long idleConnectionTimeoutMs;
+
     /**
      * The database locale.
      *
@@ -89,6 +105,12 @@ public final class SQLiteDatabaseConfiguration {
     public final ArrayList<SQLiteCustomFunction> customFunctions =
             new ArrayList<SQLiteCustomFunction>();
 
+    /**
+     * The SQL statements to compile into the prepared statement cache of each connection
+     * when it is opened.
+     */
+    public final ArrayList<String> precompiledStatements = new ArrayList<String>();
+
     /**
      * Creates a database configuration with the required parameters for opening a
      * database and default values for all other parameters.
@@ -107,6 +129,7 @@ public final class SQLiteDatabaseConfiguration {
 
         // Set default values for optional parameters.
         maxSqlCacheSize = 25;
+        idleConnectionTimeoutMs = SQLiteGlobal.getIdleConnectionTimeout();
         locale = Locale.getDefault();
     }
 
@@ -142,10 +165,14 @@ public final class SQLiteDatabaseConfiguration {
 
         openFlags = other.openFlags;
         maxSqlCacheSize = other.maxSqlCacheSize;
+        maxConnectionPoolSize = other.maxConnectionPoolSize;
+        idleConnectionTimeoutMs = other.idleConnectionTimeoutMs;
         locale = other.locale;
         foreignKeyConstraintsEnabled = other.foreignKeyConstraintsEnabled;
         customFunctions.clear();
         customFunctions.addAll(other.customFunctions);
+        precompiledStatements.clear();
+        precompiledStatements.addAll(other.precompiledStatements);
     }
 
     /**
@@ -112,6 +112,11 @@ public final class SQLiteDebug {
          * running on the android device
          */
         public ArrayList<DbStats> dbStats;
+
+        /** a list of {@link ConnectionPoolStats} - one for each database opened by the
+         * application
+         */
+        public ArrayList<ConnectionPoolStats> poolStats;
     }
 
     /**
@@ -143,6 +148,76 @@ public final class SQLiteDebug {
         }
     }
 
+    /**
+     * contains statistics about how connections were acquired from a database connection pool
+     */
+    public static class ConnectionPoolStats {
+        /** number of buckets in {@link #waitTimeHistogram} */
+        public static final int WAIT_TIME_BUCKET_COUNT = 13;
+
+        /** name of the database */
+        public String dbName;
+
+        /** the maximum number of connections the pool may open */
+        public int maxConnections;
+
+        /** the number of connections currently open */
+        public int openConnections;
+
+        /** the largest number of connections that were acquired at the same time */
+        public int peakAcquiredConnections;
+
+        /** the number of times a connection was acquired */
+        public long acquireCount;
+
+        /** the number of times a connection could not be acquired without waiting */
+        public long waitCount;
+
+        /** the total time spent waiting for connections, in milliseconds */
+        public long totalWaitMillis;
+
+        /** the number of statements found in the prepared statement caches of the pool's
+         * connections, including connections that have since been closed
+         */
+        public long statementCacheHits;
+
+        /** the number of statements that had to be compiled by the pool's connections */
+        public long statementCacheMisses;
+
+        /** acquisition counts by wait time; bucket 0 counts acquisitions that did not
+         * wait, and bucket i > 0 those that waited from 2^(i-1) up to 2^i milliseconds,
+         * with the last bucket also counting all longer waits.  See
+         * {@link #getWaitTimeBucketLabel(int)}.
+         */
+        public int[] waitTimeHistogram;
+
+        /**
+         * Returns the bucket of {@link #waitTimeHistogram} for the given wait time.
+         */
+        public static int getWaitTimeBucket(long waitMillis) {
+            if (waitMillis <= 0) {
+                return 0;
+            }
+            final int bucket = 64 - Long.numberOfLeadingZeros(waitMillis);
+            return Math.min(bucket, WAIT_TIME_BUCKET_COUNT - 1);
+        }
+
+        /**
+         * Returns a short description of the wait times counted in the given bucket.
+         */
+        public static String getWaitTimeBucketLabel(int bucket) {
+            if (bucket == 0) {
+                return "<1ms";
+            }
+            final long low = 1L << (bucket - 1);
+            if (bucket == WAIT_TIME_BUCKET_COUNT - 1) {
+                return ">=" + low + "ms";
+            }
+            final long high = (1L << bucket) - 1;
+            return low == high ? low + "ms" : low + "-" + high + "ms";
+        }
+    }
+
     /**
      * return all pager and database stats for the current process.
      * @return {@link PagerStats}
@@ -151,6 +226,7 @@ public final class SQLiteDebug {
         PagerStats stats = new PagerStats();
         nativeGetPagerStats(stats);
         stats.dbStats = SQLiteDatabase.getDbStats();
+        stats.poolStats = SQLiteDatabase.getConnectionPoolStats();
         return stats;
     }
 
@@ -124,4 +124,13 @@ public final class SQLiteGlobal {
                 com.android.internal.R.integer.db_connection_pool_size));
         return Math.max(2, value);
     }
+
+    /**
+     * Gets how long, in milliseconds, a non-primary connection may sit unused in the pool
+     * before it is closed.
+     */
+    public static long getIdleConnectionTimeout() {
+        return Math.max(0, SystemProperties.getLong("debug.sqlite.idle_connection_timeout",
+                30 * 1000));
+    }
 }
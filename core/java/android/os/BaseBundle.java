@@ -183,7 +183,7 @@ public class BaseBundle {
         if (size == 0) {
             return null;
         }
-        Object o = mMap.valueAt(0);
+        Object o = getValueAt(0);
         try {
             return (String) o;
         } catch (ClassCastException e) {
@@ -253,18 +253,29 @@ public class BaseBundle {
                 map.erase();
                 map.ensureCapacity(N);
             }
+            boolean recycleParcel = true;
+            boolean complete = false;
             try {
-                parcelledData.readArrayMapInternal(map, N, mClassLoader);
+                // Lazy values keep reading from the parcel, so it must stay alive with them.
+                recycleParcel = !parcelledData.readArrayMapInternal(map, N, mClassLoader,
+                        writesLazyValues());
+                complete = true;
             } catch (BadParcelableException e) {
                 if (sShouldDefuse) {
                     Log.w(TAG, "Failed to parse Bundle, but defusing quietly", e);
-                    map.erase();
                 } else {
                     throw e;
                 }
             } finally {
+                if (!complete) {
+                    // Drop whatever was read, including lazy values that would otherwise keep
+                    // reading from the parcel after it is recycled below.
+                    map.erase();
+                }
                 mMap = map;
-                parcelledData.recycle();
+                if (recycleParcel) {
+                    parcelledData.recycle();
+                }
                 mParcelledData = null;
             }
             if (DEBUG) Log.d(TAG, "unparcel " + Integer.toHexString(System.identityHashCode(this))
@@ -286,9 +297,63 @@ public class BaseBundle {
         return mParcelledData == NoImagePreloadHolder.EMPTY_PARCEL;
     }
 
+    /**
+     * Returns whether values that are expensive to unparcel, such as Parcelables, are written
+     * so that {@link #unparcel()} can skip them and decode each one on first access instead.
+     * Subclasses whose format must match a native implementation return false.
+     */
+    boolean writesLazyValues() {
+        return false;
+    }
+
+    /**
+     * Returns the value for the given key, decoding it first if it was unparcelled lazily.
+     * Callers must have called {@link #unparcel()}.
+     */
+    final Object getValue(String key) {
+        final int i = mMap.indexOfKey(key);
+        return i >= 0 ? getValueAt(i) : null;
+    }
+
+    /**
+     * Returns the value at the given index, decoding it first if it was unparcelled lazily.
+     * Callers must have called {@link #unparcel()}.
+     */
+    final Object getValueAt(int i) {
+        final Object o = mMap.valueAt(i);
+        if (!(o instanceof Parcel.LazyValue)) {
+            return o;
+        }
+        Object value;
+        try {
+            value = ((Parcel.LazyValue) o).get(mClassLoader);
+        } catch (BadParcelableException e) {
+            if (sShouldDefuse) {
+                Log.w(TAG, "Failed to parse Bundle value for " + mMap.keyAt(i)
+                        + ", but defusing quietly", e);
+                value = null;
+            } else {
+                throw e;
+            }
+        }
+        mMap.setValueAt(i, value);
+        return value;
+    }
+
+    /**
+     * Decodes any values that were unparcelled lazily.  Callers must have called
+     * {@link #unparcel()}.
+     */
+    final void resolveLazyValues() {
+        for (int i = mMap.size() - 1; i >= 0; i--) {
+            getValueAt(i);
+        }
+    }
+
     /** @hide */
     ArrayMap<String, Object> getMap() {
         unparcel();
+        resolveLazyValues();
         return mMap;
     }
 
@@ -337,6 +402,8 @@ public class BaseBundle {
         } else if (isParcelled()) {
             return mParcelledData.compareData(other.mParcelledData) == 0;
         } else {
+            resolveLazyValues();
+            other.resolveLazyValues();
             return mMap.equals(other.mMap);
         }
     }
@@ -387,6 +454,11 @@ public class BaseBundle {
         if (value == null) {
             return null;
         }
+        if (value instanceof Parcel.LazyValue) {
+            final Parcel.LazyValue lazy = (Parcel.LazyValue) value;
+            // Decoding the bytes again yields an independent copy without decoding this one.
+            return lazy.isDecoded() ? deepCopyValue(lazy.get()) : lazy.copy();
+        }
         if (value instanceof Bundle) {
             return ((Bundle)value).deepCopy();
         } else if (value instanceof PersistableBundle) {
@@ -445,7 +517,7 @@ public class BaseBundle {
     @Nullable
     public Object get(String key) {
         unparcel();
-        return mMap.get(key);
+        return getValue(key);
     }
 
     /**
@@ -823,7 +895,7 @@ public class BaseBundle {
      */
     public boolean getBoolean(String key, boolean defaultValue) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return defaultValue;
         }
@@ -857,7 +929,7 @@ public class BaseBundle {
      */
     Byte getByte(String key, byte defaultValue) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return defaultValue;
         }
@@ -891,7 +963,7 @@ public class BaseBundle {
      */
     char getChar(String key, char defaultValue) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return defaultValue;
         }
@@ -925,7 +997,7 @@ public class BaseBundle {
      */
     short getShort(String key, short defaultValue) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return defaultValue;
         }
@@ -959,7 +1031,7 @@ public class BaseBundle {
      */
    public int getInt(String key, int defaultValue) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return defaultValue;
         }
@@ -993,7 +1065,7 @@ public class BaseBundle {
      */
     public long getLong(String key, long defaultValue) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return defaultValue;
         }
@@ -1027,7 +1099,7 @@ public class BaseBundle {
      */
     float getFloat(String key, float defaultValue) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return defaultValue;
         }
@@ -1061,7 +1133,7 @@ public class BaseBundle {
      */
     public double getDouble(String key, double defaultValue) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return defaultValue;
         }
@@ -1084,7 +1156,7 @@ public class BaseBundle {
     @Nullable
     public String getString(@Nullable String key) {
         unparcel();
-        final Object o = mMap.get(key);
+        final Object o = getValue(key);
         try {
             return (String) o;
         } catch (ClassCastException e) {
@@ -1120,7 +1192,7 @@ public class BaseBundle {
     @Nullable
     CharSequence getCharSequence(@Nullable String key) {
         unparcel();
-        final Object o = mMap.get(key);
+        final Object o = getValue(key);
         try {
             return (CharSequence) o;
         } catch (ClassCastException e) {
@@ -1156,7 +1228,7 @@ public class BaseBundle {
     @Nullable
     Serializable getSerializable(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -1179,7 +1251,7 @@ public class BaseBundle {
     @Nullable
     ArrayList<Integer> getIntegerArrayList(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -1202,7 +1274,7 @@ public class BaseBundle {
     @Nullable
     ArrayList<String> getStringArrayList(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -1225,7 +1297,7 @@ public class BaseBundle {
     @Nullable
     ArrayList<CharSequence> getCharSequenceArrayList(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -1248,7 +1320,7 @@ public class BaseBundle {
     @Nullable
     public boolean[] getBooleanArray(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -1271,7 +1343,7 @@ public class BaseBundle {
     @Nullable
     byte[] getByteArray(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -1294,7 +1366,7 @@ public class BaseBundle {
     @Nullable
     short[] getShortArray(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -1317,7 +1389,7 @@ public class BaseBundle {
     @Nullable
     char[] getCharArray(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -1340,7 +1412,7 @@ public class BaseBundle {
     @Nullable
     public int[] getIntArray(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -1363,7 +1435,7 @@ public class BaseBundle {
     @Nullable
     public long[] getLongArray(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -1386,7 +1458,7 @@ public class BaseBundle {
     @Nullable
     float[] getFloatArray(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -1409,7 +1481,7 @@ public class BaseBundle {
     @Nullable
     public double[] getDoubleArray(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -1432,7 +1504,7 @@ public class BaseBundle {
     @Nullable
     public String[] getStringArray(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -1455,7 +1527,7 @@ public class BaseBundle {
     @Nullable
     CharSequence[] getCharSequenceArray(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -1503,7 +1575,7 @@ public class BaseBundle {
         parcel.writeInt(BUNDLE_MAGIC);
 
         int startPos = parcel.dataPosition();
-        parcel.writeArrayMapInternal(map);
+        parcel.writeArrayMapInternal(map, writesLazyValues());
         int endPos = parcel.dataPosition();
 
         // Backpatch length
@@ -37,6 +37,7 @@ import android.util.Printer;
 import android.util.SparseArray;
 import android.util.SparseIntArray;
 import android.util.TimeUtils;
+import android.util.proto.ProtoOutputStream;
 import android.view.Display;
 
 import com.android.internal.os.BatterySipper;
@@ -286,6 +287,9 @@ public abstract class BatteryStats implements Parcelable {
     private final StringBuilder mFormatBuilder = new StringBuilder(32);
     private final Formatter mFormatter = new Formatter(mFormatBuilder);
 
+    private BatteryStatsHelper mDumpHelper;
+    private boolean mDumpHelperWifiOnly;
+
     /**
      * Indicates times spent by the uid at each cpu frequency in all process states.
      *
@@ -3279,8 +3283,7 @@ public abstract class BatteryStats implements Parcelable {
             }
         }
 
-        final BatteryStatsHelper helper = new BatteryStatsHelper(context, false, wifiOnly);
-        helper.create(this);
+        final BatteryStatsHelper helper = getDumpHelperLocked(context, wifiOnly);
         helper.refreshStats(which, UserHandle.USER_ALL);
         final List<BatterySipper> sippers = helper.getUsageList();
         if (sippers != null && sippers.size() > 0) {
@@ -4258,8 +4261,7 @@ public abstract class BatteryStats implements Parcelable {
             pw.println();
         }
 
-        final BatteryStatsHelper helper = new BatteryStatsHelper(context, false, wifiOnly);
-        helper.create(this);
+        final BatteryStatsHelper helper = getDumpHelperLocked(context, wifiOnly);
         helper.refreshStats(which, UserHandle.USER_ALL);
         List<BatterySipper> sippers = helper.getUsageList();
         if (sippers != null && sippers.size() > 0) {
@@ -6190,4 +6192,315 @@ public abstract class BatteryStats implements Parcelable {
                     (flags&DUMP_DEVICE_WIFI_ONLY) != 0);
         }
     }
+
+    /**
+     * Returns a helper for computing power use in dumps. It is kept across dumps so that its
+     * results can be reused while the stats have not changed.
+     */
+    private BatteryStatsHelper getDumpHelperLocked(Context context, boolean wifiOnly) {
+        if (mDumpHelper == null || mDumpHelperWifiOnly != wifiOnly) {
+            mDumpHelper = new BatteryStatsHelper(context, false, wifiOnly);
+            mDumpHelper.setReuseUnchangedRefresh(true);
+            mDumpHelper.create(this);
+            mDumpHelperWifiOnly = wifiOnly;
+        }
+        return mDumpHelper;
+    }
+
+    /**
+     * Dump the stats since charged as a {@link BatteryStatsProto} in the given field of the
+     * proto stream. Pass an in-memory stream to write the result out after releasing the
+     * stats lock.
+     *
+     * NOTE: all times are expressed in 'ms'.
+     */
+    public void dumpProtoLocked(Context context, ProtoOutputStream proto, long fieldId,
+            List<ApplicationInfo> apps, int flags) {
+        prepareForDumpLocked();
+
+        final long token = proto.start(fieldId);
+        proto.write(BatteryStatsProto.REPORT_VERSION, BATTERY_STATS_CHECKIN_VERSION);
+        proto.write(BatteryStatsProto.PARCEL_VERSION, getParcelVersion());
+        proto.write(BatteryStatsProto.START_PLATFORM_VERSION, getStartPlatformVersion());
+        proto.write(BatteryStatsProto.END_PLATFORM_VERSION, getEndPlatformVersion());
+
+        final int which = STATS_SINCE_CHARGED;
+        final long rawUptime = SystemClock.uptimeMillis() * 1000;
+        final long rawRealtime = SystemClock.elapsedRealtime() * 1000;
+
+        final BatteryStatsHelper helper = getDumpHelperLocked(context,
+                (flags & DUMP_DEVICE_WIFI_ONLY) != 0);
+        helper.refreshStats(which, UserHandle.USER_ALL);
+        final SparseArray<BatterySipper> uidSippers = new SparseArray<>();
+        final List<BatterySipper> sippers = helper.getUsageList();
+        for (int i = 0; i < sippers.size(); i++) {
+            final BatterySipper bs = sippers.get(i);
+            if (bs.drainType == BatterySipper.DrainType.APP) {
+                uidSippers.put(bs.uidObj.getUid(), bs);
+            }
+        }
+
+        dumpProtoAppsLocked(proto, apps, uidSippers, rawRealtime, which);
+        dumpProtoSystemLocked(proto, helper, rawUptime, rawRealtime, which);
+
+        proto.end(token);
+    }
+
+    private void dumpProtoAppsLocked(ProtoOutputStream proto, List<ApplicationInfo> apps,
+            SparseArray<BatterySipper> uidSippers, long rawRealtime, int which) {
+        final SparseArray<ArrayList<String>> packages = new SparseArray<>();
+        if (apps != null) {
+            for (int i = 0; i < apps.size(); i++) {
+                final ApplicationInfo ai = apps.get(i);
+                final int aid = UserHandle.getAppId(ai.uid);
+                ArrayList<String> pkgs = packages.get(aid);
+                if (pkgs == null) {
+                    pkgs = new ArrayList<>();
+                    packages.put(aid, pkgs);
+                }
+                pkgs.add(ai.packageName);
+            }
+        }
+
+        final SparseArray<? extends Uid> uidStats = getUidStats();
+        for (int iu = 0; iu < uidStats.size(); iu++) {
+            final Uid u = uidStats.valueAt(iu);
+            final int uid = uidStats.keyAt(iu);
+            final long uTkn = proto.start(BatteryStatsProto.UIDS);
+            proto.write(UidProto.UID, uid);
+
+            final ArrayList<String> pkgs = packages.get(UserHandle.getAppId(uid));
+            if (pkgs != null) {
+                for (int i = 0; i < pkgs.size(); i++) {
+                    final long pTkn = proto.start(UidProto.PACKAGES);
+                    proto.write(UidProto.Package.NAME, pkgs.get(i));
+                    proto.end(pTkn);
+                }
+            }
+
+            final long cpuTkn = proto.start(UidProto.CPU);
+            proto.write(UidProto.Cpu.USER_DURATION_MS, u.getUserCpuTimeUs(which) / 1000);
+            proto.write(UidProto.Cpu.SYSTEM_DURATION_MS, u.getSystemCpuTimeUs(which) / 1000);
+            proto.end(cpuTkn);
+
+            final long nTkn = proto.start(UidProto.NETWORK);
+            proto.write(UidProto.Network.MOBILE_BYTES_RX,
+                    u.getNetworkActivityBytes(NETWORK_MOBILE_RX_DATA, which));
+            proto.write(UidProto.Network.MOBILE_BYTES_TX,
+                    u.getNetworkActivityBytes(NETWORK_MOBILE_TX_DATA, which));
+            proto.write(UidProto.Network.WIFI_BYTES_RX,
+                    u.getNetworkActivityBytes(NETWORK_WIFI_RX_DATA, which));
+            proto.write(UidProto.Network.WIFI_BYTES_TX,
+                    u.getNetworkActivityBytes(NETWORK_WIFI_TX_DATA, which));
+            proto.write(UidProto.Network.BT_BYTES_RX,
+                    u.getNetworkActivityBytes(NETWORK_BT_RX_DATA, which));
+            proto.write(UidProto.Network.BT_BYTES_TX,
+                    u.getNetworkActivityBytes(NETWORK_BT_TX_DATA, which));
+            proto.write(UidProto.Network.MOBILE_PACKETS_RX,
+                    u.getNetworkActivityPackets(NETWORK_MOBILE_RX_DATA, which));
+            proto.write(UidProto.Network.MOBILE_PACKETS_TX,
+                    u.getNetworkActivityPackets(NETWORK_MOBILE_TX_DATA, which));
+            proto.write(UidProto.Network.WIFI_PACKETS_RX,
+                    u.getNetworkActivityPackets(NETWORK_WIFI_RX_DATA, which));
+            proto.write(UidProto.Network.WIFI_PACKETS_TX,
+                    u.getNetworkActivityPackets(NETWORK_WIFI_TX_DATA, which));
+            proto.end(nTkn);
+
+            final ArrayMap<String, ? extends Uid.Wakelock> wakelocks = u.getWakelockStats();
+            for (int iw = wakelocks.size() - 1; iw >= 0; iw--) {
+                final Uid.Wakelock wl = wakelocks.valueAt(iw);
+                final long wTkn = proto.start(UidProto.WAKELOCKS);
+                proto.write(UidProto.Wakelock.NAME, wakelocks.keyAt(iw));
+                dumpProtoTimer(proto, wl.getWakeTime(WAKE_TYPE_FULL),
+                        UidProto.Wakelock.FULL_DURATION_MS, UidProto.Wakelock.FULL_COUNT,
+                        rawRealtime, which);
+                dumpProtoTimer(proto, wl.getWakeTime(WAKE_TYPE_PARTIAL),
+                        UidProto.Wakelock.PARTIAL_DURATION_MS, UidProto.Wakelock.PARTIAL_COUNT,
+                        rawRealtime, which);
+                dumpProtoTimer(proto, wl.getWakeTime(WAKE_TYPE_WINDOW),
+                        UidProto.Wakelock.WINDOW_DURATION_MS, UidProto.Wakelock.WINDOW_COUNT,
+                        rawRealtime, which);
+                proto.end(wTkn);
+            }
+
+            final BatterySipper bs = uidSippers.get(uid);
+            if (bs != null) {
+                final long bsTkn = proto.start(UidProto.POWER_USE_ITEM);
+                proto.write(UidProto.PowerUseItem.COMPUTED_POWER_MAH, bs.totalPowerMah);
+                proto.write(UidProto.PowerUseItem.SHOULD_HIDE, bs.shouldHide);
+                proto.write(UidProto.PowerUseItem.SCREEN_POWER_MAH, bs.screenPowerMah);
+                proto.write(UidProto.PowerUseItem.PROPORTIONAL_SMEAR_MAH,
+                        bs.proportionalSmearMah);
+                proto.end(bsTkn);
+            }
+
+            proto.end(uTkn);
+        }
+    }
+
+    private void dumpProtoSystemLocked(ProtoOutputStream proto, BatteryStatsHelper helper,
+            long rawUptime, long rawRealtime, int which) {
+        final long sTkn = proto.start(BatteryStatsProto.SYSTEM);
+
+        final long bTkn = proto.start(SystemProto.BATTERY);
+        proto.write(SystemProto.Battery.START_CLOCK_TIME_MS, getStartClockTime());
+        proto.write(SystemProto.Battery.START_COUNT, getStartCount());
+        proto.write(SystemProto.Battery.TOTAL_REALTIME_MS,
+                computeRealtime(rawRealtime, which) / 1000);
+        proto.write(SystemProto.Battery.TOTAL_UPTIME_MS, computeUptime(rawUptime, which) / 1000);
+        proto.write(SystemProto.Battery.BATTERY_REALTIME_MS,
+                computeBatteryRealtime(rawRealtime, which) / 1000);
+        proto.write(SystemProto.Battery.BATTERY_UPTIME_MS,
+                computeBatteryUptime(rawUptime, which) / 1000);
+        proto.write(SystemProto.Battery.SCREEN_OFF_REALTIME_MS,
+                computeBatteryScreenOffRealtime(rawRealtime, which) / 1000);
+        proto.write(SystemProto.Battery.SCREEN_OFF_UPTIME_MS,
+                computeBatteryScreenOffUptime(rawUptime, which) / 1000);
+        proto.write(SystemProto.Battery.ESTIMATED_BATTERY_CAPACITY_MAH,
+                getEstimatedBatteryCapacity());
+        proto.write(SystemProto.Battery.MIN_LEARNED_BATTERY_CAPACITY_UAH,
+                getMinLearnedBatteryCapacity());
+        proto.write(SystemProto.Battery.MAX_LEARNED_BATTERY_CAPACITY_UAH,
+                getMaxLearnedBatteryCapacity());
+        proto.end(bTkn);
+
+        final long bdTkn = proto.start(SystemProto.BATTERY_DISCHARGE);
+        proto.write(SystemProto.BatteryDischarge.LOWER_BOUND_SINCE_CHARGE,
+                getLowDischargeAmountSinceCharge());
+        proto.write(SystemProto.BatteryDischarge.UPPER_BOUND_SINCE_CHARGE,
+                getHighDischargeAmountSinceCharge());
+        proto.write(SystemProto.BatteryDischarge.SCREEN_ON_SINCE_CHARGE,
+                getDischargeAmountScreenOnSinceCharge());
+        proto.write(SystemProto.BatteryDischarge.SCREEN_OFF_SINCE_CHARGE,
+                getDischargeAmountScreenOffSinceCharge());
+        proto.write(SystemProto.BatteryDischarge.TOTAL_MAH,
+                getDischargeCoulombCounter().getCountLocked(which) / 1000);
+        proto.write(SystemProto.BatteryDischarge.TOTAL_MAH_SCREEN_OFF,
+                getDischargeScreenOffCoulombCounter().getCountLocked(which) / 1000);
+        proto.end(bdTkn);
+
+        final long chargeTimeRemaining = computeChargeTimeRemaining(rawRealtime);
+        proto.write(SystemProto.CHARGE_TIME_REMAINING_MS,
+                chargeTimeRemaining >= 0 ? chargeTimeRemaining / 1000 : -1);
+        final long dischargeTimeRemaining = computeBatteryTimeRemaining(rawRealtime);
+        proto.write(SystemProto.DISCHARGE_TIME_REMAINING_MS,
+                dischargeTimeRemaining >= 0 ? dischargeTimeRemaining / 1000 : -1);
+
+        long fullWakeLockTimeTotal = 0;
+        long partialWakeLockTimeTotal = 0;
+        final SparseArray<? extends Uid> uidStats = getUidStats();
+        for (int iu = 0; iu < uidStats.size(); iu++) {
+            final ArrayMap<String, ? extends Uid.Wakelock> wakelocks
+                    = uidStats.valueAt(iu).getWakelockStats();
+            for (int iw = wakelocks.size() - 1; iw >= 0; iw--) {
+                final Uid.Wakelock wl = wakelocks.valueAt(iw);
+                final Timer fullWakeTimer = wl.getWakeTime(WAKE_TYPE_FULL);
+                if (fullWakeTimer != null) {
+                    fullWakeLockTimeTotal += fullWakeTimer.getTotalTimeLocked(rawRealtime,
+                            which);
+                }
+                final Timer partialWakeTimer = wl.getWakeTime(WAKE_TYPE_PARTIAL);
+                if (partialWakeTimer != null) {
+                    partialWakeLockTimeTotal += partialWakeTimer.getTotalTimeLocked(
+                            rawRealtime, which);
+                }
+            }
+        }
+
+        final long mTkn = proto.start(SystemProto.MISC);
+        proto.write(SystemProto.Misc.SCREEN_ON_DURATION_MS,
+                getScreenOnTime(rawRealtime, which) / 1000);
+        proto.write(SystemProto.Misc.PHONE_ON_DURATION_MS,
+                getPhoneOnTime(rawRealtime, which) / 1000);
+        proto.write(SystemProto.Misc.FULL_WAKELOCK_TOTAL_DURATION_MS,
+                fullWakeLockTimeTotal / 1000);
+        proto.write(SystemProto.Misc.PARTIAL_WAKELOCK_TOTAL_DURATION_MS,
+                partialWakeLockTimeTotal / 1000);
+        proto.write(SystemProto.Misc.INTERACTIVE_DURATION_MS,
+                getInteractiveTime(rawRealtime, which) / 1000);
+        proto.write(SystemProto.Misc.BATTERY_SAVER_MODE_ENABLED_DURATION_MS,
+                getPowerSaveModeEnabledTime(rawRealtime, which) / 1000);
+        proto.write(SystemProto.Misc.DEEP_DOZE_ENABLED_DURATION_MS,
+                getDeviceIdleModeTime(DEVICE_IDLE_MODE_DEEP, rawRealtime, which) / 1000);
+        proto.write(SystemProto.Misc.LIGHT_DOZE_ENABLED_DURATION_MS,
+                getDeviceIdleModeTime(DEVICE_IDLE_MODE_LIGHT, rawRealtime, which) / 1000);
+        proto.write(SystemProto.Misc.NUM_CONNECTIVITY_CHANGES, getNumConnectivityChange(which));
+        proto.end(mTkn);
+
+        final List<BatterySipper> sippers = helper.getUsageList();
+        if (sippers != null && sippers.size() > 0) {
+            final long pusTkn = proto.start(SystemProto.POWER_USE_SUMMARY);
+            proto.write(SystemProto.PowerUseSummary.BATTERY_CAPACITY_MAH,
+                    helper.getPowerProfile().getBatteryCapacity());
+            proto.write(SystemProto.PowerUseSummary.COMPUTED_POWER_MAH,
+                    helper.getComputedPower());
+            proto.write(SystemProto.PowerUseSummary.MIN_DRAINED_POWER_MAH,
+                    helper.getMinDrainedPower());
+            proto.write(SystemProto.PowerUseSummary.MAX_DRAINED_POWER_MAH,
+                    helper.getMaxDrainedPower());
+            proto.end(pusTkn);
+
+            for (int i = 0; i < sippers.size(); i++) {
+                final BatterySipper bs = sippers.get(i);
+                if (bs.drainType == BatterySipper.DrainType.APP) {
+                    // Reported with the uid.
+                    continue;
+                }
+                final long puiTkn = proto.start(SystemProto.POWER_USE_ITEM);
+                proto.write(SystemProto.PowerUseItem.NAME, getProtoSipperName(bs.drainType));
+                if (bs.drainType == BatterySipper.DrainType.USER) {
+                    proto.write(SystemProto.PowerUseItem.USER_ID, bs.userId);
+                }
+                proto.write(SystemProto.PowerUseItem.COMPUTED_POWER_MAH, bs.totalPowerMah);
+                proto.write(SystemProto.PowerUseItem.SHOULD_HIDE, bs.shouldHide);
+                proto.write(SystemProto.PowerUseItem.SCREEN_POWER_MAH, bs.screenPowerMah);
+                proto.write(SystemProto.PowerUseItem.PROPORTIONAL_SMEAR_MAH,
+                        bs.proportionalSmearMah);
+                proto.end(puiTkn);
+            }
+        }
+
+        proto.end(sTkn);
+    }
+
+    private static void dumpProtoTimer(ProtoOutputStream proto, Timer timer, long durationId,
+            long countId, long rawRealtime, int which) {
+        if (timer == null) {
+            return;
+        }
+        // Convert from microseconds to milliseconds with rounding.
+        proto.write(durationId, (timer.getTotalTimeLocked(rawRealtime, which) + 500) / 1000);
+        proto.write(countId, timer.getCountLocked(which));
+    }
+
+    private static int getProtoSipperName(BatterySipper.DrainType drainType) {
+        switch (drainType) {
+            case IDLE:
+                return SystemProto.PowerUseItem.IDLE;
+            case CELL:
+                return SystemProto.PowerUseItem.CELL;
+            case PHONE:
+                return SystemProto.PowerUseItem.PHONE;
+            case WIFI:
+                return SystemProto.PowerUseItem.WIFI;
+            case BLUETOOTH:
+                return SystemProto.PowerUseItem.BLUETOOTH;
+            case FLASHLIGHT:
+                return SystemProto.PowerUseItem.FLASHLIGHT;
+            case SCREEN:
+                return SystemProto.PowerUseItem.SCREEN;
+            case USER:
+                return SystemProto.PowerUseItem.USER;
+            case UNACCOUNTED:
+                return SystemProto.PowerUseItem.UNACCOUNTED;
+            case OVERCOUNTED:
+                return SystemProto.PowerUseItem.OVERCOUNTED;
+            case CAMERA:
+                return SystemProto.PowerUseItem.CAMERA;
+            case MEMORY:
+                return SystemProto.PowerUseItem.MEMORY;
+            default:
+                return SystemProto.PowerUseItem.UNKNOWN_SIPPER;
+        }
+    }
 }
@@ -22,6 +22,7 @@ import android.util.ExceptionUtils;
 import android.util.Log;
 import android.util.Slog;
 
+import com.android.internal.os.BinderCallsStats;
 import com.android.internal.util.FastPrintWriter;
 import com.android.internal.util.FunctionalUtils.ThrowingRunnable;
 import com.android.internal.util.FunctionalUtils.ThrowingSupplier;
@@ -696,6 +697,9 @@ public class Binder implements IBinder {
         // Log any exceptions as warnings, don't silently suppress them.
         // If the call was FLAG_ONEWAY then these exceptions disappear into the ether.
         final boolean tracingEnabled = Binder.isTracingEnabled();
+        final BinderCallsStats binderCallsStats = BinderCallsStats.getInstance();
+        final BinderCallsStats.CallSession callSession =
+                binderCallsStats.callStarted(this, code);
         try {
             if (tracingEnabled) {
                 Trace.traceBegin(Trace.TRACE_TAG_ALWAYS, getClass().getName() + ":" + code);
@@ -729,6 +733,9 @@ public class Binder implements IBinder {
             }
         }
         checkParcel(this, code, reply, "Unreasonably large binder reply buffer");
+        if (callSession != null) {
+            binderCallsStats.callEnded(callSession, data.dataSize(), reply.dataSize());
+        }
         reply.recycle();
         data.recycle();
 
@@ -272,6 +272,11 @@ public final class Bundle extends BaseBundle implements Cloneable, Parcelable {
         }
     }
 
+    @Override
+    boolean writesLazyValues() {
+        return true;
+    }
+
     /**
      * Reports whether the bundle contains any parcelled file descriptors.
      */
@@ -287,7 +292,13 @@ public final class Bundle extends BaseBundle implements Cloneable, Parcelable {
                 // It's been unparcelled, so we need to walk the map
                 for (int i=mMap.size()-1; i>=0; i--) {
                     Object obj = mMap.valueAt(i);
-                    if (obj instanceof Parcelable) {
+                    if (obj instanceof Parcel.LazyValue) {
+                        // Not decoded yet; answer from the parcel it still refers to.
+                        if (((Parcel.LazyValue) obj).hasFileDescriptors()) {
+                            fdFound = true;
+                            break;
+                        }
+                    } else if (obj instanceof Parcelable) {
                         if ((((Parcelable)obj).describeContents()
                                 & Parcelable.CONTENTS_FILE_DESCRIPTOR) != 0) {
                             fdFound = true;
@@ -348,6 +359,7 @@ public final class Bundle extends BaseBundle implements Cloneable, Parcelable {
      */
     public Bundle filterValues() {
         unparcel();
+        resolveLazyValues();
         Bundle bundle = this;
         if (mMap != null) {
             ArrayMap<String, Object> map = mMap;
@@ -836,7 +848,7 @@ public final class Bundle extends BaseBundle implements Cloneable, Parcelable {
     @Nullable
     public Size getSize(@Nullable String key) {
         unparcel();
-        final Object o = mMap.get(key);
+        final Object o = getValue(key);
         try {
             return (Size) o;
         } catch (ClassCastException e) {
@@ -856,7 +868,7 @@ public final class Bundle extends BaseBundle implements Cloneable, Parcelable {
     @Nullable
     public SizeF getSizeF(@Nullable String key) {
         unparcel();
-        final Object o = mMap.get(key);
+        final Object o = getValue(key);
         try {
             return (SizeF) o;
         } catch (ClassCastException e) {
@@ -876,7 +888,7 @@ public final class Bundle extends BaseBundle implements Cloneable, Parcelable {
     @Nullable
     public Bundle getBundle(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -899,7 +911,7 @@ public final class Bundle extends BaseBundle implements Cloneable, Parcelable {
     @Nullable
     public <T extends Parcelable> T getParcelable(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -922,7 +934,7 @@ public final class Bundle extends BaseBundle implements Cloneable, Parcelable {
     @Nullable
     public Parcelable[] getParcelableArray(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -945,7 +957,7 @@ public final class Bundle extends BaseBundle implements Cloneable, Parcelable {
     @Nullable
     public <T extends Parcelable> ArrayList<T> getParcelableArrayList(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -969,7 +981,7 @@ public final class Bundle extends BaseBundle implements Cloneable, Parcelable {
     @Nullable
     public <T extends Parcelable> SparseArray<T> getSparseParcelableArray(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -1118,7 +1130,7 @@ public final class Bundle extends BaseBundle implements Cloneable, Parcelable {
     @Nullable
     public IBinder getBinder(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -1145,7 +1157,7 @@ public final class Bundle extends BaseBundle implements Cloneable, Parcelable {
     @Nullable
     public IBinder getIBinder(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -1190,9 +1202,13 @@ public final class Bundle extends BaseBundle implements Cloneable, Parcelable {
     @Override
     public void writeToParcel(Parcel parcel, int flags) {
         final boolean oldAllowFds = parcel.pushAllowFds((mFlags & FLAG_ALLOW_FDS) != 0);
+        // The contents are copied out on their own when read, so they cannot refer to strings
+        // pooled by the enclosing parcel.
+        final Object oldStringPool = parcel.suspendStringPool();
         try {
             super.writeToParcelInner(parcel, flags);
         } finally {
+            parcel.restoreStringPool(oldStringPool);
             parcel.restoreAllowFds(oldAllowFds);
         }
     }
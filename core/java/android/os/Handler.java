@@ -448,6 +448,24 @@ public class Handler {
         return sendMessageAtFrontOfQueue(getPostMessage(r));
     }
 
+    /**
+     * Causes the Runnable r to be added to the message queue in the given lane.
+     *
+     * @param r The Runnable that will be executed.
+     * @param lane The lane of the message, see {@link Message#setLane(int)}.
+     *
+     * @return Returns true if the Runnable was successfully placed in to the
+     *         message queue.  Returns false on failure, usually because the
+     *         looper processing the message queue is exiting.
+     *
+     * @hide
+     */
+    public final boolean postInLane(Runnable r, int lane) {
+        final Message m = getPostMessage(r);
+        m.setLane(lane);
+        return sendMessageDelayed(m, 0);
+    }
+
     /**
      * Runs the specified task synchronously.
      * <p>
@@ -71,6 +71,9 @@ public final class Looper {
     static final ThreadLocal<Looper> sThreadLocal = new ThreadLocal<Looper>();
     private static Looper sMainLooper;  // guarded by Looper.class
 
+    // Observer of the messages dispatched by every looper in the process, or null.
+    static volatile Observer sObserver;
+
     final MessageQueue mQueue;
     final Thread mThread;
 
@@ -122,6 +125,16 @@ public final class Looper {
         }
     }
 
+    /**
+     * Set the observer that is told about each message dispatched by any looper in this
+     * process, or null to stop observing.
+     *
+     * {@hide}
+     */
+    public static void setObserver(@Nullable Observer observer) {
+        sObserver = observer;
+    }
+
     /**
      * Run the message queue in this thread. Be sure to call
      * {@link #quit()} to end the loop.
@@ -160,9 +173,20 @@ public final class Looper {
             }
             final long start = (slowDispatchThresholdMs == 0) ? 0 : SystemClock.uptimeMillis();
             final long end;
+            // This must be in a local variable, in case the observer is changed while dispatching
+            final Observer observer = sObserver;
+            final Object token = observer == null ? null : observer.messageDispatchStarting();
             try {
                 msg.target.dispatchMessage(msg);
+                if (observer != null) {
+                    observer.messageDispatched(token, msg);
+                }
                 end = (slowDispatchThresholdMs == 0) ? 0 : SystemClock.uptimeMillis();
+            } catch (Exception exception) {
+                if (observer != null) {
+                    observer.dispatchingThrewException(token, msg, exception);
+                }
+                throw exception;
             } finally {
                 if (traceTag != 0) {
                     Trace.traceEnd(traceTag);
@@ -341,4 +365,30 @@ public final class Looper {
         return "Looper (" + mThread.getName() + ", tid " + mThread.getId()
                 + ") {" + Integer.toHexString(System.identityHashCode(this)) + "}";
     }
+
+    /**
+     * Observes the messages dispatched by loopers, for example to collect statistics.  The
+     * methods are called on the looper thread for every message, so they must be cheap and
+     * should not allocate.
+     *
+     * {@hide}
+     */
+    public interface Observer {
+        /**
+         * Called right before a message is dispatched.
+         *
+         * @return a token that is passed to the other methods for the same message.
+         */
+        Object messageDispatchStarting();
+
+        /**
+         * Called when a message has been dispatched, before it is recycled.
+         */
+        void messageDispatched(Object token, Message msg);
+
+        /**
+         * Called when dispatching a message threw an exception, which is rethrown afterwards.
+         */
+        void dispatchingThrewException(Object token, Message msg, Exception exception);
+    }
 }
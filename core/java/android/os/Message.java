@@ -80,6 +80,14 @@ public final class Message implements Parcelable {
      */
     public int sendingUid = -1;
 
+    /**
+     * The uid of the binder caller that enqueued this message, recorded only while a
+     * {@link Looper.Observer} is set; otherwise -1.
+     *
+     * @hide
+     */
+    public int workSourceUid = -1;
+
     /** If set message is in use.
      * This flag is set when the message is enqueued and remains set while it
      * is delivered and afterwards when it is recycled.  The flag is only cleared
@@ -98,6 +106,28 @@ public final class Message implements Parcelable {
 
     /*package*/ int flags;
 
+    /**
+     * Lane for work that the user is waiting on.
+     * @hide
+     */
+    public static final int LANE_URGENT = 0;
+
+    /**
+     * Lane of messages that were not assigned one.
+     * @hide
+     */
+    public static final int LANE_DEFAULT = 1;
+
+    /**
+     * Lane for deferrable work, such as persisting state to disk.
+     * @hide
+     */
+    public static final int LANE_BACKGROUND = 2;
+
+    /*package*/ static final int LANE_COUNT = 3;
+
+    /*package*/ int lane = LANE_DEFAULT;
+
     /*package*/ long when;
 
     /*package*/ Bundle data;
@@ -154,6 +184,7 @@ public final class Message implements Parcelable {
         }
         m.target = orig.target;
         m.callback = orig.callback;
+        m.lane = orig.lane;
 
         return m;
     }
@@ -300,6 +331,8 @@ public final class Message implements Parcelable {
         obj = null;
         replyTo = null;
         sendingUid = -1;
+        workSourceUid = -1;
+        lane = LANE_DEFAULT;
         when = 0;
         target = null;
         callback = null;
@@ -327,6 +360,7 @@ public final class Message implements Parcelable {
         this.obj = o.obj;
         this.replyTo = o.replyTo;
         this.sendingUid = o.sendingUid;
+        this.lane = o.lane;
 
         if (o.data != null) {
             this.data = (Bundle) o.data.clone();
@@ -464,6 +498,41 @@ public final class Message implements Parcelable {
         }
     }
 
+    /**
+     * Returns the lane of this message.
+     *
+     * @see #setLane(int)
+     * @hide
+     */
+    public int getLane() {
+        return lane;
+    }
+
+    /**
+     * Sets the lane of this message, one of {@link #LANE_URGENT}, {@link #LANE_DEFAULT} or
+     * {@link #LANE_BACKGROUND}.  The lane only matters on loopers whose queue has
+     * {@link MessageQueue#setDeadlineSchedulingEnabled deadline scheduling} enabled, where
+     * due messages of a more urgent lane may be delivered before earlier messages of a less
+     * urgent one.
+     *
+     * @hide
+     */
+    public void setLane(int lane) {
+        if (lane < 0 || lane >= LANE_COUNT) {
+            throw new IllegalArgumentException("Invalid lane " + lane);
+        }
+        this.lane = lane;
+    }
+
+    /*package*/ static String laneToString(int lane) {
+        switch (lane) {
+            case LANE_URGENT: return "urgent";
+            case LANE_DEFAULT: return "default";
+            case LANE_BACKGROUND: return "background";
+            default: return Integer.toString(lane);
+        }
+    }
+
     /*package*/ boolean isInUse() {
         return ((flags & FLAG_IN_USE) == FLAG_IN_USE);
     }
@@ -511,6 +580,11 @@ public final class Message implements Parcelable {
                 b.append(obj);
             }
 
+            if (lane != LANE_DEFAULT) {
+                b.append(" lane=");
+                b.append(laneToString(lane));
+            }
+
             b.append(" target=");
             b.append(target.getClass().getName());
         } else {
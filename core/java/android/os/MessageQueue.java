@@ -60,6 +60,22 @@ public final class MessageQueue {
     // Barriers are indicated by messages with a null target whose arg1 field carries the token.
     private int mNextBarrierToken;
 
+    // How long a message of each lane may wait after it is due before it takes precedence over
+    // due messages of more urgent lanes, when deadline scheduling is enabled.
+    private static final long[] LANE_SLACK_MILLIS = { 0, 50, 1000 };
+
+    // Bounds the work done to pick the next message when many are due at once.
+    private static final int MAX_DEADLINE_SCAN = 32;
+
+    // If set, due messages are dispatched earliest deadline first instead of in order.
+    private boolean mDeadlineScheduling;
+
+    // Per lane dispatch statistics, kept while deadline scheduling is enabled.
+    private long[] mLaneDispatchCounts;
+    private long[] mLaneTotalDelayMillis;
+    private long[] mLaneMaxDelayMillis;
+    private long[] mLanePromotedCounts;
+
     private native static long nativeInit();
     private native static void nativeDestroy(long ptr);
     private native void nativePollOnce(long ptr, int timeoutMillis); /*non-static for callbacks*/
@@ -104,6 +120,43 @@ public final class MessageQueue {
         }
     }
 
+    /**
+     * Enables or disables earliest deadline first dispatching.
+     *
+     * <p>When enabled, the due message with the earliest deadline is dispatched first, where
+     * the deadline of a message is its delivery time plus a slack that depends on its
+     * {@link Message#setLane lane}.  Urgent messages can therefore overtake due background
+     * work, but only until that work has waited for its slack, which bounds how long it can be
+     * starved.  Messages of the same lane are still dispatched in order.  Meant for loopers
+     * shared by unrelated work, such as the system server's background and I/O threads.
+     *
+     * <p>This method is safe to call from any thread.
+     *
+     * @hide
+     */
+    public void setDeadlineSchedulingEnabled(boolean enabled) {
+        synchronized (this) {
+            mDeadlineScheduling = enabled;
+            if (enabled && mLaneDispatchCounts == null) {
+                mLaneDispatchCounts = new long[Message.LANE_COUNT];
+                mLaneTotalDelayMillis = new long[Message.LANE_COUNT];
+                mLaneMaxDelayMillis = new long[Message.LANE_COUNT];
+                mLanePromotedCounts = new long[Message.LANE_COUNT];
+            }
+        }
+    }
+
+    /**
+     * Returns whether earliest deadline first dispatching is enabled.
+     *
+     * @hide
+     */
+    public boolean isDeadlineSchedulingEnabled() {
+        synchronized (this) {
+            return mDeadlineScheduling;
+        }
+    }
+
     /**
      * Add a new {@link IdleHandler} to this message queue.  This may be
      * removed automatically for you by returning false from
@@ -343,6 +396,16 @@ public final class MessageQueue {
                     } else {
                         // Got a message.
                         mBlocked = false;
+                        if (mDeadlineScheduling) {
+                            // Only the messages in front of any barrier are reordered.
+                            final Message earlierPrev = prevMsg == null
+                                    ? findEarliestDeadlineLocked(msg, now) : null;
+                            if (earlierPrev != null) {
+                                prevMsg = earlierPrev;
+                                msg = earlierPrev.next;
+                            }
+                            recordDispatchLocked(msg, now, earlierPrev != null);
+                        }
                         if (prevMsg != null) {
                             prevMsg.next = msg.next;
                         } else {
@@ -412,6 +475,45 @@ public final class MessageQueue {
         }
     }
 
+    /**
+     * Looks among the due messages at the head of the queue for one with an earlier deadline
+     * than the head.
+     *
+     * @return the message before the one to dispatch instead of the head, or null to dispatch
+     * the head.
+     */
+    private Message findEarliestDeadlineLocked(Message head, long now) {
+        Message bestPrev = null;
+        long bestDeadline = head.when + LANE_SLACK_MILLIS[head.lane];
+        Message prev = head;
+        Message p = head.next;
+        // Stop at a barrier, messages behind it must not be dispatched.
+        for (int i = 0; i < MAX_DEADLINE_SCAN && p != null && p.target != null && p.when <= now;
+                i++) {
+            final long deadline = p.when + LANE_SLACK_MILLIS[p.lane];
+            if (deadline < bestDeadline) {
+                bestDeadline = deadline;
+                bestPrev = prev;
+            }
+            prev = p;
+            p = p.next;
+        }
+        return bestPrev;
+    }
+
+    private void recordDispatchLocked(Message msg, long now, boolean promoted) {
+        final int lane = msg.lane;
+        mLaneDispatchCounts[lane]++;
+        if (msg.when > 0) {
+            final long delay = now - msg.when;
+            mLaneTotalDelayMillis[lane] += delay;
+            mLaneMaxDelayMillis[lane] = Math.max(mLaneMaxDelayMillis[lane], delay);
+        }
+        if (promoted) {
+            mLanePromotedCounts[lane]++;
+        }
+    }
+
     void quit(boolean safe) {
         if (!mQuitAllowed) {
             throw new IllegalStateException("Main thread not allowed to quit.");
@@ -539,6 +641,9 @@ public final class MessageQueue {
         if (msg.isInUse()) {
             throw new IllegalStateException(msg + " This message is already in use.");
         }
+        if (Looper.sObserver != null) {
+            msg.workSourceUid = Binder.getCallingUid();
+        }
 
         synchronized (this) {
             if (mQuitting) {
@@ -788,6 +893,16 @@ public final class MessageQueue {
             }
             pw.println(prefix + "(Total messages: " + n + ", polling=" + isPollingLocked()
                     + ", quitting=" + mQuitting + ")");
+            if (mDeadlineScheduling) {
+                for (int lane = 0; lane < Message.LANE_COUNT; lane++) {
+                    final long count = mLaneDispatchCounts[lane];
+                    pw.println(prefix + "Lane " + Message.laneToString(lane)
+                            + ": dispatched=" + count
+                            + " avgDelay=" + (count > 0 ? mLaneTotalDelayMillis[lane] / count : 0)
+                            + "ms maxDelay=" + mLaneMaxDelayMillis[lane]
+                            + "ms promoted=" + mLanePromotedCounts[lane]);
+                }
+            }
         }
     }
 
@@ -49,6 +49,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -206,6 +207,12 @@ public final class Parcel {
 
     private ArrayMap<Class, Object> mClassCookies;
 
+    /**
+     * Strings seen by {@link #writeStringPooled} or {@link #readStringPooled} since the current
+     * string pool scope was pushed, or null if no scope is active.
+     */
+    private StringPool mStringPool;
+
     private RuntimeException mStack;
 
     private static final int POOL_SIZE = 6;
@@ -243,6 +250,8 @@ public final class Parcel {
     private static final int VAL_SIZE = 26;
     private static final int VAL_SIZEF = 27;
     private static final int VAL_DOUBLEARRAY = 28;
+    // A length prefixed value that Bundles can skip over and decode on first access.
+    private static final int VAL_LAZY = 29;
 
     // The initial int32 in a Binder call's reply Parcel header:
     // Keep these in sync with libbinder's binder/Status.h.
@@ -463,6 +472,44 @@ public final class Parcel {
         nativeRestoreAllowFds(mNativePtr, lastValue);
     }
 
+    /**
+     * Starts a string pool scope, unless one is already active.  Inside a scope,
+     * {@link #writeStringPooled} writes each distinct string once and refers back to it by
+     * index afterwards.  The reader must push a scope at the same point of the data.
+     *
+     * @return the value to pass to {@link #restoreStringPool}
+     * @hide
+     */
+    public final Object pushStringPool() {
+        final StringPool last = mStringPool;
+        if (last == null) {
+            mStringPool = new StringPool();
+        }
+        return last;
+    }
+
+    /**
+     * Suspends the active string pool scope, if any, so that data which may be copied out of
+     * this parcel on its own (such as a Bundle) does not refer to strings outside of it.
+     *
+     * @return the value to pass to {@link #restoreStringPool}
+     * @hide
+     */
+    public final Object suspendStringPool() {
+        final StringPool last = mStringPool;
+        mStringPool = null;
+        return last;
+    }
+
+    /**
+     * Ends a scope started by {@link #pushStringPool} or {@link #suspendStringPool}.
+     *
+     * @hide
+     */
+    public final void restoreStringPool(Object lastValue) {
+        mStringPool = (StringPool) lastValue;
+    }
+
     /**
      * Returns the raw bytes of the parcel.
      *
@@ -626,6 +673,31 @@ public final class Parcel {
         nativeWriteString(mNativePtr, val);
     }
 
+    /**
+     * Write a string value that is likely to repeat, such as a package or class name.  Inside
+     * a string pool scope (see {@link #pushStringPool}) only the first occurrence of each
+     * string is written, otherwise this is the same as {@link #writeString}.  Must be read
+     * with {@link #readStringPooled}.
+     *
+     * @hide
+     */
+    public final void writeStringPooled(String val) {
+        final StringPool pool = mStringPool;
+        if (pool == null) {
+            writeString(val);
+            return;
+        }
+        final Integer index = pool.mIndices.get(val);
+        if (index != null) {
+            writeInt(index);
+        } else {
+            final int next = pool.mIndices.size();
+            pool.mIndices.put(val, next);
+            writeInt(-(next + 1));
+            writeString(val);
+        }
+    }
+
     /** @hide */
     public final void writeBoolean(boolean val) {
         writeInt(val ? 1 : 0);
@@ -758,6 +830,15 @@ public final class Parcel {
      * growing dataCapacity() if needed.  The Map keys must be String objects.
      */
     /* package */ void writeArrayMapInternal(ArrayMap<String, Object> val) {
+        writeArrayMapInternal(val, false);
+    }
+
+    /**
+     * Flatten an ArrayMap into the parcel.  If lazyValues is true, values that are expensive
+     * to unparcel are written length prefixed so that the reader can skip them, and values that
+     * were never decoded since they were read are copied through as raw bytes.
+     */
+    /* package */ void writeArrayMapInternal(ArrayMap<String, Object> val, boolean lazyValues) {
         if (val == null) {
             writeInt(-1);
             return;
@@ -775,7 +856,11 @@ public final class Parcel {
         for (int i=0; i<N; i++) {
             if (DEBUG_ARRAY_MAP) startPos = dataPosition();
             writeString(val.keyAt(i));
-            writeValue(val.valueAt(i));
+            if (lazyValues) {
+                writeLazyValue(val.valueAt(i));
+            } else {
+                writeValue(val.valueAt(i));
+            }
             if (DEBUG_ARRAY_MAP) Log.d(TAG, "  Write #" + i + " "
                     + (dataPosition()-startPos) + " bytes: key=0x"
                     + Integer.toHexString(val.keyAt(i) != null ? val.keyAt(i).hashCode() : 0)
@@ -783,6 +868,32 @@ public final class Parcel {
         }
     }
 
+    /**
+     * Writes a value that a lazy reader may skip, see {@link LazyValue}.  Only values whose
+     * decoding can instantiate arbitrary classes are wrapped; cheap values are written as is.
+     */
+    private void writeLazyValue(Object v) {
+        if (v instanceof LazyValue) {
+            ((LazyValue) v).writeToParcel(this);
+        } else if ((v instanceof Parcelable && !(v instanceof Bundle)
+                && !(v instanceof PersistableBundle))
+                || v instanceof Parcelable[] || v instanceof List || v instanceof SparseArray) {
+            writeInt(VAL_LAZY);
+            final int lengthPos = dataPosition();
+            writeInt(-1); // dummy, will hold length
+            final int startPos = dataPosition();
+            writeValue(v);
+            final int endPos = dataPosition();
+
+            // Backpatch length
+            setDataPosition(lengthPos);
+            writeInt(endPos - startPos);
+            setDataPosition(endPos);
+        } else {
+            writeValue(v);
+        }
+    }
+
     /**
      * @hide For testing only.
      */
@@ -1629,6 +1740,8 @@ public final class Parcel {
         } else if (v instanceof PersistableBundle) {
             writeInt(VAL_PERSISTABLEBUNDLE);
             writePersistableBundle((PersistableBundle) v);
+        } else if (v instanceof LazyValue) {
+            writeValue(((LazyValue) v).get());
         } else if (v instanceof Parcelable) {
             // IMPOTANT: cases for classes that implement Parcelable must
             // come before the Parcelable case, so that their specific VAL_*
@@ -1997,6 +2110,32 @@ public final class Parcel {
         return nativeReadString(mNativePtr);
     }
 
+    /**
+     * Read a string value written with {@link #writeStringPooled}.  Strings that were already
+     * read in the current string pool scope are returned as the same instance.
+     *
+     * @hide
+     */
+    public final String readStringPooled() {
+        final StringPool pool = mStringPool;
+        if (pool == null) {
+            return readString();
+        }
+        final int index = readInt();
+        if (index >= 0) {
+            if (index >= pool.mStrings.size()) {
+                throw new BadParcelableException("Bad pooled string index " + index);
+            }
+            return pool.mStrings.get(index);
+        }
+        if (-(index + 1) != pool.mStrings.size()) {
+            throw new BadParcelableException("Bad pooled string index " + index);
+        }
+        final String val = readString();
+        pool.mStrings.add(val);
+        return val;
+    }
+
     /** @hide */
     public final boolean readBoolean() {
         return readInt() != 0;
@@ -2747,6 +2886,18 @@ public final class Parcel {
         case VAL_DOUBLEARRAY:
             return createDoubleArray();
 
+        case VAL_LAZY: {
+            final int length = readInt();
+            final int start = dataPosition();
+            if (length < 0 || length > dataSize() - start) {
+                throw new BadParcelableException("Bad lazy value length " + length
+                        + " at offset " + start);
+            }
+            final Object value = readValue(loader);
+            setDataPosition(start + length);
+            return value;
+        }
+
         default:
             int off = dataPosition() - 4;
             throw new RuntimeException(
@@ -2991,6 +3142,7 @@ public final class Parcel {
     }
 
     private void freeBuffer() {
+        mStringPool = null;
         if (mOwnsNativeParcelObject) {
             updateNativeSize(nativeFreeBuffer(mNativePtr));
         }
@@ -3028,16 +3180,44 @@ public final class Parcel {
 
     /* package */ void readArrayMapInternal(ArrayMap outVal, int N,
         ClassLoader loader) {
+        readArrayMapInternal(outVal, N, loader, false);
+    }
+
+    /**
+     * Reads an ArrayMap.  If lazy is true, length prefixed values are not decoded but put in the
+     * map as {@link LazyValue}s that refer back to this parcel, which must then not be recycled
+     * while they are reachable.
+     *
+     * @return whether any {@link LazyValue} was put in the map
+     */
+    /* package */ boolean readArrayMapInternal(ArrayMap outVal, int N,
+        ClassLoader loader, boolean lazy) {
         if (DEBUG_ARRAY_MAP) {
             RuntimeException here =  new RuntimeException("here");
             here.fillInStackTrace();
             Log.d(TAG, "Reading " + N + " ArrayMap entries", here);
         }
+        boolean hasLazyValues = false;
         int startPos;
         while (N > 0) {
             if (DEBUG_ARRAY_MAP) startPos = dataPosition();
             String key = readString();
-            Object value = readValue(loader);
+            Object value;
+            final int valuePos = dataPosition();
+            if (lazy && readInt() == VAL_LAZY) {
+                final int length = readInt();
+                final int start = dataPosition();
+                if (length < 0 || length > dataSize() - start) {
+                    throw new BadParcelableException("Bad lazy value length " + length
+                            + " at offset " + start);
+                }
+                value = new LazyValue(this, start, length, loader);
+                setDataPosition(start + length);
+                hasLazyValues = true;
+            } else {
+                if (lazy) setDataPosition(valuePos);
+                value = readValue(loader);
+            }
             if (DEBUG_ARRAY_MAP) Log.d(TAG, "  Read #" + (N-1) + " "
                     + (dataPosition()-startPos) + " bytes: key=0x"
                     + Integer.toHexString((key != null ? key.hashCode() : 0)) + " " + key);
@@ -3045,6 +3225,7 @@ public final class Parcel {
             N--;
         }
         outVal.validate();
+        return hasLazyValues;
     }
 
     /* package */ void readArrayMapSafelyInternal(ArrayMap outVal, int N,
@@ -3151,4 +3332,116 @@ public final class Parcel {
     public long getBlobAshmemSize() {
         return nativeGetBlobAshmemSize(mNativePtr);
     }
+
+    /**
+     * A value that was read from a parcel without being decoded.  It keeps a reference to the
+     * source parcel and decodes the value the first time it is requested; until then, writing
+     * it to another parcel copies the original bytes through.
+     *
+     * @hide
+     */
+    static final class LazyValue {
+        private final Parcel mSource;
+        private final int mPosition;
+        private final int mLength;
+        private final ClassLoader mLoader;
+
+        private boolean mDecoded;
+        private Object mObject;
+
+        LazyValue(Parcel source, int position, int length, ClassLoader loader) {
+            mSource = source;
+            mPosition = position;
+            mLength = length;
+            mLoader = loader;
+        }
+
+        /**
+         * Returns the decoded value, decoding it with the class loader it was read with on the
+         * first call.
+         */
+        Object get() {
+            return get(mLoader);
+        }
+
+        /**
+         * Returns the decoded value, decoding it with the given class loader on the first call.
+         * Owners whose class loader can change after reading, such as bundles, pass their
+         * current one.
+         */
+        synchronized Object get(ClassLoader loader) {
+            if (!mDecoded) {
+                synchronized (mSource) {
+                    final int restore = mSource.dataPosition();
+                    try {
+                        mSource.setDataPosition(mPosition);
+                        mObject = mSource.readValue(loader);
+                    } finally {
+                        mSource.setDataPosition(restore);
+                    }
+                }
+                mDecoded = true;
+            }
+            return mObject;
+        }
+
+        /**
+         * Returns a value that decodes the same bytes again, independently of this one.
+         */
+        LazyValue copy() {
+            return new LazyValue(mSource, mPosition, mLength, mLoader);
+        }
+
+        synchronized boolean isDecoded() {
+            return mDecoded;
+        }
+
+        boolean hasFileDescriptors() {
+            synchronized (mSource) {
+                return mSource.hasFileDescriptors();
+            }
+        }
+
+        void writeToParcel(Parcel dest) {
+            synchronized (this) {
+                if (mDecoded) {
+                    // The decoded object may have been modified, so it has to be written again.
+                    dest.writeLazyValue(mObject);
+                    return;
+                }
+            }
+            dest.writeInt(VAL_LAZY);
+            dest.writeInt(mLength);
+            synchronized (mSource) {
+                dest.appendFrom(mSource, mPosition, mLength);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            return Objects.equals(get(), o instanceof LazyValue ? ((LazyValue) o).get() : o);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(get());
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(get());
+        }
+    }
+
+    /**
+     * The strings of one string pool scope; only one of the two collections is used, depending
+     * on whether the parcel is being written or read.
+     */
+    private static final class StringPool {
+        final HashMap<String, Integer> mIndices = new HashMap<>();
+        final ArrayList<String> mStrings = new ArrayList<>();
+    }
 }
@@ -199,7 +199,7 @@ public final class PersistableBundle extends BaseBundle implements Cloneable, Pa
     @Nullable
     public PersistableBundle getPersistableBundle(@Nullable String key) {
         unparcel();
-        Object o = mMap.get(key);
+        Object o = getValue(key);
         if (o == null) {
             return null;
         }
@@ -272,9 +272,13 @@ public final class PersistableBundle extends BaseBundle implements Cloneable, Pa
     @Override
     public void writeToParcel(Parcel parcel, int flags) {
         final boolean oldAllowFds = parcel.pushAllowFds(false);
+        // The contents are copied out on their own when read, so they cannot refer to strings
+        // pooled by the enclosing parcel.
+        final Object oldStringPool = parcel.suspendStringPool();
         try {
             writeToParcelInner(parcel, flags);
         } finally {
+            parcel.restoreStringPool(oldStringPool);
             parcel.restoreAllowFds(oldAllowFds);
         }
     }
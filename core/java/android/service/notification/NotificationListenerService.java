@@ -1294,9 +1294,32 @@ public abstract class NotificationListenerService extends Service {
      * @hide
      */
     public final void applyUpdateLocked(NotificationRankingUpdate update) {
+        if (update.isDelta()) {
+            final NotificationRankingUpdate base =
+                    mRankingMap != null ? mRankingMap.mRankingUpdate : null;
+            if (base == null || base.getSequence() != update.getBaseSequence()) {
+                // An earlier update went missing; keep the current ranking until the
+                // notification manager sends all of it again.
+                Log.w(TAG, "Ranking delta based on " + update.getBaseSequence()
+                        + " doesn't apply to " + (base != null ? base.getSequence() : "nothing")
+                        + ", requesting resync");
+                requestRankingResync();
+                return;
+            }
+            update = update.applyDelta(base);
+        }
         mRankingMap = new RankingMap(update);
     }
 
+    private void requestRankingResync() {
+        if (!isBound()) return;
+        try {
+            getNotificationInterface().requestRankingResyncFromListener(mWrapper);
+        } catch (android.os.RemoteException ex) {
+            Log.v(TAG, "Unable to contact notification manager", ex);
+        }
+    }
+
     /** @hide */
     protected Context getContext() {
         if (mSystemContext != null) {
@@ -18,12 +18,33 @@ package android.service.notification;
 import android.os.Bundle;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.IntArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
+ * Ranking of the notifications visible to a listener.
+ *
+ * An update is either full, or a delta against the update with sequence number
+ * {@link #getBaseSequence()} that was last sent to the same listener. A delta carries the
+ * ordering as runs of the base ordering, and the attributes of only those keys that are new or
+ * changed, so its size scales with the change rather than with the number of notifications.
+ * Use {@link #applyDelta} to turn it back into a full update.
+ *
  * @hide
  */
 public class NotificationRankingUpdate implements Parcelable {
-    // TODO: Support incremental updates.
+    /** Base sequence of an update that is not a delta. */
+    public static final int NO_BASE_SEQUENCE = -1;
+
+    private int mSequence;
+    private final int mBaseSequence;
+    // For a delta, the ordering as (start, length) runs. A run with start >= 0 copies that range
+    // of the base ordering, a run with start < 0 takes length keys of mKeys from -start - 1.
+    private final int[] mOrderRuns;
     private final String[] mKeys;
     private final String[] mInterceptedKeys;
     private final Bundle mVisibilityOverrides;
@@ -41,6 +62,17 @@ public class NotificationRankingUpdate implements Parcelable {
             int[] importance, Bundle explanation, Bundle overrideGroupKeys,
             Bundle channels, Bundle overridePeople, Bundle snoozeCriteria,
             Bundle showBadge) {
+        this(NO_BASE_SEQUENCE, null, keys, interceptedKeys, visibilityOverrides,
+                suppressedVisualEffects, importance, explanation, overrideGroupKeys, channels,
+                overridePeople, snoozeCriteria, showBadge);
+    }
+
+    private NotificationRankingUpdate(int baseSequence, int[] orderRuns, String[] keys,
+            String[] interceptedKeys, Bundle visibilityOverrides, Bundle suppressedVisualEffects,
+            int[] importance, Bundle explanation, Bundle overrideGroupKeys, Bundle channels,
+            Bundle overridePeople, Bundle snoozeCriteria, Bundle showBadge) {
+        mBaseSequence = baseSequence;
+        mOrderRuns = orderRuns;
         mKeys = keys;
         mInterceptedKeys = interceptedKeys;
         mVisibilityOverrides = visibilityOverrides;
@@ -55,6 +87,9 @@ public class NotificationRankingUpdate implements Parcelable {
     }
 
     public NotificationRankingUpdate(Parcel in) {
+        mSequence = in.readInt();
+        mBaseSequence = in.readInt();
+        mOrderRuns = mBaseSequence != NO_BASE_SEQUENCE ? in.createIntArray() : null;
         mKeys = in.readStringArray();
         mInterceptedKeys = in.readStringArray();
         mVisibilityOverrides = in.readBundle();
@@ -76,6 +111,11 @@ public class NotificationRankingUpdate implements Parcelable {
 
     @Override
     public void writeToParcel(Parcel out, int flags) {
+        out.writeInt(mSequence);
+        out.writeInt(mBaseSequence);
+        if (mBaseSequence != NO_BASE_SEQUENCE) {
+            out.writeIntArray(mOrderRuns);
+        }
         out.writeStringArray(mKeys);
         out.writeStringArray(mInterceptedKeys);
         out.writeBundle(mVisibilityOverrides);
@@ -100,6 +140,26 @@ public class NotificationRankingUpdate implements Parcelable {
         }
     };
 
+    public int getSequence() {
+        return mSequence;
+    }
+
+    public void setSequence(int sequence) {
+        mSequence = sequence;
+    }
+
+    public int getBaseSequence() {
+        return mBaseSequence;
+    }
+
+    public boolean isDelta() {
+        return mBaseSequence != NO_BASE_SEQUENCE;
+    }
+
+    /**
+     * For a full update, returns the keys in ranking order. For a delta, returns only the keys
+     * whose attributes it carries.
+     */
     public String[] getOrderedKeys() {
         return mKeys;
     }
@@ -143,4 +203,200 @@ public class NotificationRankingUpdate implements Parcelable {
     public Bundle getShowBadge() {
         return mShowBadge;
     }
+
+    /**
+     * Returns the ranking attributes of each key of a full update, excluding its position, in
+     * marshalled form. Used to tell which keys changed since an earlier update, as the objects
+     * the attributes were read from may since have been modified in place.
+     */
+    public byte[][] marshallAttributes() {
+        final ArraySet<String> intercepted = new ArraySet<>(Arrays.asList(mInterceptedKeys));
+        final byte[][] attributes = new byte[mKeys.length][];
+        final Parcel parcel = Parcel.obtain();
+        try {
+            for (int i = 0; i < mKeys.length; i++) {
+                final String key = mKeys[i];
+                parcel.setDataPosition(0);
+                parcel.setDataSize(0);
+                parcel.writeInt(mImportance[i]);
+                parcel.writeInt(intercepted.contains(key) ? 1 : 0);
+                parcel.writeValue(mVisibilityOverrides.get(key));
+                parcel.writeValue(mSuppressedVisualEffects.get(key));
+                parcel.writeValue(mImportanceExplanation.get(key));
+                parcel.writeValue(mOverrideGroupKeys.get(key));
+                parcel.writeValue(mChannels.get(key));
+                parcel.writeValue(mOverridePeople.get(key));
+                parcel.writeValue(mSnoozeCriteria.get(key));
+                parcel.writeValue(mShowBadge.get(key));
+                attributes[i] = parcel.marshall();
+            }
+        } finally {
+            parcel.recycle();
+        }
+        return attributes;
+    }
+
+    /**
+     * Creates a delta that turns the full update with the given keys and marshalled attributes
+     * into the full update {@code update}.
+     *
+     * @return the delta, or null if it would not be meaningfully smaller than {@code update}
+     */
+    public static NotificationRankingUpdate createDelta(int baseSequence, String[] baseKeys,
+            byte[][] baseAttributes, NotificationRankingUpdate update, byte[][] attributes) {
+        final ArrayMap<String, Integer> basePositions = new ArrayMap<>(baseKeys.length);
+        for (int i = 0; i < baseKeys.length; i++) {
+            basePositions.put(baseKeys[i], i);
+        }
+
+        final String[] keys = update.mKeys;
+        final int N = keys.length;
+        final IntArray runs = new IntArray();
+        final IntArray changed = new IntArray();
+        int i = 0;
+        while (i < N) {
+            final Integer basePosition = basePositions.get(keys[i]);
+            if (basePosition == null) {
+                // Consecutive new keys become one run of keys carried by the delta.
+                final int start = i;
+                while (i < N && !basePositions.containsKey(keys[i])) {
+                    i++;
+                }
+                runs.add(-changed.size() - 1);
+                runs.add(i - start);
+                for (int j = start; j < i; j++) {
+                    changed.add(j);
+                }
+                continue;
+            }
+            int length = 1;
+            while (i + length < N && basePosition + length < baseKeys.length
+                    && keys[i + length].equals(baseKeys[basePosition + length])) {
+                length++;
+            }
+            runs.add(basePosition);
+            runs.add(length);
+            for (int j = 0; j < length; j++) {
+                if (!Arrays.equals(attributes[i + j], baseAttributes[basePosition + j])) {
+                    changed.add(i + j);
+                }
+            }
+            i += length;
+        }
+        if (changed.size() + runs.size() / 2 > N / 2) {
+            return null;
+        }
+
+        final ArraySet<String> intercepted =
+                new ArraySet<>(Arrays.asList(update.mInterceptedKeys));
+        final int M = changed.size();
+        final String[] deltaKeys = new String[M];
+        final int[] deltaImportance = new int[M];
+        final ArrayList<String> deltaIntercepted = new ArrayList<>();
+        for (int j = 0; j < M; j++) {
+            final int index = changed.get(j);
+            deltaKeys[j] = keys[index];
+            deltaImportance[j] = update.mImportance[index];
+            if (intercepted.contains(keys[index])) {
+                deltaIntercepted.add(keys[index]);
+            }
+        }
+        final NotificationRankingUpdate delta = new NotificationRankingUpdate(baseSequence,
+                runs.toArray(), deltaKeys, deltaIntercepted.toArray(new String[0]), new Bundle(),
+                new Bundle(), deltaImportance, new Bundle(), new Bundle(), new Bundle(),
+                new Bundle(), new Bundle(), new Bundle());
+        for (int j = 0; j < M; j++) {
+            copyAttributes(deltaKeys[j], update, delta);
+        }
+        delta.mSequence = update.mSequence;
+        return delta;
+    }
+
+    /**
+     * Applies this delta to the full update it was made against.
+     *
+     * @return the full update this delta stands for
+     * @throws IllegalArgumentException if {@code base} is not the update this delta is based on
+     */
+    public NotificationRankingUpdate applyDelta(NotificationRankingUpdate base) {
+        if (!isDelta() || base.isDelta() || base.mSequence != mBaseSequence) {
+            throw new IllegalArgumentException("Delta based on " + mBaseSequence
+                    + " can't be applied to " + base.mSequence);
+        }
+        final ArrayMap<String, Integer> deltaPositions = new ArrayMap<>(mKeys.length);
+        for (int i = 0; i < mKeys.length; i++) {
+            deltaPositions.put(mKeys[i], i);
+        }
+        final ArraySet<String> baseIntercepted =
+                new ArraySet<>(Arrays.asList(base.mInterceptedKeys));
+        final ArraySet<String> deltaIntercepted = new ArraySet<>(Arrays.asList(mInterceptedKeys));
+
+        int N = 0;
+        for (int r = 1; r < mOrderRuns.length; r += 2) {
+            N += mOrderRuns[r];
+        }
+        final String[] keys = new String[N];
+        final int[] importance = new int[N];
+        final boolean[] fromDelta = new boolean[N];
+        final ArrayList<String> intercepted = new ArrayList<>();
+        int k = 0;
+        for (int r = 0; r < mOrderRuns.length; r += 2) {
+            final int start = mOrderRuns[r];
+            final int length = mOrderRuns[r + 1];
+            for (int j = 0; j < length; j++, k++) {
+                final String key = start >= 0 ? base.mKeys[start + j] : mKeys[-start - 1 + j];
+                final Integer deltaPosition = deltaPositions.get(key);
+                keys[k] = key;
+                fromDelta[k] = deltaPosition != null;
+                if (fromDelta[k]) {
+                    importance[k] = mImportance[deltaPosition];
+                } else {
+                    importance[k] = base.mImportance[start + j];
+                }
+                if (fromDelta[k] ? deltaIntercepted.contains(key) : baseIntercepted.contains(key)) {
+                    intercepted.add(key);
+                }
+            }
+        }
+
+        final NotificationRankingUpdate update = new NotificationRankingUpdate(keys,
+                intercepted.toArray(new String[0]), new Bundle(), new Bundle(), importance,
+                new Bundle(), new Bundle(), new Bundle(), new Bundle(), new Bundle(), new Bundle());
+        for (int i = 0; i < N; i++) {
+            copyAttributes(keys[i], fromDelta[i] ? this : base, update);
+        }
+        update.mSequence = mSequence;
+        return update;
+    }
+
+    private static void copyAttributes(String key, NotificationRankingUpdate from,
+            NotificationRankingUpdate to) {
+        if (from.mVisibilityOverrides.containsKey(key)) {
+            to.mVisibilityOverrides.putInt(key, from.mVisibilityOverrides.getInt(key));
+        }
+        if (from.mSuppressedVisualEffects.containsKey(key)) {
+            to.mSuppressedVisualEffects.putInt(key, from.mSuppressedVisualEffects.getInt(key));
+        }
+        if (from.mImportanceExplanation.containsKey(key)) {
+            to.mImportanceExplanation.putCharSequence(key,
+                    from.mImportanceExplanation.getCharSequence(key));
+        }
+        if (from.mOverrideGroupKeys.containsKey(key)) {
+            to.mOverrideGroupKeys.putString(key, from.mOverrideGroupKeys.getString(key));
+        }
+        if (from.mChannels.containsKey(key)) {
+            to.mChannels.putParcelable(key, from.mChannels.getParcelable(key));
+        }
+        if (from.mOverridePeople.containsKey(key)) {
+            to.mOverridePeople.putStringArrayList(key,
+                    from.mOverridePeople.getStringArrayList(key));
+        }
+        if (from.mSnoozeCriteria.containsKey(key)) {
+            to.mSnoozeCriteria.putParcelableArrayList(key,
+                    from.mSnoozeCriteria.getParcelableArrayList(key));
+        }
+        if (from.mShowBadge.containsKey(key)) {
+            to.mShowBadge.putBoolean(key, from.mShowBadge.getBoolean(key));
+        }
+    }
 }
@@ -28,6 +28,7 @@ import com.android.internal.util.ArrayUtils;
 import com.android.internal.util.GrowingArrayUtils;
 
 import java.lang.ref.WeakReference;
+import java.util.function.Consumer;
 
 /**
  * DynamicLayout is a text layout that updates itself as the text is edited.
@@ -42,6 +43,9 @@ public class DynamicLayout extends Layout
     private static final int PRIORITY = 128;
     private static final int BLOCK_MINIMUM_CHARACTER_LENGTH = 400;
 
+    // Used to count spans without collecting them.
+    private static final Consumer<Object> NO_OP_VISITOR = span -> { };
+
     /**
      * Make a layout for the specified text that will be updated as
      * the text is changed.
@@ -393,8 +397,13 @@ public class DynamicLayout extends Layout
 
     private boolean contentMayProtrudeFromLineTopOrBottom(CharSequence text, int start, int end) {
         if (text instanceof Spanned) {
-            final Spanned spanned = (Spanned) text;
-            if (spanned.getSpans(start, end, ReplacementSpan.class).length > 0) {
+            if (text instanceof SpannableStringBuilder) {
+                // Called for every reflowed line, so avoid allocating the array of spans.
+                if (((SpannableStringBuilder) text).forEachSpan(start, end,
+                        ReplacementSpan.class, NO_OP_VISITOR) > 0) {
+                    return true;
+                }
+            } else if (((Spanned) text).getSpans(start, end, ReplacementSpan.class).length > 0) {
                 return true;
             }
         }
@@ -402,7 +411,8 @@ public class DynamicLayout extends Layout
         // disjunction of all tops and bottoms, although it's not optimal.
         final Paint paint = getPaint();
         paint.getTextBounds(text, start, end, mTempRect);
-        final Paint.FontMetricsInt fm = paint.getFontMetricsInt();
+        final Paint.FontMetricsInt fm = mTempFontMetricsInt;
+        paint.getFontMetricsInt(fm);
         return mTempRect.top < fm.top || mTempRect.bottom > fm.bottom;
     }
 
@@ -505,20 +515,8 @@ public class DynamicLayout extends Layout
             return;
         }
 
-        int firstBlock = -1;
-        int lastBlock = -1;
-        for (int i = 0; i < mNumberOfBlocks; i++) {
-            if (mBlockEndLines[i] >= startLine) {
-                firstBlock = i;
-                break;
-            }
-        }
-        for (int i = firstBlock; i < mNumberOfBlocks; i++) {
-            if (mBlockEndLines[i] >= endLine) {
-                lastBlock = i;
-                break;
-            }
-        }
+        final int firstBlock = findFirstBlockEndingAtOrAfter(startLine, 0);
+        final int lastBlock = findFirstBlockEndingAtOrAfter(endLine, firstBlock);
         final int lastBlockEndLine = mBlockEndLines[lastBlock];
 
         boolean createBlockBefore = startLine > (firstBlock == 0 ? 0 :
@@ -610,6 +608,25 @@ public class DynamicLayout extends Layout
         }
     }
 
+    /**
+     * Returns the index of the first block, starting at fromBlock, whose end line is at or after
+     * the given line. Block end lines are increasing, so this is a binary search rather than a
+     * scan over all the blocks of a long text.
+     */
+    private int findFirstBlockEndingAtOrAfter(int line, int fromBlock) {
+        int low = fromBlock;
+        int high = mNumberOfBlocks - 1;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mBlockEndLines[mid] < line) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
     /**
      * This method is used for test purposes only.
      * @hide
@@ -839,6 +856,7 @@ public class DynamicLayout extends Layout
     private int mTopPadding, mBottomPadding;
 
     private Rect mTempRect = new Rect();
+    private final Paint.FontMetricsInt mTempFontMetricsInt = new Paint.FontMetricsInt();
 
     private static StaticLayout sStaticLayout = null;
     private static StaticLayout.Builder sBuilder = null;
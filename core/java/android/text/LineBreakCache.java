@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.text;
+
+import android.graphics.Paint;
+import android.util.LruCache;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.Arrays;
+
+/**
+ * Process wide cache of measurement and line breaking results for plain text paragraphs.
+ *
+ * {@link StaticLayout} consults this cache before measuring a paragraph and running the native
+ * line breaker, so that laying out identical text with an identical paint, width and break
+ * configuration (for example the rows of a scrolling list being rebound) only pays for the
+ * bidi analysis. Only paragraphs without spans are cached, since spans can change the
+ * measurement without changing the characters.
+ *
+ * The cache is safe to use from any thread, which allows layouts to be warmed on a background
+ * thread with {@link StaticLayout.Builder#precompute()}.
+ */
+final class LineBreakCache {
+    // Total number of characters the cache may hold.
+    private static final int MAX_SIZE = 64 * 1024;
+
+    // Paragraphs longer than this are not worth the copy, and would churn the cache.
+    @VisibleForTesting
+    static final int MAX_PARAGRAPH_LENGTH = 2048;
+
+    private static final LruCache<Key, Entry> sCache = new LruCache<Key, Entry>(MAX_SIZE) {
+        @Override
+        protected int sizeOf(Key key, Entry value) {
+            // Every entry holds a copy of its paint, so even empty paragraphs must count.
+            return Math.max(1, key.mLength);
+        }
+    };
+
+    private LineBreakCache() {}
+
+    /**
+     * Returns whether a paragraph measured with the given paint can be cached.
+     */
+    static boolean isCacheable(TextPaint paint, int length) {
+        // Subclasses of TextPaint may override measurement, so their results are not reusable.
+        return length <= MAX_PARAGRAPH_LENGTH && paint.getClass() == TextPaint.class;
+    }
+
+    /**
+     * Returns the cached result for the paragraph described by the probe key, or null.
+     */
+    static Entry get(Key probe) {
+        return sCache.get(probe);
+    }
+
+    /**
+     * Stores the result for the paragraph described by the probe key.  The key and the result
+     * arrays are copied, so the caller can keep reusing them.
+     */
+    static void put(Key probe, float[] widths, Paint.FontMetricsInt fm, int breakCount,
+            int[] breaks, float[] lineWidths, int[] flags) {
+        final Entry entry = new Entry(Arrays.copyOf(widths, probe.mLength), fm,
+                breakCount, Arrays.copyOf(breaks, breakCount),
+                Arrays.copyOf(lineWidths, breakCount), Arrays.copyOf(flags, breakCount));
+        sCache.put(probe.copy(), entry);
+    }
+
+    @VisibleForTesting
+    static int hitCount() {
+        return sCache.hitCount();
+    }
+
+    @VisibleForTesting
+    static int missCount() {
+        return sCache.missCount();
+    }
+
+    @VisibleForTesting
+    static void clear() {
+        sCache.evictAll();
+    }
+
+    /**
+     * Describes a paragraph and the parameters that affect how it is measured and broken.
+     * A probe key refers to the caller's buffers; stored keys own copies of them.
+     */
+    static final class Key {
+        private char[] mChars;
+        private int mLength;
+        private TextPaint mPaint;
+        private TextDirectionHeuristic mTextDir;
+        private int mWidth;
+        private int mBreakStrategy;
+        private int mHyphenationFrequency;
+        private boolean mJustify;
+        private int mHashCode;
+
+        void set(char[] chars, int length, TextPaint paint, TextDirectionHeuristic textDir,
+                int width, int breakStrategy, int hyphenationFrequency, boolean justify) {
+            mChars = chars;
+            mLength = length;
+            mPaint = paint;
+            mTextDir = textDir;
+            mWidth = width;
+            mBreakStrategy = breakStrategy;
+            mHyphenationFrequency = hyphenationFrequency;
+            mJustify = justify;
+
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + chars[i];
+            }
+            hash = 31 * hash + Float.floatToIntBits(paint.getTextSize());
+            hash = 31 * hash + width;
+            hash = 31 * hash + breakStrategy;
+            hash = 31 * hash + hyphenationFrequency;
+            mHashCode = hash;
+        }
+
+        /** Releases the references to the caller's buffers. */
+        void clear() {
+            mChars = null;
+            mPaint = null;
+            mTextDir = null;
+        }
+
+        private Key copy() {
+            final Key key = new Key();
+            final TextPaint paint = new TextPaint();
+            paint.set(mPaint);
+            key.mChars = Arrays.copyOf(mChars, mLength);
+            key.mLength = mLength;
+            key.mPaint = paint;
+            key.mTextDir = mTextDir;
+            key.mWidth = mWidth;
+            key.mBreakStrategy = mBreakStrategy;
+            key.mHyphenationFrequency = mHyphenationFrequency;
+            key.mJustify = mJustify;
+            key.mHashCode = mHashCode;
+            return key;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            if (mHashCode != other.mHashCode
+                    || mLength != other.mLength
+                    || mWidth != other.mWidth
+                    || mBreakStrategy != other.mBreakStrategy
+                    || mHyphenationFrequency != other.mHyphenationFrequency
+                    || mJustify != other.mJustify
+                    || mTextDir != other.mTextDir) {
+                return false;
+            }
+            for (int i = 0; i < mLength; i++) {
+                if (mChars[i] != other.mChars[i]) {
+                    return false;
+                }
+            }
+            return mPaint == other.mPaint || mPaint.hasEqualAttributes(other.mPaint);
+        }
+    }
+
+    /**
+     * The measurement and line breaking result for one paragraph.  Immutable once cached.
+     */
+    static final class Entry {
+        final float[] widths;
+        final int fmTop;
+        final int fmBottom;
+        final int fmAscent;
+        final int fmDescent;
+        final int breakCount;
+        final int[] breaks;
+        final float[] lineWidths;
+        final int[] flags;
+
+        private Entry(float[] widths, Paint.FontMetricsInt fm, int breakCount, int[] breaks,
+                float[] lineWidths, int[] flags) {
+            this.widths = widths;
+            this.fmTop = fm.top;
+            this.fmBottom = fm.bottom;
+            this.fmAscent = fm.ascent;
+            this.fmDescent = fm.descent;
+            this.breakCount = breakCount;
+            this.breaks = breaks;
+            this.lineWidths = lineWidths;
+            this.flags = flags;
+        }
+    }
+}
@@ -29,6 +29,7 @@ import libcore.util.EmptyArray;
 
 import java.lang.reflect.Array;
 import java.util.IdentityHashMap;
+import java.util.function.Consumer;
 
 /**
  * This is the class for text whose content and markup can both be changed.
@@ -401,17 +402,27 @@ public class SpannableStringBuilder implements CharSequence, GetChars, Spannable
             // TODO potential optimization: only update bounds on intersecting spans
             final boolean atEnd = (mGapStart + mGapLength == mText.length);
 
+            boolean boundsChanged = false;
             for (int i = 0; i < mSpanCount; i++) {
                 final int startFlag = (mSpanFlags[i] & START_MASK) >> START_SHIFT;
-                mSpanStarts[i] = updatedIntervalBound(mSpanStarts[i], start, nbNewChars, startFlag,
-                        atEnd, textIsRemoved);
+                final int spanStart = updatedIntervalBound(mSpanStarts[i], start, nbNewChars,
+                        startFlag, atEnd, textIsRemoved);
 
                 final int endFlag = (mSpanFlags[i] & END_MASK);
-                mSpanEnds[i] = updatedIntervalBound(mSpanEnds[i], start, nbNewChars, endFlag,
+                final int spanEnd = updatedIntervalBound(mSpanEnds[i], start, nbNewChars, endFlag,
                         atEnd, textIsRemoved);
+
+                if (spanStart != mSpanStarts[i] || spanEnd != mSpanEnds[i]) {
+                    mSpanStarts[i] = spanStart;
+                    mSpanEnds[i] = spanEnd;
+                    boundsChanged = true;
+                }
+            }
+            // The tree only needs fixing up when a bound actually moved; span removal above
+            // already restored the invariants for the spans it removed.
+            if (boundsChanged) {
+                restoreInvariants();
             }
-            // TODO potential optimization: only fix up invariants when bounds actually changed
-            restoreInvariants();
         }
 
         if (cs instanceof Spanned) {
@@ -594,11 +605,15 @@ public class SpannableStringBuilder implements CharSequence, GetChars, Spannable
     }
 
     private void sendToSpanWatchers(int replaceStart, int replaceEnd, int nbNewChars) {
+        boolean hasAddedSpans = false;
         for (int i = 0; i < mSpanCount; i++) {
             int spanFlags = mSpanFlags[i];
 
             // This loop handles only modified (not added) spans.
-            if ((spanFlags & SPAN_ADDED) != 0) continue;
+            if ((spanFlags & SPAN_ADDED) != 0) {
+                hasAddedSpans = true;
+                continue;
+            }
             int spanStart = mSpanStarts[i];
             int spanEnd = mSpanEnds[i];
             if (spanStart > mGapStart) spanStart -= mGapLength;
@@ -650,6 +665,9 @@ public class SpannableStringBuilder implements CharSequence, GetChars, Spannable
         }
 
         // Handle added spans
+        if (!hasAddedSpans) {
+            return;
+        }
         for (int i = 0; i < mSpanCount; i++) {
             int spanFlags = mSpanFlags[i];
             if ((spanFlags & SPAN_ADDED) != 0) {
@@ -873,6 +891,69 @@ public class SpannableStringBuilder implements CharSequence, GetChars, Spannable
         return ret;
     }
 
+    /**
+     * Calls the visitor for each span of the specified type that overlaps the specified range
+     * of the buffer, using the same overlap rules as {@link #getSpans(int, int, Class)}.
+     *
+     * <p>Unlike getSpans, no result array is allocated and the spans are visited in order of
+     * their start offset, without sorting by priority or insertion order. The buffer must not
+     * be modified from the visitor.
+     *
+     * @param queryStart Start index.
+     * @param queryEnd End index.
+     * @param kind Class type to search for.
+     * @param visitor Called for each span found.
+     * @param <T>
+     * @return The number of spans visited.
+     *
+     * @hide
+     */
+    public <T> int forEachSpan(int queryStart, int queryEnd, @Nullable Class<T> kind,
+            Consumer<? super T> visitor) {
+        if (kind == null || mSpanCount == 0) return 0;
+        return forEachSpanRec(queryStart, queryEnd, kind, treeRoot(), visitor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> int forEachSpanRec(int queryStart, int queryEnd, Class<T> kind, int i,
+            Consumer<? super T> visitor) {
+        int count = 0;
+        if ((i & 1) != 0) {
+            // internal tree node
+            int left = leftChild(i);
+            int spanMax = mSpanMax[left];
+            if (spanMax > mGapStart) {
+                spanMax -= mGapLength;
+            }
+            if (spanMax >= queryStart) {
+                count = forEachSpanRec(queryStart, queryEnd, kind, left, visitor);
+            }
+        }
+        if (i < mSpanCount) {
+            int spanStart = mSpanStarts[i];
+            if (spanStart > mGapStart) {
+                spanStart -= mGapLength;
+            }
+            if (spanStart <= queryEnd) {
+                int spanEnd = mSpanEnds[i];
+                if (spanEnd > mGapStart) {
+                    spanEnd -= mGapLength;
+                }
+                if (spanEnd >= queryStart &&
+                    (spanStart == spanEnd || queryStart == queryEnd ||
+                        (spanStart != queryEnd && spanEnd != queryStart)) &&
+                        (Object.class == kind || kind.isInstance(mSpans[i]))) {
+                    visitor.accept((T) mSpans[i]);
+                    count++;
+                }
+                if ((i & 1) != 0) {
+                    count += forEachSpanRec(queryStart, queryEnd, kind, rightChild(i), visitor);
+                }
+            }
+        }
+        return count;
+    }
+
     private int countSpans(int queryStart, int queryEnd, Class kind, int i) {
         int count = 0;
         if ((i & 1) != 0) {
@@ -107,6 +107,7 @@ public class StaticLayout extends Layout {
             b.mMeasuredText = null;
             b.mLeftIndents = null;
             b.mRightIndents = null;
+            b.mLineBreakKey.clear();
             nFinishBuilder(b.mNativePtr);
             sPool.release(b);
         }
@@ -118,6 +119,7 @@ public class StaticLayout extends Layout {
             mPaint = null;
             mLeftIndents = null;
             mRightIndents = null;
+            mLineBreakKey.clear();
             mMeasuredText.finish();
         }
 
@@ -390,6 +392,20 @@ public class StaticLayout extends Layout {
             return result;
         }
 
+        /**
+         * Measure and break the text without keeping the resulting layout, so that building
+         * an identical {@link StaticLayout} later can reuse the line breaking results.
+         *
+         * <p>This may be called from a background thread, for example to prepare the rows of
+         * a list before they are scrolled into view. The same restrictions as for
+         * {@link #build} apply to the builder afterwards.
+         *
+         * @hide
+         */
+        public void precompute() {
+            build();
+        }
+
         @Override
         protected void finalize() throws Throwable {
             try {
@@ -425,6 +441,9 @@ public class StaticLayout extends Layout {
         // This will go away and be subsumed by native builder code
         MeasuredText mMeasuredText;
 
+        // Reusable probe for LineBreakCache lookups.
+        final LineBreakCache.Key mLineBreakKey = new LineBreakCache.Key();
+
         Locale mLocale;
 
         private static final SynchronizedPool<Builder> sPool = new SynchronizedPool<Builder>(3);
@@ -690,77 +709,118 @@ public class StaticLayout extends Layout {
                 }
             }
 
-            nSetupParagraph(b.mNativePtr, chs, paraEnd - paraStart,
-                    firstWidth, firstWidthLineCount, restWidth,
-                    variableTabStops, TAB_INCREMENT, b.mBreakStrategy, b.mHyphenationFrequency,
-                    // TODO: Support more justification mode, e.g. letter spacing, stretching.
-                    b.mJustificationMode != Layout.JUSTIFICATION_MODE_NONE);
-            if (mLeftIndents != null || mRightIndents != null) {
-                // TODO(raph) performance: it would be better to do this once per layout rather
-                // than once per paragraph, but that would require a change to the native
-                // interface.
-                int leftLen = mLeftIndents == null ? 0 : mLeftIndents.length;
-                int rightLen = mRightIndents == null ? 0 : mRightIndents.length;
-                int indentsLen = Math.max(1, Math.max(leftLen, rightLen) - mLineCount);
-                int[] indents = new int[indentsLen];
-                for (int i = 0; i < indentsLen; i++) {
-                    int leftMargin = mLeftIndents == null ? 0 :
-                            mLeftIndents[Math.min(i + mLineCount, leftLen - 1)];
-                    int rightMargin = mRightIndents == null ? 0 :
-                            mRightIndents[Math.min(i + mLineCount, rightLen - 1)];
-                    indents[i] = leftMargin + rightMargin;
-                }
-                nSetIndents(b.mNativePtr, indents);
+            // Paragraphs without spans, tab stops or indents only depend on their characters and
+            // the layout parameters, so their measurement and line breaks can be reused.
+            final boolean cacheable = spanned == null
+                    && mLeftIndents == null && mRightIndents == null
+                    && LineBreakCache.isCacheable(paint, paraEnd - paraStart);
+            LineBreakCache.Entry cached = null;
+            if (cacheable) {
+                b.mLineBreakKey.set(chs, paraEnd - paraStart, paint, textDir, outerWidth,
+                        b.mBreakStrategy, b.mHyphenationFrequency,
+                        b.mJustificationMode != Layout.JUSTIFICATION_MODE_NONE);
+                cached = LineBreakCache.get(b.mLineBreakKey);
             }
 
-            // measurement has to be done before performing line breaking
-            // but we don't want to recompute fontmetrics or span ranges the
-            // second time, so we cache those and then use those stored values
-            int fmCacheCount = 0;
-            int spanEndCacheCount = 0;
-            for (int spanStart = paraStart, spanEnd; spanStart < paraEnd; spanStart = spanEnd) {
-                if (fmCacheCount * 4 >= fmCache.length) {
-                    int[] grow = new int[fmCacheCount * 4 * 2];
-                    System.arraycopy(fmCache, 0, grow, 0, fmCacheCount * 4);
-                    fmCache = grow;
+            int breakCount;
+            if (cached != null) {
+                System.arraycopy(cached.widths, 0, widths, 0, paraEnd - paraStart);
+                // the order of storage here (top, bottom, ascent, descent) has to match the
+                // code below where these values are retrieved
+                fmCache[0] = cached.fmTop;
+                fmCache[1] = cached.fmBottom;
+                fmCache[2] = cached.fmAscent;
+                fmCache[3] = cached.fmDescent;
+                spanEndCache[0] = paraEnd;
+
+                breakCount = cached.breakCount;
+                if (lineBreaks.breaks.length < breakCount) {
+                    lineBreaks.breaks = new int[breakCount];
+                    lineBreaks.widths = new float[breakCount];
+                    lineBreaks.flags = new int[breakCount];
                 }
-
-                if (spanEndCacheCount >= spanEndCache.length) {
-                    int[] grow = new int[spanEndCacheCount * 2];
-                    System.arraycopy(spanEndCache, 0, grow, 0, spanEndCacheCount);
-                    spanEndCache = grow;
+                System.arraycopy(cached.breaks, 0, lineBreaks.breaks, 0, breakCount);
+                System.arraycopy(cached.lineWidths, 0, lineBreaks.widths, 0, breakCount);
+                System.arraycopy(cached.flags, 0, lineBreaks.flags, 0, breakCount);
+            } else {
+                nSetupParagraph(b.mNativePtr, chs, paraEnd - paraStart,
+                        firstWidth, firstWidthLineCount, restWidth,
+                        variableTabStops, TAB_INCREMENT, b.mBreakStrategy, b.mHyphenationFrequency,
+                        // TODO: Support more justification mode, e.g. letter spacing, stretching.
+                        b.mJustificationMode != Layout.JUSTIFICATION_MODE_NONE);
+                if (mLeftIndents != null || mRightIndents != null) {
+                    // TODO(raph) performance: it would be better to do this once per layout rather
+                    // than once per paragraph, but that would require a change to the native
+                    // interface.
+                    int leftLen = mLeftIndents == null ? 0 : mLeftIndents.length;
+                    int rightLen = mRightIndents == null ? 0 : mRightIndents.length;
+                    int indentsLen = Math.max(1, Math.max(leftLen, rightLen) - mLineCount);
+                    int[] indents = new int[indentsLen];
+                    for (int i = 0; i < indentsLen; i++) {
+                        int leftMargin = mLeftIndents == null ? 0 :
+                                mLeftIndents[Math.min(i + mLineCount, leftLen - 1)];
+                        int rightMargin = mRightIndents == null ? 0 :
+                                mRightIndents[Math.min(i + mLineCount, rightLen - 1)];
+                        indents[i] = leftMargin + rightMargin;
+                    }
+                    nSetIndents(b.mNativePtr, indents);
                 }
 
-                if (spanned == null) {
-                    spanEnd = paraEnd;
-                    int spanLen = spanEnd - spanStart;
-                    measured.addStyleRun(paint, spanLen, fm);
-                } else {
-                    spanEnd = spanned.nextSpanTransition(spanStart, paraEnd,
-                            MetricAffectingSpan.class);
-                    int spanLen = spanEnd - spanStart;
-                    MetricAffectingSpan[] spans =
-                            spanned.getSpans(spanStart, spanEnd, MetricAffectingSpan.class);
-                    spans = TextUtils.removeEmptySpans(spans, spanned, MetricAffectingSpan.class);
-                    measured.addStyleRun(paint, spans, spanLen, fm);
+                // measurement has to be done before performing line breaking
+                // but we don't want to recompute fontmetrics or span ranges the
+                // second time, so we cache those and then use those stored values
+                int fmCacheCount = 0;
+                int spanEndCacheCount = 0;
+                for (int spanStart = paraStart, spanEnd; spanStart < paraEnd; spanStart = spanEnd) {
+                    if (fmCacheCount * 4 >= fmCache.length) {
+                        int[] grow = new int[fmCacheCount * 4 * 2];
+                        System.arraycopy(fmCache, 0, grow, 0, fmCacheCount * 4);
+                        fmCache = grow;
+                    }
+
+                    if (spanEndCacheCount >= spanEndCache.length) {
+                        int[] grow = new int[spanEndCacheCount * 2];
+                        System.arraycopy(spanEndCache, 0, grow, 0, spanEndCacheCount);
+                        spanEndCache = grow;
+                    }
+
+                    if (spanned == null) {
+                        spanEnd = paraEnd;
+                        int spanLen = spanEnd - spanStart;
+                        measured.addStyleRun(paint, spanLen, fm);
+                    } else {
+                        spanEnd = spanned.nextSpanTransition(spanStart, paraEnd,
+                                MetricAffectingSpan.class);
+                        int spanLen = spanEnd - spanStart;
+                        MetricAffectingSpan[] spans =
+                                spanned.getSpans(spanStart, spanEnd, MetricAffectingSpan.class);
+                        spans = TextUtils.removeEmptySpans(spans, spanned,
+                                MetricAffectingSpan.class);
+                        measured.addStyleRun(paint, spans, spanLen, fm);
+                    }
+
+                    // the order of storage here (top, bottom, ascent, descent) has to match the
+                    // code below where these values are retrieved
+                    fmCache[fmCacheCount * 4 + 0] = fm.top;
+                    fmCache[fmCacheCount * 4 + 1] = fm.bottom;
+                    fmCache[fmCacheCount * 4 + 2] = fm.ascent;
+                    fmCache[fmCacheCount * 4 + 3] = fm.descent;
+                    fmCacheCount++;
+
+                    spanEndCache[spanEndCacheCount] = spanEnd;
+                    spanEndCacheCount++;
                 }
 
-                // the order of storage here (top, bottom, ascent, descent) has to match the code below
-                // where these values are retrieved
-                fmCache[fmCacheCount * 4 + 0] = fm.top;
-                fmCache[fmCacheCount * 4 + 1] = fm.bottom;
-                fmCache[fmCacheCount * 4 + 2] = fm.ascent;
-                fmCache[fmCacheCount * 4 + 3] = fm.descent;
-                fmCacheCount++;
+                nGetWidths(b.mNativePtr, widths);
+                breakCount = nComputeLineBreaks(b.mNativePtr, lineBreaks, lineBreaks.breaks,
+                        lineBreaks.widths, lineBreaks.flags, lineBreaks.breaks.length);
 
-                spanEndCache[spanEndCacheCount] = spanEnd;
-                spanEndCacheCount++;
+                if (cacheable) {
+                    LineBreakCache.put(b.mLineBreakKey, widths, fm, breakCount, lineBreaks.breaks,
+                            lineBreaks.widths, lineBreaks.flags);
+                }
             }
 
-            nGetWidths(b.mNativePtr, widths);
-            int breakCount = nComputeLineBreaks(b.mNativePtr, lineBreaks, lineBreaks.breaks,
-                    lineBreaks.widths, lineBreaks.flags, lineBreaks.breaks.length);
-
             int[] breaks = lineBreaks.breaks;
             float[] lineWidths = lineBreaks.widths;
             int[] flags = lineBreaks.flags;
@@ -19,6 +19,8 @@ package android.util.proto;
 import android.annotation.TestApi;
 import android.util.Log;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 
 /**
@@ -37,6 +39,16 @@ import java.util.ArrayList;
 public final class EncodedBuffer {
     private static final String TAG = "EncodedBuffer";
 
+    private static final int DEFAULT_CHUNK_SIZE = 8 * 1024;
+
+    /**
+     * Chunks of the default size given back by {@link #reset}, shared by all buffers so that
+     * streaming output does not keep allocating new ones.
+     */
+    private static final int MAX_POOLED_CHUNKS = 32;
+    private static final byte[][] sChunkPool = new byte[MAX_POOLED_CHUNKS][];
+    private static int sChunkPoolSize;
+
     private final ArrayList<byte[]> mBuffers = new ArrayList<byte[]>();
 
     private final int mChunkSize;
@@ -103,10 +115,10 @@ public final class EncodedBuffer {
      */
     public EncodedBuffer(int chunkSize) {
         if (chunkSize <= 0) {
-            chunkSize = 8 * 1024;
+            chunkSize = DEFAULT_CHUNK_SIZE;
         }
         mChunkSize = chunkSize;
-        mWriteBuffer = new byte[mChunkSize];
+        mWriteBuffer = obtainChunk();
         mBuffers.add(mWriteBuffer);
         mBufferCount = 1;
     }
@@ -131,6 +143,50 @@ public final class EncodedBuffer {
         mReadIndex = 0;
     }
 
+    /**
+     * Discard all the data, keeping only the first chunk for reuse. The other chunks go back
+     * to the pool for this or another buffer to write to.
+     */
+    public void reset() {
+        for (int i = mBufferCount - 1; i > 0; i--) {
+            releaseChunk(mBuffers.remove(i));
+        }
+        mBufferCount = 1;
+
+        mWriteBuffer = mBuffers.get(0);
+        mWriteIndex = 0;
+        mWriteBufIndex = 0;
+
+        mReadBuffer = null;
+        mReadBufIndex = 0;
+        mReadIndex = 0;
+        mReadLimit = -1;
+        mReadableSize = -1;
+    }
+
+    private byte[] obtainChunk() {
+        if (mChunkSize == DEFAULT_CHUNK_SIZE) {
+            synchronized (sChunkPool) {
+                if (sChunkPoolSize > 0) {
+                    final byte[] chunk = sChunkPool[--sChunkPoolSize];
+                    sChunkPool[sChunkPoolSize] = null;
+                    return chunk;
+                }
+            }
+        }
+        return new byte[mChunkSize];
+    }
+
+    private void releaseChunk(byte[] chunk) {
+        if (chunk.length == DEFAULT_CHUNK_SIZE) {
+            synchronized (sChunkPool) {
+                if (sChunkPoolSize < MAX_POOLED_CHUNKS) {
+                    sChunkPool[sChunkPoolSize++] = chunk;
+                }
+            }
+        }
+    }
+
     /**
      * Rewind the read pointer. Don't touch the write pointer.
      */
@@ -248,7 +304,7 @@ public final class EncodedBuffer {
     private void nextWriteBuffer() {
         mWriteBufIndex++;
         if (mWriteBufIndex >= mBufferCount) {
-            mWriteBuffer = new byte[mChunkSize];
+            mWriteBuffer = obtainChunk();
             mBuffers.add(mWriteBuffer);
             mBufferCount++;
         } else {
@@ -583,6 +639,17 @@ public final class EncodedBuffer {
         return result;
     }
 
+    /**
+     * Write the first size bytes to the stream, straight from the chunks.
+     */
+    public void writeTo(OutputStream stream, int size) throws IOException {
+        for (int bufIndex = 0; size > 0; bufIndex++) {
+            final int amt = Math.min(size, mChunkSize);
+            stream.write(mBuffers.get(bufIndex), 0, amt);
+            size -= amt;
+        }
+    }
+
     /**
      * Get the number of chunks allocated.
      */
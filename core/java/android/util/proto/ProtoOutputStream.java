@@ -176,6 +176,12 @@ public final class ProtoOutputStream {
     public static final long FIELD_COUNT_REPEATED = 2L << FIELD_COUNT_SHIFT;
     public static final long FIELD_COUNT_PACKED = 5L << FIELD_COUNT_SHIFT;
 
+    /**
+     * When streaming objects, completed top-level objects are written out once at least
+     * this much data is buffered, so the whole output is never held in memory at once.
+     */
+    private static final int STREAM_WRITE_THRESHOLD = 32 * 1024;
+
     /**
      * Our buffer.
      */
@@ -186,6 +192,11 @@ public final class ProtoOutputStream {
      */
     private OutputStream mStream;
 
+    /**
+     * Whether completed top-level objects are written to mStream before flush().
+     */
+    private boolean mStreamObjects;
+
     /**
      * Current nesting depth of startObject calls.
      */
@@ -242,8 +253,22 @@ public final class ProtoOutputStream {
      * points within the writing as well.
      */
     public ProtoOutputStream(OutputStream stream) {
+        this(stream, false);
+    }
+
+    /**
+     * Construct a ProtoOutputStream that sits on top of an OutputStream.
+     * @more
+     * The {@link #flush() flush()} method must be called when done writing
+     * to flush any remanining data. If streamObjects is true, top-level objects
+     * are also written out as they are completed, whenever enough data has been
+     * buffered, so the stream may block inside endObject(). Only pass true when
+     * no locks are held while writing.
+     */
+    public ProtoOutputStream(OutputStream stream, boolean streamObjects) {
         this();
         mStream = stream;
+        mStreamObjects = streamObjects;
     }
 
     /**
@@ -257,6 +282,14 @@ public final class ProtoOutputStream {
         this(new FileOutputStream(fd));
     }
 
+    /**
+     * Construct a ProtoOutputStream that sits on top of a FileDescriptor.
+     * @see #ProtoOutputStream(OutputStream, boolean)
+     */
+    public ProtoOutputStream(FileDescriptor fd, boolean streamObjects) {
+        this(new FileOutputStream(fd), streamObjects);
+    }
+
     /**
      * Write a value for the given fieldId.
      *
@@ -2207,6 +2240,11 @@ public final class ProtoOutputStream {
             // The object has no data.  Don't include it.
             mBuffer.rewindWriteTo(sizePos - getTagSizeFromToken(token));
         }
+
+        if (mDepth == 0 && mStreamObjects
+                && mBuffer.getWritePos() >= STREAM_WRITE_THRESHOLD) {
+            writeToStream();
+        }
     }
 
     /**
@@ -2419,8 +2457,6 @@ public final class ProtoOutputStream {
 
     /**
      * Assert that the compact call has not already occured.
-     *
-     * TODO: Will change when we add the OutputStream version of ProtoOutputStream.
      */
     private void assertNotCompacted() {
         if (mCompacted) {
@@ -2612,7 +2648,7 @@ public final class ProtoOutputStream {
      * have not had endObject called for them will not be written).  Whether this
      * writes objects that are closed if there are remaining open objects is
      * undefined (current implementation does not write it, future ones will).
-     * For now, can either call getBytes() or flush(), but not both.
+     * Writing may continue after a flush. Either call getBytes() or flush(), but not both.
      */
     public void flush() {
         if (mStream == null) {
@@ -2624,19 +2660,33 @@ public final class ProtoOutputStream {
             return;
         }
         if (mCompacted) {
-            // If we're compacted, we already wrote it finished.
+            // If we're compacted, getBytes() already took the data.
             return;
         }
-        compactIfNecessary();
-        final byte[] data = mBuffer.getBytes(mBuffer.getReadableSize());
+        writeToStream();
         try {
-            mStream.write(data);
             mStream.flush();
         } catch (IOException ex) {
             throw new RuntimeException("Error flushing proto to stream", ex);
         }
     }
 
+    /**
+     * Compact the buffered data, which must have no open objects, write it to the stream
+     * straight from the buffer's chunks, and start over with an empty buffer.
+     */
+    private void writeToStream() {
+        compactIfNecessary();
+        try {
+            mBuffer.writeTo(mStream, mBuffer.getReadableSize());
+        } catch (IOException ex) {
+            throw new RuntimeException("Error flushing proto to stream", ex);
+        }
+        mBuffer.reset();
+        mCopyBegin = 0;
+        mCompacted = false;
+    }
+
     /**
      * Read a raw tag from the buffer.
      */
@@ -36,6 +36,7 @@ public final class BackgroundThread extends HandlerThread {
             sInstance = new BackgroundThread();
             sInstance.start();
             sInstance.getLooper().setTraceTag(Trace.TRACE_TAG_ACTIVITY_MANAGER);
+            sInstance.getLooper().getQueue().setDeadlineSchedulingEnabled(true);
             sHandler = new Handler(sInstance.getLooper());
         }
     }
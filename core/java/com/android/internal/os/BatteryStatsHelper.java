@@ -127,6 +127,20 @@ public class BatteryStatsHelper {
     private double mMinDrainedPower;
     private double mMaxDrainedPower;
 
+    // Whether refreshStats() may keep the sippers of the last refresh, see
+    // setReuseUnchangedRefresh().
+    private boolean mReuseUnchangedRefresh;
+
+    // The inputs of the last full refresh. The sippers are only computed from counters that
+    // accumulate while on battery, so while the device is plugged in and these are unchanged,
+    // recomputing them would produce the same result.
+    private BatteryStats mRefreshedStats;
+    private int mRefreshedStatsType = -1;
+    private long mRefreshedTypeBatteryRealtimeUs;
+    private long mRefreshedTypeBatteryUptimeUs;
+    private int mRefreshedUidCount;
+    private int[] mRefreshedUsers;
+
     PowerCalculator mCpuPowerCalculator;
     PowerCalculator mWakelockPowerCalculator;
     MobileRadioPowerCalculator mMobileRadioPowerCalculator;
@@ -267,6 +281,18 @@ public class BatteryStatsHelper {
         return mPowerProfile;
     }
 
+    /**
+     * Sets whether {@link #refreshStats} may keep the sippers of the last refresh when nothing
+     * they are computed from can have changed. Off by default, as callers may modify the
+     * returned sippers or expect new ones on every refresh.
+     */
+    public void setReuseUnchangedRefresh(boolean reuse) {
+        mReuseUnchangedRefresh = reuse;
+        if (!reuse) {
+            mRefreshedStats = null;
+        }
+    }
+
     public void create(BatteryStats stats) {
         mPowerProfile = new PowerProfile(mContext);
         mStats = stats;
@@ -350,6 +376,17 @@ public class BatteryStatsHelper {
         // Initialize mStats if necessary.
         getStats();
 
+        if (isRefreshCurrent(statsType, asUsers, rawRealtimeUs, rawUptimeUs)) {
+            mRawUptimeUs = rawUptimeUs;
+            mRawRealtimeUs = rawRealtimeUs;
+            mBatteryUptimeUs = mStats.getBatteryUptime(rawUptimeUs);
+            mBatteryRealtimeUs = mStats.getBatteryRealtime(rawRealtimeUs);
+            mBatteryTimeRemainingUs = mStats.computeBatteryTimeRemaining(rawRealtimeUs);
+            mChargeTimeRemainingUs = mStats.computeChargeTimeRemaining(rawRealtimeUs);
+            return;
+        }
+        mRefreshedStats = null;
+
         mMaxPower = 0;
         mMaxRealPower = 0;
         mComputedPower = 0;
@@ -533,6 +570,50 @@ public class BatteryStatsHelper {
                 }
             }
         }
+
+        mRefreshedStats = mStats;
+        mRefreshedStatsType = statsType;
+        mRefreshedTypeBatteryRealtimeUs = mTypeBatteryRealtimeUs;
+        mRefreshedTypeBatteryUptimeUs = mTypeBatteryUptimeUs;
+        mRefreshedUidCount = mStats.getUidStats().size();
+        mRefreshedUsers = new int[asUsers.size()];
+        for (int i = 0; i < mRefreshedUsers.length; i++) {
+            mRefreshedUsers[i] = asUsers.keyAt(i);
+        }
+    }
+
+    /**
+     * Returns whether the sippers of the last refresh are still what refreshing with the given
+     * arguments would compute.
+     */
+    private boolean isRefreshCurrent(int statsType, SparseArray<UserHandle> asUsers,
+            long rawRealtimeUs, long rawUptimeUs) {
+        if (!mReuseUnchangedRefresh || mStats == null || mStats != mRefreshedStats
+                || statsType != mRefreshedStatsType || mStats.getIsOnBattery()) {
+            return false;
+        }
+        if (mStats.computeBatteryRealtime(rawRealtimeUs, statsType)
+                != mRefreshedTypeBatteryRealtimeUs
+                || mStats.computeBatteryUptime(rawUptimeUs, statsType)
+                != mRefreshedTypeBatteryUptimeUs
+                || mStats.getUidStats().size() != mRefreshedUidCount) {
+            return false;
+        }
+        // Energy reporting can start late, which changes how wifi and bluetooth are computed.
+        if (checkHasWifiPowerReporting(mStats, mPowerProfile) != mHasWifiPowerReporting
+                || checkHasBluetoothPowerReporting(mStats, mPowerProfile)
+                != mHasBluetoothPowerReporting) {
+            return false;
+        }
+        if (asUsers.size() != mRefreshedUsers.length) {
+            return false;
+        }
+        for (int i = 0; i < mRefreshedUsers.length; i++) {
+            if (asUsers.keyAt(i) != mRefreshedUsers[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private void processAppUsage(SparseArray<UserHandle> asUsers) {
@@ -8809,7 +8809,7 @@ public class BatteryStatsImpl extends BatteryStats {
                 XmlSerializer out = new FastXmlSerializer();
                 out.setOutput(memStream, StandardCharsets.UTF_8.name());
                 writeDailyItemsLocked(out);
-                BackgroundThread.getHandler().post(new Runnable() {
+                BackgroundThread.getHandler().postInLane(new Runnable() {
                     @Override
                     public void run() {
                         synchronized (mCheckinFile) {
@@ -8828,7 +8828,7 @@ public class BatteryStatsImpl extends BatteryStats {
                             }
                         }
                     }
-                });
+                }, Message.LANE_BACKGROUND);
             } catch (IOException e) {
             }
         }
@@ -10423,7 +10423,7 @@ public class BatteryStatsImpl extends BatteryStats {
                 if (getLowDischargeAmountSinceCharge() >= 20) {
                     final Parcel parcel = Parcel.obtain();
                     writeSummaryToParcel(parcel, true);
-                    BackgroundThread.getHandler().post(new Runnable() {
+                    BackgroundThread.getHandler().postInLane(new Runnable() {
                         @Override public void run() {
                             synchronized (mCheckinFile) {
                                 FileOutputStream stream = null;
@@ -10443,7 +10443,7 @@ public class BatteryStatsImpl extends BatteryStats {
                                 }
                             }
                         }
-                    });
+                    }, Message.LANE_BACKGROUND);
                 }
                 doWrite = true;
                 resetAllStatsLocked();
@@ -11103,11 +11103,11 @@ public class BatteryStatsImpl extends BatteryStats {
         if (sync) {
             commitPendingDataToDisk();
         } else {
-            BackgroundThread.getHandler().post(new Runnable() {
+            BackgroundThread.getHandler().postInLane(new Runnable() {
                 @Override public void run() {
                     commitPendingDataToDisk();
                 }
-            });
+            }, Message.LANE_BACKGROUND);
         }
     }
 
@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.os;
+
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.SystemClock;
+import android.util.ArrayMap;
+import android.util.SparseArray;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Comparator;
+
+/**
+ * Collects latency and parcel size statistics for the incoming binder calls of this process,
+ * per binder class and transaction code.
+ *
+ * Collection is off by default.  When enabled, each binder thread times one call out of every
+ * {@link #getSamplingInterval()}, so that the cost of the bookkeeping stays small even for the
+ * busiest interfaces.  Transaction codes are mapped back to AIDL method names only when the
+ * statistics are dumped.
+ */
+public class BinderCallsStats {
+    /** Number of buckets in {@link CallStat#latencyHistogram}. */
+    public static final int LATENCY_BUCKET_COUNT = 14;
+
+    /** Number of buckets in {@link CallStat#sizeHistogram}. */
+    public static final int SIZE_BUCKET_COUNT = 12;
+
+    private static final int DEFAULT_SAMPLING_INTERVAL = 16;
+
+    private static final BinderCallsStats sInstance = new BinderCallsStats();
+
+    private volatile boolean mEnabled;
+    private volatile int mSamplingInterval = DEFAULT_SAMPLING_INTERVAL;
+
+    private final Object mLock = new Object();
+
+    @GuardedBy("mLock")
+    private final ArrayMap<Class<? extends Binder>, SparseArray<CallStat>> mStats =
+            new ArrayMap<>();
+
+    @GuardedBy("mLock")
+    private long mStartTimeMillis = SystemClock.elapsedRealtime();
+
+    private final ThreadLocal<CallSession> mCallSession = new ThreadLocal<CallSession>() {
+        @Override
+        protected CallSession initialValue() {
+            return new CallSession();
+        }
+    };
+
+    @VisibleForTesting
+    public BinderCallsStats() {
+    }
+
+    public static BinderCallsStats getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Called by {@link Binder} before dispatching an incoming call.
+     *
+     * @return the session to pass to {@link #callEnded}, or null if the call is not sampled.
+     */
+    public CallSession callStarted(Binder binder, int code) {
+        if (!mEnabled) {
+            return null;
+        }
+        final CallSession s = mCallSession.get();
+        // A call nested inside one that is being timed is left out rather than reusing the
+        // session of the outer call.
+        if (s.binderClass != null || ++s.callsSinceSample < mSamplingInterval) {
+            return null;
+        }
+        s.callsSinceSample = 0;
+        s.binderClass = binder.getClass();
+        s.code = code;
+        s.startTimeNanos = System.nanoTime();
+        return s;
+    }
+
+    /**
+     * Called by {@link Binder} after a sampled call has been dispatched.
+     */
+    public void callEnded(CallSession s, int requestSize, int replySize) {
+        final long latencyMicros = (System.nanoTime() - s.startTimeNanos) / 1000;
+        synchronized (mLock) {
+            SparseArray<CallStat> codes = mStats.get(s.binderClass);
+            if (codes == null) {
+                codes = new SparseArray<>();
+                mStats.put(s.binderClass, codes);
+            }
+            CallStat stat = codes.get(s.code);
+            if (stat == null) {
+                stat = new CallStat(s.binderClass, s.code);
+                codes.put(s.code, stat);
+            }
+            stat.add(latencyMicros, requestSize, replySize);
+        }
+        s.binderClass = null;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public int getSamplingInterval() {
+        return mSamplingInterval;
+    }
+
+    /**
+     * Sets how many calls each binder thread dispatches for every call it times.  An interval
+     * of 1 times every call.
+     */
+    public void setSamplingInterval(int samplingInterval) {
+        if (samplingInterval < 1) {
+            throw new IllegalArgumentException("Sampling interval must be at least 1");
+        }
+        mSamplingInterval = samplingInterval;
+    }
+
+    public void reset() {
+        synchronized (mLock) {
+            mStats.clear();
+            mStartTimeMillis = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * Returns a copy of the statistics collected so far, slowest total latency first.
+     */
+    public ArrayList<CallStat> getCallStats() {
+        final ArrayList<CallStat> result = new ArrayList<>();
+        synchronized (mLock) {
+            for (int i = 0; i < mStats.size(); i++) {
+                final SparseArray<CallStat> codes = mStats.valueAt(i);
+                for (int j = 0; j < codes.size(); j++) {
+                    result.add(codes.valueAt(j).copy());
+                }
+            }
+        }
+        result.sort(Comparator.comparingLong((CallStat stat) -> stat.totalLatencyMicros)
+                .reversed());
+        return result;
+    }
+
+    public void dump(PrintWriter pw, boolean verbose) {
+        final long sinceMillis;
+        synchronized (mLock) {
+            sinceMillis = SystemClock.elapsedRealtime() - mStartTimeMillis;
+        }
+        final int interval = mSamplingInterval;
+        pw.println("Binder call stats: " + (mEnabled ? "enabled" : "disabled")
+                + ", sampling 1 in " + interval + " calls per thread, collected over "
+                + sinceMillis / 1000 + "s");
+        pw.println("  Sampled calls are timed from dispatch to return; estimated calls are"
+                + " sampled calls times the sampling interval.");
+
+        final ArrayList<CallStat> stats = getCallStats();
+        final ArrayMap<Class<?>, ArrayMap<Integer, String>> names = new ArrayMap<>();
+        for (int i = 0; i < stats.size(); i++) {
+            final CallStat stat = stats.get(i);
+            pw.print("  ");
+            pw.print(stat.binderClass.getName());
+            pw.print('#');
+            pw.print(getMethodName(names, stat.binderClass, stat.code));
+            pw.print(": sampled=");
+            pw.print(stat.callCount);
+            pw.print(" estimated=");
+            pw.print(stat.callCount * interval);
+            pw.print(" latency(us) avg=");
+            pw.print(stat.totalLatencyMicros / stat.callCount);
+            pw.print(" max=");
+            pw.print(stat.maxLatencyMicros);
+            pw.print(" request(bytes) avg=");
+            pw.print(stat.totalRequestBytes / stat.callCount);
+            pw.print(" reply(bytes) avg=");
+            pw.print(stat.totalReplyBytes / stat.callCount);
+            pw.print(" max=");
+            pw.println(stat.maxReplyBytes);
+            if (verbose) {
+                pw.print("    latency:");
+                for (int b = 0; b < LATENCY_BUCKET_COUNT; b++) {
+                    if (stat.latencyHistogram[b] != 0) {
+                        pw.print(' ');
+                        pw.print(getLatencyBucketLabel(b));
+                        pw.print('=');
+                        pw.print(stat.latencyHistogram[b]);
+                    }
+                }
+                pw.println();
+                pw.print("    request+reply size:");
+                for (int b = 0; b < SIZE_BUCKET_COUNT; b++) {
+                    if (stat.sizeHistogram[b] != 0) {
+                        pw.print(' ');
+                        pw.print(getSizeBucketLabel(b));
+                        pw.print('=');
+                        pw.print(stat.sizeHistogram[b]);
+                    }
+                }
+                pw.println();
+            }
+        }
+    }
+
+    /**
+     * Returns the bucket of {@link CallStat#latencyHistogram} for the given latency.  Bucket 0
+     * counts calls under 64us, and each following bucket covers twice the range of the one
+     * before it.
+     */
+    public static int getLatencyBucket(long latencyMicros) {
+        final int bucket = 64 - Long.numberOfLeadingZeros(latencyMicros >> 6);
+        return Math.min(bucket, LATENCY_BUCKET_COUNT - 1);
+    }
+
+    public static String getLatencyBucketLabel(int bucket) {
+        return getBucketLabel(bucket, LATENCY_BUCKET_COUNT, 6, "us");
+    }
+
+    /**
+     * Returns the bucket of {@link CallStat#sizeHistogram} for the given number of bytes.
+     * Bucket 0 counts calls under 256 bytes, and each following bucket covers twice the range
+     * of the one before it.
+     */
+    public static int getSizeBucket(long bytes) {
+        final int bucket = 64 - Long.numberOfLeadingZeros(bytes >> 8);
+        return Math.min(bucket, SIZE_BUCKET_COUNT - 1);
+    }
+
+    public static String getSizeBucketLabel(int bucket) {
+        return getBucketLabel(bucket, SIZE_BUCKET_COUNT, 8, "B");
+    }
+
+    private static String getBucketLabel(int bucket, int bucketCount, int shift, String unit) {
+        if (bucket == 0) {
+            return "<" + (1L << shift) + unit;
+        }
+        final long low = 1L << (bucket + shift - 1);
+        if (bucket == bucketCount - 1) {
+            return ">=" + low + unit;
+        }
+        return low + "-" + ((1L << (bucket + shift)) - 1) + unit;
+    }
+
+    private static String getMethodName(ArrayMap<Class<?>, ArrayMap<Integer, String>> cache,
+            Class<?> binderClass, int code) {
+        ArrayMap<Integer, String> names = cache.get(binderClass);
+        if (names == null) {
+            names = getTransactionNames(binderClass);
+            cache.put(binderClass, names);
+        }
+        final String name = names.get(code);
+        return name != null ? name : Integer.toString(code);
+    }
+
+    /**
+     * Maps the transaction codes of a binder class to method names, using the TRANSACTION_
+     * constants that AIDL generates in each Stub and the *_TRANSACTION constants of hand
+     * written interfaces.
+     */
+    @VisibleForTesting
+    public static ArrayMap<Integer, String> getTransactionNames(Class<?> binderClass) {
+        final ArrayMap<Integer, String> names = new ArrayMap<>();
+        for (Class<?> c = binderClass; c != null && c != Binder.class; c = c.getSuperclass()) {
+            addTransactionNames(names, c);
+            for (Class<?> i : c.getInterfaces()) {
+                addTransactionNames(names, i);
+            }
+        }
+        addTransactionNames(names, IBinder.class);
+        return names;
+    }
+
+    private static void addTransactionNames(ArrayMap<Integer, String> names, Class<?> c) {
+        final Field[] fields;
+        try {
+            fields = c.getDeclaredFields();
+        } catch (SecurityException | LinkageError e) {
+            return;
+        }
+        for (Field field : fields) {
+            final int modifiers = field.getModifiers();
+            if (field.getType() != int.class || !Modifier.isStatic(modifiers)
+                    || !Modifier.isFinal(modifiers)) {
+                continue;
+            }
+            String name = field.getName();
+            if (name.startsWith("TRANSACTION_")) {
+                name = name.substring("TRANSACTION_".length());
+            } else if (!name.endsWith("_TRANSACTION") || name.equals("FIRST_CALL_TRANSACTION")
+                    || name.equals("LAST_CALL_TRANSACTION")) {
+                continue;
+            }
+            try {
+                field.setAccessible(true);
+                final Integer code = field.getInt(null);
+                if (!names.containsKey(code)) {
+                    names.put(code, name);
+                }
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Leave the code unnamed.
+            }
+        }
+    }
+
+    /**
+     * The state of the call being timed on one binder thread.
+     */
+    public static final class CallSession {
+        int callsSinceSample;
+        Class<? extends Binder> binderClass;
+        int code;
+        long startTimeNanos;
+
+        private CallSession() {
+        }
+    }
+
+    /**
+     * Statistics for the sampled calls to one transaction code of one binder class.
+     */
+    public static final class CallStat {
+        public final Class<? extends Binder> binderClass;
+        public final int code;
+        public long callCount;
+        public long totalLatencyMicros;
+        public long maxLatencyMicros;
+        public long totalRequestBytes;
+        public long totalReplyBytes;
+        public long maxReplyBytes;
+        /** Calls counted by latency, see {@link #getLatencyBucket(long)}. */
+        public final long[] latencyHistogram = new long[LATENCY_BUCKET_COUNT];
+        /** Calls counted by request plus reply size, see {@link #getSizeBucket(long)}. */
+        public final long[] sizeHistogram = new long[SIZE_BUCKET_COUNT];
+
+        CallStat(Class<? extends Binder> binderClass, int code) {
+            this.binderClass = binderClass;
+            this.code = code;
+        }
+
+        void add(long latencyMicros, int requestSize, int replySize) {
+            callCount++;
+            totalLatencyMicros += latencyMicros;
+            maxLatencyMicros = Math.max(maxLatencyMicros, latencyMicros);
+            totalRequestBytes += requestSize;
+            totalReplyBytes += replySize;
+            maxReplyBytes = Math.max(maxReplyBytes, replySize);
+            latencyHistogram[getLatencyBucket(latencyMicros)]++;
+            sizeHistogram[getSizeBucket(requestSize + replySize)]++;
+        }
+
+        CallStat copy() {
+            final CallStat stat = new CallStat(binderClass, code);
+            stat.callCount = callCount;
+            stat.totalLatencyMicros = totalLatencyMicros;
+            stat.maxLatencyMicros = maxLatencyMicros;
+            stat.totalRequestBytes = totalRequestBytes;
+            stat.totalReplyBytes = totalReplyBytes;
+            stat.maxReplyBytes = maxReplyBytes;
+            System.arraycopy(latencyHistogram, 0, stat.latencyHistogram, 0,
+                    LATENCY_BUCKET_COUNT);
+            System.arraycopy(sizeHistogram, 0, stat.sizeHistogram, 0, SIZE_BUCKET_COUNT);
+            return stat;
+        }
+    }
+}
@@ -18,13 +18,13 @@ package com.android.internal.os;
 
 import android.annotation.Nullable;
 import android.util.Slog;
-import android.util.SparseArray;
 
 import com.android.internal.annotations.VisibleForTesting;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 
 /**
  * Reads /proc/uid_time_in_state which has the format:
@@ -48,10 +48,31 @@ public class KernelUidCpuFreqTimeReader {
         void onUidCpuFreqTime(int uid, long[] cpuFreqTimeMs);
     }
 
+    private final KernelUidStatsReader mReader = new KernelUidStatsReader(UID_TIMES_PROC_FILE,
+            true /* hasHeader */, 0 /* valueCount: one per cpu freq */,
+            10 /* times are in units of 10ms */);
     private long[] mCpuFreqs;
-    private int mCpuFreqsCount;
+    private Callback mCallback;
 
-    private SparseArray<long[]> mLastUidCpuFreqTimeMs = new SparseArray<>();
+    private final KernelUidStatsReader.Callback mReaderCallback =
+            new KernelUidStatsReader.Callback() {
+        @Override
+        public void onHeader(long[] values) {
+            if (mCpuFreqs == null || !Arrays.equals(mCpuFreqs, values)) {
+                mCpuFreqs = values.clone();
+            }
+            if (mCallback != null) {
+                mCallback.onCpuFreqs(mCpuFreqs);
+            }
+        }
+
+        @Override
+        public void onUidDelta(int uid, long[] values, long[] deltas) {
+            if (mCallback != null) {
+                mCallback.onUidCpuFreqTime(uid, deltas);
+            }
+        }
+    };
 
     // We check the existence of proc file a few times (just in case it is not ready yet when we
     // start reading) and if it is not available, we simply ignore further read requests.
@@ -59,12 +80,17 @@ public class KernelUidCpuFreqTimeReader {
     private int mReadErrorCounter;
     private boolean mProcFileAvailable;
 
+    /**
+     * Reads the proc file, calling into the callback with the cpu freqs and then the delta of
+     * times for each UID. The array passed to {@link Callback#onUidCpuFreqTime} is reused, so
+     * it must not be kept past the call.
+     */
     public void readDelta(@Nullable Callback callback) {
         if (!mProcFileAvailable && mReadErrorCounter >= TOTAL_READ_ERROR_COUNT) {
             return;
         }
-        try (BufferedReader reader = new BufferedReader(new FileReader(UID_TIMES_PROC_FILE))) {
-            readDelta(reader, callback);
+        try (FileInputStream in = new FileInputStream(UID_TIMES_PROC_FILE)) {
+            readDelta(in, callback);
             mProcFileAvailable = true;
         } catch (IOException e) {
             mReadErrorCounter++;
@@ -73,60 +99,16 @@ public class KernelUidCpuFreqTimeReader {
     }
 
     public void removeUid(int uid) {
-        mLastUidCpuFreqTimeMs.delete(uid);
+        mReader.removeUid(uid);
     }
 
     @VisibleForTesting
-    public void readDelta(BufferedReader reader, @Nullable Callback callback) throws IOException {
-        String line = reader.readLine();
-        if (line == null) {
-            return;
-        }
-        readCpuFreqs(line, callback);
-        while ((line = reader.readLine()) != null) {
-            final int index = line.indexOf(' ');
-            final int uid = Integer.parseInt(line.substring(0, index - 1), 10);
-            readTimesForUid(uid, line.substring(index + 1, line.length()), callback);
-        }
-    }
-
-    private void readTimesForUid(int uid, String line, Callback callback) {
-        long[] uidTimeMs = mLastUidCpuFreqTimeMs.get(uid);
-        if (uidTimeMs == null) {
-            uidTimeMs = new long[mCpuFreqsCount];
-            mLastUidCpuFreqTimeMs.put(uid, uidTimeMs);
-        }
-        final String[] timesStr = line.split(" ");
-        final int size = timesStr.length;
-        if (size != uidTimeMs.length) {
-            Slog.e(TAG, "No. of readings don't match cpu freqs, readings: " + size
-                    + " cpuFreqsCount: " + uidTimeMs.length);
-            return;
-        }
-        final long[] deltaUidTimeMs = new long[size];
-        for (int i = 0; i < size; ++i) {
-            // Times read will be in units of 10ms
-            final long totalTimeMs = Long.parseLong(timesStr[i], 10) * 10;
-            deltaUidTimeMs[i] = totalTimeMs - uidTimeMs[i];
-            uidTimeMs[i] = totalTimeMs;
-        }
-        if (callback != null) {
-            callback.onUidCpuFreqTime(uid, deltaUidTimeMs);
-        }
-    }
-
-    private void readCpuFreqs(String line, Callback callback) {
-        if (mCpuFreqs == null) {
-            final String[] freqStr = line.split(" ");
-            // First item would be "uid:" which needs to be ignored
-            mCpuFreqsCount = freqStr.length - 1;
-            mCpuFreqs = new long[mCpuFreqsCount];
-            for (int i = 0; i < mCpuFreqsCount; ++i) {
-                mCpuFreqs[i] = Long.parseLong(freqStr[i + 1], 10);
-            }
-        }
-        if (callback != null) {
-            callback.onCpuFreqs(mCpuFreqs);
+    public void readDelta(InputStream in, @Nullable Callback callback) throws IOException {
+        mCallback = callback;
+        try {
+            mReader.readDelta(in, mReaderCallback);
+        } finally {
+            mCallback = null;
         }
     }
 }
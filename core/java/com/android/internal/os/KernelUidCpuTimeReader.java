@@ -17,13 +17,9 @@ package com.android.internal.os;
 
 import android.annotation.Nullable;
 import android.os.SystemClock;
-import android.text.TextUtils;
 import android.util.Slog;
-import android.util.SparseLongArray;
 import android.util.TimeUtils;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 
@@ -54,9 +50,59 @@ public class KernelUidCpuTimeReader {
         void onUidCpuTime(int uid, long userTimeUs, long systemTimeUs);
     }
 
-    private SparseLongArray mLastUserTimeUs = new SparseLongArray();
-    private SparseLongArray mLastSystemTimeUs = new SparseLongArray();
+    private final KernelUidStatsReader mReader =
+            new KernelUidStatsReader(sProcFile, false /* hasHeader */, 2, 1);
     private long mLastTimeReadUs = 0;
+    private long mNowUs;
+    private Callback mCallback;
+
+    private final KernelUidStatsReader.Callback mReaderCallback =
+            new KernelUidStatsReader.Callback() {
+        @Override
+        public void onHeader(long[] values) {
+        }
+
+        @Override
+        public void onUidDelta(int uid, long[] values, long[] deltas) {
+            // Only report if there is a callback and if this is not the first read.
+            if (mCallback == null || mLastTimeReadUs == 0) {
+                return;
+            }
+            long userTimeDeltaUs = deltas[0];
+            long systemTimeDeltaUs = deltas[1];
+            if (userTimeDeltaUs < 0 || systemTimeDeltaUs < 0) {
+                final long userTimeUs = values[0];
+                final long systemTimeUs = values[1];
+                final long timeDiffUs = mNowUs - mLastTimeReadUs;
+                StringBuilder sb = new StringBuilder("Malformed cpu data for UID=");
+                sb.append(uid).append("!\n");
+                sb.append("Time between reads: ");
+                TimeUtils.formatDuration(timeDiffUs / 1000, sb);
+                sb.append("\n");
+                sb.append("Previous times: u=");
+                TimeUtils.formatDuration((userTimeUs - userTimeDeltaUs) / 1000, sb);
+                sb.append(" s=");
+                TimeUtils.formatDuration((systemTimeUs - systemTimeDeltaUs) / 1000, sb);
+
+                sb.append("\nCurrent times: u=");
+                TimeUtils.formatDuration(userTimeUs / 1000, sb);
+                sb.append(" s=");
+                TimeUtils.formatDuration(systemTimeUs / 1000, sb);
+                sb.append("\nDelta: u=");
+                TimeUtils.formatDuration(userTimeDeltaUs / 1000, sb);
+                sb.append(" s=");
+                TimeUtils.formatDuration(systemTimeDeltaUs / 1000, sb);
+                Slog.e(TAG, sb.toString());
+
+                userTimeDeltaUs = 0;
+                systemTimeDeltaUs = 0;
+            }
+
+            if (userTimeDeltaUs != 0 || systemTimeDeltaUs != 0) {
+                mCallback.onUidCpuTime(uid, userTimeDeltaUs, systemTimeDeltaUs);
+            }
+        }
+    };
 
     /**
      * Reads the proc file, calling into the callback with a delta of time for each UID.
@@ -65,64 +111,16 @@ public class KernelUidCpuTimeReader {
      *                 a fresh delta.
      */
     public void readDelta(@Nullable Callback callback) {
-        long nowUs = SystemClock.elapsedRealtime() * 1000;
-        try (BufferedReader reader = new BufferedReader(new FileReader(sProcFile))) {
-            TextUtils.SimpleStringSplitter splitter = new TextUtils.SimpleStringSplitter(' ');
-            String line;
-            while ((line = reader.readLine()) != null) {
-                splitter.setString(line);
-                final String uidStr = splitter.next();
-                final int uid = Integer.parseInt(uidStr.substring(0, uidStr.length() - 1), 10);
-                final long userTimeUs = Long.parseLong(splitter.next(), 10);
-                final long systemTimeUs = Long.parseLong(splitter.next(), 10);
-
-                // Only report if there is a callback and if this is not the first read.
-                if (callback != null && mLastTimeReadUs != 0) {
-                    long userTimeDeltaUs = userTimeUs;
-                    long systemTimeDeltaUs = systemTimeUs;
-                    int index = mLastUserTimeUs.indexOfKey(uid);
-                    if (index >= 0) {
-                        userTimeDeltaUs -= mLastUserTimeUs.valueAt(index);
-                        systemTimeDeltaUs -= mLastSystemTimeUs.valueAt(index);
-
-                        final long timeDiffUs = nowUs - mLastTimeReadUs;
-                        if (userTimeDeltaUs < 0 || systemTimeDeltaUs < 0) {
-                            StringBuilder sb = new StringBuilder("Malformed cpu data for UID=");
-                            sb.append(uid).append("!\n");
-                            sb.append("Time between reads: ");
-                            TimeUtils.formatDuration(timeDiffUs / 1000, sb);
-                            sb.append("\n");
-                            sb.append("Previous times: u=");
-                            TimeUtils.formatDuration(mLastUserTimeUs.valueAt(index) / 1000, sb);
-                            sb.append(" s=");
-                            TimeUtils.formatDuration(mLastSystemTimeUs.valueAt(index) / 1000, sb);
-
-                            sb.append("\nCurrent times: u=");
-                            TimeUtils.formatDuration(userTimeUs / 1000, sb);
-                            sb.append(" s=");
-                            TimeUtils.formatDuration(systemTimeUs / 1000, sb);
-                            sb.append("\nDelta: u=");
-                            TimeUtils.formatDuration(userTimeDeltaUs / 1000, sb);
-                            sb.append(" s=");
-                            TimeUtils.formatDuration(systemTimeDeltaUs / 1000, sb);
-                            Slog.e(TAG, sb.toString());
-
-                            userTimeDeltaUs = 0;
-                            systemTimeDeltaUs = 0;
-                        }
-                    }
-
-                    if (userTimeDeltaUs != 0 || systemTimeDeltaUs != 0) {
-                        callback.onUidCpuTime(uid, userTimeDeltaUs, systemTimeDeltaUs);
-                    }
-                }
-                mLastUserTimeUs.put(uid, userTimeUs);
-                mLastSystemTimeUs.put(uid, systemTimeUs);
-            }
+        mNowUs = SystemClock.elapsedRealtime() * 1000;
+        mCallback = callback;
+        try {
+            mReader.readDelta(mReaderCallback);
         } catch (IOException e) {
             Slog.e(TAG, "Failed to read uid_cputime: " + e.getMessage());
+        } finally {
+            mCallback = null;
         }
-        mLastTimeReadUs = nowUs;
+        mLastTimeReadUs = mNowUs;
     }
 
     /**
@@ -130,11 +128,7 @@ public class KernelUidCpuTimeReader {
      * @param uid The UID to remove.
      */
     public void removeUid(int uid) {
-        int index = mLastUserTimeUs.indexOfKey(uid);
-        if (index >= 0) {
-            mLastUserTimeUs.removeAt(index);
-            mLastSystemTimeUs.removeAt(index);
-        }
+        mReader.removeUid(uid);
 
         try (FileWriter writer = new FileWriter(sRemoveUidProcFile)) {
             writer.write(Integer.toString(uid) + "-" + Integer.toString(uid));
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.os;
+
+import android.annotation.Nullable;
+import android.util.Slog;
+import android.util.SparseArray;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * Reads a kernel file holding monotonically increasing counters for each UID, in the format
+ *
+ * [label] [header1] [header2] ...      (only if the file has a header line)
+ * [uid1]: [value1] [value2] ...
+ * [uid2]: [value1] [value2] ...
+ * ...
+ *
+ * and reports how much the counters of each UID grew since the previous read.
+ *
+ * The file is read into a buffer that is kept between reads and parsed in place, and values are
+ * kept in primitive arrays, so a read allocates nothing once every UID has been seen. Arrays
+ * passed to a {@link Callback} are reused and only valid for the duration of the call.
+ */
+public class KernelUidStatsReader {
+    private static final String TAG = "KernelUidStatsReader";
+
+    public interface Callback {
+        /**
+         * Called with the values of the header line, for files that have one.
+         */
+        void onHeader(long[] values);
+
+        /**
+         * Called for every well formed UID line.
+         *
+         * @param values the counters just read, scaled
+         * @param deltas how much the counters grew since the previous read, or the counters
+         *     themselves if the UID was not seen before
+         */
+        void onUidDelta(int uid, long[] values, long[] deltas);
+    }
+
+    private final String mPath;
+    private final boolean mHasHeader;
+    private final int mFixedValueCount;
+    private final long mScale;
+
+    @GuardedBy("this")
+    private final SparseArray<long[]> mLastValues = new SparseArray<>();
+    @GuardedBy("this")
+    private int mValueCount;
+    @GuardedBy("this")
+    private long[] mHeader;
+    @GuardedBy("this")
+    private long[] mValues;
+    @GuardedBy("this")
+    private long[] mDeltas;
+
+    @GuardedBy("this")
+    private byte[] mBuffer = new byte[8 * 1024];
+    @GuardedBy("this")
+    private int mLength;
+    @GuardedBy("this")
+    private int mPos;
+
+    /**
+     * @param hasHeader whether the first line of the file holds a label and the values that
+     *     the columns of the UID lines correspond to
+     * @param valueCount how many values of each UID line to read, or 0 to use the number of
+     *     values in the header line. Further values are ignored.
+     * @param scale what to multiply every UID value by
+     */
+    public KernelUidStatsReader(String path, boolean hasHeader, int valueCount, long scale) {
+        mPath = path;
+        mHasHeader = hasHeader;
+        mFixedValueCount = valueCount;
+        mValueCount = valueCount;
+        mScale = scale;
+    }
+
+    /**
+     * Reads the file and reports deltas to the callback. If the callback is null the values
+     * are consumed, and the next read reports deltas against them.
+     *
+     * @throws IOException if the file could not be read
+     */
+    public synchronized void readDelta(@Nullable Callback callback) throws IOException {
+        try (FileInputStream in = new FileInputStream(mPath)) {
+            readDelta(in, callback);
+        }
+    }
+
+    /**
+     * Reads the file on the given executor, reporting deltas to the callback from there.
+     * Errors are logged.
+     */
+    public void readDeltaAsync(Executor executor, @Nullable Callback callback) {
+        executor.execute(() -> {
+            try {
+                readDelta(callback);
+            } catch (IOException e) {
+                Slog.e(TAG, "Failed to read " + mPath + ": " + e);
+            }
+        });
+    }
+
+    @VisibleForTesting
+    public synchronized void readDelta(InputStream in, @Nullable Callback callback)
+            throws IOException {
+        mLength = 0;
+        int count;
+        while ((count = in.read(mBuffer, mLength, mBuffer.length - mLength)) > 0) {
+            mLength += count;
+            if (mLength == mBuffer.length) {
+                mBuffer = Arrays.copyOf(mBuffer, mBuffer.length * 2);
+            }
+        }
+        mPos = 0;
+        if (mHasHeader && !readHeader(callback)) {
+            return;
+        }
+        if (mValues == null || mValues.length != mValueCount) {
+            mValues = new long[mValueCount];
+            mDeltas = new long[mValueCount];
+        }
+        while (mPos < mLength) {
+            readUidLine(callback);
+        }
+    }
+
+    public synchronized void removeUid(int uid) {
+        mLastValues.delete(uid);
+    }
+
+    private boolean readHeader(Callback callback) {
+        // Skip the label.
+        while (mPos < mLength && mBuffer[mPos] != ' ' && mBuffer[mPos] != '\n') {
+            mPos++;
+        }
+        final int start = mPos;
+        int count = 0;
+        while (nextLong() >= 0) {
+            count++;
+        }
+        if (count == 0) {
+            Slog.e(TAG, "No values in header of " + mPath);
+            return false;
+        }
+        if (mHeader == null || mHeader.length != count) {
+            mHeader = new long[count];
+            if (mFixedValueCount == 0) {
+                // The columns changed, so the values we have are no longer comparable.
+                mValueCount = count;
+                mLastValues.clear();
+            }
+        }
+        mPos = start;
+        for (int i = 0; i < count; i++) {
+            mHeader[i] = nextLong();
+        }
+        skipLine();
+        if (callback != null) {
+            callback.onHeader(mHeader);
+        }
+        return true;
+    }
+
+    private void readUidLine(Callback callback) {
+        final long uid = nextLong();
+        if (uid < 0 || mPos >= mLength || mBuffer[mPos] != ':') {
+            skipLine();
+            return;
+        }
+        mPos++;
+        final int count = mValueCount;
+        final long[] values = mValues;
+        for (int i = 0; i < count; i++) {
+            final long value = nextLong();
+            if (value < 0) {
+                Slog.e(TAG, "Expected " + count + " values for uid " + uid + " in " + mPath
+                        + ", found " + i);
+                skipLine();
+                return;
+            }
+            values[i] = value * mScale;
+        }
+        skipLine();
+
+        long[] lastValues = mLastValues.get((int) uid);
+        if (lastValues == null) {
+            lastValues = new long[count];
+            mLastValues.put((int) uid, lastValues);
+        }
+        final long[] deltas = mDeltas;
+        for (int i = 0; i < count; i++) {
+            deltas[i] = values[i] - lastValues[i];
+        }
+        System.arraycopy(values, 0, lastValues, 0, count);
+        if (callback != null) {
+            callback.onUidDelta((int) uid, values, deltas);
+        }
+    }
+
+    /**
+     * Parses the next number on the current line, skipping spaces before it.
+     *
+     * @return the number, or -1 if the line has no more numbers
+     */
+    private long nextLong() {
+        while (mPos < mLength && mBuffer[mPos] == ' ') {
+            mPos++;
+        }
+        long value = 0;
+        final int start = mPos;
+        while (mPos < mLength) {
+            final int digit = mBuffer[mPos] - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            value = value * 10 + digit;
+            mPos++;
+        }
+        return mPos > start ? value : -1;
+    }
+
+    private void skipLine() {
+        while (mPos < mLength && mBuffer[mPos] != '\n') {
+            mPos++;
+        }
+        mPos++;
+    }
+}
@@ -0,0 +1,498 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.os;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.ArrayMap;
+import android.util.SparseArray;
+
+import com.android.internal.annotations.GuardedBy;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+
+/**
+ * Collects dispatch latency and queue delay statistics for the messages handled by the loopers
+ * of this process, per thread, per handler class and message, and per uid of the binder caller
+ * that enqueued the message.
+ *
+ * Installed with {@link Looper#setObserver}.  Each looper thread times one message out of
+ * every {@link #getSamplingInterval()}; the bookkeeping for a sampled message does not
+ * allocate once its handler and message have been seen.
+ */
+public class LooperStats implements Looper.Observer {
+    /** Number of buckets in the dispatch latency histograms. */
+    public static final int LATENCY_BUCKET_COUNT = 14;
+
+    /** Number of buckets in the queue delay histograms. */
+    public static final int DELAY_BUCKET_COUNT = 13;
+
+    private static final int DEFAULT_SAMPLING_INTERVAL = 16;
+
+    // Number of entries printed per thread.
+    private static final int DUMP_ENTRY_COUNT = 20;
+
+    private volatile int mSamplingInterval = DEFAULT_SAMPLING_INTERVAL;
+
+    private final Object mLock = new Object();
+
+    @GuardedBy("mLock")
+    private final ArrayList<ThreadStats> mThreads = new ArrayList<>();
+
+    @GuardedBy("mLock")
+    private final SparseArray<UidEntry> mUids = new SparseArray<>();
+
+    // Incremented by reset(), so that each thread starts over with new statistics.
+    @GuardedBy("mLock")
+    private int mGeneration;
+
+    @GuardedBy("mLock")
+    private long mStartTimeMillis = SystemClock.elapsedRealtime();
+
+    private final ThreadLocal<DispatchSession> mSession = new ThreadLocal<DispatchSession>() {
+        @Override
+        protected DispatchSession initialValue() {
+            return new DispatchSession();
+        }
+    };
+
+    public LooperStats() {
+    }
+
+    @Override
+    public Object messageDispatchStarting() {
+        final DispatchSession s = mSession.get();
+        // A message dispatched by a nested loop is left out rather than reusing the session.
+        if (s.inUse || ++s.messagesSinceSample < mSamplingInterval) {
+            return null;
+        }
+        s.inUse = true;
+        s.messagesSinceSample = 0;
+        s.startUptimeMillis = SystemClock.uptimeMillis();
+        s.startTimeNanos = System.nanoTime();
+        return s;
+    }
+
+    @Override
+    public void messageDispatched(Object token, Message msg) {
+        if (token != null) {
+            record((DispatchSession) token, msg, false);
+        }
+    }
+
+    @Override
+    public void dispatchingThrewException(Object token, Message msg, Exception exception) {
+        if (token != null) {
+            record((DispatchSession) token, msg, true);
+        }
+    }
+
+    private void record(DispatchSession s, Message msg, boolean exception) {
+        final long latencyMicros = (System.nanoTime() - s.startTimeNanos) / 1000;
+        // Messages posted at the front of the queue have no delivery time.
+        final long when = msg.getWhen();
+        final long delayMillis = when > 0 ? Math.max(0, s.startUptimeMillis - when) : -1;
+        final Handler handler = msg.getTarget();
+        final Runnable callback = msg.getCallback();
+        synchronized (mLock) {
+            if (s.threadStats == null || s.generation != mGeneration) {
+                s.threadStats = new ThreadStats(Thread.currentThread().getName());
+                s.generation = mGeneration;
+                mThreads.add(s.threadStats);
+            }
+            s.threadStats.add(handler.getClass(), callback != null ? callback.getClass() : null,
+                    msg.what, latencyMicros, delayMillis, exception);
+
+            final int uid = msg.workSourceUid;
+            UidEntry uidEntry = mUids.get(uid);
+            if (uidEntry == null) {
+                uidEntry = new UidEntry(uid);
+                mUids.put(uid, uidEntry);
+            }
+            uidEntry.messageCount++;
+            uidEntry.totalLatencyMicros += latencyMicros;
+        }
+        s.inUse = false;
+    }
+
+    public int getSamplingInterval() {
+        return mSamplingInterval;
+    }
+
+    /**
+     * Sets how many messages each looper thread dispatches for every message it times.  An
+     * interval of 1 times every message.
+     */
+    public void setSamplingInterval(int samplingInterval) {
+        if (samplingInterval < 1) {
+            throw new IllegalArgumentException("Sampling interval must be at least 1");
+        }
+        mSamplingInterval = samplingInterval;
+    }
+
+    public void reset() {
+        synchronized (mLock) {
+            // Also drops the statistics of threads that have exited since.
+            mThreads.clear();
+            mGeneration++;
+            mUids.clear();
+            mStartTimeMillis = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * Returns a copy of the statistics of every handler and message, slowest total latency
+     * first.
+     */
+    public ArrayList<Entry> getEntries() {
+        final ArrayList<Entry> result = new ArrayList<>();
+        synchronized (mLock) {
+            for (int i = 0; i < mThreads.size(); i++) {
+                mThreads.get(i).copyEntries(result);
+            }
+        }
+        result.sort(ENTRY_COMPARATOR);
+        return result;
+    }
+
+    public void dump(PrintWriter pw, boolean verbose) {
+        // Copy everything first, so that looper threads are not blocked on the output.
+        final long sinceMillis;
+        final ArrayList<ThreadStats> threads = new ArrayList<>();
+        final ArrayList<UidEntry> uids = new ArrayList<>();
+        synchronized (mLock) {
+            sinceMillis = SystemClock.elapsedRealtime() - mStartTimeMillis;
+            for (int i = 0; i < mThreads.size(); i++) {
+                threads.add(mThreads.get(i).copy());
+            }
+            for (int i = 0; i < mUids.size(); i++) {
+                uids.add(mUids.valueAt(i).copy());
+            }
+        }
+
+        pw.println("Looper stats: sampling 1 in " + mSamplingInterval
+                + " messages per thread, collected over " + sinceMillis / 1000 + "s");
+        threads.sort(Comparator.comparingLong((ThreadStats t) -> t.totalLatencyMicros)
+                .reversed());
+        final ArrayList<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < threads.size(); i++) {
+            final ThreadStats t = threads.get(i);
+            if (t.messageCount == 0) {
+                continue;
+            }
+            pw.print("  Thread ");
+            pw.print(t.threadName);
+            pw.print(": sampled=");
+            pw.print(t.messageCount);
+            pw.print(" total latency(ms)=");
+            pw.println(t.totalLatencyMicros / 1000);
+            pw.print("    latency:");
+            printHistogram(pw, t.latencyHistogram, false);
+            pw.print("    queue delay:");
+            printHistogram(pw, t.delayHistogram, true);
+
+            entries.clear();
+            t.copyEntries(entries);
+            entries.sort(ENTRY_COMPARATOR);
+            final int count = verbose ? entries.size()
+                    : Math.min(entries.size(), DUMP_ENTRY_COUNT);
+            for (int j = 0; j < count; j++) {
+                final Entry e = entries.get(j);
+                pw.print("    ");
+                pw.print(e.getName());
+                pw.print(": sampled=");
+                pw.print(e.messageCount);
+                pw.print(" latency(us) avg=");
+                pw.print(e.totalLatencyMicros / e.messageCount);
+                pw.print(" max=");
+                pw.print(e.maxLatencyMicros);
+                if (e.delayedMessageCount > 0) {
+                    pw.print(" delay(ms) avg=");
+                    pw.print(e.totalDelayMillis / e.delayedMessageCount);
+                    pw.print(" max=");
+                    pw.print(e.maxDelayMillis);
+                }
+                if (e.exceptionCount > 0) {
+                    pw.print(" exceptions=");
+                    pw.print(e.exceptionCount);
+                }
+                pw.println();
+            }
+            if (count < entries.size()) {
+                pw.println("    ... " + (entries.size() - count) + " more");
+            }
+        }
+
+        pw.println("  By enqueuing uid:");
+        uids.sort(Comparator.comparingLong((UidEntry u) -> u.totalLatencyMicros).reversed());
+        for (int i = 0; i < uids.size(); i++) {
+            final UidEntry u = uids.get(i);
+            pw.print("    uid ");
+            pw.print(u.uid);
+            pw.print(": sampled=");
+            pw.print(u.messageCount);
+            pw.print(" total latency(ms)=");
+            pw.println(u.totalLatencyMicros / 1000);
+        }
+    }
+
+    private static void printHistogram(PrintWriter pw, long[] histogram, boolean delay) {
+        for (int b = 0; b < histogram.length; b++) {
+            if (histogram[b] != 0) {
+                pw.print(' ');
+                pw.print(delay ? getDelayBucketLabel(b) : getLatencyBucketLabel(b));
+                pw.print('=');
+                pw.print(histogram[b]);
+            }
+        }
+        pw.println();
+    }
+
+    /**
+     * Returns the latency histogram bucket for the given dispatch latency.  Bucket 0 counts
+     * messages under 64us, and each following bucket covers twice the range of the one before.
+     */
+    public static int getLatencyBucket(long latencyMicros) {
+        return BinderCallsStats.getLatencyBucket(latencyMicros);
+    }
+
+    public static String getLatencyBucketLabel(int bucket) {
+        return BinderCallsStats.getLatencyBucketLabel(bucket);
+    }
+
+    /**
+     * Returns the delay histogram bucket for the given queue delay.  Bucket 0 counts messages
+     * delivered within 1ms of their delivery time, and each following bucket covers twice the
+     * range of the one before.
+     */
+    public static int getDelayBucket(long delayMillis) {
+        if (delayMillis <= 0) {
+            return 0;
+        }
+        final int bucket = 64 - Long.numberOfLeadingZeros(delayMillis);
+        return Math.min(bucket, DELAY_BUCKET_COUNT - 1);
+    }
+
+    public static String getDelayBucketLabel(int bucket) {
+        if (bucket == 0) {
+            return "<1ms";
+        }
+        final long low = 1L << (bucket - 1);
+        if (bucket == DELAY_BUCKET_COUNT - 1) {
+            return ">=" + low + "ms";
+        }
+        final long high = (1L << bucket) - 1;
+        return low == high ? low + "ms" : low + "-" + high + "ms";
+    }
+
+    private static final Comparator<Entry> ENTRY_COMPARATOR =
+            Comparator.comparingLong((Entry e) -> e.totalLatencyMicros).reversed();
+
+    /**
+     * The state of the message being timed on one looper thread.
+     */
+    private static final class DispatchSession {
+        int messagesSinceSample;
+        boolean inUse;
+        long startUptimeMillis;
+        long startTimeNanos;
+        // Set the first time a message of this thread is recorded after a reset.
+        ThreadStats threadStats;
+        int generation;
+    }
+
+    /**
+     * The statistics for the messages dispatched by one looper thread.
+     */
+    private static final class ThreadStats {
+        final String threadName;
+        long messageCount;
+        long totalLatencyMicros;
+        final long[] latencyHistogram = new long[LATENCY_BUCKET_COUNT];
+        final long[] delayHistogram = new long[DELAY_BUCKET_COUNT];
+        // Messages without a callback are keyed by handler class and what, messages with a
+        // callback by handler class and callback class.
+        final ArrayMap<Class<?>, SparseArray<Entry>> entriesByWhat = new ArrayMap<>();
+        final ArrayMap<Class<?>, ArrayMap<Class<?>, Entry>> entriesByCallback = new ArrayMap<>();
+
+        ThreadStats(String threadName) {
+            this.threadName = threadName;
+        }
+
+        void add(Class<?> handlerClass, Class<?> callbackClass, int what, long latencyMicros,
+                long delayMillis, boolean exception) {
+            Entry entry;
+            if (callbackClass == null) {
+                SparseArray<Entry> byWhat = entriesByWhat.get(handlerClass);
+                if (byWhat == null) {
+                    byWhat = new SparseArray<>();
+                    entriesByWhat.put(handlerClass, byWhat);
+                }
+                entry = byWhat.get(what);
+                if (entry == null) {
+                    entry = new Entry(threadName, handlerClass, null, what);
+                    byWhat.put(what, entry);
+                }
+            } else {
+                ArrayMap<Class<?>, Entry> byCallback = entriesByCallback.get(handlerClass);
+                if (byCallback == null) {
+                    byCallback = new ArrayMap<>();
+                    entriesByCallback.put(handlerClass, byCallback);
+                }
+                entry = byCallback.get(callbackClass);
+                if (entry == null) {
+                    entry = new Entry(threadName, handlerClass, callbackClass, 0);
+                    byCallback.put(callbackClass, entry);
+                }
+            }
+            entry.add(latencyMicros, delayMillis, exception);
+
+            messageCount++;
+            totalLatencyMicros += latencyMicros;
+            latencyHistogram[getLatencyBucket(latencyMicros)]++;
+            if (delayMillis >= 0) {
+                delayHistogram[getDelayBucket(delayMillis)]++;
+            }
+        }
+
+        ThreadStats copy() {
+            final ThreadStats t = new ThreadStats(threadName);
+            t.messageCount = messageCount;
+            t.totalLatencyMicros = totalLatencyMicros;
+            System.arraycopy(latencyHistogram, 0, t.latencyHistogram, 0, LATENCY_BUCKET_COUNT);
+            System.arraycopy(delayHistogram, 0, t.delayHistogram, 0, DELAY_BUCKET_COUNT);
+            for (int i = 0; i < entriesByWhat.size(); i++) {
+                final SparseArray<Entry> byWhat = entriesByWhat.valueAt(i);
+                final SparseArray<Entry> copy = new SparseArray<>(byWhat.size());
+                for (int j = 0; j < byWhat.size(); j++) {
+                    copy.put(byWhat.keyAt(j), byWhat.valueAt(j).copy());
+                }
+                t.entriesByWhat.put(entriesByWhat.keyAt(i), copy);
+            }
+            for (int i = 0; i < entriesByCallback.size(); i++) {
+                final ArrayMap<Class<?>, Entry> byCallback = entriesByCallback.valueAt(i);
+                final ArrayMap<Class<?>, Entry> copy = new ArrayMap<>(byCallback.size());
+                for (int j = 0; j < byCallback.size(); j++) {
+                    copy.put(byCallback.keyAt(j), byCallback.valueAt(j).copy());
+                }
+                t.entriesByCallback.put(entriesByCallback.keyAt(i), copy);
+            }
+            return t;
+        }
+
+        void copyEntries(ArrayList<Entry> out) {
+            for (int i = 0; i < entriesByWhat.size(); i++) {
+                final SparseArray<Entry> byWhat = entriesByWhat.valueAt(i);
+                for (int j = 0; j < byWhat.size(); j++) {
+                    out.add(byWhat.valueAt(j).copy());
+                }
+            }
+            for (int i = 0; i < entriesByCallback.size(); i++) {
+                final ArrayMap<Class<?>, Entry> byCallback = entriesByCallback.valueAt(i);
+                for (int j = 0; j < byCallback.size(); j++) {
+                    out.add(byCallback.valueAt(j).copy());
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Statistics for the sampled messages of one handler class and message on one thread.
+     */
+    public static final class Entry {
+        public final String threadName;
+        public final Class<?> handlerClass;
+        /** The class of the message callback, or null for messages dispatched by what. */
+        public final Class<?> callbackClass;
+        public final int what;
+        public long messageCount;
+        public long exceptionCount;
+        public long totalLatencyMicros;
+        public long maxLatencyMicros;
+        /** Number of messages that had a delivery time, and so a queue delay. */
+        public long delayedMessageCount;
+        public long totalDelayMillis;
+        public long maxDelayMillis;
+
+        Entry(String threadName, Class<?> handlerClass, Class<?> callbackClass, int what) {
+            this.threadName = threadName;
+            this.handlerClass = handlerClass;
+            this.callbackClass = callbackClass;
+            this.what = what;
+        }
+
+        void add(long latencyMicros, long delayMillis, boolean exception) {
+            messageCount++;
+            if (exception) {
+                exceptionCount++;
+            }
+            totalLatencyMicros += latencyMicros;
+            maxLatencyMicros = Math.max(maxLatencyMicros, latencyMicros);
+            if (delayMillis >= 0) {
+                delayedMessageCount++;
+                totalDelayMillis += delayMillis;
+                maxDelayMillis = Math.max(maxDelayMillis, delayMillis);
+            }
+        }
+
+        Entry copy() {
+            final Entry e = new Entry(threadName, handlerClass, callbackClass, what);
+            e.messageCount = messageCount;
+            e.exceptionCount = exceptionCount;
+            e.totalLatencyMicros = totalLatencyMicros;
+            e.maxLatencyMicros = maxLatencyMicros;
+            e.delayedMessageCount = delayedMessageCount;
+            e.totalDelayMillis = totalDelayMillis;
+            e.maxDelayMillis = maxDelayMillis;
+            return e;
+        }
+
+        /**
+         * Returns the handler class followed by the callback class or the message what, in
+         * the format of {@link Handler#getMessageName}.
+         */
+        public String getName() {
+            return handlerClass.getName() + ": " + (callbackClass != null
+                    ? callbackClass.getName() : "0x" + Integer.toHexString(what));
+        }
+    }
+
+    /**
+     * Statistics for the sampled messages enqueued from binder calls of one uid.
+     */
+    private static final class UidEntry {
+        final int uid;
+        long messageCount;
+        long totalLatencyMicros;
+
+        UidEntry(int uid) {
+            this.uid = uid;
+        }
+
+        UidEntry copy() {
+            final UidEntry u = new UidEntry(uid);
+            u.messageCount = messageCount;
+            u.totalLatencyMicros = totalLatencyMicros;
+            return u;
+        }
+    }
+}
@@ -22,17 +22,21 @@ import android.os.FileUtils;
 import android.os.Process;
 import android.os.StrictMode;
 import android.os.SystemClock;
+import android.system.ErrnoException;
 import android.system.Os;
 import android.system.OsConstants;
 import android.util.Slog;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.util.FastPrintWriter;
 
 import libcore.io.IoUtils;
 import libcore.io.Libcore;
 
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.text.SimpleDateFormat;
@@ -70,6 +74,7 @@ public class ProcessCpuTracker {
     static final int PROCESS_STAT_MAJOR_FAULTS = 1;
     static final int PROCESS_STAT_UTIME = 2;
     static final int PROCESS_STAT_STIME = 3;
+    private static final int PROCESS_STATS_FORMAT_OUT_COUNT = 4;
 
     /** Stores user time and system time in jiffies. */
     private final long[] mProcessStatsData = new long[4];
@@ -136,6 +141,13 @@ public class ProcessCpuTracker {
 
     private final boolean mIncludeThreads;
 
+    // Maximum number of process stat files kept open between updates. Each one is a file
+    // descriptor held by the hosting process, so this stays well below its limit.
+    private static final int MAX_OPEN_STAT_FILES = 100;
+
+    private final boolean mKeepStatFilesOpen;
+    private int mOpenStatFileCount;
+
     // How long a CPU jiffy is in milliseconds.
     private final long mJiffyMillis;
 
@@ -191,6 +203,7 @@ public class ProcessCpuTracker {
         final String cmdlineFile;
         final String threadsDir;
         final ArrayList<Stats> threadStats;
+        FileDescriptor statFd;
         final ArrayList<Stats> workingThreads;
 
         public BatteryStatsImpl.Uid.Proc batteryStats;
@@ -294,7 +307,18 @@ public class ProcessCpuTracker {
 
 
     public ProcessCpuTracker(boolean includeThreads) {
+        this(includeThreads, false);
+    }
+
+    /**
+     * @param keepStatFilesOpen whether to keep the stat files of up to
+     *     {@link #MAX_OPEN_STAT_FILES} processes open between updates, and re-read them with
+     *     pread rather than opening them again every time. Only for long lived trackers, as
+     *     the files are only closed when their process goes away.
+     */
+    public ProcessCpuTracker(boolean includeThreads, boolean keepStatFilesOpen) {
         mIncludeThreads = includeThreads;
+        mKeepStatFilesOpen = keepStatFilesOpen;
         long jiffyHz = Os.sysconf(OsConstants._SC_CLK_TCK);
         mJiffyMillis = 1000/jiffyHz;
     }
@@ -439,8 +463,7 @@ public class ProcessCpuTracker {
                     final long uptime = SystemClock.uptimeMillis();
 
                     final long[] procStats = mProcessStatsData;
-                    if (!Process.readProcFile(st.statFile.toString(),
-                            PROCESS_STATS_FORMAT, null, procStats, null)) {
+                    if (!readProcessStats(st, procStats)) {
                         continue;
                     }
 
@@ -568,6 +591,7 @@ public class ProcessCpuTracker {
             st.rel_majfaults = 0;
             st.removed = true;
             st.working = true;
+            closeStatFile(st);
             allProcs.remove(curStatsIndex);
             NS--;
             if (DEBUG) Slog.v(TAG, "Removed "
@@ -588,6 +612,7 @@ public class ProcessCpuTracker {
             st.rel_majfaults = 0;
             st.removed = true;
             st.working = true;
+            closeStatFile(st);
             allProcs.remove(curStatsIndex);
             NS--;
             if (localLOGV) Slog.v(TAG, "Removed pid " + st.pid + ": " + st);
@@ -596,6 +621,89 @@ public class ProcessCpuTracker {
         return pids;
     }
 
+    /**
+     * Reads the stats of a process or thread in the layout of {@link #PROCESS_STATS_FORMAT},
+     * through its open stat file if it has or can get one.
+     */
+    private boolean readProcessStats(Stats st, long[] procStats) {
+        if (st.statFd == null && mKeepStatFilesOpen && st.cmdlineFile != null
+                && mOpenStatFileCount < MAX_OPEN_STAT_FILES) {
+            try {
+                st.statFd = Os.open(st.statFile, OsConstants.O_RDONLY | OsConstants.O_CLOEXEC, 0);
+                mOpenStatFileCount++;
+            } catch (ErrnoException e) {
+                // Read it by path below.
+            }
+        }
+        if (st.statFd != null) {
+            try {
+                final int len = Os.pread(st.statFd, mBuffer, 0, mBuffer.length, 0);
+                if (parseProcessStat(mBuffer, len, procStats)) {
+                    return true;
+                }
+            } catch (ErrnoException | InterruptedIOException e) {
+                // The process died; its pid may have been reused by another one since.
+            }
+            closeStatFile(st);
+        }
+        return Process.readProcFile(st.statFile, PROCESS_STATS_FORMAT, null, procStats, null);
+    }
+
+    private void closeStatFile(Stats st) {
+        if (st.statFd != null) {
+            IoUtils.closeQuietly(st.statFd);
+            st.statFd = null;
+            mOpenStatFileCount--;
+        }
+    }
+
+    /**
+     * Parses the contents of a /proc/[pid]/stat file into {@code out}, in the layout of
+     * {@link #PROCESS_STATS_FORMAT}, without allocating.
+     *
+     * @return whether all fields were found
+     */
+    @VisibleForTesting
+    static boolean parseProcessStat(byte[] buf, int len, long[] out) {
+        // Field 2 is the name in parentheses, which may itself contain spaces and parentheses,
+        // so count fields from the last closing one.
+        int i = len - 1;
+        while (i >= 0 && buf[i] != ')') {
+            i--;
+        }
+        if (i < 0) {
+            return false;
+        }
+        i++;
+        int field = 2;
+        int outIndex = 0;
+        while (i < len && outIndex < PROCESS_STATS_FORMAT_OUT_COUNT) {
+            while (i < len && buf[i] == ' ') {
+                i++;
+            }
+            if (i >= len || buf[i] == '\n') {
+                break;
+            }
+            field++;
+            final boolean wanted = field == 10 || field == 12 || field == 14 || field == 15;
+            long value = 0;
+            while (i < len && buf[i] != ' ' && buf[i] != '\n') {
+                if (wanted) {
+                    final int digit = buf[i] - '0';
+                    if (digit < 0 || digit > 9) {
+                        return false;
+                    }
+                    value = value * 10 + digit;
+                }
+                i++;
+            }
+            if (wanted) {
+                out[outIndex++] = value;
+            }
+        }
+        return outIndex == PROCESS_STATS_FORMAT_OUT_COUNT;
+    }
+
     /**
      * Returns the total time (in milliseconds) spent executing in
      * both user and system code.  Safe to call without lock held.
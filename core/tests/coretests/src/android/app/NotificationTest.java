@@ -19,9 +19,13 @@ package android.app;
 import static com.android.internal.util.NotificationColorUtil.satisfiesTextContrast;
 
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Icon;
 import android.media.session.MediaSession;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.filters.SmallTest;
@@ -138,6 +142,38 @@ public class NotificationTest {
         assertFalse(n.hasCompletedProgress());
     }
 
+    @Test
+    public void testShareLargeBitmaps() {
+        Notification n = new Notification.Builder(mContext, "test").build();
+        Bitmap large = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        Bitmap small = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        n.largeIcon = large;
+        n.extras.putParcelable(Notification.EXTRA_PICTURE, small);
+
+        n.shareLargeBitmaps();
+
+        assertNotSame(large, n.largeIcon);
+        assertFalse(n.largeIcon.isMutable());
+        assertTrue(large.sameAs(n.largeIcon));
+        assertSame(small, n.extras.getParcelable(Notification.EXTRA_PICTURE));
+    }
+
+    @Test
+    public void testShareLargeBitmapsOnceWhenReferencedTwice() {
+        Bitmap large = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        Icon icon = Icon.createWithBitmap(large);
+        Notification n = new Notification.Builder(mContext, "test").setLargeIcon(icon).build();
+        n.largeIcon = large;
+        n.publicVersion = new Notification.Builder(mContext, "test").setLargeIcon(icon).build();
+
+        n.shareLargeBitmaps();
+
+        assertNotSame(large, n.largeIcon);
+        assertSame(n.largeIcon, n.getLargeIcon().getBitmap());
+        assertSame(n.getLargeIcon(), n.extras.getParcelable(Notification.EXTRA_LARGE_ICON));
+        assertSame(n.getLargeIcon(), n.publicVersion.getLargeIcon());
+    }
+
     private Notification.Builder getMediaNotification() {
         MediaSession session = new MediaSession(mContext, "test");
         return new Notification.Builder(mContext, "color")
@@ -20,6 +20,8 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.net.Uri;
+import android.os.BadParcelableException;
+import android.os.IBinder;
 import android.os.Parcel;
 import android.test.suitebuilder.annotation.SmallTest;
 import android.text.TextUtils;
@@ -28,6 +30,8 @@ import junit.framework.TestCase;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Set;
 import java.util.Map;
@@ -521,6 +525,85 @@ public class ContentProviderOperationTest extends TestCase {
         }
     }
 
+    /**
+     * Test that a batch larger than a single transaction is parceled in chunks and read back
+     * complete and in order, including its back references.
+     */
+    public void testParcelingLargeBatch() {
+        final int operationCount = 20000;
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (int i = 0; i < operationCount; i++) {
+            operations.add(ContentProviderOperation.newInsert(sTestUri1)
+                    .withValues(sTestValues1)
+                    .withValueBackReference("ref", Math.max(0, i - 1))
+                    .build());
+        }
+
+        ArrayList<ContentProviderOperation> read;
+        Parcel parcel = Parcel.obtain();
+        try {
+            ContentProviderNative.writeBatch(parcel, operations, ContentProviderOperation.class);
+            assertTrue(parcel.dataSize() < 2 * IBinder.MAX_IPC_SIZE);
+            parcel.setDataPosition(0);
+            read = ContentProviderNative.readBatch(parcel, ContentProviderOperation.CREATOR,
+                    ContentProviderOperation.class);
+        } finally {
+            parcel.recycle();
+        }
+
+        assertEquals(operationCount, read.size());
+        for (int i = 0; i < operationCount; i++) {
+            assertEquals(operations.get(i).toString(), read.get(i).toString());
+        }
+    }
+
+    /**
+     * Test that a batch of another class is rejected before any element is unparceled.
+     */
+    public void testParcelingBatchOfOtherClass() {
+        final ArrayList<ContentProviderResult> results = new ArrayList<>();
+        results.add(new ContentProviderResult(1));
+
+        Parcel parcel = Parcel.obtain();
+        try {
+            ContentProviderNative.writeBatch(parcel, results, ContentProviderResult.class);
+            parcel.setDataPosition(0);
+            try {
+                ContentProviderNative.readBatch(parcel, ContentValues.CREATOR,
+                        ContentValues.class);
+                fail("Read a batch of ContentProviderResult as ContentValues");
+            } catch (BadParcelableException expected) {
+            }
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    public void testParcelingBatchWithNulls() {
+        final ContentProviderResult[] results = new ContentProviderResult[] {
+                new ContentProviderResult(1), null, new ContentProviderResult(3) };
+
+        ArrayList<ContentProviderResult> read;
+        Parcel parcel = Parcel.obtain();
+        try {
+            ContentProviderNative.writeBatch(parcel, Arrays.asList(results),
+                    ContentProviderResult.class);
+            ContentProviderNative.writeBatch(parcel, null, ContentProviderResult.class);
+            parcel.setDataPosition(0);
+            read = ContentProviderNative.readBatch(parcel, ContentProviderResult.CREATOR,
+                    ContentProviderResult.class);
+            assertNull(ContentProviderNative.readBatch(parcel, ContentProviderResult.CREATOR,
+                    ContentProviderResult.class));
+        } finally {
+            parcel.recycle();
+        }
+
+        assertEquals(3, read.size());
+        assertEquals(Integer.valueOf(1), read.get(0).count);
+        assertNull(read.get(1));
+        assertEquals(Integer.valueOf(3), read.get(2).count);
+    }
+
     static class TestContentProvider extends ContentProvider {
         public boolean onCreate() {
             throw new UnsupportedOperationException();
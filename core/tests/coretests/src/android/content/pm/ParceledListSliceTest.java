@@ -91,6 +91,37 @@ public class ParceledListSliceTest extends TestCase {
         }
     }
 
+    /**
+     * Test that a list spanning several retrieval chunks is retrieved complete and in order
+     * while it is unparcelled.
+     */
+    public void testLargeListRetrievedInOrder() throws Exception {
+        final int thresholdBytes = 1024 * 1024;
+        final int objectCount = thresholdBytes / measureLargeObject();
+
+        List<LargeObject> list = new ArrayList<LargeObject>();
+        for (int i = 0; i < objectCount; i++) {
+            list.add(new LargeObject(i, 0, 0, 0, 0));
+        }
+
+        ParceledListSlice<LargeObject> slice;
+
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeParcelable(new ParceledListSlice<LargeObject>(list), 0);
+            parcel.setDataPosition(0);
+            slice = parcel.readParcelable(getClass().getClassLoader());
+        } finally {
+            parcel.recycle();
+        }
+
+        final List<LargeObject> retrieved = slice.getList();
+        assertEquals(objectCount, retrieved.size());
+        for (int i = 0; i < objectCount; i++) {
+            assertEquals(i, retrieved.get(i).mFieldA);
+        }
+    }
+
     public void testStringList() throws Exception {
         final int objectCount = 400;
         List<String> list = new ArrayList<String>();
@@ -113,6 +144,58 @@ public class ParceledListSliceTest extends TestCase {
         assertEquals(list, slice.getList());
     }
 
+    /**
+     * Test that strings repeated across elements are pooled, and still unparcel correctly.
+     */
+    public void testPooledStrings() throws Exception {
+        final int objectCount = 50;
+        List<ResolveInfo> list = new ArrayList<ResolveInfo>();
+        for (int i = 0; i < objectCount; i++) {
+            ResolveInfo ri = new ResolveInfo();
+            ri.activityInfo = new ActivityInfo();
+            ri.activityInfo.packageName = "com.example.app";
+            ri.activityInfo.name = "com.example.app.Activity" + i;
+            ri.activityInfo.applicationInfo = new ApplicationInfo();
+            ri.activityInfo.applicationInfo.packageName = "com.example.app";
+            ri.activityInfo.applicationInfo.sourceDir = "/data/app/com.example.app/base.apk";
+            list.add(ri);
+        }
+
+        ParceledListSlice<ResolveInfo> slice;
+        int pooledSize;
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeParcelable(new ParceledListSlice<ResolveInfo>(list), 0);
+            pooledSize = parcel.dataSize();
+            parcel.setDataPosition(0);
+            slice = parcel.readParcelable(getClass().getClassLoader());
+        } finally {
+            parcel.recycle();
+        }
+
+        int unpooledSize = 0;
+        parcel = Parcel.obtain();
+        try {
+            for (int i = 0; i < objectCount; i++) {
+                list.get(i).writeToParcel(parcel, 0);
+            }
+            unpooledSize = parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+        assertTrue(pooledSize < unpooledSize);
+
+        assertEquals(objectCount, slice.getList().size());
+        for (int i = 0; i < objectCount; i++) {
+            ActivityInfo ai = slice.getList().get(i).activityInfo;
+            assertEquals("com.example.app", ai.packageName);
+            assertEquals("com.example.app.Activity" + i, ai.name);
+            assertEquals("/data/app/com.example.app/base.apk", ai.applicationInfo.sourceDir);
+        }
+        assertSame(slice.getList().get(0).activityInfo.packageName,
+                slice.getList().get(1).activityInfo.packageName);
+    }
+
     /**
      * Test that only homogeneous elements may be unparceled.
      */
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.content.res;
+
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+public class SharedDrawableCacheTest extends TestCase {
+    private static final String ASSET_PATH = "/system/app/Test/Test.apk";
+    private static final String FILE = "res/drawable-xhdpi-v4/icon.png";
+
+    @SmallTest
+    public void testIsShareable() {
+        assertTrue(SharedDrawableCache.isShareable(FILE));
+        assertTrue(SharedDrawableCache.isShareable("res/drawable/frame.9.png"));
+        assertFalse(SharedDrawableCache.isShareable("res/drawable/selector.xml"));
+    }
+
+    @SmallTest
+    public void testPutGet() {
+        final Drawable.ConstantState cs = new ColorDrawable(0xff00ff00).getConstantState();
+        SharedDrawableCache.put(ASSET_PATH, FILE, 320, 480, 480, cs);
+
+        final int hits = SharedDrawableCache.getHitCount();
+        assertSame(cs, SharedDrawableCache.get(ASSET_PATH, FILE, 320, 480, 480));
+        assertEquals(hits + 1, SharedDrawableCache.getHitCount());
+    }
+
+    @SmallTest
+    public void testDifferentKeysMiss() {
+        final Drawable.ConstantState cs = new ColorDrawable(0xff0000ff).getConstantState();
+        SharedDrawableCache.put(ASSET_PATH, FILE, 320, 480, 480, cs);
+
+        final int misses = SharedDrawableCache.getMissCount();
+        assertNull(SharedDrawableCache.get("/data/app/Other/base.apk", FILE, 320, 480, 480));
+        assertNull(SharedDrawableCache.get(ASSET_PATH, "res/drawable-hdpi-v4/icon.png",
+                320, 480, 480));
+        assertNull(SharedDrawableCache.get(ASSET_PATH, FILE, 240, 480, 480));
+        assertNull(SharedDrawableCache.get(ASSET_PATH, FILE, 320, 640, 480));
+        assertNull(SharedDrawableCache.get(ASSET_PATH, FILE, 320, 480, 320));
+        assertEquals(misses + 5, SharedDrawableCache.getMissCount());
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database.sqlite;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDebug.ConnectionPoolStats;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.File;
+import java.util.Arrays;
+
+public class SQLiteConnectionPoolTest extends AndroidTestCase {
+    private SQLiteDatabase mDatabase;
+    private File mDatabaseFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        File dbDir = getContext().getDir(this.getClass().getName(), Context.MODE_PRIVATE);
+        mDatabaseFile = new File(dbDir, "connection_pool_test.db");
+        if (mDatabaseFile.exists()) {
+            mDatabaseFile.delete();
+        }
+        mDatabase = SQLiteDatabase.openOrCreateDatabase(mDatabaseFile.getPath(), null);
+        assertNotNull(mDatabase);
+        mDatabase.enableWriteAheadLogging();
+        mDatabase.execSQL("CREATE TABLE t (i int);");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDatabase.close();
+        SQLiteDatabase.deleteDatabase(mDatabaseFile);
+        super.tearDown();
+    }
+
+    private ConnectionPoolStats getStats() {
+        for (ConnectionPoolStats stats : SQLiteDebug.getDatabaseInfo().poolStats) {
+            if (stats.dbName.equals(mDatabaseFile.getPath())) {
+                return stats;
+            }
+        }
+        fail("No pool stats for " + mDatabaseFile);
+        return null;
+    }
+
+    @SmallTest
+    public void testWaitTimeBuckets() {
+        assertEquals(0, ConnectionPoolStats.getWaitTimeBucket(0));
+        assertEquals(1, ConnectionPoolStats.getWaitTimeBucket(1));
+        assertEquals(2, ConnectionPoolStats.getWaitTimeBucket(3));
+        assertEquals(3, ConnectionPoolStats.getWaitTimeBucket(4));
+        assertEquals(ConnectionPoolStats.WAIT_TIME_BUCKET_COUNT - 1,
+                ConnectionPoolStats.getWaitTimeBucket(Long.MAX_VALUE));
+
+        assertEquals("<1ms", ConnectionPoolStats.getWaitTimeBucketLabel(0));
+        assertEquals("1ms", ConnectionPoolStats.getWaitTimeBucketLabel(1));
+        assertEquals("2-3ms", ConnectionPoolStats.getWaitTimeBucketLabel(2));
+        assertEquals(">=2048ms", ConnectionPoolStats.getWaitTimeBucketLabel(
+                ConnectionPoolStats.WAIT_TIME_BUCKET_COUNT - 1));
+    }
+
+    @SmallTest
+    public void testAcquisitionsAreCounted() {
+        final long before = getStats().acquireCount;
+        mDatabase.execSQL("INSERT INTO t VALUES (1);");
+        final ConnectionPoolStats stats = getStats();
+        assertTrue(stats.acquireCount > before);
+        int total = 0;
+        for (int count : stats.waitTimeHistogram) {
+            total += count;
+        }
+        assertEquals(stats.acquireCount, total);
+    }
+
+    @SmallTest
+    public void testMaxConnectionPoolSize() {
+        mDatabase.setMaxConnectionPoolSize(6);
+        assertEquals(6, getStats().maxConnections);
+        mDatabase.setMaxConnectionPoolSize(0);
+        assertEquals(SQLiteGlobal.getWALConnectionPoolSize(), getStats().maxConnections);
+    }
+
+    @SmallTest
+    public void testPrecompiledStatements() {
+        final String sql = "SELECT i FROM t WHERE i = ?";
+        mDatabase.setPrecompiledStatements(Arrays.asList(sql, "SELECT * FROM missing"));
+
+        final long hits = getStats().statementCacheHits;
+        final long misses = getStats().statementCacheMisses;
+        mDatabase.compileStatement(sql).close();
+        assertEquals(hits + 1, getStats().statementCacheHits);
+        assertEquals(misses, getStats().statementCacheMisses);
+    }
+
+    @SmallTest
+    public void testIdleConnectionsAreClosed() throws Exception {
+        mDatabase.setMaxConnectionPoolSize(4);
+        mDatabase.setIdleConnectionTimeout(1000);
+        // A read-only query outside of a transaction uses a non-primary connection.
+        final Cursor cursor = mDatabase.rawQuery("SELECT * FROM t", null);
+        cursor.getCount();
+        cursor.close();
+        assertEquals(2, getStats().openConnections);
+
+        final long deadline = SystemClock.uptimeMillis() + 5000;
+        while (getStats().openConnections > 1 && SystemClock.uptimeMillis() < deadline) {
+            SystemClock.sleep(50);
+        }
+        assertEquals(1, getStats().openConnections);
+    }
+}
@@ -19,6 +19,7 @@ package android.database.sqlite;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.CursorWindow;
 import android.test.AndroidTestCase;
 import android.test.suitebuilder.annotation.LargeTest;
 
@@ -149,4 +150,96 @@ public class SQLiteCursorTest extends AndroidTestCase {
         }
         c.close();
     }
+
+    /**
+     * Reads a result set spanning many windows sequentially with write-ahead logging enabled,
+     * so that the following windows are filled ahead on a background thread, and checks that
+     * every row is seen once and in order.
+     */
+    @LargeTest
+    public void testSequentialReadAhead() {
+        mDatabase.enableWriteAheadLogging();
+        final String testTable = "testReadAhead";
+        mDatabase.execSQL("CREATE TABLE " + testTable + " (col1 int, desc text not null);");
+
+        StringBuilder buff = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            buff.append(i % 10);
+        }
+        ContentValues values = new ContentValues();
+        values.put("desc", buff.toString());
+        // Enough rows to need several windows.
+        final int N = 20000;
+        mDatabase.beginTransaction();
+        for (int i = 0; i < N; i++) {
+            values.put("col1", i);
+            mDatabase.insert(testTable, null, values);
+        }
+        mDatabase.setTransactionSuccessful();
+        mDatabase.endTransaction();
+
+        Cursor c = mDatabase.rawQuery("SELECT col1, desc FROM " + testTable
+                + " ORDER BY col1", null);
+        assertEquals(N, c.getCount());
+        int expected = 0;
+        while (c.moveToNext()) {
+            assertEquals(expected++, c.getInt(0));
+        }
+        assertEquals(N, expected);
+
+        // Jumping back must still work after reading ahead.
+        assertTrue(c.moveToPosition(10));
+        assertEquals(10, c.getInt(0));
+        c.close();
+    }
+
+    /**
+     * Begins a transaction while a window is being read ahead and changes the rows it holds,
+     * and checks that the cursor sees the changes rather than the window read ahead.
+     */
+    @LargeTest
+    public void testReadAheadDiscardedInTransaction() {
+        mDatabase.enableWriteAheadLogging();
+        final String testTable = "testReadAheadTransaction";
+        mDatabase.execSQL("CREATE TABLE " + testTable + " (col1 int, desc text not null);");
+
+        StringBuilder buff = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            buff.append(i % 10);
+        }
+        ContentValues values = new ContentValues();
+        values.put("desc", buff.toString());
+        final int N = 20000;
+        mDatabase.beginTransaction();
+        for (int i = 0; i < N; i++) {
+            values.put("col1", i);
+            mDatabase.insert(testTable, null, values);
+        }
+        mDatabase.setTransactionSuccessful();
+        mDatabase.endTransaction();
+
+        Cursor c = mDatabase.rawQuery("SELECT col1, desc FROM " + testTable
+                + " ORDER BY col1", null);
+        assertEquals(N, c.getCount());
+        // Move just past the first window, so that the one after the second is read ahead.
+        assertTrue(c.moveToFirst());
+        CursorWindow window = ((SQLiteCursor) c).getWindow();
+        final int pos = window.getStartPosition() + window.getNumRows();
+        assertTrue(c.moveToPosition(pos));
+        window = ((SQLiteCursor) c).getWindow();
+        final int readAheadPos = window.getStartPosition() + window.getNumRows();
+
+        mDatabase.beginTransaction();
+        try {
+            mDatabase.execSQL("UPDATE " + testTable + " SET desc = 'changed' WHERE col1 >= "
+                    + readAheadPos);
+            assertTrue(c.moveToPosition(readAheadPos - 1));
+            while (c.moveToNext()) {
+                assertEquals("changed", c.getString(1));
+            }
+        } finally {
+            mDatabase.endTransaction();
+        }
+        c.close();
+    }
 }
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.os;
+
+import android.graphics.Rect;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.ArrayMap;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+public class BundleLazyValueTest extends TestCase {
+    private static Bundle roundTrip(Bundle bundle) {
+        final Parcel p = Parcel.obtain();
+        try {
+            p.writeBundle(bundle);
+            p.setDataPosition(0);
+            return p.readBundle();
+        } finally {
+            p.recycle();
+        }
+    }
+
+    private static Bundle createBundle() {
+        final Bundle bundle = new Bundle();
+        bundle.putString("string", "value");
+        bundle.putInt("int", 42);
+        bundle.putParcelable("rect", new Rect(1, 2, 3, 4));
+        final ArrayList<Rect> list = new ArrayList<>();
+        list.add(new Rect(5, 6, 7, 8));
+        bundle.putParcelableArrayList("list", list);
+        bundle.putParcelableArray("array", new Rect[] { new Rect(9, 10, 11, 12) });
+        return bundle;
+    }
+
+    @SmallTest
+    public void testValuesAreDecodedOnAccess() throws Exception {
+        final Bundle bundle = roundTrip(createBundle());
+        assertEquals("value", bundle.getString("string"));
+        assertTrue(bundle.mMap.get("rect") instanceof Parcel.LazyValue);
+        assertEquals(new Rect(1, 2, 3, 4), bundle.getParcelable("rect"));
+        assertFalse(bundle.mMap.get("rect") instanceof Parcel.LazyValue);
+        assertEquals(42, bundle.getInt("int"));
+        assertEquals(new Rect(5, 6, 7, 8), bundle.<Rect>getParcelableArrayList("list").get(0));
+        assertEquals(new Rect(9, 10, 11, 12), bundle.getParcelableArray("array")[0]);
+    }
+
+    @SmallTest
+    public void testForwardWithoutDecoding() throws Exception {
+        final Bundle bundle = roundTrip(createBundle());
+        assertEquals("value", bundle.getString("string"));
+
+        final Bundle forwarded = roundTrip(bundle);
+        assertTrue(bundle.mMap.get("rect") instanceof Parcel.LazyValue);
+        assertEquals(new Rect(1, 2, 3, 4), forwarded.getParcelable("rect"));
+        assertEquals(new Rect(9, 10, 11, 12), forwarded.getParcelableArray("array")[0]);
+    }
+
+    @SmallTest
+    public void testForwardAfterModifyingDecodedValue() throws Exception {
+        final Bundle bundle = roundTrip(createBundle());
+        final Rect rect = bundle.getParcelable("rect");
+        rect.offset(10, 10);
+
+        final Bundle forwarded = roundTrip(bundle);
+        assertEquals(new Rect(11, 12, 13, 14), forwarded.getParcelable("rect"));
+    }
+
+    @SmallTest
+    public void testDeepCopyIsIndependent() throws Exception {
+        final Bundle bundle = roundTrip(createBundle());
+        final Bundle copy = bundle.deepCopy();
+        final Rect rect = bundle.getParcelable("rect");
+        rect.offset(10, 10);
+        assertEquals(new Rect(1, 2, 3, 4), copy.getParcelable("rect"));
+    }
+
+    @SmallTest
+    public void testEagerReadOfLazyValues() throws Exception {
+        final Bundle bundle = roundTrip(createBundle());
+        bundle.getString("string");
+
+        final Parcel p = Parcel.obtain();
+        try {
+            p.writeArrayMapInternal(bundle.mMap, true);
+            p.setDataPosition(0);
+            final ArrayMap<String, Object> map = new ArrayMap<>();
+            p.readArrayMapInternal(map, p.readInt(), getClass().getClassLoader());
+            assertEquals(new Rect(1, 2, 3, 4), map.get("rect"));
+            assertEquals("value", map.get("string"));
+        } finally {
+            p.recycle();
+        }
+    }
+
+    @SmallTest
+    public void testBadLazyLengthIsRejected() throws Exception {
+        final Parcel p = Parcel.obtain();
+        try {
+            p.writeString("key");
+            p.writeInt(29); // VAL_LAZY
+            p.writeInt(Integer.MAX_VALUE);
+            p.setDataPosition(0);
+            p.readArrayMapInternal(new ArrayMap<>(), 1, null, true);
+            fail("Expected BadParcelableException");
+        } catch (BadParcelableException expected) {
+        } finally {
+            p.recycle();
+        }
+    }
+
+    @SmallTest
+    public void testBadLazyLengthIsRejectedWhenReadEagerly() throws Exception {
+        for (int length : new int[] { Integer.MAX_VALUE, -8 }) {
+            final Parcel p = Parcel.obtain();
+            try {
+                p.writeString("key");
+                p.writeInt(29); // VAL_LAZY
+                p.writeInt(length);
+                p.writeInt(-1); // VAL_NULL
+                p.setDataPosition(0);
+                p.readArrayMapInternal(new ArrayMap<>(), 1, null);
+                fail("Expected BadParcelableException for length " + length);
+            } catch (BadParcelableException expected) {
+            } finally {
+                p.recycle();
+            }
+        }
+    }
+
+    @SmallTest
+    public void testFailedUnparcelDropsLazyValues() throws Exception {
+        final Bundle source = roundTrip(createBundle());
+        source.getString("string");
+
+        final Parcel p = Parcel.obtain();
+        try {
+            final int lengthPos = p.dataPosition();
+            p.writeInt(-1);
+            p.writeInt(BaseBundle.BUNDLE_MAGIC);
+            final int startPos = p.dataPosition();
+            p.writeArrayMapInternal(source.mMap, true);
+            // Append an entry that fails to parse after the lazy values were read.
+            p.writeString("bad");
+            p.writeInt(29); // VAL_LAZY
+            p.writeInt(Integer.MAX_VALUE);
+            final int endPos = p.dataPosition();
+            p.setDataPosition(startPos);
+            p.writeInt(source.mMap.size() + 1);
+            p.setDataPosition(lengthPos);
+            p.writeInt(endPos - startPos);
+            p.setDataPosition(0);
+
+            final Bundle bundle = p.readBundle();
+            try {
+                bundle.size();
+                fail("Expected BadParcelableException");
+            } catch (BadParcelableException expected) {
+            }
+            // Nothing may keep referring to the recycled parcel.
+            assertEquals(0, bundle.mMap.size());
+        } finally {
+            p.recycle();
+        }
+    }
+}
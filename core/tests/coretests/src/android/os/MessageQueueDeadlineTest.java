@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the earliest deadline first dispatching of {@link MessageQueue}.
+ */
+public class MessageQueueDeadlineTest extends TestCase {
+    private Handler mHandler;
+    private MessageQueue mQueue;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mHandler = new Handler(Looper.getMainLooper());
+        mQueue = new MessageQueue(true);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mQueue.quit(false);
+        assertNull(mQueue.next());
+        super.tearDown();
+    }
+
+    private void enqueue(int what, int lane, long when) {
+        final Message msg = mHandler.obtainMessage(what);
+        msg.setLane(lane);
+        mQueue.enqueueMessage(msg, when);
+    }
+
+    private int nextWhat() {
+        final Message msg = mQueue.next();
+        final int what = msg.what;
+        msg.recycleUnchecked();
+        return what;
+    }
+
+    @SmallTest
+    public void testInOrderWhenDisabled() {
+        final long now = SystemClock.uptimeMillis();
+        enqueue(1, Message.LANE_BACKGROUND, now - 10);
+        enqueue(2, Message.LANE_DEFAULT, now - 5);
+        enqueue(3, Message.LANE_URGENT, now - 1);
+
+        assertEquals(1, nextWhat());
+        assertEquals(2, nextWhat());
+        assertEquals(3, nextWhat());
+    }
+
+    @SmallTest
+    public void testUrgentOvertakesDueWork() {
+        mQueue.setDeadlineSchedulingEnabled(true);
+        final long now = SystemClock.uptimeMillis();
+        enqueue(1, Message.LANE_BACKGROUND, now - 10);
+        enqueue(2, Message.LANE_DEFAULT, now - 5);
+        enqueue(3, Message.LANE_BACKGROUND, now - 4);
+        enqueue(4, Message.LANE_URGENT, now - 1);
+
+        assertEquals(4, nextWhat());
+        assertEquals(2, nextWhat());
+        // Messages of the same lane stay in order.
+        assertEquals(1, nextWhat());
+        assertEquals(3, nextWhat());
+    }
+
+    @SmallTest
+    public void testBackgroundNotStarved() {
+        mQueue.setDeadlineSchedulingEnabled(true);
+        final long now = SystemClock.uptimeMillis();
+        // Waited for longer than its slack, so it is dispatched first.
+        enqueue(1, Message.LANE_BACKGROUND, now - 5000);
+        enqueue(2, Message.LANE_URGENT, now - 1);
+
+        assertEquals(1, nextWhat());
+        assertEquals(2, nextWhat());
+    }
+
+    @SmallTest
+    public void testNotReorderedPastBarrier() {
+        mQueue.setDeadlineSchedulingEnabled(true);
+        final long now = SystemClock.uptimeMillis();
+        enqueue(1, Message.LANE_BACKGROUND, now - 10);
+        final int token = mQueue.postSyncBarrier();
+        enqueue(2, Message.LANE_URGENT, SystemClock.uptimeMillis());
+
+        assertEquals(1, nextWhat());
+        mQueue.removeSyncBarrier(token);
+        assertEquals(2, nextWhat());
+    }
+
+    @SmallTest
+    public void testInvalidLane() {
+        try {
+            Message.obtain().setLane(Message.LANE_COUNT);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @SmallTest
+    public void testCopyKeepsLane() {
+        final Message m = Message.obtain();
+        m.setLane(Message.LANE_URGENT);
+        assertEquals(Message.LANE_URGENT, Message.obtain(m).getLane());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package android.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.text.style.RelativeSizeSpan;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class LineBreakCacheTest {
+    private static final String TEXT = "The quick brown fox jumps over the lazy dog.\n"
+            + "Pack my box with five dozen liquor jugs.";
+    private static final int WIDTH = 100;
+
+    private TextPaint mPaint;
+
+    @Before
+    public void setup() {
+        LineBreakCache.clear();
+        mPaint = new TextPaint();
+        mPaint.setTextSize(20);
+    }
+
+    private StaticLayout build(CharSequence text, TextPaint paint, int width) {
+        return StaticLayout.Builder.obtain(text, 0, text.length(), paint, width).build();
+    }
+
+    private static void assertSameLines(StaticLayout expected, StaticLayout actual) {
+        assertEquals(expected.getLineCount(), actual.getLineCount());
+        for (int i = 0; i < expected.getLineCount(); i++) {
+            assertEquals(expected.getLineStart(i), actual.getLineStart(i));
+            assertEquals(expected.getLineEnd(i), actual.getLineEnd(i));
+            assertEquals(expected.getLineTop(i), actual.getLineTop(i));
+            assertEquals(expected.getLineWidth(i), actual.getLineWidth(i), 0.0f);
+        }
+    }
+
+    @Test
+    public void testIdenticalLayoutHitsCache() {
+        final StaticLayout first = build(TEXT, mPaint, WIDTH);
+        final int hits = LineBreakCache.hitCount();
+        final StaticLayout second = build(TEXT, mPaint, WIDTH);
+
+        assertTrue(LineBreakCache.hitCount() > hits);
+        assertSameLines(first, second);
+    }
+
+    @Test
+    public void testEqualPaintHitsCache() {
+        build(TEXT, mPaint, WIDTH);
+        final TextPaint copy = new TextPaint(mPaint);
+        final int hits = LineBreakCache.hitCount();
+        build(TEXT, copy, WIDTH);
+
+        assertTrue(LineBreakCache.hitCount() > hits);
+    }
+
+    @Test
+    public void testDifferentParametersMissCache() {
+        build(TEXT, mPaint, WIDTH);
+        final int hits = LineBreakCache.hitCount();
+
+        final StaticLayout wider = build(TEXT, mPaint, WIDTH * 2);
+        final TextPaint larger = new TextPaint(mPaint);
+        larger.setTextSize(40);
+        final StaticLayout bigger = build(TEXT, larger, WIDTH);
+
+        assertEquals(hits, LineBreakCache.hitCount());
+        LineBreakCache.clear();
+        assertSameLines(build(TEXT, mPaint, WIDTH * 2), wider);
+        assertSameLines(build(TEXT, larger, WIDTH), bigger);
+    }
+
+    @Test
+    public void testSpannedTextIsNotCached() {
+        final SpannableString text = new SpannableString(TEXT);
+        text.setSpan(new RelativeSizeSpan(2.0f), 0, 3, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        build(text, mPaint, WIDTH);
+        final int hits = LineBreakCache.hitCount();
+        final int misses = LineBreakCache.missCount();
+        build(text, mPaint, WIDTH);
+
+        assertEquals(hits, LineBreakCache.hitCount());
+        assertEquals(misses, LineBreakCache.missCount());
+    }
+
+    @Test
+    public void testPrecompute() {
+        StaticLayout.Builder.obtain(TEXT, 0, TEXT.length(), mPaint, WIDTH).precompute();
+        final int hits = LineBreakCache.hitCount();
+        build(TEXT, mPaint, WIDTH);
+
+        assertTrue(LineBreakCache.hitCount() > hits);
+    }
+}
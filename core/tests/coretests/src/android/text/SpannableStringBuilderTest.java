@@ -19,6 +19,7 @@ package android.text;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
 
 import android.text.style.BulletSpan;
 import android.text.style.QuoteSpan;
@@ -27,6 +28,10 @@ import android.text.style.UnderlineSpan;
 
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 public class SpannableStringBuilderTest extends SpannableTest {
 
     protected Spannable newSpannableWithText(String text) {
@@ -58,4 +63,35 @@ public class SpannableStringBuilderTest extends SpannableTest {
         assertEquals(second, spans[2]);
         assertEquals(first, spans[3]);
     }
+
+    @Test
+    public void testForEachSpan_visitsSameSpansAsGetSpans() {
+        SpannableStringBuilder builder = new SpannableStringBuilder("abcdefghijklmnopqrstuvwxyz");
+        for (int i = 0; i < 20; i++) {
+            builder.setSpan(new UnderlineSpan(), i, i + 5, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            builder.setSpan(new SubscriptSpan(), i, i, Spanned.SPAN_POINT_POINT);
+        }
+        // Move the gap into the middle of the spans.
+        builder.insert(10, "0123456789");
+        builder.delete(12, 15);
+
+        final int[][] queries = {{0, 0}, {0, 5}, {7, 7}, {10, 20}, {15, 40}, {0, 33}};
+        for (int[] query : queries) {
+            UnderlineSpan[] expected = builder.getSpans(query[0], query[1], UnderlineSpan.class);
+            final Set<Object> visited = new HashSet<>();
+            int count = builder.forEachSpan(query[0], query[1], UnderlineSpan.class,
+                    span -> visited.add(span));
+
+            assertEquals(expected.length, count);
+            assertEquals(new HashSet<>(Arrays.asList(expected)), visited);
+        }
+    }
+
+    @Test
+    public void testForEachSpan_nullKindVisitsNothing() {
+        SpannableStringBuilder builder = new SpannableStringBuilder("text");
+        builder.setSpan(new UnderlineSpan(), 0, 4, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+
+        assertEquals(0, builder.forEachSpan(0, 4, null, span -> fail()));
+    }
 }
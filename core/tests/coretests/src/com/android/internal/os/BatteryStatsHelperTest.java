@@ -37,10 +37,12 @@ import android.content.Context;
 import android.content.pm.PackageManager;
 import android.os.BatteryStats;
 import android.os.Process;
+import android.os.UserHandle;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.filters.SmallTest;
 import android.support.test.runner.AndroidJUnit4;
 import android.text.format.DateUtils;
+import android.util.SparseArray;
 
 import junit.framework.TestCase;
 
@@ -258,6 +260,42 @@ public class BatteryStatsHelperTest extends TestCase {
         assertThat(time).isEqualTo(TIME_STATE_FOREGROUND_MS);
     }
 
+    @Test
+    public void testRefreshStats_notOnBattery_reusesSippers() {
+        final MockBatteryStatsImpl stats = new MockBatteryStatsImpl();
+        stats.getUidStatsLocked(Process.ROOT_UID);
+        final BatteryStatsHelper helper = new BatteryStatsHelper(mContext);
+        helper.setReuseUnchangedRefresh(true);
+        helper.create(stats);
+        final SparseArray<UserHandle> users = new SparseArray<>();
+        users.put(UserHandle.USER_ALL, UserHandle.ALL);
+
+        helper.refreshStats(BatteryStats.STATS_SINCE_CHARGED, users, 1000, 1000);
+        final BatterySipper sipper = helper.getUsageList().get(0);
+        helper.refreshStats(BatteryStats.STATS_SINCE_CHARGED, users, 2000, 2000);
+        assertThat(helper.getUsageList().get(0)).isSameAs(sipper);
+
+        // A new uid may come with new usage.
+        stats.getUidStatsLocked(Process.SYSTEM_UID);
+        helper.refreshStats(BatteryStats.STATS_SINCE_CHARGED, users, 3000, 3000);
+        assertThat(helper.getUsageList().get(0)).isNotSameAs(sipper);
+    }
+
+    @Test
+    public void testRefreshStats_reuseNotEnabled_recomputesSippers() {
+        final MockBatteryStatsImpl stats = new MockBatteryStatsImpl();
+        stats.getUidStatsLocked(Process.ROOT_UID);
+        final BatteryStatsHelper helper = new BatteryStatsHelper(mContext);
+        helper.create(stats);
+        final SparseArray<UserHandle> users = new SparseArray<>();
+        users.put(UserHandle.USER_ALL, UserHandle.ALL);
+
+        helper.refreshStats(BatteryStats.STATS_SINCE_CHARGED, users, 1000, 1000);
+        final BatterySipper sipper = helper.getUsageList().get(0);
+        helper.refreshStats(BatteryStats.STATS_SINCE_CHARGED, users, 2000, 2000);
+        assertThat(helper.getUsageList().get(0)).isNotSameAs(sipper);
+    }
+
     private BatterySipper createTestSmearBatterySipper(long activityTime, double totalPowerMah,
             int uidCode, boolean isUidNull) {
         final BatterySipper sipper = mock(BatterySipper.class);
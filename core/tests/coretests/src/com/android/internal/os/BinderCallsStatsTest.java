@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.os;
+
+import android.os.Binder;
+import android.os.IBinder;
+import android.support.test.filters.SmallTest;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+
+/**
+ * Tests for the sampling and aggregation done by BinderCallsStats.
+ */
+public class BinderCallsStatsTest extends TestCase {
+
+    @SmallTest
+    public void testDisabledByDefault() {
+        BinderCallsStats stats = new BinderCallsStats();
+        assertNull(stats.callStarted(new TestBinder(), TestBinder.TRANSACTION_ping));
+        assertTrue(stats.getCallStats().isEmpty());
+    }
+
+    @SmallTest
+    public void testSampling() {
+        BinderCallsStats stats = new BinderCallsStats();
+        stats.setEnabled(true);
+        stats.setSamplingInterval(4);
+        Binder binder = new TestBinder();
+
+        int sampled = 0;
+        for (int i = 0; i < 40; i++) {
+            BinderCallsStats.CallSession s = stats.callStarted(binder, TestBinder.TRANSACTION_ping);
+            if (s != null) {
+                sampled++;
+                stats.callEnded(s, 100, 1000);
+            }
+        }
+        assertEquals(10, sampled);
+
+        ArrayList<BinderCallsStats.CallStat> callStats = stats.getCallStats();
+        assertEquals(1, callStats.size());
+        BinderCallsStats.CallStat stat = callStats.get(0);
+        assertEquals(TestBinder.class, stat.binderClass);
+        assertEquals(TestBinder.TRANSACTION_ping, stat.code);
+        assertEquals(10, stat.callCount);
+        assertEquals(1000, stat.totalRequestBytes);
+        assertEquals(1000, stat.maxReplyBytes);
+        assertEquals(10, stat.sizeHistogram[BinderCallsStats.getSizeBucket(1100)]);
+
+        stats.reset();
+        assertTrue(stats.getCallStats().isEmpty());
+    }
+
+    @SmallTest
+    public void testNestedCallNotSampled() {
+        BinderCallsStats stats = new BinderCallsStats();
+        stats.setEnabled(true);
+        stats.setSamplingInterval(1);
+        Binder binder = new TestBinder();
+
+        BinderCallsStats.CallSession outer = stats.callStarted(binder, TestBinder.TRANSACTION_ping);
+        assertNotNull(outer);
+        assertNull(stats.callStarted(binder, TestBinder.TRANSACTION_echo));
+        stats.callEnded(outer, 0, 0);
+        assertNotNull(stats.callStarted(binder, TestBinder.TRANSACTION_echo));
+    }
+
+    @SmallTest
+    public void testBuckets() {
+        assertEquals(0, BinderCallsStats.getLatencyBucket(0));
+        assertEquals(0, BinderCallsStats.getLatencyBucket(63));
+        assertEquals(1, BinderCallsStats.getLatencyBucket(64));
+        assertEquals(2, BinderCallsStats.getLatencyBucket(128));
+        assertEquals(BinderCallsStats.LATENCY_BUCKET_COUNT - 1,
+                BinderCallsStats.getLatencyBucket(Long.MAX_VALUE));
+        assertEquals("<64us", BinderCallsStats.getLatencyBucketLabel(0));
+        assertEquals("64-127us", BinderCallsStats.getLatencyBucketLabel(1));
+
+        assertEquals(0, BinderCallsStats.getSizeBucket(255));
+        assertEquals(1, BinderCallsStats.getSizeBucket(256));
+        assertEquals(BinderCallsStats.SIZE_BUCKET_COUNT - 1,
+                BinderCallsStats.getSizeBucket(Integer.MAX_VALUE));
+    }
+
+    @SmallTest
+    public void testTransactionNames() {
+        assertEquals("ping",
+                BinderCallsStats.getTransactionNames(TestBinder.class).get(
+                        TestBinder.TRANSACTION_ping));
+        assertEquals("echo",
+                BinderCallsStats.getTransactionNames(TestBinder.class).get(
+                        TestBinder.TRANSACTION_echo));
+        assertEquals("DUMP_TRANSACTION",
+                BinderCallsStats.getTransactionNames(TestBinder.class).get(
+                        IBinder.DUMP_TRANSACTION));
+        assertNull(BinderCallsStats.getTransactionNames(TestBinder.class).get(
+                IBinder.FIRST_CALL_TRANSACTION + 2));
+    }
+
+    // Mirrors the constants AIDL generates in a Stub.
+    private static class TestBinder extends Binder {
+        static final int TRANSACTION_ping = (IBinder.FIRST_CALL_TRANSACTION + 0);
+        static final int TRANSACTION_echo = (IBinder.FIRST_CALL_TRANSACTION + 1);
+    }
+}
@@ -19,7 +19,6 @@ package com.android.internal.os;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyZeroInteractions;
-import static org.mockito.Mockito.when;
 
 import android.support.test.filters.SmallTest;
 import android.support.test.runner.AndroidJUnit4;
@@ -31,7 +30,8 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 
 /**
  * Test class for {@link KernelUidCpuFreqTimeReader}.
@@ -51,7 +51,6 @@ import java.io.BufferedReader;
 @SmallTest
 @RunWith(AndroidJUnit4.class)
 public class KernelUidCpuFreqTimeReaderTest {
-    @Mock private BufferedReader mBufferedReader;
     @Mock private KernelUidCpuFreqTimeReader.Callback mCallback;
 
     private KernelUidCpuFreqTimeReader mKernelUidCpuFreqTimeReader;
@@ -72,9 +71,8 @@ public class KernelUidCpuFreqTimeReaderTest {
                 times[i][j] = uids[i] * freqs[j] * 10;
             }
         }
-        when(mBufferedReader.readLine())
-                .thenReturn(getFreqsLine(freqs), getUidTimesLines(uids, times));
-        mKernelUidCpuFreqTimeReader.readDelta(mBufferedReader, mCallback);
+        mKernelUidCpuFreqTimeReader.readDelta(getProcFile(freqs, uids, times),
+                copying(mCallback));
         verify(mCallback).onCpuFreqs(freqs);
         for (int i = 0; i < uids.length; ++i) {
             verify(mCallback).onUidCpuFreqTime(uids[i], times[i]);
@@ -82,16 +80,15 @@ public class KernelUidCpuFreqTimeReaderTest {
         verifyNoMoreInteractions(mCallback);
 
         // Verify that a second call will only return deltas.
-        Mockito.reset(mCallback, mBufferedReader);
+        Mockito.reset(mCallback);
         final long[][] newTimes1 = new long[uids.length][freqs.length];
         for (int i = 0; i < uids.length; ++i) {
             for (int j = 0; j < freqs.length; ++j) {
                 newTimes1[i][j] = (times[i][j] + uids[i] + freqs[j]) * 10;
             }
         }
-        when(mBufferedReader.readLine())
-                .thenReturn(getFreqsLine(freqs), getUidTimesLines(uids, newTimes1));
-        mKernelUidCpuFreqTimeReader.readDelta(mBufferedReader, mCallback);
+        mKernelUidCpuFreqTimeReader.readDelta(getProcFile(freqs, uids, newTimes1),
+                copying(mCallback));
         verify(mCallback).onCpuFreqs(freqs);
         for (int i = 0; i < uids.length; ++i) {
             verify(mCallback).onUidCpuFreqTime(uids[i], subtract(newTimes1[i], times[i]));
@@ -99,30 +96,27 @@ public class KernelUidCpuFreqTimeReaderTest {
         verifyNoMoreInteractions(mCallback);
 
         // Verify that calling with a null callback doesn't result in any crashes
-        Mockito.reset(mCallback, mBufferedReader);
+        Mockito.reset(mCallback);
         final long[][] newTimes2 = new long[uids.length][freqs.length];
         for (int i = 0; i < uids.length; ++i) {
             for (int j = 0; j < freqs.length; ++j) {
                 newTimes2[i][j] = (newTimes1[i][j] + uids[i] * freqs[j]) * 10;
             }
         }
-        when(mBufferedReader.readLine())
-                .thenReturn(getFreqsLine(freqs), getUidTimesLines(uids, newTimes2));
-        mKernelUidCpuFreqTimeReader.readDelta(mBufferedReader, null);
+        mKernelUidCpuFreqTimeReader.readDelta(getProcFile(freqs, uids, newTimes2), null);
         verifyZeroInteractions(mCallback);
 
         // Verify that the readDelta call will only return deltas when
         // the previous call had null callback.
-        Mockito.reset(mCallback, mBufferedReader);
+        Mockito.reset(mCallback);
         final long[][] newTimes3 = new long[uids.length][freqs.length];
         for (int i = 0; i < uids.length; ++i) {
             for (int j = 0; j < freqs.length; ++j) {
                 newTimes3[i][j] = (newTimes2[i][j] * (uids[i] + freqs[j])) * 10;
             }
         }
-        when(mBufferedReader.readLine())
-                .thenReturn(getFreqsLine(freqs), getUidTimesLines(uids, newTimes3));
-        mKernelUidCpuFreqTimeReader.readDelta(mBufferedReader, mCallback);
+        mKernelUidCpuFreqTimeReader.readDelta(getProcFile(freqs, uids, newTimes3),
+                copying(mCallback));
         verify(mCallback).onCpuFreqs(freqs);
         for (int i = 0; i < uids.length; ++i) {
             verify(mCallback).onUidCpuFreqTime(uids[i], subtract(newTimes3[i], newTimes2[i]));
@@ -138,27 +132,39 @@ public class KernelUidCpuFreqTimeReaderTest {
         return val;
     }
 
-    private String getFreqsLine(long[] freqs) {
+    /**
+     * The reader reuses the arrays it passes to the callback, so hand copies to the mock for
+     * verification.
+     */
+    private KernelUidCpuFreqTimeReader.Callback copying(
+            final KernelUidCpuFreqTimeReader.Callback callback) {
+        return new KernelUidCpuFreqTimeReader.Callback() {
+            @Override
+            public void onCpuFreqs(long[] cpuFreqs) {
+                callback.onCpuFreqs(cpuFreqs.clone());
+            }
+
+            @Override
+            public void onUidCpuFreqTime(int uid, long[] cpuFreqTimeMs) {
+                callback.onUidCpuFreqTime(uid, cpuFreqTimeMs.clone());
+            }
+        };
+    }
+
+    private InputStream getProcFile(long[] freqs, int[] uids, long[][] times) {
         final StringBuilder sb = new StringBuilder();
         sb.append("uid:");
         for (int i = 0; i < freqs.length; ++i) {
             sb.append(" " + freqs[i]);
         }
-        return sb.toString();
-    }
-
-    private String[] getUidTimesLines(int[] uids, long[][] times) {
-        final String[] lines = new String[uids.length + 1];
-        final StringBuilder sb = new StringBuilder();
+        sb.append("\n");
         for (int i = 0; i < uids.length; ++i) {
-            sb.setLength(0);
             sb.append(uids[i] + ":");
             for (int j = 0; j < times[i].length; ++j) {
                 sb.append(" " + times[i][j] / 10);
             }
-            lines[i] = sb.toString();
+            sb.append("\n");
         }
-        lines[uids.length] = null;
-        return lines;
+        return new ByteArrayInputStream(sb.toString().getBytes());
     }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.os;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.SparseArray;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * Test class for {@link KernelUidStatsReader}.
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class KernelUidStatsReaderTest {
+
+    @Test
+    public void testReadDelta() throws Exception {
+        final KernelUidStatsReader reader = new KernelUidStatsReader("/dev/null",
+                false /* hasHeader */, 2, 1);
+        final Recorder recorder = new Recorder();
+
+        reader.readDelta(stream("10: 100 200 3\n20: 5 6 7\n"), recorder);
+        assertArrayEquals(new long[] {100, 200}, recorder.deltas.get(10));
+        assertArrayEquals(new long[] {5, 6}, recorder.deltas.get(20));
+
+        recorder.deltas.clear();
+        reader.readDelta(stream("10: 150 200 3\n20: 5 16 7\n30: 1 1 1\n"), recorder);
+        assertArrayEquals(new long[] {50, 0}, recorder.deltas.get(10));
+        assertArrayEquals(new long[] {0, 10}, recorder.deltas.get(20));
+        assertArrayEquals(new long[] {1, 1}, recorder.deltas.get(30));
+
+        // Removed UIDs start over.
+        recorder.deltas.clear();
+        reader.removeUid(10);
+        reader.readDelta(stream("10: 160 200 3\n"), recorder);
+        assertArrayEquals(new long[] {160, 200}, recorder.deltas.get(10));
+    }
+
+    @Test
+    public void testReadDelta_header() throws Exception {
+        final KernelUidStatsReader reader = new KernelUidStatsReader("/dev/null",
+                true /* hasHeader */, 0, 10);
+        final Recorder recorder = new Recorder();
+
+        reader.readDelta(stream("uid: 300 600 900\n1: 1 2 3\n2: 4 5 6\n"), recorder);
+        assertArrayEquals(new long[] {300, 600, 900}, recorder.header);
+        assertArrayEquals(new long[] {10, 20, 30}, recorder.deltas.get(1));
+        assertArrayEquals(new long[] {40, 50, 60}, recorder.deltas.get(2));
+    }
+
+    @Test
+    public void testReadDelta_malformedLines() throws Exception {
+        final KernelUidStatsReader reader = new KernelUidStatsReader("/dev/null",
+                false /* hasHeader */, 2, 1);
+        final Recorder recorder = new Recorder();
+
+        reader.readDelta(stream("1: 1\nbogus\n2: 3 4\n\n3 5 6\n4: 7 8"), recorder);
+        assertEquals(2, recorder.deltas.size());
+        assertArrayEquals(new long[] {3, 4}, recorder.deltas.get(2));
+        assertArrayEquals(new long[] {7, 8}, recorder.deltas.get(4));
+        assertNull(recorder.deltas.get(1));
+    }
+
+    @Test
+    public void testReadDelta_largeFile() throws Exception {
+        final KernelUidStatsReader reader = new KernelUidStatsReader("/dev/null",
+                false /* hasHeader */, 2, 1);
+        final Recorder recorder = new Recorder();
+
+        final StringBuilder sb = new StringBuilder();
+        for (int uid = 0; uid < 5000; uid++) {
+            sb.append(uid).append(": ").append(uid).append(' ').append(uid * 2).append('\n');
+        }
+        reader.readDelta(stream(sb.toString()), recorder);
+        assertEquals(5000, recorder.deltas.size());
+        assertArrayEquals(new long[] {4999, 9998}, recorder.deltas.get(4999));
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes());
+    }
+
+    private static class Recorder implements KernelUidStatsReader.Callback {
+        long[] header;
+        final SparseArray<long[]> deltas = new SparseArray<>();
+
+        @Override
+        public void onHeader(long[] values) {
+            header = values.clone();
+        }
+
+        @Override
+        public void onUidDelta(int uid, long[] values, long[] deltas) {
+            this.deltas.put(uid, deltas.clone());
+        }
+    }
+}
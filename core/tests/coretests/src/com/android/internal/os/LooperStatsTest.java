@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.os;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.support.test.filters.SmallTest;
+
+import junit.framework.TestCase;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+
+/**
+ * Tests for the sampling and aggregation done by LooperStats.
+ */
+public class LooperStatsTest extends TestCase {
+    private Handler mHandler;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mHandler = new TestHandler(Looper.getMainLooper());
+    }
+
+    @SmallTest
+    public void testSampling() {
+        LooperStats stats = new LooperStats();
+        stats.setSamplingInterval(2);
+
+        for (int i = 0; i < 10; i++) {
+            Message msg = Message.obtain(mHandler, 7);
+            Object token = stats.messageDispatchStarting();
+            stats.messageDispatched(token, msg);
+            msg.recycle();
+        }
+        Message msg = Message.obtain(mHandler, new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        stats.setSamplingInterval(1);
+        Object token = stats.messageDispatchStarting();
+        stats.dispatchingThrewException(token, msg, new RuntimeException());
+        msg.recycle();
+
+        ArrayList<LooperStats.Entry> entries = stats.getEntries();
+        assertEquals(2, entries.size());
+        LooperStats.Entry byWhat = entries.get(0).callbackClass == null
+                ? entries.get(0) : entries.get(1);
+        LooperStats.Entry byCallback = entries.get(0).callbackClass == null
+                ? entries.get(1) : entries.get(0);
+        assertEquals(TestHandler.class, byWhat.handlerClass);
+        assertEquals(7, byWhat.what);
+        assertEquals(5, byWhat.messageCount);
+        assertEquals(0, byWhat.exceptionCount);
+        assertEquals(1, byCallback.messageCount);
+        assertEquals(1, byCallback.exceptionCount);
+        assertEquals(Thread.currentThread().getName(), byCallback.threadName);
+
+        stats.reset();
+        assertTrue(stats.getEntries().isEmpty());
+    }
+
+    @SmallTest
+    public void testNestedDispatchNotSampled() {
+        LooperStats stats = new LooperStats();
+        stats.setSamplingInterval(1);
+
+        Object outer = stats.messageDispatchStarting();
+        assertNotNull(outer);
+        assertNull(stats.messageDispatchStarting());
+        Message msg = Message.obtain(mHandler, 1);
+        stats.messageDispatched(outer, msg);
+        msg.recycle();
+        assertNotNull(stats.messageDispatchStarting());
+    }
+
+    @SmallTest
+    public void testDumpByUid() {
+        LooperStats stats = new LooperStats();
+        stats.setSamplingInterval(1);
+
+        Message msg = Message.obtain(mHandler, 1);
+        msg.workSourceUid = 10042;
+        stats.messageDispatched(stats.messageDispatchStarting(), msg);
+        msg.recycle();
+
+        StringWriter sw = new StringWriter();
+        stats.dump(new PrintWriter(sw), false);
+        assertTrue(sw.toString().contains("uid 10042: sampled=1"));
+        assertTrue(sw.toString().contains(TestHandler.class.getName() + ": 0x1"));
+    }
+
+    @SmallTest
+    public void testDelayBuckets() {
+        assertEquals(0, LooperStats.getDelayBucket(0));
+        assertEquals(1, LooperStats.getDelayBucket(1));
+        assertEquals(2, LooperStats.getDelayBucket(3));
+        assertEquals(LooperStats.DELAY_BUCKET_COUNT - 1,
+                LooperStats.getDelayBucket(Long.MAX_VALUE));
+        assertEquals("<1ms", LooperStats.getDelayBucketLabel(0));
+        assertEquals("2-3ms", LooperStats.getDelayBucketLabel(2));
+    }
+
+    private static class TestHandler extends Handler {
+        TestHandler(Looper looper) {
+            super(looper);
+        }
+    }
+}
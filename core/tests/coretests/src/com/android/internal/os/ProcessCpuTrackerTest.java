@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.android.internal.os;
+
+import android.support.test.filters.SmallTest;
+
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+
+public class ProcessCpuTrackerTest extends TestCase {
+    private static final String STAT_LINE = "1234 (odd) (name) S 1 1234 0 0 -1 4194624 "
+            + "5678 0 12 0 345 67 0 0 20 0 14 0 4567 1234567 890 18446744073709551615\n";
+
+    private static boolean parse(String stat, long[] out) {
+        final byte[] bytes = stat.getBytes(StandardCharsets.US_ASCII);
+        return ProcessCpuTracker.parseProcessStat(bytes, bytes.length, out);
+    }
+
+    @SmallTest
+    public void testParseProcessStat() throws Exception {
+        final long[] out = new long[4];
+        assertTrue(parse(STAT_LINE, out));
+        assertEquals(5678, out[ProcessCpuTracker.PROCESS_STAT_MINOR_FAULTS]);
+        assertEquals(12, out[ProcessCpuTracker.PROCESS_STAT_MAJOR_FAULTS]);
+        assertEquals(345, out[ProcessCpuTracker.PROCESS_STAT_UTIME]);
+        assertEquals(67, out[ProcessCpuTracker.PROCESS_STAT_STIME]);
+    }
+
+    @SmallTest
+    public void testParseProcessStat_truncated() throws Exception {
+        final long[] out = new long[4];
+        assertFalse(parse("1234 (name) S 1 1234 0 0 -1 4194624 5678 0 12", out));
+        assertFalse(parse("", out));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server;
+
+import android.content.Context;
+import android.os.Binder;
+import android.os.SystemProperties;
+
+import com.android.internal.os.BinderCallsStats;
+import com.android.internal.util.DumpUtils;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
+/**
+ * This service exists only as a "dumpsys" target which reports the latency and parcel sizes
+ * of the binder calls handled by the system server, as collected by {@link BinderCallsStats}.
+ *
+ * Collection is off unless {@value #PROPERTY_ENABLED} is set, and can be switched at runtime
+ * with "dumpsys binder_calls_stats --enable" and "--disable".
+ */
+public class BinderCallsStatsService extends Binder {
+    private static final String TAG = "BinderCallsStatsService";
+
+    private static final String PROPERTY_ENABLED = "persist.sys.binder_calls_stats";
+    private static final String PROPERTY_SAMPLING_INTERVAL =
+            "persist.sys.binder_calls_stats.sampling";
+
+    private final Context mContext;
+    private final BinderCallsStats mStats = BinderCallsStats.getInstance();
+
+    public BinderCallsStatsService(Context context) {
+        mContext = context;
+        final int samplingInterval = SystemProperties.getInt(PROPERTY_SAMPLING_INTERVAL, 0);
+        if (samplingInterval > 0) {
+            mStats.setSamplingInterval(samplingInterval);
+        }
+        mStats.setEnabled(SystemProperties.getBoolean(PROPERTY_ENABLED, false));
+    }
+
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        if (!DumpUtils.checkDumpPermission(mContext, TAG, pw)) return;
+
+        boolean verbose = false;
+        if (args != null) {
+            for (int i = 0; i < args.length; i++) {
+                final String arg = args[i];
+                if ("--enable".equals(arg)) {
+                    mStats.setEnabled(true);
+                    pw.println("Binder call stats enabled");
+                    return;
+                } else if ("--disable".equals(arg)) {
+                    mStats.setEnabled(false);
+                    pw.println("Binder call stats disabled");
+                    return;
+                } else if ("--reset".equals(arg)) {
+                    mStats.reset();
+                    pw.println("Binder call stats reset");
+                    return;
+                } else if ("--sampling".equals(arg)) {
+                    if (i + 1 >= args.length) {
+                        pw.println("--sampling requires an interval");
+                        return;
+                    }
+                    try {
+                        mStats.setSamplingInterval(Integer.parseInt(args[i + 1]));
+                    } catch (IllegalArgumentException e) {
+                        pw.println("Invalid sampling interval: " + args[i + 1]);
+                        return;
+                    }
+                    pw.println("Sampling 1 in " + mStats.getSamplingInterval() + " calls");
+                    return;
+                } else if ("-a".equals(arg)) {
+                    verbose = true;
+                } else if ("-h".equals(arg)) {
+                    pw.println("Binder call stats dump options:");
+                    pw.println("  [-a] [--enable] [--disable] [--reset] [--sampling N] [-h]");
+                    pw.println("  -a: include latency and size histograms.");
+                    pw.println("  --sampling N: time one call in N on each binder thread.");
+                    return;
+                }
+            }
+        }
+        mStats.dump(pw, verbose);
+    }
+}
@@ -35,16 +35,25 @@ import android.os.SystemClock;
 import android.os.UserHandle;
 import android.provider.Settings;
 import android.text.format.Time;
+import android.util.AtomicFile;
 import android.util.Slog;
 
 import libcore.io.IoUtils;
 
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.os.BackgroundThread;
 import com.android.internal.os.IDropBoxManagerService;
+import com.android.internal.util.ArrayUtils;
 import com.android.internal.util.DumpUtils;
+import com.android.server.utils.PriorityDump;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -55,6 +64,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 
 /**
@@ -69,6 +79,13 @@ public final class DropBoxManagerService extends SystemService {
     private static final int DEFAULT_QUOTA_PERCENT = 10;
     private static final int DEFAULT_RESERVE_PERCENT = 10;
     private static final int QUOTA_RESCAN_MILLIS = 5000;
+    private static final int SAVE_INDEX_DELAY_MILLIS = 10 * 1000;
+
+    // Caches the size of every entry file, so init() need not stat them all after a restart.
+    // Entry files never change size once written, so a cached size is valid as long as a file
+    // with that name exists.
+    private static final String INDEX_FILE_NAME = "entries.index";
+    private static final int INDEX_VERSION = 1;
 
     // mHandler 'what' value.
     private static final int MSG_SEND_BROADCAST = 1;
@@ -96,6 +113,9 @@ public final class DropBoxManagerService extends SystemService {
     private int mCachedQuotaBlocks = 0;  // Space we can use: computed from free space, etc.
     private long mCachedQuotaUptimeMillis = 0;
 
+    private final AtomicFile mIndexFile;
+    private boolean mSaveIndexScheduled = false;
+
     private volatile boolean mBooted = false;
 
     // Provide a way to perform sendBroadcast asynchronously to avoid deadlocks.
@@ -166,6 +186,7 @@ public final class DropBoxManagerService extends SystemService {
     public DropBoxManagerService(final Context context, File path) {
         super(context);
         mDropBoxDir = path;
+        mIndexFile = new AtomicFile(new File(path, INDEX_FILE_NAME));
         mContentResolver = getContext().getContentResolver();
         mHandler = new Handler() {
             @Override
@@ -252,7 +273,7 @@ public final class DropBoxManagerService extends SystemService {
             FileOutputStream foutput = new FileOutputStream(temp);
             output = new BufferedOutputStream(foutput, bufferSize);
             if (read == buffer.length && ((flags & DropBoxManager.IS_GZIPPED) == 0)) {
-                output = new GZIPOutputStream(output);
+                output = new FastGZIPOutputStream(output);
                 flags = flags | DropBoxManager.IS_GZIPPED;
             }
 
@@ -350,17 +371,42 @@ public final class DropBoxManagerService extends SystemService {
         return null;
     }
 
-    public synchronized void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+    public void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
         if (!DumpUtils.checkDumpAndUsageStatsPermission(getContext(), TAG, pw)) return;
 
-        try {
-            init();
-        } catch (IOException e) {
-            pw.println("Can't initialize: " + e);
-            Slog.e(TAG, "Can't init", e);
+        if (args != null && args.length > 0 && !PriorityDump.PRIORITY_ARG.equals(args[0])
+                && (ArrayUtils.contains(args, "-p") || ArrayUtils.contains(args, "--print"))) {
+            // The full contents of every entry are too much to buffer, so they are written
+            // straight out, though still without holding the lock.
+            mPriorityDumper.snapshotNormal(args).dump(pw);
             return;
         }
+        PriorityDump.dump(mPriorityDumper, fd, pw, args);
+    }
+
+    /**
+     * Dumps the drop box from a copy of its list of entries, so that reading their files does
+     * not hold the lock. Entries trimmed in the meantime show an error instead of their text.
+     */
+    private final PriorityDump.SnapshotDumper mPriorityDumper =
+            new PriorityDump.SnapshotDumper() {
+        @Override
+        public PriorityDump.Snapshot snapshotNormal(String[] args) {
+            synchronized (DropBoxManagerService.this) {
+                try {
+                    init();
+                } catch (IOException e) {
+                    Slog.e(TAG, "Can't init", e);
+                    return pw -> pw.println("Can't initialize: " + e);
+                }
+                final ArrayList<EntryFile> entries = new ArrayList<>(mAllFiles.contents);
+                return pw -> dumpEntries(pw, args, entries);
+            }
+        }
+    };
 
+    private static void dumpEntries(PrintWriter pw, String[] args,
+            ArrayList<EntryFile> entries) {
         if (PROFILE_DUMP) Debug.startMethodTracing("/data/trace/dropbox.dump");
 
         StringBuilder out = new StringBuilder();
@@ -386,7 +432,7 @@ public final class DropBoxManagerService extends SystemService {
             }
         }
 
-        out.append("Drop box contents: ").append(mAllFiles.contents.size()).append(" entries\n");
+        out.append("Drop box contents: ").append(entries.size()).append(" entries\n");
 
         if (!searchArgs.isEmpty()) {
             out.append("Searching for:");
@@ -397,7 +443,7 @@ public final class DropBoxManagerService extends SystemService {
         int numFound = 0, numArgs = searchArgs.size();
         Time time = new Time();
         out.append("\n");
-        for (EntryFile entry : mAllFiles.contents) {
+        for (EntryFile entry : entries) {
             time.set(entry.timestampMillis);
             String date = time.format("%Y-%m-%d %H:%M:%S");
             boolean match = true;
@@ -494,6 +540,17 @@ public final class DropBoxManagerService extends SystemService {
 
     ///////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Gzip output at the fastest deflate level. Entries are read back by the clients with any
+     * gzip reader, so the format is kept and only the level is traded for speed.
+     */
+    private static final class FastGZIPOutputStream extends GZIPOutputStream {
+        public FastGZIPOutputStream(OutputStream out) throws IOException {
+            super(out);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+
     /** Chronologically sorted list of {@link EntryFile} */
     private static final class FileList implements Comparable<FileList> {
         public int blocks = 0;
@@ -576,11 +633,11 @@ public final class DropBoxManagerService extends SystemService {
         /**
          * Extracts metadata from an existing on-disk log filename.
          * @param file name of existing log file
-         * @param blockSize to use for space accounting
+         * @param blocks used by the file, for space accounting
          */
-        public EntryFile(File file, int blockSize) {
+        public EntryFile(File file, int blocks) {
             this.file = file;
-            this.blocks = (int) ((this.file.length() + blockSize - 1) / blockSize);
+            this.blocks = blocks;
 
             String name = file.getName();
             int at = name.lastIndexOf('@');
@@ -652,16 +709,22 @@ public final class DropBoxManagerService extends SystemService {
 
             mAllFiles = new FileList();
             mFilesByTag = new HashMap<String, FileList>();
+            HashMap<String, Integer> indexedBlocks = readIndex();
 
             // Scan pre-existing files.
             for (File file : files) {
-                if (file.getName().endsWith(".tmp")) {
+                String name = file.getName();
+                if (name.endsWith(".tmp")) {
                     Slog.i(TAG, "Cleaning temp file: " + file);
                     file.delete();
                     continue;
+                } else if (name.startsWith(INDEX_FILE_NAME)) {
+                    continue;
                 }
 
-                EntryFile entry = new EntryFile(file, mBlockSize);
+                Integer blocks = indexedBlocks.get(name);
+                EntryFile entry = new EntryFile(file, blocks != null ? blocks
+                        : (int) ((file.length() + mBlockSize - 1) / mBlockSize));
                 if (entry.tag == null) {
                     Slog.w(TAG, "Unrecognized file: " + file);
                     continue;
@@ -676,10 +739,84 @@ public final class DropBoxManagerService extends SystemService {
         }
     }
 
+    /**
+     * Reads the sizes of the entry files from the index, if there is a usable one.
+     * @return the blocks used by each file, by file name
+     */
+    private HashMap<String, Integer> readIndex() {
+        HashMap<String, Integer> blocks = new HashMap<String, Integer>();
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(mIndexFile.openRead()));
+            if (in.readInt() != INDEX_VERSION || in.readInt() != mBlockSize) {
+                return blocks;
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                String name = in.readUTF();
+                blocks.put(name, in.readInt());
+            }
+        } catch (FileNotFoundException e) {
+            // No index yet; every file is measured.
+        } catch (IOException e) {
+            Slog.w(TAG, "Can't read index: " + mIndexFile.getBaseFile(), e);
+            blocks.clear();
+        } finally {
+            IoUtils.closeQuietly(in);
+        }
+        return blocks;
+    }
+
+    /** Saves the index soon, so that bursts of changes are written once. */
+    private synchronized void scheduleSaveIndex() {
+        if (!mSaveIndexScheduled) {
+            mSaveIndexScheduled = true;
+            BackgroundThread.getHandler().postDelayed(this::saveIndex, SAVE_INDEX_DELAY_MILLIS);
+        }
+    }
+
+    /** Writes the sizes of the current entry files to the index. */
+    @VisibleForTesting
+    void saveIndex() {
+        String[] names;
+        int[] blocks;
+        int count = 0;
+        synchronized (this) {
+            mSaveIndexScheduled = false;
+            if (mAllFiles == null) return;
+            names = new String[mAllFiles.contents.size()];
+            blocks = new int[names.length];
+            for (EntryFile entry : mAllFiles.contents) {
+                if (entry.file == null) continue;
+                names[count] = entry.file.getName();
+                blocks[count] = entry.blocks;
+                count++;
+            }
+        }
+
+        FileOutputStream fos = null;
+        try {
+            fos = mIndexFile.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(mBlockSize);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeUTF(names[i]);
+                out.writeInt(blocks[i]);
+            }
+            out.flush();
+            mIndexFile.finishWrite(fos);
+        } catch (IOException e) {
+            Slog.w(TAG, "Can't write index: " + mIndexFile.getBaseFile(), e);
+            mIndexFile.failWrite(fos);
+        }
+    }
+
     /** Adds a disk log file to in-memory tracking for accounting and enumeration. */
     private synchronized void enrollEntry(EntryFile entry) {
         mAllFiles.contents.add(entry);
         mAllFiles.blocks += entry.blocks;
+        scheduleSaveIndex();
 
         // mFilesByTag is used for trimming, so don't list empty files.
         // (Zero-length/lost files are trimmed by date from mAllFiles.)
@@ -758,6 +895,7 @@ public final class DropBoxManagerService extends SystemService {
             if (tag != null && tag.contents.remove(entry)) tag.blocks -= entry.blocks;
             if (mAllFiles.contents.remove(entry)) mAllFiles.blocks -= entry.blocks;
             if (entry.file != null) entry.file.delete();
+            scheduleSaveIndex();
         }
 
         // Compute overall quota (a fraction of available free space) in blocks.
@@ -40,6 +40,7 @@ public final class FgThread extends ServiceThread {
             sInstance = new FgThread();
             sInstance.start();
             sInstance.getLooper().setTraceTag(Trace.TRACE_TAG_ACTIVITY_MANAGER);
+            sInstance.getLooper().getQueue().setDeadlineSchedulingEnabled(true);
             sHandler = new Handler(sInstance.getLooper());
         }
     }
@@ -37,6 +37,7 @@ public final class IoThread extends ServiceThread {
             sInstance = new IoThread();
             sInstance.start();
             sInstance.getLooper().setTraceTag(Trace.TRACE_TAG_ACTIVITY_MANAGER);
+            sInstance.getLooper().getQueue().setDeadlineSchedulingEnabled(true);
             sHandler = new Handler(sInstance.getLooper());
         }
     }
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server;
+
+import android.content.Context;
+import android.os.Binder;
+import android.os.Looper;
+import android.os.SystemProperties;
+
+import com.android.internal.os.LooperStats;
+import com.android.internal.util.DumpUtils;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
+/**
+ * This service exists only as a "dumpsys" target which reports the dispatch latency and queue
+ * delay of the messages handled by the system server loopers, such as those of
+ * {@link BackgroundThread}, {@link IoThread}, {@link FgThread}, {@link DisplayThread} and
+ * {@link UiThread}, as collected by {@link LooperStats}.
+ *
+ * Collection is off unless {@value #PROPERTY_ENABLED} is set, and can be switched at runtime
+ * with "dumpsys looper_stats --enable" and "--disable".
+ */
+public class LooperStatsService extends Binder {
+    private static final String TAG = "LooperStatsService";
+
+    private static final String PROPERTY_ENABLED = "persist.sys.looper_stats";
+    private static final String PROPERTY_SAMPLING_INTERVAL = "persist.sys.looper_stats.sampling";
+
+    private final Context mContext;
+    private final LooperStats mStats = new LooperStats();
+    private boolean mEnabled;
+
+    public LooperStatsService(Context context) {
+        mContext = context;
+        final int samplingInterval = SystemProperties.getInt(PROPERTY_SAMPLING_INTERVAL, 0);
+        if (samplingInterval > 0) {
+            mStats.setSamplingInterval(samplingInterval);
+        }
+        setEnabled(SystemProperties.getBoolean(PROPERTY_ENABLED, false));
+    }
+
+    private void setEnabled(boolean enabled) {
+        synchronized (this) {
+            if (mEnabled != enabled) {
+                mEnabled = enabled;
+                Looper.setObserver(enabled ? mStats : null);
+            }
+        }
+    }
+
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        if (!DumpUtils.checkDumpPermission(mContext, TAG, pw)) return;
+
+        boolean verbose = false;
+        if (args != null) {
+            for (int i = 0; i < args.length; i++) {
+                final String arg = args[i];
+                if ("--enable".equals(arg)) {
+                    setEnabled(true);
+                    pw.println("Looper stats enabled");
+                    return;
+                } else if ("--disable".equals(arg)) {
+                    setEnabled(false);
+                    pw.println("Looper stats disabled");
+                    return;
+                } else if ("--reset".equals(arg)) {
+                    mStats.reset();
+                    pw.println("Looper stats reset");
+                    return;
+                } else if ("--sampling".equals(arg)) {
+                    if (i + 1 >= args.length) {
+                        pw.println("--sampling requires an interval");
+                        return;
+                    }
+                    try {
+                        mStats.setSamplingInterval(Integer.parseInt(args[i + 1]));
+                    } catch (IllegalArgumentException e) {
+                        pw.println("Invalid sampling interval: " + args[i + 1]);
+                        return;
+                    }
+                    pw.println("Sampling 1 in " + mStats.getSamplingInterval() + " messages");
+                    return;
+                } else if ("-a".equals(arg)) {
+                    verbose = true;
+                } else if ("-h".equals(arg)) {
+                    pw.println("Looper stats dump options:");
+                    pw.println("  [-a] [--enable] [--disable] [--reset] [--sampling N] [-h]");
+                    pw.println("  -a: list every handler and message, not only the slowest.");
+                    pw.println("  --sampling N: time one message in N on each looper thread.");
+                    return;
+                }
+            }
+        }
+        synchronized (this) {
+            pw.println("Looper stats " + (mEnabled ? "enabled" : "disabled"));
+        }
+        mStats.dump(pw, verbose);
+    }
+}
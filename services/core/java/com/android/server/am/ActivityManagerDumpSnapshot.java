@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.am;
+
+import android.service.am.ActivityManagerServiceDumpProto;
+import android.service.am.ActivityRecordProto;
+import android.service.am.ActivityStackProto;
+import android.service.am.BroadcastQueueProto;
+import android.service.am.BroadcastRecordProto;
+import android.service.am.ProcessRecordProto;
+import android.service.am.ServiceRecordProto;
+import android.service.am.TaskRecordProto;
+import android.util.ArrayMap;
+import android.util.proto.ProtoOutputStream;
+
+import com.android.server.am.ActivityStackSupervisor.ActivityDisplay;
+
+import java.util.ArrayList;
+
+/**
+ * A copy of the state reported by 'dumpsys activity --proto'. It is taken while holding the
+ * activity manager lock and only holds plain values, so that it can be written to the proto
+ * after the lock is released.
+ */
+final class ActivityManagerDumpSnapshot {
+    static final int SECTION_PROCESSES = 1 << 0;
+    static final int SECTION_SERVICES = 1 << 1;
+    static final int SECTION_BROADCASTS = 1 << 2;
+    static final int SECTION_ACTIVITIES = 1 << 3;
+    static final int SECTION_ALL = SECTION_PROCESSES | SECTION_SERVICES | SECTION_BROADCASTS
+            | SECTION_ACTIVITIES;
+
+    private final ArrayList<ProcessSnapshot> mProcesses = new ArrayList<>();
+    private final ArrayList<ServiceSnapshot> mServices = new ArrayList<>();
+    private final ArrayList<BroadcastQueueSnapshot> mBroadcastQueues = new ArrayList<>();
+    private final ArrayList<StackSnapshot> mStacks = new ArrayList<>();
+
+    private ActivityManagerDumpSnapshot() {
+    }
+
+    /**
+     * Copies the given sections of the activity manager state. The caller must hold the
+     * activity manager lock.
+     */
+    static ActivityManagerDumpSnapshot takeLocked(ActivityManagerService service, int sections) {
+        final ActivityManagerDumpSnapshot snapshot = new ActivityManagerDumpSnapshot();
+        if ((sections & SECTION_PROCESSES) != 0) {
+            for (int i = service.mLruProcesses.size() - 1; i >= 0; i--) {
+                snapshot.mProcesses.add(new ProcessSnapshot(service.mLruProcesses.get(i)));
+            }
+        }
+        if ((sections & SECTION_SERVICES) != 0) {
+            final ActiveServices services = service.mServices;
+            for (int i = 0; i < services.mServiceMap.size(); i++) {
+                final ArrayMap<?, ServiceRecord> byName =
+                        services.mServiceMap.valueAt(i).mServicesByName;
+                for (int j = 0; j < byName.size(); j++) {
+                    snapshot.mServices.add(new ServiceSnapshot(byName.valueAt(j)));
+                }
+            }
+        }
+        if ((sections & SECTION_BROADCASTS) != 0) {
+            for (BroadcastQueue queue : service.mBroadcastQueues) {
+                snapshot.mBroadcastQueues.add(new BroadcastQueueSnapshot(queue));
+            }
+        }
+        if ((sections & SECTION_ACTIVITIES) != 0) {
+            final ActivityStackSupervisor supervisor = service.mStackSupervisor;
+            for (int displayNdx = 0; displayNdx < supervisor.getChildCount(); displayNdx++) {
+                final ActivityDisplay display = supervisor.getChildAt(displayNdx);
+                for (int stackNdx = display.mStacks.size() - 1; stackNdx >= 0; stackNdx--) {
+                    snapshot.mStacks.add(new StackSnapshot(display.mStacks.get(stackNdx),
+                            display.mDisplayId));
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Writes the snapshot as an ActivityManagerServiceDumpProto. Does not need any lock.
+     */
+    void writeToProto(ProtoOutputStream proto) {
+        for (int i = 0; i < mProcesses.size(); i++) {
+            mProcesses.get(i).writeToProto(proto, ActivityManagerServiceDumpProto.PROCESSES);
+        }
+        for (int i = 0; i < mServices.size(); i++) {
+            mServices.get(i).writeToProto(proto, ActivityManagerServiceDumpProto.SERVICES);
+        }
+        for (int i = 0; i < mBroadcastQueues.size(); i++) {
+            mBroadcastQueues.get(i).writeToProto(proto,
+                    ActivityManagerServiceDumpProto.BROADCAST_QUEUES);
+        }
+        for (int i = 0; i < mStacks.size(); i++) {
+            mStacks.get(i).writeToProto(proto, ActivityManagerServiceDumpProto.STACKS);
+        }
+    }
+
+    private static final class ProcessSnapshot {
+        final String processName;
+        final int pid;
+        final int uid;
+        final int userId;
+        final boolean persistent;
+        final int curAdj;
+        final int setAdj;
+        final int curProcState;
+        final int setProcState;
+        final boolean foregroundServices;
+        final long lastActivityTime;
+
+        ProcessSnapshot(ProcessRecord app) {
+            processName = app.processName;
+            pid = app.pid;
+            uid = app.uid;
+            userId = app.userId;
+            persistent = app.persistent;
+            curAdj = app.curAdj;
+            setAdj = app.setAdj;
+            curProcState = app.curProcState;
+            setProcState = app.setProcState;
+            foregroundServices = app.foregroundServices;
+            lastActivityTime = app.lastActivityTime;
+        }
+
+        void writeToProto(ProtoOutputStream proto, long fieldId) {
+            final long token = proto.start(fieldId);
+            proto.write(ProcessRecordProto.PROCESS_NAME, processName);
+            proto.write(ProcessRecordProto.PID, pid);
+            proto.write(ProcessRecordProto.UID, uid);
+            proto.write(ProcessRecordProto.USER_ID, userId);
+            proto.write(ProcessRecordProto.PERSISTENT, persistent);
+            proto.write(ProcessRecordProto.CUR_ADJ, curAdj);
+            proto.write(ProcessRecordProto.SET_ADJ, setAdj);
+            proto.write(ProcessRecordProto.CUR_PROC_STATE, curProcState);
+            proto.write(ProcessRecordProto.SET_PROC_STATE, setProcState);
+            proto.write(ProcessRecordProto.HAS_FOREGROUND_SERVICES, foregroundServices);
+            proto.write(ProcessRecordProto.LAST_ACTIVITY_TIME_MS, lastActivityTime);
+            proto.end(token);
+        }
+    }
+
+    private static final class ServiceSnapshot {
+        final String shortName;
+        final String packageName;
+        final int userId;
+        final int appPid;
+        final boolean isForeground;
+        final boolean startRequested;
+        final int connectionCount;
+        final int crashCount;
+        final long lastActivity;
+        final long restartTime;
+
+        ServiceSnapshot(ServiceRecord r) {
+            shortName = r.shortName;
+            packageName = r.packageName;
+            userId = r.userId;
+            appPid = r.app != null ? r.app.pid : 0;
+            isForeground = r.isForeground;
+            startRequested = r.startRequested;
+            connectionCount = r.connections.size();
+            crashCount = r.crashCount;
+            lastActivity = r.lastActivity;
+            restartTime = r.restartTime;
+        }
+
+        void writeToProto(ProtoOutputStream proto, long fieldId) {
+            final long token = proto.start(fieldId);
+            proto.write(ServiceRecordProto.SHORT_NAME, shortName);
+            proto.write(ServiceRecordProto.PACKAGE_NAME, packageName);
+            proto.write(ServiceRecordProto.USER_ID, userId);
+            proto.write(ServiceRecordProto.APP_PID, appPid);
+            proto.write(ServiceRecordProto.IS_FOREGROUND, isForeground);
+            proto.write(ServiceRecordProto.START_REQUESTED, startRequested);
+            proto.write(ServiceRecordProto.CONNECTION_COUNT, connectionCount);
+            proto.write(ServiceRecordProto.CRASH_COUNT, crashCount);
+            proto.write(ServiceRecordProto.LAST_ACTIVITY_TIME_MS, lastActivity);
+            proto.write(ServiceRecordProto.RESTART_TIME_MS, restartTime);
+            proto.end(token);
+        }
+    }
+
+    private static final class BroadcastQueueSnapshot {
+        final String queueName;
+        final ArrayList<BroadcastSnapshot> parallelBroadcasts;
+        final ArrayList<BroadcastSnapshot> orderedBroadcasts;
+
+        BroadcastQueueSnapshot(BroadcastQueue queue) {
+            queueName = queue.mQueueName;
+            parallelBroadcasts = snapshot(queue.mParallelBroadcasts);
+            orderedBroadcasts = snapshot(queue.mOrderedBroadcasts);
+        }
+
+        private static ArrayList<BroadcastSnapshot> snapshot(ArrayList<BroadcastRecord> list) {
+            final ArrayList<BroadcastSnapshot> result = new ArrayList<>(list.size());
+            for (int i = 0; i < list.size(); i++) {
+                result.add(new BroadcastSnapshot(list.get(i)));
+            }
+            return result;
+        }
+
+        void writeToProto(ProtoOutputStream proto, long fieldId) {
+            final long token = proto.start(fieldId);
+            proto.write(BroadcastQueueProto.QUEUE_NAME, queueName);
+            for (int i = 0; i < parallelBroadcasts.size(); i++) {
+                parallelBroadcasts.get(i).writeToProto(proto,
+                        BroadcastQueueProto.PARALLEL_BROADCASTS);
+            }
+            for (int i = 0; i < orderedBroadcasts.size(); i++) {
+                orderedBroadcasts.get(i).writeToProto(proto,
+                        BroadcastQueueProto.ORDERED_BROADCASTS);
+            }
+            proto.end(token);
+        }
+    }
+
+    private static final class BroadcastSnapshot {
+        final String action;
+        final String callerPackage;
+        final int callingUid;
+        final int userId;
+        final boolean ordered;
+        final int receiverCount;
+        final int nextReceiver;
+        final int state;
+        final long enqueueClockTime;
+        final long dispatchTime;
+
+        BroadcastSnapshot(BroadcastRecord r) {
+            action = r.intent.getAction();
+            callerPackage = r.callerPackage;
+            callingUid = r.callingUid;
+            userId = r.userId;
+            ordered = r.ordered;
+            receiverCount = r.receivers != null ? r.receivers.size() : 0;
+            nextReceiver = r.nextReceiver;
+            state = r.state;
+            enqueueClockTime = r.enqueueClockTime;
+            dispatchTime = r.dispatchTime;
+        }
+
+        void writeToProto(ProtoOutputStream proto, long fieldId) {
+            final long token = proto.start(fieldId);
+            proto.write(BroadcastRecordProto.ACTION, action);
+            proto.write(BroadcastRecordProto.CALLER_PACKAGE, callerPackage);
+            proto.write(BroadcastRecordProto.CALLING_UID, callingUid);
+            proto.write(BroadcastRecordProto.USER_ID, userId);
+            proto.write(BroadcastRecordProto.ORDERED, ordered);
+            proto.write(BroadcastRecordProto.RECEIVER_COUNT, receiverCount);
+            proto.write(BroadcastRecordProto.NEXT_RECEIVER, nextReceiver);
+            proto.write(BroadcastRecordProto.STATE, state);
+            proto.write(BroadcastRecordProto.ENQUEUE_CLOCK_TIME_MS, enqueueClockTime);
+            proto.write(BroadcastRecordProto.DISPATCH_TIME_MS, dispatchTime);
+            proto.end(token);
+        }
+    }
+
+    private static final class StackSnapshot {
+        final int stackId;
+        final int displayId;
+        final ArrayList<TaskSnapshot> tasks = new ArrayList<>();
+
+        StackSnapshot(ActivityStack stack, int displayId) {
+            stackId = stack.mStackId;
+            this.displayId = displayId;
+            final ArrayList<TaskRecord> allTasks = stack.getAllTasks();
+            for (int i = 0; i < allTasks.size(); i++) {
+                tasks.add(new TaskSnapshot(allTasks.get(i)));
+            }
+        }
+
+        void writeToProto(ProtoOutputStream proto, long fieldId) {
+            final long token = proto.start(fieldId);
+            proto.write(ActivityStackProto.STACK_ID, stackId);
+            proto.write(ActivityStackProto.DISPLAY_ID, displayId);
+            for (int i = 0; i < tasks.size(); i++) {
+                tasks.get(i).writeToProto(proto, ActivityStackProto.TASKS);
+            }
+            proto.end(token);
+        }
+    }
+
+    private static final class TaskSnapshot {
+        final int taskId;
+        final ArrayList<ActivitySnapshot> activities = new ArrayList<>();
+
+        TaskSnapshot(TaskRecord task) {
+            taskId = task.taskId;
+            for (int i = 0; i < task.mActivities.size(); i++) {
+                activities.add(new ActivitySnapshot(task.mActivities.get(i)));
+            }
+        }
+
+        void writeToProto(ProtoOutputStream proto, long fieldId) {
+            final long token = proto.start(fieldId);
+            proto.write(TaskRecordProto.TASK_ID, taskId);
+            for (int i = 0; i < activities.size(); i++) {
+                activities.get(i).writeToProto(proto, TaskRecordProto.ACTIVITIES);
+            }
+            proto.end(token);
+        }
+    }
+
+    private static final class ActivitySnapshot {
+        final String shortComponentName;
+        final int userId;
+        final String state;
+        final boolean visible;
+        final boolean finishing;
+        final int appPid;
+        final long lastVisibleTime;
+
+        ActivitySnapshot(ActivityRecord r) {
+            shortComponentName = r.shortComponentName;
+            userId = r.userId;
+            state = r.state != null ? r.state.name() : null;
+            visible = r.visible;
+            finishing = r.finishing;
+            appPid = r.app != null ? r.app.pid : 0;
+            lastVisibleTime = r.lastVisibleTime;
+        }
+
+        void writeToProto(ProtoOutputStream proto, long fieldId) {
+            final long token = proto.start(fieldId);
+            proto.write(ActivityRecordProto.SHORT_COMPONENT_NAME, shortComponentName);
+            proto.write(ActivityRecordProto.USER_ID, userId);
+            proto.write(ActivityRecordProto.STATE, state);
+            proto.write(ActivityRecordProto.VISIBLE, visible);
+            proto.write(ActivityRecordProto.FINISHING, finishing);
+            proto.write(ActivityRecordProto.APP_PID, appPid);
+            proto.write(ActivityRecordProto.LAST_VISIBLE_TIME_MS, lastVisibleTime);
+            proto.end(token);
+        }
+    }
+}
@@ -354,6 +354,7 @@ import android.util.SparseArray;
 import android.util.SparseIntArray;
 import android.util.TimeUtils;
 import android.util.Xml;
+import android.util.proto.ProtoOutputStream;
 import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -1596,7 +1597,7 @@ public class ActivityManagerService extends IActivityManager.Stub
      * any critical paths such as when holding the main activity manager lock.
      */
     final ProcessCpuTracker mProcessCpuTracker = new ProcessCpuTracker(
-            MONITOR_THREAD_CPU_USAGE);
+            MONITOR_THREAD_CPU_USAGE, true /* keepStatFilesOpen */);
     final AtomicLong mLastCpuTime = new AtomicLong(0);
     final AtomicBoolean mProcessCpuMutexFree = new AtomicBoolean(true);
     final CountDownLatch mProcessCpuInitLatch = new CountDownLatch(1);
@@ -14960,6 +14961,35 @@ public class ActivityManagerService extends IActivityManager.Stub
                 this, in, out, err, args, callback, resultReceiver);
     }
 
+    /**
+     * Writes an ActivityManagerServiceDumpProto. Only copying the state holds the lock; the
+     * proto is built and written to the fd after releasing it.
+     */
+    private void dumpProto(FileDescriptor fd, PrintWriter pw, String cmd) {
+        final int sections;
+        if (cmd == null) {
+            sections = ActivityManagerDumpSnapshot.SECTION_ALL;
+        } else if ("processes".equals(cmd) || "p".equals(cmd)) {
+            sections = ActivityManagerDumpSnapshot.SECTION_PROCESSES;
+        } else if ("services".equals(cmd) || "s".equals(cmd)) {
+            sections = ActivityManagerDumpSnapshot.SECTION_SERVICES;
+        } else if ("broadcasts".equals(cmd) || "b".equals(cmd)) {
+            sections = ActivityManagerDumpSnapshot.SECTION_BROADCASTS;
+        } else if ("activities".equals(cmd) || "a".equals(cmd)) {
+            sections = ActivityManagerDumpSnapshot.SECTION_ACTIVITIES;
+        } else {
+            pw.println("Error: --proto does not support " + cmd + "; use -h for help");
+            return;
+        }
+        final ActivityManagerDumpSnapshot snapshot;
+        synchronized (this) {
+            snapshot = ActivityManagerDumpSnapshot.takeLocked(this, sections);
+        }
+        final ProtoOutputStream proto = new ProtoOutputStream(fd, true);
+        snapshot.writeToProto(proto);
+        proto.flush();
+    }
+
     @Override
     protected void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
         if (!DumpUtils.checkDumpAndUsageStatsPermission(mContext, TAG, pw)) return;
@@ -14970,6 +15000,7 @@ public class ActivityManagerService extends IActivityManager.Stub
         boolean dumpCheckinFormat = false;
         boolean dumpVisibleStacksOnly = false;
         boolean dumpFocusedStackOnly = false;
+        boolean dumpProto = false;
         String dumpPackage = null;
 
         int opti = 0;
@@ -15000,6 +15031,8 @@ public class ActivityManagerService extends IActivityManager.Stub
                 dumpCheckin = dumpCheckinFormat = true;
             } else if ("-C".equals(opt)) {
                 dumpCheckinFormat = true;
+            } else if ("--proto".equals(opt)) {
+                dumpProto = true;
             } else if ("-h".equals(opt)) {
                 ActivityManagerShellCommand.dumpHelp(pw, true);
                 return;
@@ -15008,6 +15041,11 @@ public class ActivityManagerService extends IActivityManager.Stub
             }
         }
 
+        if (dumpProto) {
+            dumpProto(fd, pw, opti < args.length ? args[opti] : null);
+            return;
+        }
+
         long origId = Binder.clearCallingIdentity();
         boolean more = false;
         // Is the caller requesting to dump a particular piece of data?
@@ -2445,7 +2445,7 @@ final class ActivityManagerShellCommand extends ShellCommand {
     static void dumpHelp(PrintWriter pw, boolean dumping) {
         if (dumping) {
             pw.println("Activity manager dump options:");
-            pw.println("  [-a] [-c] [-p PACKAGE] [-h] [WHAT] ...");
+            pw.println("  [-a] [-c] [-p PACKAGE] [-h] [--proto] [WHAT] ...");
             pw.println("  WHAT may be one of:");
             pw.println("    a[ctivities]: activity stack state");
             pw.println("    r[recents]: recent activities state");
@@ -2473,6 +2473,8 @@ final class ActivityManagerShellCommand extends ShellCommand {
             pw.println("  -p: limit output to given package.");
             pw.println("  --checkin: output checkin format, resetting data.");
             pw.println("  --C: output checkin format, not resetting data.");
+            pw.println("  --proto: output an ActivityManagerServiceDumpProto. WHAT may only be");
+            pw.println("    a[ctivities], b[roadcasts], p[rocesses] or s[ervices].");
         } else {
             pw.println("Activity manager (activity) commands:");
             pw.println("  help");
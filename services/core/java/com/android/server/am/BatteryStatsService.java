@@ -50,6 +50,7 @@ import android.os.WorkSource;
 import android.os.health.HealthStatsParceler;
 import android.os.health.HealthStatsWriter;
 import android.os.health.UidHealthStats;
+import android.service.batterystats.BatteryStatsServiceDumpProto;
 import android.telephony.DataConnectionRealTimeInfo;
 import android.telephony.ModemActivityInfo;
 import android.telephony.SignalStrength;
@@ -57,6 +58,7 @@ import android.telephony.TelephonyManager;
 import android.util.IntArray;
 import android.util.Slog;
 import android.util.TimeUtils;
+import android.util.proto.ProtoOutputStream;
 
 import com.android.internal.annotations.GuardedBy;
 import com.android.internal.app.IBatteryStats;
@@ -70,6 +72,7 @@ import com.android.server.power.BatterySaverPolicy.ServiceType;
 
 import java.io.File;
 import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.ByteBuffer;
@@ -1165,10 +1168,11 @@ public final class BatteryStatsService extends IBatteryStats.Stub
 
     private void dumpHelp(PrintWriter pw) {
         pw.println("Battery stats (batterystats) dump options:");
-        pw.println("  [--checkin] [--history] [--history-start] [--charged] [-c]");
+        pw.println("  [--checkin] [--proto] [--history] [--history-start] [--charged] [-c]");
         pw.println("  [--daily] [--reset] [--write] [--new-daily] [--read-daily] [-h] [<package.name>]");
         pw.println("  --checkin: generate output for a checkin report; will write (and clear) the");
         pw.println("             last old completed stats when they had been reset.");
+        pw.println("  --proto: write the stats since charged as a BatteryStatsServiceDumpProto.");
         pw.println("  -c: write the current stats in checkin format.");
         pw.println("  --history: show only history data.");
         pw.println("  --history-start <num>: show only history data starting at given time offset.");
@@ -1224,6 +1228,7 @@ public final class BatteryStatsService extends IBatteryStats.Stub
 
         int flags = 0;
         boolean useCheckinFormat = false;
+        boolean toProto = false;
         boolean isRealCheckin = false;
         boolean noOutput = false;
         boolean writeData = false;
@@ -1235,6 +1240,8 @@ public final class BatteryStatsService extends IBatteryStats.Stub
                 if ("--checkin".equals(arg)) {
                     useCheckinFormat = true;
                     isRealCheckin = true;
+                } else if ("--proto".equals(arg)) {
+                    toProto = true;
                 } else if ("--history".equals(arg)) {
                     flags |= BatteryStats.DUMP_HISTORY_ONLY;
                 } else if ("--history-start".equals(arg)) {
@@ -1341,7 +1348,29 @@ public final class BatteryStatsService extends IBatteryStats.Stub
             }
         }
 
-        if (useCheckinFormat) {
+        if (toProto) {
+            List<ApplicationInfo> apps = mContext.getPackageManager().getInstalledApplications(
+                    PackageManager.MATCH_ANY_USER | PackageManager.MATCH_ALL);
+            // Build the report in memory: a stream on the fd would write completed objects out
+            // while the lock is still held.
+            final ProtoOutputStream proto = new ProtoOutputStream();
+            if (DBG) Slog.d(TAG, "begin dumpProtoLocked from UID " + Binder.getCallingUid());
+            synchronized (mStats) {
+                mStats.dumpProtoLocked(mContext, proto, BatteryStatsServiceDumpProto.BATTERYSTATS,
+                        apps, flags);
+                if (writeData) {
+                    mStats.writeAsyncLocked();
+                }
+            }
+            // The report is only written out here, so a slow reader does not hold the lock.
+            try {
+                // Not closed: the fd belongs to the caller.
+                new FileOutputStream(fd).write(proto.getBytes());
+            } catch (IOException e) {
+                Slog.w(TAG, "Failed to write batterystats proto", e);
+            }
+            if (DBG) Slog.d(TAG, "end dumpProtoLocked");
+        } else if (useCheckinFormat) {
             List<ApplicationInfo> apps = mContext.getPackageManager().getInstalledApplications(
                     PackageManager.MATCH_ANY_USER | PackageManager.MATCH_ALL);
             if (isRealCheckin) {
@@ -177,6 +177,12 @@ abstract public class ManagedServices {
         }
     }
 
+    protected int getServiceCount() {
+        synchronized (mMutex) {
+            return mServices.size();
+        }
+    }
+
     protected void onServiceRemovedLocked(ManagedServiceInfo removed) { }
 
     private ManagedServiceInfo newServiceInfo(IInterface service,
@@ -2336,6 +2336,19 @@ public class NotificationManagerService extends SystemService {
             }
         }
 
+        @Override
+        public void requestRankingResyncFromListener(INotificationListener token) {
+            final long identity = Binder.clearCallingIdentity();
+            try {
+                synchronized (mNotificationLock) {
+                    final ManagedServiceInfo info = mListeners.checkServiceTokenLocked(token);
+                    mListeners.resyncRankingLocked(info);
+                }
+            } finally {
+                Binder.restoreCallingIdentity(identity);
+            }
+        }
+
         @Override
         public int getZenMode() {
             return mZenModeHelper.getZenMode();
@@ -3202,6 +3215,10 @@ public class NotificationManagerService extends SystemService {
                     pkg, PackageManager.MATCH_DEBUG_TRIAGED_MISSING,
                     (userId == UserHandle.USER_ALL) ? UserHandle.USER_SYSTEM : userId);
             Notification.addFieldsFromContext(ai, notification);
+            if (mListeners.getServiceCount() > 1) {
+                // Written out once per listener; share the pixels instead of copying each time.
+                notification.shareLargeBitmaps();
+            }
 
             int canColorize = mPackageManagerClient.checkPermission(
                     android.Manifest.permission.USE_COLORIZED_NOTIFICATIONS, pkg);
@@ -5149,10 +5166,53 @@ public class NotificationManagerService extends SystemService {
         }
     }
 
+    /**
+     * The last ranking sent to one listener, kept as its keys and their marshalled attributes so
+     * the next ranking can be sent as a delta against it. Callers hold the lock on this object
+     * from {@link #prepare} until the update has been sent, so that updates reach the listener
+     * in sequence order.
+     */
+    private static final class RankingBaseline {
+        private int mSequence = NotificationRankingUpdate.NO_BASE_SEQUENCE;
+        private String[] mKeys;
+        private byte[][] mAttributes;
+
+        /**
+         * Returns what to send the listener for the given full ranking: a delta if there is a
+         * baseline and the delta is smaller, the full ranking otherwise.
+         */
+        NotificationRankingUpdate prepare(NotificationRankingUpdate update) {
+            final byte[][] attributes = update.marshallAttributes();
+            // Never wrap around to NO_BASE_SEQUENCE.
+            final int sequence = (mSequence + 1) & Integer.MAX_VALUE;
+            update.setSequence(sequence);
+            NotificationRankingUpdate delta = null;
+            if (mKeys != null) {
+                delta = NotificationRankingUpdate.createDelta(mSequence, mKeys, mAttributes,
+                        update, attributes);
+            }
+            mSequence = sequence;
+            mKeys = update.getOrderedKeys();
+            mAttributes = attributes;
+            return delta != null ? delta : update;
+        }
+
+        void invalidate() {
+            mKeys = null;
+            mAttributes = null;
+        }
+    }
+
     public class NotificationListeners extends ManagedServices {
 
         private final ArraySet<ManagedServiceInfo> mLightTrimListeners = new ArraySet<>();
 
+        // Ranking last sent to each connected listener, which later updates are sent as deltas
+        // against.
+        @GuardedBy("mRankingBaselines")
+        private final ArrayMap<ManagedServiceInfo, RankingBaseline> mRankingBaselines =
+                new ArrayMap<>();
+
         public NotificationListeners() {
             super(getContext(), mHandler, mNotificationLock, mUserProfiles);
         }
@@ -5186,8 +5246,14 @@ public class NotificationManagerService extends SystemService {
             synchronized (mNotificationLock) {
                 update = makeRankingUpdateLocked(info);
             }
+            final RankingBaseline baseline = new RankingBaseline();
+            synchronized (mRankingBaselines) {
+                mRankingBaselines.put(info, baseline);
+            }
             try {
-                listener.onListenerConnected(update);
+                synchronized (baseline) {
+                    listener.onListenerConnected(baseline.prepare(update));
+                }
             } catch (RemoteException e) {
                 // we tried
             }
@@ -5201,6 +5267,35 @@ public class NotificationManagerService extends SystemService {
                 updateEffectsSuppressorLocked();
             }
             mLightTrimListeners.remove(removed);
+            synchronized (mRankingBaselines) {
+                mRankingBaselines.remove(removed);
+            }
+        }
+
+        /**
+         * Makes the next ranking sent to the listener a full one, and sends it right away.
+         */
+        @GuardedBy("mNotificationLock")
+        public void resyncRankingLocked(ManagedServiceInfo info) {
+            final RankingBaseline baseline = getRankingBaseline(info);
+            synchronized (baseline) {
+                baseline.invalidate();
+            }
+            final NotificationRankingUpdate update = makeRankingUpdateLocked(info);
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    notifyRankingUpdate(info, update);
+                }
+            });
+        }
+
+        private RankingBaseline getRankingBaseline(ManagedServiceInfo info) {
+            synchronized (mRankingBaselines) {
+                final RankingBaseline baseline = mRankingBaselines.get(info);
+                // A listener that is gone, or not yet connected, just gets full updates.
+                return baseline != null ? baseline : new RankingBaseline();
+            }
         }
 
         @GuardedBy("mNotificationLock")
@@ -5379,8 +5474,11 @@ public class NotificationManagerService extends SystemService {
                 final StatusBarNotification sbn, NotificationRankingUpdate rankingUpdate) {
             final INotificationListener listener = (INotificationListener) info.service;
             StatusBarNotificationHolder sbnHolder = new StatusBarNotificationHolder(sbn);
+            final RankingBaseline baseline = getRankingBaseline(info);
             try {
-                listener.onNotificationPosted(sbnHolder, rankingUpdate);
+                synchronized (baseline) {
+                    listener.onNotificationPosted(sbnHolder, baseline.prepare(rankingUpdate));
+                }
             } catch (RemoteException ex) {
                 Log.e(TAG, "unable to notify listener (posted): " + listener, ex);
             }
@@ -5393,8 +5491,12 @@ public class NotificationManagerService extends SystemService {
             }
             final INotificationListener listener = (INotificationListener) info.service;
             StatusBarNotificationHolder sbnHolder = new StatusBarNotificationHolder(sbn);
+            final RankingBaseline baseline = getRankingBaseline(info);
             try {
-                listener.onNotificationRemoved(sbnHolder, rankingUpdate, reason);
+                synchronized (baseline) {
+                    listener.onNotificationRemoved(sbnHolder, baseline.prepare(rankingUpdate),
+                            reason);
+                }
             } catch (RemoteException ex) {
                 Log.e(TAG, "unable to notify listener (removed): " + listener, ex);
             }
@@ -5403,8 +5505,11 @@ public class NotificationManagerService extends SystemService {
         private void notifyRankingUpdate(ManagedServiceInfo info,
                                          NotificationRankingUpdate rankingUpdate) {
             final INotificationListener listener = (INotificationListener) info.service;
+            final RankingBaseline baseline = getRankingBaseline(info);
             try {
-                listener.onNotificationRankingUpdate(rankingUpdate);
+                synchronized (baseline) {
+                    listener.onNotificationRankingUpdate(baseline.prepare(rankingUpdate));
+                }
             } catch (RemoteException ex) {
                 Log.e(TAG, "unable to notify listener (ranking update): " + listener, ex);
             }
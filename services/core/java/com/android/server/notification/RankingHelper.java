@@ -16,6 +16,7 @@
 package com.android.server.notification;
 
 import com.android.internal.R;
+import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.logging.MetricsLogger;
 import com.android.internal.logging.nano.MetricsProto;
@@ -32,6 +33,7 @@ import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.pm.ParceledListSlice;
 import android.metrics.LogMaker;
 import android.os.Build;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.provider.Settings.Secure;
 import android.service.notification.NotificationListenerService.Ranking;
@@ -84,6 +86,14 @@ public class RankingHelper implements RankingConfig {
     private static final boolean DEFAULT_SHOW_BADGE = true;
 
     private final NotificationSignalExtractor[] mSignalExtractors;
+    // Per extractor: number of calls, calls that deferred work, and total and max latency.
+    @GuardedBy("mExtractorStats")
+    private final long[][] mExtractorStats;
+    private static final int STAT_CALLS = 0;
+    private static final int STAT_DEFERRED = 1;
+    private static final int STAT_TOTAL_NANOS = 2;
+    private static final int STAT_MAX_NANOS = 3;
+    private static final int STAT_COUNT = 4;
     private final NotificationComparator mPreliminaryComparator;
     private final GlobalSortKeyComparator mFinalComparator = new GlobalSortKeyComparator();
 
@@ -108,6 +118,7 @@ public class RankingHelper implements RankingConfig {
 
         final int N = extractorNames.length;
         mSignalExtractors = new NotificationSignalExtractor[N];
+        mExtractorStats = new long[N][STAT_COUNT];
         for (int i = 0; i < N; i++) {
             try {
                 Class<?> extractorClass = mContext.getClassLoader().loadClass(extractorNames[i]);
@@ -142,14 +153,29 @@ public class RankingHelper implements RankingConfig {
         final int N = mSignalExtractors.length;
         for (int i = 0; i < N; i++) {
             NotificationSignalExtractor extractor = mSignalExtractors[i];
+            final long start = SystemClock.elapsedRealtimeNanos();
+            RankingReconsideration recon = null;
             try {
-                RankingReconsideration recon = extractor.process(r);
+                recon = extractor.process(r);
                 if (recon != null) {
                     mRankingHandler.requestReconsideration(recon);
                 }
             } catch (Throwable t) {
                 Slog.w(TAG, "NotificationSignalExtractor failed.", t);
             }
+            recordExtractorCall(i, SystemClock.elapsedRealtimeNanos() - start, recon != null);
+        }
+    }
+
+    private void recordExtractorCall(int index, long nanos, boolean deferred) {
+        synchronized (mExtractorStats) {
+            final long[] stats = mExtractorStats[index];
+            stats[STAT_CALLS]++;
+            if (deferred) {
+                stats[STAT_DEFERRED]++;
+            }
+            stats[STAT_TOTAL_NANOS] += nanos;
+            stats[STAT_MAX_NANOS] = Math.max(stats[STAT_MAX_NANOS], nanos);
         }
     }
 
@@ -426,6 +452,9 @@ public class RankingHelper implements RankingConfig {
             }
             // assign global sort key:
             //   is_recently_intrusive:group_rank:is_group_summary:group_sort_key:rank
+            // This runs for every record on every sort, so the key is built by hand rather than
+            // with String.format.
+            final StringBuilder sortKey = new StringBuilder();
             for (int i = 0; i < N; i++) {
                 final NotificationRecord record = notificationList.get(i);
                 NotificationRecord groupProxy = mProxyByGroupTmp.get(record.getGroupKey());
@@ -446,15 +475,15 @@ public class RankingHelper implements RankingConfig {
                 }
 
                 boolean isGroupSummary = record.getNotification().isGroupSummary();
-                record.setGlobalSortKey(
-                        String.format("intrsv=%c:grnk=0x%04x:gsmry=%c:%s:rnk=0x%04x",
-                        record.isRecentlyIntrusive()
-                                && record.getImportance() > NotificationManager.IMPORTANCE_MIN
-                                ? '0' : '1',
-                        groupProxy.getAuthoritativeRank(),
-                        isGroupSummary ? '0' : '1',
-                        groupSortKeyPortion,
-                        record.getAuthoritativeRank()));
+                sortKey.setLength(0);
+                sortKey.append("intrsv=").append(record.isRecentlyIntrusive()
+                        && record.getImportance() > NotificationManager.IMPORTANCE_MIN
+                        ? '0' : '1');
+                appendRank(sortKey.append(":grnk=0x"), groupProxy.getAuthoritativeRank());
+                sortKey.append(":gsmry=").append(isGroupSummary ? '0' : '1');
+                sortKey.append(':').append(groupSortKeyPortion);
+                appendRank(sortKey.append(":rnk=0x"), record.getAuthoritativeRank());
+                record.setGlobalSortKey(sortKey.toString());
             }
             mProxyByGroupTmp.clear();
         }
@@ -463,6 +492,17 @@ public class RankingHelper implements RankingConfig {
         Collections.sort(notificationList, mFinalComparator);
     }
 
+    /**
+     * Appends a rank as zero padded hex, like {@code %04x}.
+     */
+    private static void appendRank(StringBuilder sb, int rank) {
+        final String hex = Integer.toHexString(rank);
+        for (int i = hex.length(); i < 4; i++) {
+            sb.append('0');
+        }
+        sb.append(hex);
+    }
+
     public int indexOf(ArrayList<NotificationRecord> notificationList, NotificationRecord target) {
         return Collections.binarySearch(notificationList, target, mFinalComparator);
     }
@@ -873,10 +913,22 @@ public class RankingHelper implements RankingConfig {
             pw.print(prefix);
             pw.print("mSignalExtractors.length = ");
             pw.println(N);
-            for (int i = 0; i < N; i++) {
-                pw.print(prefix);
-                pw.print("  ");
-                pw.println(mSignalExtractors[i]);
+            synchronized (mExtractorStats) {
+                for (int i = 0; i < N; i++) {
+                    final long[] stats = mExtractorStats[i];
+                    pw.print(prefix);
+                    pw.print("  ");
+                    pw.print(mSignalExtractors[i]);
+                    pw.print(" calls=");
+                    pw.print(stats[STAT_CALLS]);
+                    pw.print(" deferred=");
+                    pw.print(stats[STAT_DEFERRED]);
+                    pw.print(" avgUs=");
+                    pw.print(stats[STAT_CALLS] == 0
+                            ? 0 : stats[STAT_TOTAL_NANOS] / stats[STAT_CALLS] / 1000);
+                    pw.print(" maxUs=");
+                    pw.println(stats[STAT_MAX_NANOS] / 1000);
+                }
             }
         }
         if (filter == null) {
@@ -19,6 +19,7 @@ package com.android.server.notification;
 import android.app.Notification;
 import android.content.Context;
 import android.content.pm.PackageManager;
+import android.content.pm.UserInfo;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
@@ -26,6 +27,7 @@ import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.UserHandle;
+import android.os.UserManager;
 import android.provider.ContactsContract;
 import android.provider.ContactsContract.Contacts;
 import android.provider.Settings;
@@ -36,6 +38,9 @@ import android.util.Log;
 import android.util.LruCache;
 import android.util.Slog;
 
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.util.ArrayUtils;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
@@ -86,6 +91,10 @@ public class ValidateNotificationPeople implements NotificationSignalExtractor {
 
     // maps raw person handle to resolved person object
     private LruCache<String, LookupResult> mPeopleCache;
+    // Bumped whenever cached lookups are evicted, so that lookups that were already running
+    // don't put back results that may predate the change.
+    @GuardedBy("mPeopleCache")
+    private int mCacheGeneration;
     private Map<Integer, Context> mUserToContextMap;
     private Handler mHandler;
     private ContentObserver mObserver;
@@ -109,7 +118,7 @@ public class ValidateNotificationPeople implements NotificationSignalExtractor {
                     if (DEBUG || mEvictionCount % 100 == 0) {
                         if (VERBOSE) Slog.i(TAG, "mEvictionCount: " + mEvictionCount);
                     }
-                    mPeopleCache.evictAll();
+                    evictUser(userId);
                     mEvictionCount++;
                 }
             };
@@ -118,6 +127,49 @@ public class ValidateNotificationPeople implements NotificationSignalExtractor {
         }
     }
 
+    /**
+     * Drops the cached lookups of the user whose contacts changed, or of all users. Lookups made
+     * for all users, or for another user in the same profile group, may have resolved against
+     * the changed contacts too, so those are dropped as well.
+     */
+    private void evictUser(int userId) {
+        final int[] userIds = userId == UserHandle.USER_ALL ? null : getProfileGroupIds(userId);
+        synchronized (mPeopleCache) {
+            if (userIds == null) {
+                mPeopleCache.evictAll();
+            } else {
+                final String[] prefixes = new String[userIds.length + 1];
+                prefixes[0] = getCacheKey(UserHandle.USER_ALL, "");
+                for (int i = 0; i < userIds.length; i++) {
+                    prefixes[i + 1] = getCacheKey(userIds[i], "");
+                }
+                for (String cacheKey : mPeopleCache.snapshot().keySet()) {
+                    for (String prefix : prefixes) {
+                        if (cacheKey.startsWith(prefix)) {
+                            mPeopleCache.remove(cacheKey);
+                            break;
+                        }
+                    }
+                }
+            }
+            mCacheGeneration++;
+        }
+    }
+
+    /**
+     * Returns the given user and every user in the same profile group.
+     */
+    private int[] getProfileGroupIds(int userId) {
+        final UserManager userManager = mBaseContext.getSystemService(UserManager.class);
+        if (userManager == null) {
+            return new int[] { userId };
+        }
+        final UserInfo parent = userManager.getProfileParent(userId);
+        final int[] userIds =
+                userManager.getProfileIdsWithDisabled(parent != null ? parent.id : userId);
+        return ArrayUtils.appendInt(userIds, userId);
+    }
+
     public RankingReconsideration process(NotificationRecord record) {
         if (!mEnabled) {
             if (VERBOSE) Slog.i(TAG, "disabled");
@@ -445,10 +497,21 @@ public class ValidateNotificationPeople implements NotificationSignalExtractor {
             long start = SystemClock.elapsedRealtime();
             if (VERBOSE) Slog.i(TAG, "Executing: validation for: " + mKey);
             long timeStartMs = System.currentTimeMillis();
+            final int generation;
+            synchronized (mPeopleCache) {
+                generation = mCacheGeneration;
+            }
             for (final String handle: mPendingLookups) {
-                LookupResult lookupResult = null;
+                final String cacheKey = getCacheKey(mContext.getUserId(), handle);
+                LookupResult lookupResult;
+                synchronized (mPeopleCache) {
+                    lookupResult = mPeopleCache.get(cacheKey);
+                }
                 final Uri uri = Uri.parse(handle);
-                if ("tel".equals(uri.getScheme())) {
+                if (lookupResult != null && !lookupResult.isExpired()) {
+                    // Another notification naming the same person got here first.
+                    if (DEBUG) Slog.d(TAG, "using lookupResult cached since scheduling");
+                } else if ("tel".equals(uri.getScheme())) {
                     if (DEBUG) Slog.d(TAG, "checking telephone URI: " + handle);
                     lookupResult = resolvePhoneContact(mContext, uri.getSchemeSpecificPart());
                 } else if ("mailto".equals(uri.getScheme())) {
@@ -463,8 +526,9 @@ public class ValidateNotificationPeople implements NotificationSignalExtractor {
                 }
                 if (lookupResult != null) {
                     synchronized (mPeopleCache) {
-                        final String cacheKey = getCacheKey(mContext.getUserId(), handle);
-                        mPeopleCache.put(cacheKey, lookupResult);
+                        if (generation == mCacheGeneration) {
+                            mPeopleCache.put(cacheKey, lookupResult);
+                        }
                     }
                     if (DEBUG) Slog.d(TAG, "lookup contactAffinity is " + lookupResult.getAffinity());
                     mContactAffinity = Math.max(mContactAffinity, lookupResult.getAffinity());
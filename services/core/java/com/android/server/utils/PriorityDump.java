@@ -16,8 +16,21 @@
 
 package com.android.server.utils;
 
+import android.annotation.Nullable;
+import android.os.Process;
+import android.os.SystemClock;
+
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Helper for {@link android.os.Binder#dump(java.io.FileDescriptor, String[])} that supports the
@@ -69,6 +82,10 @@ public class SpringfieldNuclearPowerPlant extends Binder {
  *
  *
  *
+ * <p>Services that would otherwise dump while holding their locks can implement
+ * {@link SnapshotDumper} instead, so the locks are only held while copying the state of each
+ * section, and the copies are written in parallel within a time budget.
+ *
  * <p>To run the unit tests:
  * <pre><code>
  *
@@ -86,6 +103,39 @@ public final class PriorityDump {
 
     public static final String PRIORITY_ARG = "--dump_priority";
 
+    /**
+     * How long the snapshots of a {@link SnapshotDumper} may take to be written, in total, before
+     * the rest of their output is dropped.
+     */
+    public static final long DEFAULT_SNAPSHOT_BUDGET_MS = 10 * 1000;
+
+    private static final int SECTION_CRITICAL = 0;
+    private static final int SECTION_HIGH = 1;
+    private static final int SECTION_NORMAL = 2;
+    private static final String[] SECTION_NAMES = { "CRITICAL", "HIGH", "NORMAL" };
+
+    /**
+     * Writes snapshots. A thread is added whenever all are busy, so a snapshot that never
+     * finishes writing only keeps its own thread, and cannot delay later dumps. Idle threads
+     * exit after a while.
+     */
+    private static final ThreadPoolExecutor sExecutor = new ThreadPoolExecutor(0,
+            Integer.MAX_VALUE, 30, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            new ThreadFactory() {
+                private final AtomicInteger mThreadNum = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread("PriorityDump-" + mThreadNum.incrementAndGet()) {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_FOREGROUND);
+                            r.run();
+                        }
+                    };
+                }
+            });
+
     private PriorityDump() {
         throw new UnsupportedOperationException();
     }
@@ -132,6 +182,67 @@ public final class PriorityDump {
         return stripped;
     }
 
+    /**
+     * Writes the non-null snapshots in parallel and copies their output to {@code pw} in order.
+     * Once {@code budgetMs} is used up, each unfinished section is interrupted, and only the
+     * output it wrote so far is copied, followed by a note.
+     */
+    private static void writeSnapshots(PrintWriter pw, long budgetMs, int firstSection,
+            Snapshot... snapshots) {
+        final StringWriter[] buffers = new StringWriter[snapshots.length];
+        final Future<?>[] futures = new Future<?>[snapshots.length];
+        for (int i = 0; i < snapshots.length; i++) {
+            final Snapshot snapshot = snapshots[i];
+            if (snapshot == null) {
+                continue;
+            }
+            final StringWriter buffer = new StringWriter();
+            buffers[i] = buffer;
+            futures[i] = sExecutor.submit(() -> snapshot.dump(new PrintWriter(buffer)));
+        }
+
+        final long deadline = SystemClock.uptimeMillis() + budgetMs;
+        for (int i = 0; i < snapshots.length; i++) {
+            if (futures[i] == null) {
+                continue;
+            }
+            String error = null;
+            try {
+                futures[i].get(Math.max(0, deadline - SystemClock.uptimeMillis()),
+                        TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                futures[i].cancel(true);
+                error = "timed out after " + budgetMs + "ms";
+            } catch (ExecutionException e) {
+                error = "failed: " + e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures[i].cancel(true);
+                error = "interrupted";
+            }
+            pw.print(buffers[i].toString());
+            if (error != null) {
+                pw.println();
+                pw.println("*** Dump of " + SECTION_NAMES[firstSection + i] + " section "
+                        + error);
+            }
+        }
+    }
+
+    /**
+     * A copy of the state of one section of a {@link SnapshotDumper}.
+     *
+     * @hide
+     */
+    public static interface Snapshot {
+
+        /**
+         * Writes the copied state. Called on a worker thread, without holding any lock of the
+         * service.
+         */
+        void dump(PrintWriter pw);
+    }
+
     /**
      * Helper for {@link android.os.Binder#dump(java.io.FileDescriptor, String[])} that supports the
      * {@link #PRIORITY_ARG} argument.
@@ -176,4 +287,76 @@ public final class PriorityDump {
             dumpNormal(fd, pw, args);
         }
     }
+
+    /**
+     * A {@link PriorityDumper} that dumps each section in two steps. First, the state of the
+     * section is copied into a {@link Snapshot} on the calling thread, holding locks only for as
+     * long as copying takes. Then the snapshots are written in parallel on worker threads, and
+     * sections not written within {@link #getDumpBudgetMillis()} are cut short.
+     * <p>
+     * Sub-classes just need to implement the {@code snapshotTYPE} methods of the priority types
+     * they support.
+     *
+     * @hide
+     */
+    public static interface SnapshotDumper extends PriorityDumper {
+
+        /**
+         * Copies the state of the critical section, or returns null if there is none.
+         */
+        @SuppressWarnings("unused")
+        default @Nullable Snapshot snapshotCritical(String[] args) {
+            return null;
+        }
+
+        /**
+         * Copies the state of the high-priority section, or returns null if there is none.
+         */
+        @SuppressWarnings("unused")
+        default @Nullable Snapshot snapshotHigh(String[] args) {
+            return null;
+        }
+
+        /**
+         * Copies the state of the normal section, or returns null if there is none.
+         */
+        @SuppressWarnings("unused")
+        default @Nullable Snapshot snapshotNormal(String[] args) {
+            return null;
+        }
+
+        /**
+         * Gets how long writing the snapshots of one dump may take.
+         */
+        default long getDumpBudgetMillis() {
+            return DEFAULT_SNAPSHOT_BUDGET_MS;
+        }
+
+        @Override
+        default void dumpCritical(FileDescriptor fd, PrintWriter pw, String[] args) {
+            writeSnapshots(pw, getDumpBudgetMillis(), SECTION_CRITICAL, snapshotCritical(args));
+        }
+
+        @Override
+        default void dumpHigh(FileDescriptor fd, PrintWriter pw, String[] args) {
+            writeSnapshots(pw, getDumpBudgetMillis(), SECTION_HIGH, snapshotHigh(args));
+        }
+
+        @Override
+        default void dumpNormal(FileDescriptor fd, PrintWriter pw, String[] args) {
+            writeSnapshots(pw, getDumpBudgetMillis(), SECTION_NORMAL, snapshotNormal(args));
+        }
+
+        /**
+         * Dumps all sections. All snapshots are taken before any is written, so that writing
+         * one section does not delay copying the next.
+         */
+        @Override
+        default void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+            final Snapshot critical = snapshotCritical(args);
+            final Snapshot high = snapshotHigh(args);
+            final Snapshot normal = snapshotNormal(args);
+            writeSnapshots(pw, getDumpBudgetMillis(), SECTION_CRITICAL, critical, high, normal);
+        }
+    }
 }
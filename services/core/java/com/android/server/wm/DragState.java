@@ -175,6 +175,7 @@ class DragState {
             mDragWindowHandle.frameTop = 0;
             mDragWindowHandle.frameRight = mDisplaySize.x;
             mDragWindowHandle.frameBottom = mDisplaySize.y;
+            mService.mInputMonitor.setInputWindowHandlesChangedLw();
 
             // Pause rotations before a drag.
             if (DEBUG_ORIENTATION) {
@@ -34,6 +34,7 @@ import static com.android.server.wm.WindowManagerDebugConfig.TAG_WM;
 
 import android.app.ActivityManager;
 import android.graphics.Rect;
+import android.graphics.Region;
 import android.os.Debug;
 import android.os.Looper;
 import android.os.RemoteException;
@@ -81,11 +82,21 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
     private int mInputWindowHandleCount;
     private InputWindowHandle mFocusedInputWindowHandle;
 
+    // Window handles last sent to the input dispatcher.  Kept so that an update which produces
+    // the same list, with no handle state changed, can skip the trip into native code.
+    private InputWindowHandle[] mLastInputWindowHandles;
+    private int mLastInputWindowHandleCount;
+    private InputWindowHandle mLastFocusedInputWindowHandle;
+
+    // When true, the list being built differs from the one last sent to the input dispatcher.
+    private boolean mInputWindowHandlesChanged = true;
+
     private boolean mAddInputConsumerHandle;
     private boolean mAddPipInputConsumerHandle;
     private boolean mAddWallpaperInputConsumerHandle;
     private boolean mDisableWallpaperTouchEvents;
     private final Rect mTmpRect = new Rect();
+    private final Region mTmpRegion = new Region();
     private final UpdateInputForAllWindowsConsumer mUpdateInputForAllWindowsConsumer =
             new UpdateInputForAllWindowsConsumer();
 
@@ -158,6 +169,8 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
         for (int i = mInputConsumers.size() - 1; i >= 0; i--) {
             mInputConsumers.valueAt(i).layout(dw, dh);
         }
+        // The consumer handles were updated in place, so they need to be sent again.
+        mInputWindowHandlesChanged = true;
     }
 
     WindowManagerPolicy.InputConsumer createInputConsumer(Looper looper, String name,
@@ -294,41 +307,71 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
             mInputWindowHandles = Arrays.copyOf(mInputWindowHandles,
                     mInputWindowHandleCount * 2);
         }
+        if (!mInputWindowHandlesChanged
+                && (mInputWindowHandleCount >= mLastInputWindowHandleCount
+                        || mLastInputWindowHandles[mInputWindowHandleCount] != windowHandle)) {
+            mInputWindowHandlesChanged = true;
+        }
         mInputWindowHandles[mInputWindowHandleCount++] = windowHandle;
     }
 
     void addInputWindowHandle(final InputWindowHandle inputWindowHandle,
             final WindowState child, int flags, final int type, final boolean isVisible,
             final boolean hasFocus, final boolean hasWallpaper) {
-        // Add a window to our list of input windows.
-        inputWindowHandle.name = child.toString();
-        flags = child.getTouchableRegion(inputWindowHandle.touchableRegion, flags);
-        inputWindowHandle.layoutParamsFlags = flags;
-        inputWindowHandle.layoutParamsType = type;
-        inputWindowHandle.dispatchingTimeoutNanos = child.getInputDispatchingTimeoutNanos();
-        inputWindowHandle.visible = isVisible;
-        inputWindowHandle.canReceiveKeys = child.canReceiveKeys();
-        inputWindowHandle.hasFocus = hasFocus;
-        inputWindowHandle.hasWallpaper = hasWallpaper;
-        inputWindowHandle.paused = child.mAppToken != null ? child.mAppToken.paused : false;
-        inputWindowHandle.layer = child.mLayer;
-        inputWindowHandle.ownerPid = child.mSession.mPid;
-        inputWindowHandle.ownerUid = child.mSession.mUid;
-        inputWindowHandle.inputFeatures = child.mAttrs.inputFeatures;
-
+        // Add a window to our list of input windows.  Only fields whose value actually changed
+        // are written, so that an unchanged list can be detected and not sent again.
+        final String name = child.toString();
+        final Region touchableRegion = mTmpRegion;
+        flags = child.getTouchableRegion(touchableRegion, flags);
+        final long dispatchingTimeoutNanos = child.getInputDispatchingTimeoutNanos();
+        final boolean canReceiveKeys = child.canReceiveKeys();
+        final boolean paused = child.mAppToken != null ? child.mAppToken.paused : false;
         final Rect frame = child.mFrame;
-        inputWindowHandle.frameLeft = frame.left;
-        inputWindowHandle.frameTop = frame.top;
-        inputWindowHandle.frameRight = frame.right;
-        inputWindowHandle.frameBottom = frame.bottom;
-
-        if (child.mGlobalScale != 1) {
-            // If we are scaling the window, input coordinates need
-            // to be inversely scaled to map from what is on screen
-            // to what is actually being touched in the UI.
-            inputWindowHandle.scaleFactor = 1.0f/child.mGlobalScale;
-        } else {
-            inputWindowHandle.scaleFactor = 1;
+
+        // If we are scaling the window, input coordinates need
+        // to be inversely scaled to map from what is on screen
+        // to what is actually being touched in the UI.
+        final float scaleFactor = child.mGlobalScale != 1 ? 1.0f/child.mGlobalScale : 1;
+
+        if (inputWindowHandle.name != name
+                || !inputWindowHandle.touchableRegion.equals(touchableRegion)
+                || inputWindowHandle.layoutParamsFlags != flags
+                || inputWindowHandle.layoutParamsType != type
+                || inputWindowHandle.dispatchingTimeoutNanos != dispatchingTimeoutNanos
+                || inputWindowHandle.visible != isVisible
+                || inputWindowHandle.canReceiveKeys != canReceiveKeys
+                || inputWindowHandle.hasFocus != hasFocus
+                || inputWindowHandle.hasWallpaper != hasWallpaper
+                || inputWindowHandle.paused != paused
+                || inputWindowHandle.layer != child.mLayer
+                || inputWindowHandle.ownerPid != child.mSession.mPid
+                || inputWindowHandle.ownerUid != child.mSession.mUid
+                || inputWindowHandle.inputFeatures != child.mAttrs.inputFeatures
+                || inputWindowHandle.frameLeft != frame.left
+                || inputWindowHandle.frameTop != frame.top
+                || inputWindowHandle.frameRight != frame.right
+                || inputWindowHandle.frameBottom != frame.bottom
+                || inputWindowHandle.scaleFactor != scaleFactor) {
+            inputWindowHandle.name = name;
+            inputWindowHandle.touchableRegion.set(touchableRegion);
+            inputWindowHandle.layoutParamsFlags = flags;
+            inputWindowHandle.layoutParamsType = type;
+            inputWindowHandle.dispatchingTimeoutNanos = dispatchingTimeoutNanos;
+            inputWindowHandle.visible = isVisible;
+            inputWindowHandle.canReceiveKeys = canReceiveKeys;
+            inputWindowHandle.hasFocus = hasFocus;
+            inputWindowHandle.hasWallpaper = hasWallpaper;
+            inputWindowHandle.paused = paused;
+            inputWindowHandle.layer = child.mLayer;
+            inputWindowHandle.ownerPid = child.mSession.mPid;
+            inputWindowHandle.ownerUid = child.mSession.mUid;
+            inputWindowHandle.inputFeatures = child.mAttrs.inputFeatures;
+            inputWindowHandle.frameLeft = frame.left;
+            inputWindowHandle.frameTop = frame.top;
+            inputWindowHandle.frameRight = frame.right;
+            inputWindowHandle.frameBottom = frame.bottom;
+            inputWindowHandle.scaleFactor = scaleFactor;
+            mInputWindowHandlesChanged = true;
         }
 
         if (DEBUG_INPUT) {
@@ -346,6 +389,45 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
             mInputWindowHandles[--mInputWindowHandleCount] = null;
         }
         mFocusedInputWindowHandle = null;
+        mInputWindowHandlesChanged = false;
+    }
+
+    /**
+     * Sends the window handles collected so far to the input dispatcher, unless they are the
+     * same handles, in the same order and with the same state, as the ones last sent.
+     */
+    private void sendInputWindowHandlesLw() {
+        if (mFocusedInputWindowHandle != mLastFocusedInputWindowHandle
+                || mInputWindowHandleCount != mLastInputWindowHandleCount) {
+            mInputWindowHandlesChanged = true;
+        }
+        if (!mInputWindowHandlesChanged) {
+            return;
+        }
+
+        // Send windows to native code.
+        mService.mInputManager.setInputWindows(mInputWindowHandles, mFocusedInputWindowHandle);
+
+        if (mLastInputWindowHandles == null
+                || mLastInputWindowHandles.length < mInputWindowHandles.length) {
+            mLastInputWindowHandles = new InputWindowHandle[mInputWindowHandles.length];
+        }
+        System.arraycopy(mInputWindowHandles, 0, mLastInputWindowHandles, 0,
+                mInputWindowHandleCount);
+        for (int i = mInputWindowHandleCount; i < mLastInputWindowHandleCount; i++) {
+            mLastInputWindowHandles[i] = null;
+        }
+        mLastInputWindowHandleCount = mInputWindowHandleCount;
+        mLastFocusedInputWindowHandle = mFocusedInputWindowHandle;
+    }
+
+    /**
+     * Makes the next update send the window list even if it looks unchanged. Called when a
+     * handle that is set up outside of this class, like the drag and task positioning ones,
+     * has been changed.
+     */
+    void setInputWindowHandlesChangedLw() {
+        mInputWindowHandlesChanged = true;
     }
 
     void setUpdateInputWindowsNeededLw() {
@@ -628,8 +710,7 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
                 addInputWindowHandle(wallpaperInputConsumer.mWindowHandle);
             }
 
-            // Send windows to native code.
-            mService.mInputManager.setInputWindows(mInputWindowHandles, mFocusedInputWindowHandle);
+            sendInputWindowHandlesLw();
 
             clearInputWindowHandlesLw();
         }
@@ -655,7 +736,11 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
                         && (inputWindowHandle.layer <= pipInputConsumer.mWindowHandle.layer)) {
                     // Update the bounds of the Pip input consumer to match the Pinned stack
                     w.getStack().getBounds(pipTouchableBounds);
-                    pipInputConsumer.mWindowHandle.touchableRegion.set(pipTouchableBounds);
+                    mTmpRegion.set(pipTouchableBounds);
+                    if (!pipInputConsumer.mWindowHandle.touchableRegion.equals(mTmpRegion)) {
+                        pipInputConsumer.mWindowHandle.touchableRegion.set(pipTouchableBounds);
+                        mInputWindowHandlesChanged = true;
+                    }
                     addInputWindowHandle(pipInputConsumer.mWindowHandle);
                     mAddPipInputConsumerHandle = false;
                 }
@@ -299,6 +299,7 @@ class TaskPositioner implements DimLayer.DimLayerUser {
         mDisplay.getRealSize(p);
         mDragWindowHandle.frameRight = p.x;
         mDragWindowHandle.frameBottom = p.y;
+        mService.mInputMonitor.setInputWindowHandlesChangedLw();
 
         // Pause rotations before a drag.
         if (DEBUG_ORIENTATION) {
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wm;
+
+import android.graphics.Rect;
+import android.service.wm.RectProto;
+import android.service.wm.WindowManagerServiceDumpProto;
+import android.service.wm.WindowStateProto;
+import android.util.proto.ProtoOutputStream;
+
+import java.util.ArrayList;
+
+/**
+ * A copy of the state reported by 'dumpsys window --proto'. It is taken while holding the
+ * window manager lock and only holds plain values, so that it can be written to the proto
+ * after the lock is released.
+ */
+final class WindowManagerDumpSnapshot {
+    private final ArrayList<WindowSnapshot> mWindows = new ArrayList<>();
+    private String mFocusedWindow;
+
+    private WindowManagerDumpSnapshot() {
+    }
+
+    /**
+     * Copies the window state. The caller must hold the window manager lock.
+     */
+    static WindowManagerDumpSnapshot takeLocked(WindowManagerService service) {
+        final WindowManagerDumpSnapshot snapshot = new WindowManagerDumpSnapshot();
+        service.mRoot.forAllWindows(
+                w -> { snapshot.mWindows.add(new WindowSnapshot(w)); },
+                true /* traverseTopToBottom */);
+        if (service.mCurrentFocus != null) {
+            snapshot.mFocusedWindow = service.mCurrentFocus.getWindowTag().toString();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Writes the snapshot as a WindowManagerServiceDumpProto. Does not need any lock.
+     */
+    void writeToProto(ProtoOutputStream proto) {
+        for (int i = 0; i < mWindows.size(); i++) {
+            mWindows.get(i).writeToProto(proto, WindowManagerServiceDumpProto.WINDOWS);
+        }
+        proto.write(WindowManagerServiceDumpProto.FOCUSED_WINDOW, mFocusedWindow);
+    }
+
+    private static final class WindowSnapshot {
+        final String tag;
+        final int displayId;
+        final int ownerUid;
+        final int sessionPid;
+        final int sessionUid;
+        final int type;
+        final int flags;
+        final int baseLayer;
+        final int layer;
+        final int viewVisibility;
+        final boolean isVisible;
+        final boolean hasSurface;
+        final boolean animatingExit;
+        final boolean destroying;
+        final boolean removed;
+        final Rect frame;
+
+        WindowSnapshot(WindowState w) {
+            tag = w.getWindowTag().toString();
+            displayId = w.getDisplayId();
+            ownerUid = w.mOwnerUid;
+            sessionPid = w.mSession.mPid;
+            sessionUid = w.mSession.mUid;
+            type = w.mAttrs.type;
+            flags = w.mAttrs.flags;
+            baseLayer = w.mBaseLayer;
+            layer = w.mLayer;
+            viewVisibility = w.mViewVisibility;
+            isVisible = w.isVisible();
+            hasSurface = w.mHasSurface;
+            animatingExit = w.mAnimatingExit;
+            destroying = w.mDestroying;
+            removed = w.mRemoved;
+            frame = new Rect(w.mFrame);
+        }
+
+        void writeToProto(ProtoOutputStream proto, long fieldId) {
+            final long token = proto.start(fieldId);
+            proto.write(WindowStateProto.TAG, tag);
+            proto.write(WindowStateProto.DISPLAY_ID, displayId);
+            proto.write(WindowStateProto.OWNER_UID, ownerUid);
+            proto.write(WindowStateProto.SESSION_PID, sessionPid);
+            proto.write(WindowStateProto.SESSION_UID, sessionUid);
+            proto.write(WindowStateProto.TYPE, type);
+            proto.write(WindowStateProto.FLAGS, flags);
+            proto.write(WindowStateProto.BASE_LAYER, baseLayer);
+            proto.write(WindowStateProto.LAYER, layer);
+            proto.write(WindowStateProto.VIEW_VISIBILITY, viewVisibility);
+            proto.write(WindowStateProto.IS_VISIBLE, isVisible);
+            proto.write(WindowStateProto.HAS_SURFACE, hasSurface);
+            proto.write(WindowStateProto.ANIMATING_EXIT, animatingExit);
+            proto.write(WindowStateProto.DESTROYING, destroying);
+            proto.write(WindowStateProto.REMOVED, removed);
+            final long frameToken = proto.start(WindowStateProto.FRAME);
+            proto.write(RectProto.LEFT, frame.left);
+            proto.write(RectProto.TOP, frame.top);
+            proto.write(RectProto.RIGHT, frame.right);
+            proto.write(RectProto.BOTTOM, frame.bottom);
+            proto.end(frameToken);
+            proto.end(token);
+        }
+    }
+}
@@ -175,6 +175,7 @@ import android.util.SparseArray;
 import android.util.SparseIntArray;
 import android.util.TimeUtils;
 import android.util.TypedValue;
+import android.util.proto.ProtoOutputStream;
 import android.view.AppTransitionAnimationSpec;
 import android.view.Display;
 import android.view.DisplayInfo;
@@ -6775,6 +6776,7 @@ public class WindowManagerService extends IWindowManager.Stub
         if (!DumpUtils.checkDumpPermission(mContext, TAG, pw)) return;
 
         boolean dumpAll = false;
+        boolean dumpProto = false;
 
         int opti = 0;
         while (opti < args.length) {
@@ -6785,9 +6787,11 @@ public class WindowManagerService extends IWindowManager.Stub
             opti++;
             if ("-a".equals(opt)) {
                 dumpAll = true;
+            } else if ("--proto".equals(opt)) {
+                dumpProto = true;
             } else if ("-h".equals(opt)) {
                 pw.println("Window manager dump options:");
-                pw.println("  [-a] [-h] [cmd] ...");
+                pw.println("  [-a] [-h] [--proto] [cmd] ...");
                 pw.println("  cmd may be one of:");
                 pw.println("    l[astanr]: last ANR information");
                 pw.println("    p[policy]: policy state");
@@ -6804,12 +6808,26 @@ public class WindowManagerService extends IWindowManager.Stub
                 pw.println("    \"visible\" for the visible windows.");
                 pw.println("    \"visible-apps\" for the visible app windows.");
                 pw.println("  -a: include all available server state.");
+                pw.println("  --proto: output the window list as a WindowManagerServiceDumpProto.");
                 return;
             } else {
                 pw.println("Unknown argument: " + opt + "; use -h for help");
             }
         }
 
+        if (dumpProto) {
+            // Only copying the windows holds the lock; the proto is built and written to the fd
+            // after releasing it.
+            final WindowManagerDumpSnapshot snapshot;
+            synchronized(mWindowMap) {
+                snapshot = WindowManagerDumpSnapshot.takeLocked(this);
+            }
+            final ProtoOutputStream proto = new ProtoOutputStream(fd, true);
+            snapshot.writeToProto(proto);
+            proto.flush();
+            return;
+        }
+
         // Is the caller requesting to dump a particular piece of data?
         if (opti < args.length) {
             String cmd = args[opti];
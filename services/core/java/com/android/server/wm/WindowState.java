@@ -2089,6 +2089,7 @@ class WindowState extends WindowContainer<WindowState> implements WindowManagerP
         mInputChannel = inputChannels[0];
         mClientChannel = inputChannels[1];
         mInputWindowHandle.inputChannel = inputChannels[0];
+        mService.mInputMonitor.setInputWindowHandlesChangedLw();
         if (outInputChannel != null) {
             mClientChannel.transferTo(outInputChannel);
             mClientChannel.dispose();
@@ -2119,6 +2120,7 @@ class WindowState extends WindowContainer<WindowState> implements WindowManagerP
             mClientChannel = null;
         }
         mInputWindowHandle.inputChannel = null;
+        mService.mInputMonitor.setInputWindowHandlesChangedLw();
     }
 
     void applyDimLayerIfNeeded() {
@@ -1339,6 +1339,23 @@ public final class SystemServer {
                 traceEnd();
             }
 
+            traceBeginAndSlog("StartBinderCallsStatsService");
+            try {
+                ServiceManager.addService("binder_calls_stats",
+                        new BinderCallsStatsService(context));
+            } catch (Throwable e) {
+                reportWtf("starting BinderCallsStats Service", e);
+            }
+            traceEnd();
+
+            traceBeginAndSlog("StartLooperStatsService");
+            try {
+                ServiceManager.addService("looper_stats", new LooperStatsService(context));
+            } catch (Throwable e) {
+                reportWtf("starting LooperStats Service", e);
+            }
+            traceEnd();
+
             traceBeginAndSlog("StartDiskStatsService");
             try {
                 ServiceManager.addService("diskstats", new DiskStatsService(context));
@@ -16,13 +16,17 @@
 
 package com.android.server.notification;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import android.app.NotificationChannel;
 import android.content.Intent;
 import android.os.Binder;
 import android.os.Bundle;
 import android.os.IBinder;
+import android.os.Parcel;
 import android.service.notification.NotificationListenerService;
 import android.service.notification.NotificationListenerService.Ranking;
 import android.service.notification.NotificationRankingUpdate;
@@ -63,7 +67,105 @@ public class NotificationListenerServiceTest extends NotificationTestCase {
         }
     }
 
+    @Test
+    public void testRankingDelta() throws Exception {
+        final String[] keys = new String[20];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "key" + i;
+        }
+        final String[] newKeys = keys.clone();
+        newKeys[5] = "newKey";
+        NotificationRankingUpdate base = generateUpdate(keys);
+        base.setSequence(4);
+        NotificationRankingUpdate target = generateUpdate(newKeys);
+        target.getShowBadge().putBoolean("key12", !getShowBadge(12));
+        target.setSequence(5);
+
+        NotificationRankingUpdate delta = NotificationRankingUpdate.createDelta(4, keys,
+                base.marshallAttributes(), target, target.marshallAttributes());
+        assertNotNull(delta);
+        assertTrue(delta.isDelta());
+        assertArrayEquals(new String[] { "newKey", "key12" }, delta.getOrderedKeys());
+
+        TestListenerService expected = new TestListenerService();
+        expected.applyUpdateLocked(target);
+        TestListenerService service = new TestListenerService();
+        service.applyUpdateLocked(base);
+        service.applyUpdateLocked(parcelAndUnparcel(delta));
+        assertRankingEquals(expected.getCurrentRanking(), service.getCurrentRanking());
+    }
+
+    @Test
+    public void testRankingDeltaCarriesChangeWithSameHash() throws Exception {
+        NotificationRankingUpdate base = generateUpdate(mKeys);
+        base.getOverrideGroupKeys().putString(mKeys[0], "Aa");
+        NotificationRankingUpdate target = generateUpdate(mKeys);
+        // "Aa" and "BB" have the same hash code.
+        target.getOverrideGroupKeys().putString(mKeys[0], "BB");
+
+        NotificationRankingUpdate delta = NotificationRankingUpdate.createDelta(1, mKeys,
+                base.marshallAttributes(), target, target.marshallAttributes());
+        assertNotNull(delta);
+        assertArrayEquals(new String[] { mKeys[0] }, delta.getOrderedKeys());
+    }
+
+    @Test
+    public void testRankingDeltaNotMatchingBaseIsIgnored() throws Exception {
+        NotificationRankingUpdate base = generateUpdate(mKeys);
+        base.setSequence(1);
+        NotificationRankingUpdate target = generateUpdate(new String[] { "key", "key1" });
+        target.setSequence(3);
+        NotificationRankingUpdate delta = NotificationRankingUpdate.createDelta(2, mKeys,
+                base.marshallAttributes(), target, target.marshallAttributes());
+        assertNotNull(delta);
+
+        TestListenerService service = new TestListenerService();
+        service.applyUpdateLocked(base);
+        service.applyUpdateLocked(delta);
+        assertArrayEquals(mKeys, service.getCurrentRanking().getOrderedKeys());
+    }
+
+    private NotificationRankingUpdate parcelAndUnparcel(NotificationRankingUpdate update) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            update.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return NotificationRankingUpdate.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private void assertRankingEquals(NotificationListenerService.RankingMap expected,
+            NotificationListenerService.RankingMap actual) {
+        assertArrayEquals(expected.getOrderedKeys(), actual.getOrderedKeys());
+        for (String key : expected.getOrderedKeys()) {
+            Ranking expectedRanking = new Ranking();
+            expected.getRanking(key, expectedRanking);
+            Ranking ranking = new Ranking();
+            actual.getRanking(key, ranking);
+            assertEquals(expectedRanking.getRank(), ranking.getRank());
+            assertEquals(expectedRanking.getVisibilityOverride(), ranking.getVisibilityOverride());
+            assertEquals(expectedRanking.getOverrideGroupKey(), ranking.getOverrideGroupKey());
+            assertEquals(expectedRanking.matchesInterruptionFilter(),
+                    ranking.matchesInterruptionFilter());
+            assertEquals(expectedRanking.getSuppressedVisualEffects(),
+                    ranking.getSuppressedVisualEffects());
+            assertEquals(expectedRanking.getImportance(), ranking.getImportance());
+            assertEquals(expectedRanking.getImportanceExplanation(),
+                    ranking.getImportanceExplanation());
+            assertEquals(expectedRanking.getChannel(), ranking.getChannel());
+            assertEquals(expectedRanking.getAdditionalPeople(), ranking.getAdditionalPeople());
+            assertEquals(expectedRanking.getSnoozeCriteria(), ranking.getSnoozeCriteria());
+            assertEquals(expectedRanking.canShowBadge(), ranking.canShowBadge());
+        }
+    }
+
     private NotificationRankingUpdate generateUpdate() {
+        return generateUpdate(mKeys);
+    }
+
+    private NotificationRankingUpdate generateUpdate(String[] keys) {
         List<String> interceptedKeys = new ArrayList<>();
         Bundle visibilityOverrides = new Bundle();
         Bundle overrideGroupKeys = new Bundle();
@@ -73,10 +175,10 @@ public class NotificationListenerServiceTest extends NotificationTestCase {
         Bundle overridePeople = new Bundle();
         Bundle snoozeCriteria = new Bundle();
         Bundle showBadge = new Bundle();
-        int[] importance = new int[mKeys.length];
+        int[] importance = new int[keys.length];
 
-        for (int i = 0; i < mKeys.length; i++) {
-            String key = mKeys[i];
+        for (int i = 0; i < keys.length; i++) {
+            String key = keys[i];
             visibilityOverrides.putInt(key, getVisibilityOverride(i));
             overrideGroupKeys.putString(key, getOverrideGroupKey(key));
             if (isIntercepted(i)) {
@@ -90,7 +192,7 @@ public class NotificationListenerServiceTest extends NotificationTestCase {
             snoozeCriteria.putParcelableArrayList(key, getSnoozeCriteria(key, i));
             showBadge.putBoolean(key, getShowBadge(i));
         }
-        NotificationRankingUpdate update = new NotificationRankingUpdate(mKeys,
+        NotificationRankingUpdate update = new NotificationRankingUpdate(keys,
                 interceptedKeys.toArray(new String[0]), visibilityOverrides,
                 suppressedVisualEffects, importance, explanation, overrideGroupKeys,
                 channels, overridePeople, snoozeCriteria, showBadge);
@@ -63,6 +63,8 @@ import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -1315,6 +1317,18 @@ public class RankingHelperTest extends NotificationTestCase {
         }
     }
 
+    @Test
+    public void testDumpIncludesExtractorStats() throws Exception {
+        mHelper.extractSignals(mRecordNoGroup);
+        mHelper.extractSignals(mRecordNoGroup2);
+
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        mHelper.dump(pw, "", null);
+        pw.flush();
+        assertTrue(sw.toString().contains(" calls=2 deferred=0 "));
+    }
+
     @Test
     public void testBadgingOverrideTrue() throws Exception {
         Secure.putIntForUser(getContext().getContentResolver(),
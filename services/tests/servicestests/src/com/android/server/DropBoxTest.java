@@ -327,6 +327,40 @@ public class DropBoxTest extends AndroidTestCase {
         x2.close();
     }
 
+    public void testRestartWithIndex() throws Exception {
+        File dir = getEmptyDir("testRestartWithIndex");
+        DropBoxManagerService service = new DropBoxManagerService(getContext(), dir);
+        DropBoxManager dropbox = new DropBoxManager(getContext(), service.getServiceStub());
+
+        long before = System.currentTimeMillis();
+        dropbox.addText("DropBoxTest.A", "A0");
+        dropbox.addText("DropBoxTest.B", "B0");
+        dropbox.addText("DropBoxTest.A", "A1");
+        service.saveIndex();
+        assertTrue(new File(dir, "entries.index").exists());
+
+        // Files removed behind the service's back must not be listed from the index.
+        DropBoxManager.Entry b0 = dropbox.getNextEntry("DropBoxTest.B", before);
+        assertTrue(new File(dir, "DropBoxTest.B@" + b0.getTimeMillis() + ".txt").delete());
+        b0.close();
+
+        service = new DropBoxManagerService(getContext(), dir);
+        dropbox = new DropBoxManager(getContext(), service.getServiceStub());
+
+        DropBoxManager.Entry x0 = dropbox.getNextEntry(null, before);
+        DropBoxManager.Entry x1 = dropbox.getNextEntry(null, x0.getTimeMillis());
+        assertTrue(null == dropbox.getNextEntry(null, x1.getTimeMillis()));
+        assertTrue(null == dropbox.getNextEntry("DropBoxTest.B", before));
+
+        assertEquals("DropBoxTest.A", x0.getTag());
+        assertEquals("DropBoxTest.A", x1.getTag());
+        assertEquals("A0", x0.getText(80));
+        assertEquals("A1", x1.getText(80));
+
+        x0.close();
+        x1.close();
+    }
+
     public void testSizeLimits() throws Exception {
         File dir = getEmptyDir("testSizeLimits");
         int blockSize =  new StatFs(dir.getPath()).getBlockSize();
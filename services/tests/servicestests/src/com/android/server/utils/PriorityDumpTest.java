@@ -18,7 +18,10 @@ package com.android.server.utils;
 
 import static com.android.server.utils.PriorityDump.dump;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.verify;
@@ -26,6 +29,8 @@ import static org.mockito.Mockito.verify;
 import android.platform.test.annotations.Presubmit;
 import android.support.test.filters.SmallTest;
 import com.android.server.utils.PriorityDump.PriorityDumper;
+import com.android.server.utils.PriorityDump.Snapshot;
+import com.android.server.utils.PriorityDump.SnapshotDumper;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -36,6 +41,8 @@ import org.mockito.MockitoAnnotations;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
 
 @SmallTest
 @Presubmit
@@ -180,6 +187,122 @@ public class PriorityDumpTest {
         }));
     }
 
+    @Test
+    public void testSnapshotDumperWritesAllSectionsInOrder() {
+        final FakeSnapshotDumper dumper = new FakeSnapshotDumper();
+        final StringWriter out = new StringWriter();
+
+        dump(dumper, mFd, new PrintWriter(out), EMPTY_ARGS);
+
+        assertEquals("critical\nhigh\nnormal\n", out.toString());
+        assertSame(Thread.currentThread(), dumper.snapshotThread);
+        assertNotSame(Thread.currentThread(), dumper.dumpThread);
+    }
+
+    @Test
+    public void testSnapshotDumperWritesOnlyRequestedSection() {
+        final StringWriter out = new StringWriter();
+
+        dump(new FakeSnapshotDumper(), mFd, new PrintWriter(out), new String[] {
+                "--dump_priority", "HIGH"
+        });
+
+        assertEquals("high\n", out.toString());
+    }
+
+    @Test
+    public void testSnapshotDumperCutsShortSectionsOverBudget() {
+        final CountDownLatch release = new CountDownLatch(1);
+        final FakeSnapshotDumper dumper = new FakeSnapshotDumper() {
+            @Override
+            public Snapshot snapshotNormal(String[] args) {
+                return pw -> {
+                    pw.println("partial");
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        // Interrupted once the budget was used up.
+                    }
+                };
+            }
+
+            @Override
+            public long getDumpBudgetMillis() {
+                return 100;
+            }
+        };
+        final StringWriter out = new StringWriter();
+
+        try {
+            dump(dumper, mFd, new PrintWriter(out), EMPTY_ARGS);
+        } finally {
+            release.countDown();
+        }
+
+        final String output = out.toString();
+        assertTrue(output, output.startsWith("critical\nhigh\npartial\n"));
+        assertTrue(output, output.contains("*** Dump of NORMAL section timed out"));
+    }
+
+    @Test
+    public void testSnapshotDumperNotBlockedByHungSnapshots() {
+        final CountDownLatch release = new CountDownLatch(1);
+        final FakeSnapshotDumper hung = new FakeSnapshotDumper() {
+            @Override
+            public Snapshot snapshotNormal(String[] args) {
+                return pw -> {
+                    // Ignores interrupts, like a snapshot stuck in a blocking call.
+                    while (release.getCount() > 0) {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                        }
+                    }
+                };
+            }
+
+            @Override
+            public long getDumpBudgetMillis() {
+                return 100;
+            }
+        };
+
+        try {
+            for (int i = 0; i < 4; i++) {
+                dump(hung, mFd, new PrintWriter(new StringWriter()), EMPTY_ARGS);
+            }
+            final StringWriter out = new StringWriter();
+            dump(new FakeSnapshotDumper(), mFd, new PrintWriter(out), EMPTY_ARGS);
+            assertEquals("critical\nhigh\nnormal\n", out.toString());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private static class FakeSnapshotDumper implements SnapshotDumper {
+
+        volatile Thread snapshotThread, dumpThread;
+
+        @Override
+        public Snapshot snapshotCritical(String[] args) {
+            snapshotThread = Thread.currentThread();
+            return pw -> {
+                dumpThread = Thread.currentThread();
+                pw.println("critical");
+            };
+        }
+
+        @Override
+        public Snapshot snapshotHigh(String[] args) {
+            return pw -> pw.println("high");
+        }
+
+        @Override
+        public Snapshot snapshotNormal(String[] args) {
+            return pw -> pw.println("normal");
+        }
+    }
+
     private final class FakeDumper implements PriorityDumper {
 
         String[] criticalArgs, highArgs, normalArgs;
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.wm;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import android.platform.test.annotations.Presubmit;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.proto.ProtoOutputStream;
+import android.view.View;
+
+import java.util.Arrays;
+
+import static android.view.WindowManager.LayoutParams.TYPE_APPLICATION;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link WindowManagerDumpSnapshot} class.
+ *
+ * Build/Install/Run:
+ *  bit FrameworksServicesTests:com.android.server.wm.WindowManagerDumpSnapshotTest
+ */
+@SmallTest
+@Presubmit
+@RunWith(AndroidJUnit4.class)
+public class WindowManagerDumpSnapshotTest extends WindowTestsBase {
+
+    @Test
+    public void testSnapshotDoesNotFollowLiveState() throws Exception {
+        final WindowState window = createWindow(null, TYPE_APPLICATION, "window");
+        final WindowManagerDumpSnapshot snapshot = takeSnapshot();
+        final byte[] before = writeToProto(snapshot);
+        assertTrue(before.length > 0);
+
+        window.mFrame.set(0, 0, 123, 456);
+        window.mViewVisibility = View.GONE;
+
+        // Writing after the lock was released reports the state at the time of the snapshot.
+        assertArrayEquals(before, writeToProto(snapshot));
+        assertFalse(Arrays.equals(before, writeToProto(takeSnapshot())));
+    }
+
+    private static WindowManagerDumpSnapshot takeSnapshot() {
+        synchronized (sWm.mWindowMap) {
+            return WindowManagerDumpSnapshot.takeLocked(sWm);
+        }
+    }
+
+    private static byte[] writeToProto(WindowManagerDumpSnapshot snapshot) {
+        final ProtoOutputStream proto = new ProtoOutputStream();
+        snapshot.writeToProto(proto);
+        return proto.getBytes();
+    }
+}